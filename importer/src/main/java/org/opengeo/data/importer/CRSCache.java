@@ -0,0 +1,186 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.referencing.CRS;
+import org.geotools.util.logging.Logging;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Caches the EPSG codes of coordinate reference systems, and decoded coordinate reference
+ * systems.
+ * <p>
+ * Finding the EPSG code of a coordinate reference system that does not declare one, such as
+ * one read from a .prj file, scans the whole EPSG database. The code found, or the lack of one,
+ * is cached under the normalized WKT of the coordinate reference system so that imports of many
+ * files with the same projection scan the database once. When a file is set the codes are
+ * persisted to it so that they survive a restart, see {@link #setFile(File)}.
+ * </p>
+ */
+public class CRSCache {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    /** marks the lack of an EPSG code */
+    static final String NONE = "none";
+
+    static CRSCache DEFAULT = new CRSCache();
+
+    /**
+     * The cache shared by the importer.
+     */
+    public static CRSCache getDefault() {
+        return DEFAULT;
+    }
+
+    /** epsg codes, or NONE, by normalized wkt */
+    Map<String,String> codes = new ConcurrentHashMap<String, String>();
+
+    /** locks of the wkt being looked up */
+    ConcurrentMap<String,Object> scanning = new ConcurrentHashMap<String, Object>();
+
+    /** decoded crs by code */
+    Map<String,CoordinateReferenceSystem> decoded =
+        new ConcurrentHashMap<String, CoordinateReferenceSystem>();
+
+    File file;
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets the file the codes are persisted to, loading the codes it holds.
+     */
+    public synchronized void setFile(File file) {
+        this.file = file;
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                props.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch(IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to load EPSG codes from " + file.getPath(), e);
+            return;
+        }
+
+        for (String wkt : props.stringPropertyNames()) {
+            codes.put(wkt, props.getProperty(wkt));
+        }
+    }
+
+    /**
+     * Looks up the EPSG code of a coordinate reference system, scanning the EPSG database if
+     * the code is not cached.
+     *
+     * @return The code, or <code>null</code> if the coordinate reference system matches none.
+     *
+     * @see CRS#lookupEpsgCode(CoordinateReferenceSystem, boolean)
+     */
+    public Integer lookupEpsgCode(CoordinateReferenceSystem crs) throws FactoryException {
+        String key = normalize(crs.toWKT());
+        String code = codes.get(key);
+        if (code == null) {
+            //files of a directory are prepared concurrently, only one of them scans
+            Object lock = new Object();
+            Object existing = scanning.putIfAbsent(key, lock);
+            synchronized (existing != null ? existing : lock) {
+                code = codes.get(key);
+                if (code == null) {
+                    Integer epsgCode = CRS.lookupEpsgCode(crs, true);
+                    code = epsgCode != null ? epsgCode.toString() : NONE;
+
+                    codes.put(key, code);
+                    save();
+                }
+            }
+            scanning.remove(key);
+        }
+        return NONE.equals(code) ? null : Integer.valueOf(code);
+    }
+
+    /**
+     * Decodes a coordinate reference system, such as <tt>EPSG:4326</tt>.
+     *
+     * @see CRS#decode(String)
+     */
+    public CoordinateReferenceSystem decode(String srs) throws FactoryException {
+        CoordinateReferenceSystem crs = decoded.get(srs);
+        if (crs == null) {
+            crs = CRS.decode(srs);
+            decoded.put(srs, crs);
+        }
+        return crs;
+    }
+
+    /**
+     * Number of EPSG codes cached.
+     */
+    public int size() {
+        return codes.size();
+    }
+
+    public synchronized void clear() {
+        codes.clear();
+        decoded.clear();
+        save();
+    }
+
+    /*
+     * rewrites the file, codes are only added after scanning the epsg database so this is rare
+     */
+    synchronized void save() {
+        if (file == null) {
+            return;
+        }
+
+        Properties props = new Properties();
+        props.putAll(codes);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                props.store(out, "EPSG codes of coordinate reference systems by WKT");
+            }
+            finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                //windows will not rename over an existing file
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmp.getPath());
+                }
+            }
+        }
+        catch(IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to save EPSG codes to " + file.getPath(), e);
+        }
+    }
+
+    static String normalize(String wkt) {
+        return wkt.trim().replaceAll("\\s+", " ");
+    }
+}
@@ -6,17 +6,13 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.FilenameUtils;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
-import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.GridFormatFinder;
-import org.geotools.coverage.grid.io.UnknownFormat;
 import org.geotools.data.DataStoreFactorySpi;
-import org.geotools.data.FileDataStoreFactorySpi;
-import org.geotools.data.FileDataStoreFinder;
 import org.opengeo.data.importer.job.ProgressMonitor;
 import org.vfny.geoserver.util.DataStoreUtils;
 
@@ -42,9 +38,26 @@ public abstract class DataFormat implements Serializable {
     }
 
     /**
-     * looks up a format based on file extension.
+     * cached format lookups by file
+     */
+    static DataFormatLookup fileLookup = new DataFormatLookup();
+
+    /**
+     * looks up a format based on file extension, or contents for grid formats.
+     * 
+     * @see DataFormatLookup
      */
     public static DataFormat lookup(File file) {
+        return lookup(file, null);
+    }
+
+    /**
+     * looks up a format as part of a scan, the extensions of the files found not to be grids 
+     * being remembered in the set for the files of the scan.
+     * 
+     * @see DataFormatLookup#lookup(File, Set)
+     */
+    public static DataFormat lookup(File file, Set<String> notGrids) {
         String ext = FilenameUtils.getExtension(file.getName());
         if (ext != null && extToFormat.containsKey(ext)) {
             Class<? extends DataFormat> clazz = extToFormat.get(ext);
@@ -54,19 +67,11 @@ public abstract class DataFormat implements Serializable {
             catch(Exception e) {}
         }
 
-        //look for a datastore that can handle the file 
-        FileDataStoreFactorySpi factory = FileDataStoreFinder.getDataStoreFactory(ext);
-        if (factory != null) {
-            return new DataStoreFormat(factory);
-        }
+        return fileLookup.lookup(file, notGrids);
+    }
 
-        //look for a gridformat that can handle the file
-        AbstractGridFormat format = GridFormatFinder.findFormat(file);
-        if (format != null && !(format instanceof UnknownFormat)) {
-            return new GridFormat(format);
-        }
-        
-        return null;
+    public static DataFormatLookup getFileLookup() {
+        return fileLookup;
     }
 
     /**
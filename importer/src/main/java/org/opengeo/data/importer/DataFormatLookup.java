@@ -0,0 +1,225 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.coverage.grid.io.UnknownFormat;
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.FileDataStoreFactorySpi;
+import org.geotools.data.FileDataStoreFinder;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Finds the format of files, caching what can be cached.
+ * <p>
+ * Vector formats are found by file extension, so the format found for an extension, or the lack
+ * of one, is cached. Grid formats are found by probing the file against every registered grid
+ * format, which opens the file for each of them. To avoid probing files that can not be grids the
+ * first bytes of the file are compared to the signatures of binary grid formats first. Files
+ * with a signature are always probed. Within a scan, such as that of the files of a directory,
+ * files without one are probed until a file with the same extension is found not to be a grid,
+ * after which files with that extension are no longer probed unless they have a signature. Text
+ * grid formats have no signature, so their extensions, see {@link #TEXT_GRID_EXTENSIONS}, are
+ * always probed, and the other extensions found not to be grids are only remembered for the 
+ * scan. Directories are always probed.
+ * </p>
+ * <p>
+ * Formats are immutable, so the same format instance is handed out for all the files of a format.
+ * </p>
+ */
+public class DataFormatLookup {
+
+    static Logger LOGGER = Logging.getLogger(DataFormatLookup.class);
+
+    /** number of leading bytes compared to signatures */
+    static final int HEADER_SIZE = 16;
+
+    /** signatures of binary grid formats */
+    static final byte[][] SIGNATURES = {
+        {'I', 'I', 42, 0},                              //tiff, little endian
+        {'M', 'M', 0, 42},                              //tiff, big endian
+        {'I', 'I', 43, 0},                              //bigtiff, little endian
+        {'M', 'M', 0, 43},                              //bigtiff, big endian
+        {(byte) 0x89, 'P', 'N', 'G'},                   //png
+        {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},        //jpeg
+        {'G', 'I', 'F', '8'},                           //gif
+        {'B', 'M'},                                     //bmp
+        {0, 0, 0, 12, 'j', 'P', ' ', ' '},              //jpeg 2000
+        {(byte) 0xFF, 0x4F, (byte) 0xFF, 0x51},         //jpeg 2000 codestream
+        {'C', 'D', 'F', 1},                             //netcdf classic
+        {'C', 'D', 'F', 2},                             //netcdf 64 bit offset
+        {(byte) 0x89, 'H', 'D', 'F'},                   //hdf5, netcdf 4
+        {0x0E, 0x03, 0x13, 0x01},                       //hdf4
+        {'G', 'R', 'I', 'B'},                           //grib
+        {'m', 's', 'i', 'd'},                           //mrsid
+    };
+
+    /** extensions of text grid formats, without a signature, such as arc ascii grids */
+    static final Set<String> TEXT_GRID_EXTENSIONS = 
+        new HashSet<String>(Arrays.asList("asc", "arx", "grd", "ascii"));
+
+    /** marks the lack of a vector format in the extension cache */
+    static final DataStoreFormat NONE = 
+        new DataStoreFormat((Class<? extends DataStoreFactorySpi>) null);
+
+    /** vector formats by file extension */
+    ConcurrentMap<String,DataStoreFormat> vectorFormats =
+        new ConcurrentHashMap<String, DataStoreFormat>();
+
+    /** grid format instances by grid format class */
+    ConcurrentMap<Class<?>,GridFormat> gridFormats = new ConcurrentHashMap<Class<?>, GridFormat>();
+
+    //stats
+    AtomicLong lookups = new AtomicLong();
+    AtomicLong probes = new AtomicLong();
+    AtomicLong probesSkipped = new AtomicLong();
+
+    /**
+     * Looks up the format of a file.
+     *
+     * @return The format, or <code>null</code> if the file is not of a known format.
+     */
+    public DataFormat lookup(File file) {
+        return lookup(file, null);
+    }
+
+    /**
+     * Looks up the format of a file as part of a scan.
+     *
+     * @param notGrids The extensions of the files of the scan without signature that turned out
+     *   not to be grids, updated by the lookup, text grid extensions excepted. Must be safe for 
+     *   concurrent use if the scan is. May be <code>null</code> to always probe.
+     *
+     * @return The format, or <code>null</code> if the file is not of a known format.
+     */
+    public DataFormat lookup(File file, Set<String> notGrids) {
+        lookups.incrementAndGet();
+        String ext = FilenameUtils.getExtension(file.getName());
+
+        //look for a datastore that can handle the file
+        DataStoreFormat vector = vectorFormats.get(ext);
+        if (vector == null) {
+            FileDataStoreFactorySpi factory = FileDataStoreFinder.getDataStoreFactory(ext);
+            vector = factory != null ? new DataStoreFormat(factory) : NONE;
+
+            DataStoreFormat existing = vectorFormats.putIfAbsent(ext, vector);
+            if (existing != null) {
+                vector = existing;
+            }
+        }
+        if (vector != NONE) {
+            return vector;
+        }
+
+        //look for a gridformat that can handle the file, directories are always probed
+        boolean signed = file.isDirectory() || hasGridSignature(file);
+        if (!signed && ((notGrids != null && notGrids.contains(ext)) || file.length() == 0)) {
+            probesSkipped.incrementAndGet();
+            return null;
+        }
+
+        probes.incrementAndGet();
+        AbstractGridFormat format = GridFormatFinder.findFormat(file);
+        if (format != null && !(format instanceof UnknownFormat)) {
+            GridFormat grid = gridFormats.get(format.getClass());
+            if (grid == null) {
+                GridFormat existing = gridFormats.putIfAbsent(format.getClass(),
+                    grid = new GridFormat(format));
+                if (existing != null) {
+                    grid = existing;
+                }
+            }
+            return grid;
+        }
+
+        if (!signed && notGrids != null && !TEXT_GRID_EXTENSIONS.contains(ext.toLowerCase())) {
+            notGrids.add(ext);
+        }
+        return null;
+    }
+
+    /*
+     * whether the file starts with the signature of a binary grid format
+     */
+    boolean hasGridSignature(File file) {
+        byte[] header = new byte[HEADER_SIZE];
+        int n = 0;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                int r;
+                while (n < header.length && (r = in.read(header, n, header.length - n)) > 0) {
+                    n += r;
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch(IOException e) {
+            LOGGER.log(Level.FINEST, "Unable to read header of " + file.getPath(), e);
+            return false;
+        }
+
+        for (byte[] sig : SIGNATURES) {
+            if (matches(header, n, sig)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean matches(byte[] header, int length, byte[] sig) {
+        if (length < sig.length) {
+            return false;
+        }
+        for (int i = 0; i < sig.length; i++) {
+            if (header[i] != sig[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the cached formats, for instance after plugins have been added.
+     */
+    public void clear() {
+        vectorFormats.clear();
+        gridFormats.clear();
+    }
+
+    /**
+     * Number of files looked up.
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * Number of files probed against the grid formats.
+     */
+    public long getProbes() {
+        return probes.get();
+    }
+
+    /**
+     * Number of files not probed against the grid formats since they could not be grids.
+     */
+    public long getProbesSkipped() {
+        return probesSkipped.get();
+    }
+}
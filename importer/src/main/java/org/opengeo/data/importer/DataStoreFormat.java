@@ -1,15 +1,21 @@
 package org.opengeo.data.importer;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FilenameUtils;
 import org.geoserver.catalog.AttributeTypeInfo;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogBuilder;
@@ -45,6 +51,16 @@ public class DataStoreFormat extends VectorFormat {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * extensions of text formats with a header line followed by a feature per line
+     */
+    static final Set<String> LINE_FORMATS = new HashSet<String>(Arrays.asList("csv", "properties"));
+
+    /**
+     * number of bytes read to estimate the number of lines of a file
+     */
+    static final int LINE_SAMPLE_SIZE = 64 * 1024;
+
     private Class<? extends DataStoreFactorySpi> dataStoreFactoryClass;
     private transient volatile DataStoreFactorySpi dataStoreFactory;
 
@@ -181,6 +197,63 @@ public class DataStoreFormat extends VectorFormat {
         SimpleFeatureSource featureSource = getDataStore(data, item).getFeatureSource(item.getOriginalName());
         return featureSource.getCount(Query.ALL);
     }
+
+    @Override
+    public boolean isFeatureCountCheap(ImportData data, ImportItem item) throws IOException {
+        //shapefiles keep the record count in a header and databases count on their end, other 
+        // files are counted by reading them entirely
+        if (data instanceof SpatialFile) {
+            String ext = FilenameUtils.getExtension(((SpatialFile) data).getFile().getName());
+            return "shp".equalsIgnoreCase(ext);
+        }
+        return true;
+    }
+
+    @Override
+    public int estimateFeatureCount(ImportData data, ImportItem item) throws IOException {
+        if (data instanceof SpatialFile) {
+            File file = ((SpatialFile) data).getFile();
+            String ext = FilenameUtils.getExtension(file.getName()).toLowerCase();
+            if (LINE_FORMATS.contains(ext)) {
+                int lines = estimateLineCount(file);
+                return lines > 0 ? lines - 1 : lines;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Estimates the number of lines in a file from the line length of its first bytes, the count
+     * is exact for files no longer than the sample.
+     */
+    int estimateLineCount(File file) throws IOException {
+        long size = file.length();
+        byte[] buf = new byte[(int) Math.min(size, LINE_SAMPLE_SIZE)];
+
+        int n = 0;
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (n < buf.length && (read = in.read(buf, n, buf.length - n)) != -1) {
+                n += read;
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        int lines = 0;
+        for (int i = 0; i < n; i++) {
+            if (buf[i] == '\n') {
+                lines++;
+            }
+        }
+
+        if (n == size) {
+            return n > 0 && buf[n-1] != '\n' ? lines + 1 : lines;
+        }
+        return lines > 0 ? (int) (size * lines / n) : -1;
+    }
     
     public DataStore createDataStore(ImportData data) throws IOException {
         DataStoreFactorySpi dataStoreFactory = factory();
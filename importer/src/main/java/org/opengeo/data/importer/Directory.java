@@ -3,16 +3,27 @@ package org.opengeo.data.importer;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipOutputStream;
@@ -29,6 +40,13 @@ public class Directory extends FileData {
     
     private static final long serialVersionUID = 1L;
 
+    /** maximum number of threads scanning sub directories */
+    static final int SCAN_THREADS = Math.max(1, Math.min(8, 
+        Runtime.getRuntime().availableProcessors()));
+
+    /** interval at which a scan checks for cancellation while waiting on sub directories */
+    static final long SCAN_POLL_MILLIS = 100;
+
     /**
      * list of files contained in directory
      */
@@ -91,77 +109,178 @@ public class Directory extends FileData {
 
     @Override
     public void prepare(ProgressMonitor m) throws IOException {
-        files = new ArrayList<FileData>();
-
-        //recursively search for spatial files, maintain a queue of directories to recurse into
-        LinkedList<File> q = new LinkedList<File>();
-        q.add(file);
-
-        while(!q.isEmpty()) {
-            File dir = q.poll();
+        List<Directory> dirs = scan(m);
+        if (dirs.isEmpty() || m.isCanceled()) {
+            return;
+        }
 
-            if (m.isCanceled()){
-                return;
+        //scan the sub directories in parallel, each scan hands back the directories it found
+        // rather than waiting on them so that workers never block on each other
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(SCAN_THREADS, dirs.size()), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "importer-scan");
+                t.setDaemon(true);
+                return t;
             }
-            m.setTask("Scanning " + dir.getPath());
-
-            //get all the regular (non directory) files
-            Set<File> all = new LinkedHashSet<File>(Arrays.asList(dir.listFiles(new FilenameFilter() {
-                public boolean accept(File dir, String name) {
-                    return !new File(dir, name).isDirectory();
+        });
+        try {
+            CompletionService<List<Directory>> scans = 
+                new ExecutorCompletionService<List<Directory>>(executor);
+            List<Directory> scanned = new ArrayList<Directory>(dirs);
+            int pending = 0;
+            for (Directory d : dirs) {
+                scans.submit(d.scanner(m));
+                pending++;
+            }
+            while (pending > 0) {
+                if (m.isCanceled()) {
+                    return;
                 }
-            })));
-
-            //scan all the files looking for spatial ones
-            for (File f : dir.listFiles()) {
-                if (f.isHidden()) {
-                    all.remove(f);
+                Future<List<Directory>> done = scans.poll(SCAN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (done == null) {
                     continue;
                 }
-                if (f.isDirectory()) {
-                    // @hacky - ignore __MACOSX
-                    // this could probably be dealt with in a better way elsewhere
-                    // like by having Directory ignore the contents since they
-                    // are all hidden files anyway
-                    if (!"__MACOSX".equals(f.getName())) {
-                        Directory d = new Directory(f);
-                        d.prepare(m);
-
-                        files.add(d);
-                    }
-                    //q.push(f);
-                    continue;
+                pending--;
+                for (Directory d : get(done)) {
+                    scans.submit(d.scanner(m));
+                    scanned.add(d);
+                    pending++;
                 }
+            }
 
-                //special case for .aux files, they are metadata but get picked up as readable 
-                // by the erdas imagine reader...just ignore them for now 
-                if ("aux".equalsIgnoreCase(FilenameUtils.getExtension(f.getName()))) {
-                    continue;
-                }
+            //the format of a directory depends on that of its sub directories, which are 
+            // scanned after it
+            for (int i = scanned.size() - 1; i >= 0; i--) {
+                Directory d = scanned.get(i);
+                d.format = d.format();
+            }
+            format = format();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted scanning " + file.getPath()).initCause(e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
 
-                //determine if this is a spatial format or not
-                DataFormat format = DataFormat.lookup(f);
+    Callable<List<Directory>> scanner(final ProgressMonitor m) {
+        return new Callable<List<Directory>>() {
+            public List<Directory> call() throws Exception {
+                return scan(m);
+            }
+        };
+    }
 
-                if (format != null) {
-                    SpatialFile sf = new SpatialFile(f);
-                    sf.setFormat(format);
+    List<Directory> get(Future<List<Directory>> f) throws IOException, InterruptedException {
+        try {
+            return f.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw (IOException) new IOException("Error scanning " + file.getPath())
+                .initCause(e.getCause());
+        }
+    }
 
-                    //gather up the related files
-                    sf.prepare(m);
+    /*
+     * gathers the files of this directory, without descending into sub directories, which are
+     * added as unprepared directories and returned
+     */
+    List<Directory> scan(ProgressMonitor m) throws IOException {
+        files = new ArrayList<FileData>();
+        List<Directory> dirs = new ArrayList<Directory>();
+        if (m.isCanceled()) {
+            return dirs;
+        }
+        m.setTask("Scanning " + file.getPath());
 
-                    files.add(sf);
+        //list once, indexing the regular files by base name to find related files 
+        File[] list = file.listFiles();
+        if (list == null) {
+            throw new IOException("Unable to list " + file.getPath());
+        }
 
-                    all.removeAll(sf.allFiles());
+        List<File> entries = new ArrayList<File>(list.length);
+        Set<File> subdirs = new HashSet<File>();
+        Map<String,List<File>> byBaseName = new HashMap<String, List<File>>();
+        for (File f : list) {
+            if (f.isHidden()) {
+                continue;
+            }
+            if (f.isDirectory()) {
+                // @hacky - ignore __MACOSX
+                // this could probably be dealt with in a better way elsewhere
+                // like by having Directory ignore the contents since they
+                // are all hidden files anyway
+                if (!"__MACOSX".equals(f.getName())) {
+                    entries.add(f);
+                    subdirs.add(f);
                 }
+                continue;
+            }
+            entries.add(f);
+
+            String baseName = SpatialFile.relatedBaseName(f);
+            List<File> related = byBaseName.get(baseName);
+            if (related == null) {
+                byBaseName.put(baseName, related = new ArrayList<File>(4));
+            }
+            related.add(f);
+        }
+
+        //scan all the files looking for spatial ones, extensions found not to be grids are only 
+        // remembered for the files of this directory
+        Set<String> notGrids = new HashSet<String>();
+        Set<File> all = new LinkedHashSet<File>(entries);
+        all.removeAll(subdirs);
+        for (File f : entries) {
+            if (m.isCanceled()) {
+                return dirs;
+            }
+            if (subdirs.contains(f)) {
+                Directory d = new Directory(f);
+                files.add(d);
+                dirs.add(d);
+                continue;
+            }
+
+            //special case for .aux files, they are metadata but get picked up as readable 
+            // by the erdas imagine reader...just ignore them for now 
+            if ("aux".equalsIgnoreCase(FilenameUtils.getExtension(f.getName()))) {
+                continue;
             }
 
-            //take any left overs and add them as unspatial/unrecognized
-            for (File f : all) {
-                files.add(new ASpatialFile(f));
+            //determine if this is a spatial format or not
+            DataFormat format = DataFormat.lookup(f, notGrids);
+
+            if (format != null) {
+                SpatialFile sf = new SpatialFile(f);
+                sf.setFormat(format);
+
+                //gather up the related files
+                List<File> related = byBaseName.get(FilenameUtils.getBaseName(f.getName()));
+                sf.prepare(m, related != null ? related : Collections.<File>emptyList());
+
+                files.add(sf);
+
+                all.removeAll(sf.allFiles());
             }
         }
 
+        //take any left overs and add them as unspatial/unrecognized
+        for (File f : all) {
+            files.add(new ASpatialFile(f));
+        }
+
         format = format();
+        return dirs;
+    }
+
 //        //process ignored for files that should be grouped with the spatial files
 //        for (DataFile df : files) {
 //            SpatialFile sf = (SpatialFile) df;
@@ -304,10 +423,23 @@ public class Directory extends FileData {
         return file.getPath();
     }
 
+    /**
+     * Writes a file to the directory, unpacking it if it is an archive.
+     * <p>
+     * Zip and tar archives are extracted while read, so they are never written to disk as is.
+     * Other files are written once, other archives then being unpacked from the written file.
+     * </p>
+     */
     public void accept(String childName, InputStream in) throws IOException {
+        StreamingExtractor extractor = StreamingExtractor.create();
+        if (extractor.canExtract(childName)) {
+            LOGGER.fine("extracting " + childName + " to " + file.getAbsolutePath());
+            extractor.extract(childName, in, file);
+            return;
+        }
+
         File dest = getChild(childName);
-        
-        IOUtils.copy(in, dest);
+        StreamingExtractor.write(in, dest);
 
         try {
             unpack(dest);
@@ -1,9 +1,7 @@
 package org.opengeo.data.importer;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import org.geotools.data.FeatureReader;
@@ -14,11 +12,15 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
 
+import com.google.common.collect.MapMaker;
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * Converts feature between two feature data sources.
  * <p>
+ * Attributes are copied according to a {@link Plan} compiled once for a pair of source and 
+ * target types, mapping the index of each source attribute to the index of the target 
+ * attribute it is copied to.
  * </p>
  * @author Justin Deoliveira, OpenGeo
  *
@@ -39,23 +41,99 @@ public class FeatureDataConverter {
         return typeBuilder.buildFeatureType();
     }
 
+    /**
+     * last plan compiled for each source type, weakly keyed so types of finished imports can be
+     * collected
+     */
+    ConcurrentMap<SimpleFeatureType, Plan> plans = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Copies the attributes of <tt>from</tt> to <tt>to</tt>.
+     * <p>
+     * Callers converting many features should prefer {@link #compile(SimpleFeatureType, 
+     * SimpleFeatureType)} and reuse the plan.
+     * </p>
+     */
     public void convert(SimpleFeature from, SimpleFeature to) {
-        Set<String> fromAttrNames = attributeNames(from);
-        Set<String> toAttrNames = attributeNames(to);
-        Set<String> commonNames = new HashSet<String>(fromAttrNames);
-        commonNames.retainAll(toAttrNames);
-        for (String attrName : commonNames) {
-            to.setAttribute(attrName, from.getAttribute(attrName));
+        plan(from.getFeatureType(), to.getFeatureType()).copy(from, to);
+    }
+
+    /**
+     * Returns the plan for a pair of types, compiling it if the pair has not been seen last for
+     * the source type.
+     */
+    public Plan plan(SimpleFeatureType from, SimpleFeatureType to) {
+        Plan plan = plans.get(from);
+        if (plan == null || !plan.accepts(from, to)) {
+            plan = compile(from, to);
+            plans.put(from, plan);
         }
+        return plan;
     }
 
-    protected Set<String> attributeNames(SimpleFeature feature) {
-        List<AttributeDescriptor> attributeDescriptors = feature.getType().getAttributeDescriptors();
-        Set<String> attrNames = new HashSet<String>(attributeDescriptors.size());
-        for (AttributeDescriptor attr : attributeDescriptors) {
-            attrNames.add(attr.getLocalName());
+    /**
+     * Compiles the plan for copying features of type <tt>from</tt> to features of type 
+     * <tt>to</tt>.
+     */
+    public Plan compile(SimpleFeatureType from, SimpleFeatureType to) {
+        int n = from.getAttributeCount();
+        int[] source = new int[n];
+        int[] target = new int[n];
+
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int j = targetIndex(from.getDescriptor(i), to);
+            if (j > -1) {
+                source[size] = i;
+                target[size++] = j;
+            }
+        }
+        return new Plan(from, to, copyOf(source, size), copyOf(target, size));
+    }
+
+    /**
+     * Determines the index of the attribute of <tt>to</tt> a source attribute maps to, -1 if 
+     * the attribute is not copied.
+     */
+    protected int targetIndex(AttributeDescriptor att, SimpleFeatureType to) {
+        return to.indexOf(att.getLocalName());
+    }
+
+    static int[] copyOf(int[] array, int size) {
+        int[] copy = new int[size];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    /**
+     * Index based mapping from attributes of a source type to attributes of a target type.
+     */
+    public static class Plan {
+
+        final SimpleFeatureType from;
+        final SimpleFeatureType to;
+        final int[] source;
+        final int[] target;
+
+        Plan(SimpleFeatureType from, SimpleFeatureType to, int[] source, int[] target) {
+            this.from = from;
+            this.to = to;
+            this.source = source;
+            this.target = target;
+        }
+
+        /**
+         * Determines if the plan was compiled for the specified types.
+         */
+        public boolean accepts(SimpleFeatureType from, SimpleFeatureType to) {
+            return this.from == from && this.to == to;
+        }
+
+        public void copy(SimpleFeature from, SimpleFeature to) {
+            for (int i = 0; i < source.length; i++) {
+                to.setAttribute(target[i], from.getAttribute(source[i]));
+            }
         }
-        return attrNames;
     }
 
     public static FeatureDataConverter DEFAULT = new FeatureDataConverter();
@@ -103,16 +181,12 @@ public class FeatureDataConverter {
         }
 
         @Override
-        public void convert(SimpleFeature from, SimpleFeature to) {
-            for (AttributeDescriptor att : from.getType().getAttributeDescriptors()) {
-                Object obj = from.getAttribute(att.getLocalName());
-                if (att instanceof GeometryDescriptor) {
-                    to.setDefaultGeometry(obj);
-                }
-                else {
-                    to.setAttribute(attName(att.getLocalName()), obj);
-                }
+        protected int targetIndex(AttributeDescriptor att, SimpleFeatureType to) {
+            if (att instanceof GeometryDescriptor) {
+                GeometryDescriptor gd = to.getGeometryDescriptor();
+                return gd != null ? to.indexOf(gd.getLocalName()) : -1;
             }
+            return to.indexOf(attName(att.getLocalName()));
         }
 
         String attName(String name) {
@@ -121,16 +195,10 @@ public class FeatureDataConverter {
     };
 
     public static final FeatureDataConverter TO_ORACLE = new FeatureDataConverter() {
-        public void convert(SimpleFeature from, SimpleFeature to) {
+        @Override
+        protected int targetIndex(AttributeDescriptor att, SimpleFeatureType to) {
             //for oracle the target names are always uppercase
-            Set<String> fromAttrNames = attributeNames(from);
-            Set<String> toAttrNames = attributeNames(to);
-            for (String name : fromAttrNames) {
-                String toName = name.toUpperCase();
-                if (toAttrNames.contains(toName)) {
-                    to.setAttribute(toName, from.getAttribute(name));
-                }
-            }
-        };
+            return to.indexOf(att.getLocalName().toUpperCase());
+        }
     };
 }
@@ -0,0 +1,349 @@
+package org.opengeo.data.importer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.job.ProgressMonitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Loads features in three stages connected by bounded queues.
+ * <p>
+ * A reader thread pulls chunks of features from the source, a pool of workers transforms them
+ * into features of the target schema and the calling thread hands the results to a
+ * {@link Handler}, which normally writes them to the target store. Since at most
+ * <tt>capacity</tt> chunks are in flight at any time a slow stage throttles the others
+ * rather than causing the source to be buffered in memory.
+ * </p>
+ * <p>
+ * Chunks are handed to the handler in the order they were read when <tt>ordered</tt> is set,
+ * otherwise in the order they were transformed.
+ * </p>
+ */
+public class FeaturePipeline {
+
+    static Logger LOGGER = Logging.getLogger(FeaturePipeline.class);
+
+    /** default number of features per chunk */
+    public static final int CHUNK_SIZE = 100;
+
+    /** interval at which blocked stages check for failure of the others */
+    static final long POLL_MILLIS = 50;
+
+    /**
+     * Final stage of the pipeline, called from the thread running the pipeline.
+     */
+    public static interface Handler {
+        /**
+         * Handles the next transformed feature, <code>null</code> if the transform discarded
+         * the feature.
+         */
+        void handle(SimpleFeature feature) throws Exception;
+    }
+
+    static class Chunk {
+        final long seq;
+        final List<SimpleFeature> features;
+
+        Chunk(long seq, int size) {
+            this.seq = seq;
+            this.features = new ArrayList<SimpleFeature>(size);
+        }
+    }
+
+    int workers;
+    boolean ordered;
+    int chunkSize;
+    int capacity;
+
+    BlockingQueue<Chunk> transformQueue;
+    BlockingQueue<Chunk> writeQueue;
+    Map<Long,Chunk> reorderBuffer;
+
+    //stage state
+    volatile boolean readDone;
+    volatile boolean stopped;
+    volatile long chunksRead;
+    AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    //metrics
+    AtomicLong readBlockedNanos = new AtomicLong();
+    AtomicLong transformIdleNanos = new AtomicLong();
+    AtomicLong writeIdleNanos = new AtomicLong();
+    volatile int maxTransformQueueDepth;
+    volatile int maxWriteQueueDepth;
+
+    /** metrics of the load, may be null */
+    ImportMetrics.Counters metrics;
+
+    public FeaturePipeline(int workers, boolean ordered) {
+        this(workers, ordered, CHUNK_SIZE, 2 * workers + 2);
+    }
+
+    public FeaturePipeline(int workers, boolean ordered, int chunkSize, int capacity) {
+        if (workers < 1 || chunkSize < 1 || capacity < 1) {
+            throw new IllegalArgumentException("workers, chunkSize and capacity must be positive");
+        }
+        this.workers = workers;
+        this.ordered = ordered;
+        this.chunkSize = chunkSize;
+        this.capacity = capacity;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Records the time spent reading features from the source in <tt>metrics</tt>.
+     */
+    public void setMetrics(ImportMetrics.Counters metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the pipeline until the reader is exhausted, the monitor is canceled or one of the
+     * stages fails, in which case the failure is rethrown.
+     *
+     * @param reader The source features.
+     * @param targetType The target schema, features handed to the transformer are created from it.
+     * @param transformer Transformer from which each worker obtains its own copy.
+     * @param handler The final stage.
+     * @param monitor Progress monitor checked for cancellation.
+     */
+    public void run(final FeatureReader reader, SimpleFeatureType targetType,
+        FeatureTransformer transformer, Handler handler, final ProgressMonitor monitor)
+        throws Exception {
+
+        transformQueue = new ArrayBlockingQueue<Chunk>(capacity);
+        writeQueue = new LinkedBlockingQueue<Chunk>();
+        reorderBuffer = new HashMap<Long,Chunk>();
+
+        final Semaphore inFlight = new Semaphore(capacity);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "importer-pipeline");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    read(reader, inFlight, monitor);
+                }
+            });
+            for (int i = 0; i < workers; i++) {
+                final FeatureTransformer tx = transformer.copy();
+                final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(targetType);
+                executor.execute(new Runnable() {
+                    public void run() {
+                        transform(tx, builder);
+                    }
+                });
+            }
+
+            write(handler, inFlight, monitor);
+        }
+        finally {
+            stopped = true;
+            executor.shutdownNow();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.warning("Waiting for pipeline stages to finish");
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    void read(FeatureReader reader, Semaphore inFlight, ProgressMonitor monitor) {
+        try {
+            long seq = 0;
+            boolean more = true;
+            while (more && !stopped) {
+                Chunk chunk = new Chunk(seq, chunkSize);
+                long start = System.nanoTime();
+                while (chunk.features.size() < chunkSize && !stopped && !monitor.isCanceled()
+                    && reader.hasNext()) {
+                    chunk.features.add((SimpleFeature) reader.next());
+                }
+                if (metrics != null) {
+                    metrics.stage(ImportMetrics.Stage.READ).add(
+                        System.nanoTime() - start, chunk.features.size());
+                }
+                more = chunk.features.size() == chunkSize;
+                if (chunk.features.isEmpty()) {
+                    break;
+                }
+
+                start = System.nanoTime();
+                inFlight.acquire();
+                readBlockedNanos.addAndGet(System.nanoTime() - start);
+
+                transformQueue.put(chunk);
+                maxTransformQueueDepth = Math.max(maxTransformQueueDepth, transformQueue.size());
+                chunksRead = ++seq;
+            }
+        }
+        catch (InterruptedException e) {
+            //pipeline shutting down
+        }
+        catch (Exception e) {
+            fail(e);
+        }
+        finally {
+            readDone = true;
+        }
+    }
+
+    void transform(FeatureTransformer tx, SimpleFeatureBuilder builder) {
+        try {
+            while (!stopped) {
+                long start = System.nanoTime();
+                Chunk chunk = transformQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                transformIdleNanos.addAndGet(System.nanoTime() - start);
+
+                if (chunk == null) {
+                    if (readDone && transformQueue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                List<SimpleFeature> features = chunk.features;
+                for (int i = 0; i < features.size(); i++) {
+                    features.set(i, tx.apply(features.get(i), builder.buildFeature(null)));
+                }
+
+                writeQueue.put(chunk);
+                maxWriteQueueDepth = Math.max(maxWriteQueueDepth, writeQueue.size());
+            }
+        }
+        catch (InterruptedException e) {
+            //pipeline shutting down
+        }
+        catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    void write(Handler handler, Semaphore inFlight, ProgressMonitor monitor) throws Exception {
+        long written = 0;
+        while (failure.get() == null && !monitor.isCanceled()) {
+            if (readDone && written == chunksRead) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            Chunk chunk = writeQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            writeIdleNanos.addAndGet(System.nanoTime() - start);
+            if (chunk == null) {
+                continue;
+            }
+
+            if (!ordered) {
+                handle(chunk, handler, inFlight);
+                written++;
+                continue;
+            }
+
+            reorderBuffer.put(chunk.seq, chunk);
+            while ((chunk = reorderBuffer.remove(written)) != null) {
+                handle(chunk, handler, inFlight);
+                written++;
+            }
+        }
+    }
+
+    void handle(Chunk chunk, Handler handler, Semaphore inFlight) throws Exception {
+        for (SimpleFeature feature : chunk.features) {
+            handler.handle(feature);
+        }
+        inFlight.release();
+    }
+
+    void fail(Exception e) {
+        if (failure.compareAndSet(null, e)) {
+            LOGGER.log(Level.FINE, "Pipeline stage failed", e);
+        }
+        stopped = true;
+    }
+
+    /**
+     * Number of chunks waiting to be transformed.
+     */
+    public int getTransformQueueDepth() {
+        return transformQueue != null ? transformQueue.size() : 0;
+    }
+
+    /**
+     * Number of transformed chunks waiting to be written, including those held back to preserve
+     * ordering.
+     */
+    public int getWriteQueueDepth() {
+        //reorder buffer is only touched by the writing thread, size is an estimate
+        return writeQueue != null ? writeQueue.size() + reorderBuffer.size() : 0;
+    }
+
+    public int getMaxTransformQueueDepth() {
+        return maxTransformQueueDepth;
+    }
+
+    public int getMaxWriteQueueDepth() {
+        return maxWriteQueueDepth;
+    }
+
+    /**
+     * Time in milliseconds the reader spent waiting for downstream stages to make room.
+     */
+    public long getReadBlockedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(readBlockedNanos.get());
+    }
+
+    /**
+     * Time in milliseconds the transform workers, summed, spent waiting for input.
+     */
+    public long getTransformIdleTime() {
+        return TimeUnit.NANOSECONDS.toMillis(transformIdleNanos.get());
+    }
+
+    /**
+     * Time in milliseconds the writer spent waiting for input.
+     */
+    public long getWriteIdleTime() {
+        return TimeUnit.NANOSECONDS.toMillis(writeIdleNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "workers=" + workers + ", ordered=" + ordered + ", read blocked=" +
+            getReadBlockedTime() + "ms, transform idle=" + getTransformIdleTime() +
+            "ms, write idle=" + getWriteIdleTime() + "ms, max transform queue=" +
+            maxTransformQueueDepth + ", max write queue=" + maxWriteQueueDepth;
+    }
+}
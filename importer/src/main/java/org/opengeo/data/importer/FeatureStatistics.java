@@ -0,0 +1,321 @@
+package org.opengeo.data.importer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Statistics of the attributes of the features loaded by an import, gathered one feature at a
+ * time so they can be collected while the features are written.
+ * <p>
+ * For each attribute the statistics track the number of null values, the minimum and maximum
+ * of comparable values and an approximate number of distinct values. Numeric attributes also
+ * get an approximate histogram, geometric attributes a count of each geometry type.
+ * </p>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+public class FeatureStatistics implements Serializable {
+
+    /** serialVersionUID */
+    private static final long serialVersionUID = 1L;
+
+    int count;
+    List<AttributeStatistics> attributes = new ArrayList<AttributeStatistics>();
+
+    transient SimpleFeatureType featureType;
+
+    public FeatureStatistics(SimpleFeatureType featureType) {
+        this.featureType = featureType;
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            attributes.add(new AttributeStatistics(att.getLocalName(), att.getType().getBinding()));
+        }
+    }
+
+    /**
+     * Adds a feature, which must be of the type the statistics were created for.
+     */
+    public void add(SimpleFeature feature) {
+        count++;
+        for (int i = 0; i < attributes.size(); i++) {
+            attributes.get(i).add(feature.getAttribute(i));
+        }
+    }
+
+    /**
+     * Number of features added.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public List<AttributeStatistics> getAttributes() {
+        return Collections.unmodifiableList(attributes);
+    }
+
+    public AttributeStatistics getAttribute(String name) {
+        for (AttributeStatistics att : attributes) {
+            if (att.getName().equals(name)) {
+                return att;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Statistics of a single attribute.
+     */
+    public static class AttributeStatistics implements Serializable {
+
+        /** serialVersionUID */
+        private static final long serialVersionUID = 1L;
+
+        String name;
+        Class binding;
+
+        int nulls;
+        Comparable min, max;
+
+        DistinctCounter distinct;
+        Histogram histogram;
+        Map<String,Integer> geometryTypes;
+
+        AttributeStatistics(String name, Class binding) {
+            this.name = name;
+            this.binding = binding;
+
+            if (Geometry.class.isAssignableFrom(binding)) {
+                geometryTypes = new LinkedHashMap<String, Integer>();
+            }
+            else {
+                distinct = new DistinctCounter();
+                if (Number.class.isAssignableFrom(binding)) {
+                    histogram = new Histogram();
+                }
+            }
+        }
+
+        void add(Object value) {
+            if (value == null) {
+                nulls++;
+                return;
+            }
+
+            if (geometryTypes != null) {
+                if (value instanceof Geometry) {
+                    String type = ((Geometry) value).getGeometryType();
+                    Integer n = geometryTypes.get(type);
+                    geometryTypes.put(type, n != null ? n + 1 : 1);
+                }
+                return;
+            }
+
+            if (value instanceof Comparable) {
+                Comparable c = (Comparable) value;
+                try {
+                    if (min == null || c.compareTo(min) < 0) {
+                        min = c;
+                    }
+                    if (max == null || c.compareTo(max) > 0) {
+                        max = c;
+                    }
+                }
+                catch(ClassCastException e) {
+                    //values of mixed types, no meaningful range
+                }
+            }
+
+            distinct.add(value);
+            if (histogram != null && value instanceof Number) {
+                histogram.add(((Number) value).doubleValue());
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class getBinding() {
+            return binding;
+        }
+
+        public int getNulls() {
+            return nulls;
+        }
+
+        public Comparable getMin() {
+            return min;
+        }
+
+        public Comparable getMax() {
+            return max;
+        }
+
+        /**
+         * Approximate number of distinct values, -1 for geometric attributes.
+         */
+        public long getDistinct() {
+            return distinct != null ? distinct.estimate() : -1;
+        }
+
+        /**
+         * Histogram of numeric values, <code>null</code> for other attributes.
+         */
+        public Histogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Number of geometries of each type, <code>null</code> for non geometric attributes.
+         */
+        public Map<String, Integer> getGeometryTypes() {
+            return geometryTypes;
+        }
+    }
+
+    /**
+     * HyperLogLog sketch estimating the number of distinct values with a standard error of about
+     * 3%.
+     */
+    public static class DistinctCounter implements Serializable {
+
+        /** serialVersionUID */
+        private static final long serialVersionUID = 1L;
+
+        static final int P = 10;
+        static final int M = 1 << P;
+        static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+        byte[] registers = new byte[M];
+
+        public void add(Object value) {
+            long x = mix(value.hashCode());
+            int j = (int) (x >>> (64 - P));
+            int rank = Math.min(Long.numberOfLeadingZeros(x << P), 64 - P) + 1;
+            if (rank > registers[j]) {
+                registers[j] = (byte) rank;
+            }
+        }
+
+        public long estimate() {
+            double sum = 0;
+            int zeros = 0;
+            for (byte r : registers) {
+                sum += 1d / (1L << r);
+                if (r == 0) {
+                    zeros++;
+                }
+            }
+
+            double e = ALPHA * M * M / sum;
+            if (e <= 2.5 * M && zeros > 0) {
+                //small range correction
+                e = M * Math.log((double) M / zeros);
+            }
+            return Math.round(e);
+        }
+
+        /*
+         * finalizer of the 64 bit murmur3 hash, spreads the bits of the value hash code
+         */
+        static long mix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+    /**
+     * Streaming histogram keeping at most a fixed number of bins, merging the closest two
+     * when a value falls outside the existing ones. Each bin is represented by the mean of its
+     * values and their count.
+     */
+    public static class Histogram implements Serializable {
+
+        /** serialVersionUID */
+        private static final long serialVersionUID = 1L;
+
+        static final int MAX_BINS = 20;
+
+        double[] values = new double[MAX_BINS + 1];
+        long[] counts = new long[MAX_BINS + 1];
+        int size;
+
+        public void add(double v) {
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+                return;
+            }
+
+            //find the insertion point
+            int i = 0;
+            while (i < size && values[i] < v) {
+                i++;
+            }
+            if (i < size && values[i] == v) {
+                counts[i]++;
+                return;
+            }
+
+            System.arraycopy(values, i, values, i + 1, size - i);
+            System.arraycopy(counts, i, counts, i + 1, size - i);
+            values[i] = v;
+            counts[i] = 1;
+            size++;
+
+            if (size > MAX_BINS) {
+                merge();
+            }
+        }
+
+        void merge() {
+            int k = 0;
+            for (int i = 1; i < size - 1; i++) {
+                if (values[i+1] - values[i] < values[k+1] - values[k]) {
+                    k = i;
+                }
+            }
+
+            long n = counts[k] + counts[k+1];
+            values[k] = (values[k] * counts[k] + values[k+1] * counts[k+1]) / n;
+            counts[k] = n;
+
+            System.arraycopy(values, k + 2, values, k + 1, size - k - 2);
+            System.arraycopy(counts, k + 2, counts, k + 1, size - k - 2);
+            size--;
+        }
+
+        /**
+         * Number of bins.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Mean of the values of the bin.
+         */
+        public double getValue(int bin) {
+            return values[bin];
+        }
+
+        /**
+         * Number of values in the bin.
+         */
+        public long getCount(int bin) {
+            return counts[bin];
+        }
+    }
+}
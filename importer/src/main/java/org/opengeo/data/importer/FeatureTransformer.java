@@ -0,0 +1,118 @@
+package org.opengeo.data.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.geotools.data.DataStore;
+import org.opengeo.data.importer.transform.VectorTransformChain;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Turns a feature read from the source of an indirect import into the feature written to the
+ * target store.
+ * <p>
+ * The transformer copies attributes with the {@link FeatureDataConverter} for the target and
+ * then applies the inline transforms of the item. Transforms are not required to be thread
+ * safe so every thread should obtain its own instance through {@link #copy()}.
+ * </p>
+ */
+public class FeatureTransformer {
+
+    ImportItem item;
+    DataStore dataStore;
+    FeatureDataConverter converter;
+    VectorTransformChain tx;
+
+    /** copy plan of the last pair of types converted */
+    FeatureDataConverter.Plan plan;
+
+    /** metrics of the load, may be null */
+    ImportMetrics.Counters metrics;
+
+    public FeatureTransformer(ImportItem item, DataStore dataStore, FeatureDataConverter converter,
+        VectorTransformChain tx) {
+        this.item = item;
+        this.dataStore = dataStore;
+        this.converter = converter;
+        this.tx = tx;
+    }
+
+    /**
+     * Records the time spent converting and transforming features in <tt>metrics</tt>.
+     */
+    public void setMetrics(ImportMetrics.Counters metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Populates <tt>next</tt>, a feature of the target schema, from <tt>feature</tt>.
+     *
+     * @return the feature to write, or <code>null</code> if a transform discarded it
+     */
+    public SimpleFeature apply(SimpleFeature feature, SimpleFeature next) throws Exception {
+        //readers and writers hand out features of the same type, so the plan is only compiled 
+        // for the first feature
+        SimpleFeatureType from = feature.getFeatureType();
+        SimpleFeatureType to = next.getFeatureType();
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (plan == null || !plan.accepts(from, to)) {
+            plan = converter.compile(from, to);
+        }
+        plan.copy(feature, next);
+
+        // @hack #45678 - mask empty geometry or postgis will complain
+        Geometry geom = (Geometry) next.getDefaultGeometry();
+        if (geom != null && geom.isEmpty()) {
+            next.setDefaultGeometry(null);
+        }
+        if (metrics == null) {
+            //apply the feature transform
+            return tx.inline(item, dataStore, feature, next);
+        }
+
+        long converted = System.nanoTime();
+        metrics.stage(ImportMetrics.Stage.CONVERT).add(converted - start);
+        try {
+            return tx.inline(item, dataStore, feature, next, metrics);
+        }
+        finally {
+            metrics.stage(ImportMetrics.Stage.TRANSFORM).add(System.nanoTime() - converted);
+        }
+    }
+
+    /**
+     * Creates a transformer with its own initialized copy of the transform chain.
+     */
+    public FeatureTransformer copy() throws IOException {
+        VectorTransformChain chain = clone(tx);
+        chain.init();
+
+        FeatureTransformer copy = new FeatureTransformer(item, dataStore, converter, chain);
+        copy.setMetrics(metrics);
+        return copy;
+    }
+
+    static VectorTransformChain clone(VectorTransformChain tx) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(tx);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        try {
+            return (VectorTransformChain) in.readObject();
+        }
+        catch (ClassNotFoundException e) {
+            throw (IOException) new IOException("Unable to copy transform chain").initCause(e);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
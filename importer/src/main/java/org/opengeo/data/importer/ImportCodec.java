@@ -0,0 +1,566 @@
+package org.opengeo.data.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.Info;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.ResolvingProxy;
+import org.geoserver.config.util.XStreamPersister;
+import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.transform.TransformChain;
+
+/**
+ * Reads and writes imports in a compact, versioned binary format.
+ * <p>
+ * An encoded import starts with the format version followed by the import. The import, each of
+ * its tasks and each of their items are written as length prefixed sections. The fields of a
+ * section are read in order, fields appended to a section in a later version are only read when
+ * present, ie while the section has bytes available, and trailing fields unknown to the reader
+ * are skipped, so imports written by older and newer versions of the codec remain readable.
+ * Fields are only ever appended, any other change to the layout requires a new format version.
+ * </p>
+ * <p>
+ * Items may also be written separately from their import, allowing a store to persist each item
+ * as its own record. The import then only records the number of items of each task.
+ * </p>
+ * <p>
+ * Catalog objects that have been saved are written as their id and looked up in the catalog when
+ * read. Objects without a fixed layout, such as the import data, transforms and stores or layers
+ * not yet in the catalog, are written as XStream fragments. Item errors and statistics are
+ * written with java serialization and dropped if they can not be read back.
+ * </p>
+ */
+public class ImportCodec {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    /** current format version */
+    public static final int VERSION = 1;
+
+    /** tags of catalog objects */
+    static final byte NULL = 0;
+    static final byte REF = 1;
+    static final byte XML = 2;
+
+    Catalog catalog;
+    XStreamPersister xp;
+
+    public ImportCodec(Importer importer) {
+        this.catalog = importer.getCatalog();
+        this.xp = importer.createXStreamPersister();
+    }
+
+    public void encode(ImportContext context, OutputStream output) throws IOException {
+        encode(context, output, true);
+    }
+
+    /**
+     * Encodes an import.
+     * 
+     * @param items Whether to write the items of the tasks, when false only their number is 
+     *   written and items are expected to be persisted separately, see {@link #encode(ImportItem, 
+     *   OutputStream)}.
+     */
+    public void encode(ImportContext context, OutputStream output, boolean items) 
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeByte(VERSION);
+        writeContext(context, items, out);
+        out.flush();
+    }
+
+    public ImportContext decode(InputStream input) throws IOException {
+        return decode(input, null);
+    }
+
+    /**
+     * Decodes an import.
+     * 
+     * @param itemLoader Loader set on tasks whose items were written separately.
+     */
+    public ImportContext decode(InputStream input, ImportTask.ItemLoader itemLoader) 
+        throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        readVersion(in);
+        return readContext(section(in), itemLoader);
+    }
+
+    /**
+     * Encodes a single item of an import.
+     */
+    public void encode(ImportItem item, OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeByte(VERSION);
+        writeItem(item, item.getTask(), out);
+        out.flush();
+    }
+
+    /**
+     * Decodes a single item of an import, belonging to the specified task.
+     */
+    public ImportItem decode(ImportTask task, InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        readVersion(in);
+
+        ImportItem item = readItem(task, section(in));
+        item.task = task;
+        return item;
+    }
+
+    void readVersion(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported import format version: " + version);
+        }
+    }
+
+    void writeContext(ImportContext context, boolean items, DataOutputStream out) 
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream s = new DataOutputStream(bytes);
+
+        writeOptionalLong(context.id, s);
+        writeEnum(context.state, s);
+        writeString(context.user, s);
+        writeDate(context.created, s);
+        writeDate(context.updated, s);
+        s.writeBoolean(context.archive);
+        writeInt(context.taskid, s);
+        writeInfo(context.targetWorkspace, s);
+        writeInfo(context.targetStore, s);
+        writeXml(context.data, s);
+
+        writeInt(context.tasks.size(), s);
+        for (ImportTask task : context.tasks) {
+            writeTask(task, items, s);
+        }
+
+        writeSection(bytes, s, out);
+    }
+
+    ImportContext readContext(DataInputStream in, ImportTask.ItemLoader itemLoader) 
+        throws IOException {
+        ImportContext context = new ImportContext();
+        context.id = readOptionalLong(in);
+        context.state = readEnum(ImportContext.State.class, in);
+        context.user = readString(in);
+        context.created = readDate(in);
+        context.updated = readDate(in);
+        context.archive = in.readBoolean();
+        context.taskid = readInt(in);
+        context.targetWorkspace = readInfo(WorkspaceInfo.class, in);
+        context.targetStore = readInfo(StoreInfo.class, in);
+        context.data = readXml(ImportData.class, in);
+
+        int n = readInt(in);
+        context.tasks = new ArrayList<ImportTask>(n);
+        for (int i = 0; i < n; i++) {
+            ImportTask task = readTask(section(in), itemLoader);
+            task.context = context;
+            context.tasks.add(task);
+        }
+        return context;
+    }
+
+    void writeTask(ImportTask task, boolean items, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream s = new DataOutputStream(bytes);
+
+        writeLong(task.id, s);
+        writeEnum(task.state, s);
+        s.writeBoolean(task.direct);
+        writeEnum(task.updateMode, s);
+        writeInt(task.parallelism, s);
+        writeInt(task.commitBatchSize, s);
+        writeInt(task.commitBatchSeconds, s);
+        writeInt(task.transformWorkers, s);
+        s.writeBoolean(task.preserveOrder);
+        s.writeBoolean(task.collectStatistics);
+        writeInt(task.itemid, s);
+        writeInfo(task.store, s);
+        writeXml(task.data, s);
+
+        if (items) {
+            List<ImportItem> list = task.items();
+            writeInt(list.size(), s);
+            for (ImportItem item : list) {
+                writeItem(item, task, s);
+            }
+        }
+        else {
+            //items written separately, just their number
+            writeInt(-1, s);
+            writeInt(task.getItemCount(), s);
+        }
+
+        writeSection(bytes, s, out);
+    }
+
+    ImportTask readTask(DataInputStream in, ImportTask.ItemLoader itemLoader) 
+        throws IOException {
+        ImportTask task = new ImportTask();
+        task.id = readLong(in);
+        task.state = readEnum(ImportTask.State.class, in);
+        task.direct = in.readBoolean();
+        task.updateMode = readEnum(UpdateMode.class, in);
+        task.parallelism = readInt(in);
+        task.commitBatchSize = readInt(in);
+        task.commitBatchSeconds = readInt(in);
+        task.transformWorkers = readInt(in);
+        task.preserveOrder = in.readBoolean();
+        task.collectStatistics = in.readBoolean();
+        task.itemid = readInt(in);
+        task.store = readInfo(StoreInfo.class, in);
+        task.data = readXml(ImportData.class, in);
+
+        int n = readInt(in);
+        if (n < 0) {
+            if (itemLoader == null) {
+                throw new IOException("Items of task " + task.id + " written separately");
+            }
+            task.setItemLoader(itemLoader, readInt(in));
+            return task;
+        }
+
+        task.items = new ArrayList<ImportItem>(n);
+        for (int i = 0; i < n; i++) {
+            ImportItem item = readItem(task, section(in));
+            item.task = task;
+            task.items.add(item);
+        }
+        return task;
+    }
+
+    void writeItem(ImportItem item, ImportTask task, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream s = new DataOutputStream(bytes);
+
+        writeLong(item.id, s);
+        writeEnum(item.state, s);
+        writeString(item.originalName, s);
+        writeInt(item.committedOffset, s);
+        writeEnum(item.updateMode, s);
+        writeLayer(item.layer, task, s);
+        writeXml(item.transform, s);
+        writeSerialized(item.error, s);
+        writeSerialized(item.statistics, s);
+
+        if (item.importMessages != null) {
+            writeInt(item.importMessages.size(), s);
+            for (LogRecord rec : item.importMessages) {
+                writeString(rec.getLevel().getName(), s);
+                writeString(rec.getMessage(), s);
+                writeLong(rec.getMillis(), s);
+            }
+        }
+        else {
+            writeInt(0, s);
+        }
+        s.writeBoolean(item.schemaCreated);
+
+        writeSection(bytes, s, out);
+    }
+
+    ImportItem readItem(ImportTask task, DataInputStream in) throws IOException {
+        ImportItem item = new ImportItem();
+        item.id = readLong(in);
+        item.state = readEnum(ImportItem.State.class, in);
+        item.originalName = readString(in);
+        item.committedOffset = readInt(in);
+        item.updateMode = readEnum(UpdateMode.class, in);
+        item.layer = readLayer(task, in);
+        item.transform = readXml(TransformChain.class, in);
+        item.error = (Exception) readSerialized(in);
+        item.statistics = (FeatureStatistics) readSerialized(in);
+
+        int n = readInt(in);
+        item.importMessages = new ArrayList<LogRecord>(n);
+        for (int i = 0; i < n; i++) {
+            LogRecord rec = new LogRecord(Level.parse(readString(in)), readString(in));
+            rec.setMillis(readLong(in));
+            item.importMessages.add(rec);
+        }
+
+        //appended fields
+        if (in.available() > 0) {
+            item.schemaCreated = in.readBoolean();
+        }
+        return item;
+    }
+
+    /*
+     * layers not yet in the catalog are written along with their resource, since the layer
+     * fragment only references it, noting whether the resource belongs to the store of the task
+     */
+    void writeLayer(LayerInfo layer, ImportTask task, DataOutputStream out) throws IOException {
+        if (layer == null || layer.getId() != null) {
+            writeInfo(layer, out);
+            return;
+        }
+
+        out.writeByte(XML);
+        writeXml(layer, out);
+
+        ResourceInfo resource = layer.getResource();
+        writeInfo(resource, out);
+        out.writeBoolean(resource != null && resource.getStore() != null &&
+            resource.getStore() == task.store);
+    }
+
+    LayerInfo readLayer(ImportTask task, DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        if (tag != XML) {
+            return readInfo(LayerInfo.class, tag, in);
+        }
+
+        LayerInfo layer = readXml(LayerInfo.class, in);
+        ResourceInfo resource = readInfo(ResourceInfo.class, in);
+        boolean taskStore = in.readBoolean();
+        if (layer != null && resource != null) {
+            if (taskStore) {
+                resource.setStore(task.store);
+            }
+            layer.setResource(resource);
+        }
+        return layer;
+    }
+
+    void writeInfo(Info info, DataOutputStream out) throws IOException {
+        if (info == null) {
+            out.writeByte(NULL);
+        }
+        else if (info.getId() != null) {
+            out.writeByte(REF);
+            writeString(info.getId(), out);
+        }
+        else {
+            out.writeByte(XML);
+            writeXml(info, out);
+        }
+    }
+
+    <T extends Info> T readInfo(Class<T> clazz, DataInputStream in) throws IOException {
+        return readInfo(clazz, in.readByte(), in);
+    }
+
+    <T extends Info> T readInfo(Class<T> clazz, byte tag, DataInputStream in)
+        throws IOException {
+        switch(tag) {
+            case REF:
+                return lookup(clazz, readString(in));
+            case XML:
+                return readXml(clazz, in);
+            default:
+                return null;
+        }
+    }
+
+    <T extends Info> T lookup(Class<T> clazz, String id) {
+        Info info = null;
+        if (catalog != null) {
+            if (WorkspaceInfo.class.isAssignableFrom(clazz)) {
+                info = catalog.getWorkspace(id);
+            }
+            else if (StoreInfo.class.isAssignableFrom(clazz)) {
+                info = catalog.getStore(id, StoreInfo.class);
+            }
+            else if (ResourceInfo.class.isAssignableFrom(clazz)) {
+                info = catalog.getResource(id, ResourceInfo.class);
+            }
+            else if (LayerInfo.class.isAssignableFrom(clazz)) {
+                info = catalog.getLayer(id);
+            }
+        }
+
+        //not (or no longer) in the catalog, keep the reference as xstream does
+        return info != null ? clazz.cast(info) : ResolvingProxy.create(id, clazz);
+    }
+
+    void writeXml(Object obj, DataOutputStream out) throws IOException {
+        if (obj == null) {
+            writeBytes(null, out);
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        xp.save(obj, bytes);
+        writeBytes(bytes, out);
+    }
+
+    <T> T readXml(Class<T> clazz, DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? xp.load(new ByteArrayInputStream(bytes), clazz) : null;
+    }
+
+    void writeSerialized(Object obj, DataOutputStream out) throws IOException {
+        if (obj == null) {
+            writeBytes(null, out);
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream oout = new ObjectOutputStream(bytes);
+        oout.writeObject(obj);
+        oout.close();
+        writeBytes(bytes, out);
+    }
+
+    Object readSerialized(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        if (bytes == null) {
+            return null;
+        }
+
+        try {
+            ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return oin.readObject();
+            }
+            finally {
+                oin.close();
+            }
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to read serialized object, ignoring", e);
+            return null;
+        }
+    }
+
+    /*
+     * sections, a length followed by the section contents
+     */
+    void writeSection(ByteArrayOutputStream bytes, DataOutputStream section,
+        DataOutputStream out) throws IOException {
+        section.flush();
+        writeBytes(bytes, out);
+    }
+
+    DataInputStream section(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        if (bytes == null) {
+            throw new IOException("Missing section");
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /*
+     * byte arrays, length plus one followed by the bytes, zero meaning null
+     */
+    void writeBytes(ByteArrayOutputStream bytes, DataOutputStream out) throws IOException {
+        if (bytes == null) {
+            writeInt(0, out);
+            return;
+        }
+        writeInt(bytes.size() + 1, out);
+        bytes.writeTo(out);
+    }
+
+    byte[] readBytes(DataInputStream in) throws IOException {
+        int length = readInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    void writeString(String str, DataOutputStream out) throws IOException {
+        if (str == null) {
+            writeInt(0, out);
+            return;
+        }
+        byte[] bytes = str.getBytes("UTF-8");
+        writeInt(bytes.length + 1, out);
+        out.write(bytes);
+    }
+
+    String readString(DataInputStream in) throws IOException {
+        int length = readInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    void writeEnum(Enum<?> e, DataOutputStream out) throws IOException {
+        writeString(e != null ? e.name() : null, out);
+    }
+
+    <E extends Enum<E>> E readEnum(Class<E> clazz, DataInputStream in) throws IOException {
+        String name = readString(in);
+        return name != null ? Enum.valueOf(clazz, name) : null;
+    }
+
+    void writeDate(Date date, DataOutputStream out) throws IOException {
+        writeOptionalLong(date != null ? date.getTime() : null, out);
+    }
+
+    Date readDate(DataInputStream in) throws IOException {
+        Long time = readOptionalLong(in);
+        return time != null ? new Date(time) : null;
+    }
+
+    void writeOptionalLong(Long l, DataOutputStream out) throws IOException {
+        out.writeBoolean(l != null);
+        if (l != null) {
+            writeLong(l.longValue(), out);
+        }
+    }
+
+    Long readOptionalLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Long.valueOf(readLong(in)) : null;
+    }
+
+    /*
+     * integers, zig zag encoded variable length quantities
+     */
+    void writeInt(int i, DataOutputStream out) throws IOException {
+        writeLong((long) i, out);
+    }
+
+    int readInt(DataInputStream in) throws IOException {
+        return (int) readLong(in);
+    }
+
+    void writeLong(long l, DataOutputStream out) throws IOException {
+        long v = (l << 1) ^ (l >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    long readLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
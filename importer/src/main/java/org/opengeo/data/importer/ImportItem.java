@@ -71,6 +71,42 @@ public class ImportItem implements Serializable {
     transient volatile int totalToProcess;
     
     transient volatile int numberProcessed;
+
+    /**
+     * whether totalToProcess is an estimate rather than an exact count
+     */
+    transient volatile boolean totalEstimated;
+
+    /**
+     * time loading of the item started and the number of features processed at that point, used
+     * to compute the processing rate
+     */
+    transient volatile long progressStartTime;
+    transient volatile int progressStartCount;
+
+    /**
+     * number of source features loaded and committed by a batched indirect import, used to 
+     * resume the load after a failure or cancel
+     */
+    volatile int committedOffset;
+
+    /**
+     * whether the load of the item created the table it writes to, in which case the table can
+     * be dropped or resumed into when the load is interrupted
+     */
+    boolean schemaCreated;
+
+    /**
+     * whether the item changed since last read from or written to a store persisting items 
+     * separately, for the store to only write changed items. Set by the setters of the item, 
+     * changes made to its layer are marked by {@link Importer#changed(ImportItem)}
+     */
+    transient boolean dirty = true;
+
+    /**
+     * statistics of the attributes of the features loaded, when requested by the task
+     */
+    FeatureStatistics statistics;
     
     List<LogRecord> importMessages = new ArrayList<LogRecord>();
 
@@ -90,6 +126,7 @@ public class ImportItem implements Serializable {
 
     public void setId(long id) {
         this.id = id;
+        dirty = true;
     }
 
     public ImportTask getTask() {
@@ -106,6 +143,7 @@ public class ImportItem implements Serializable {
 
     public void setLayer(LayerInfo layer) {
         this.layer = layer;
+        dirty = true;
     }
 
     public State getState() {
@@ -113,7 +151,10 @@ public class ImportItem implements Serializable {
     }
 
     public void setState(State state) {
-        this.state = state;
+        if (state != this.state) {
+            this.state = state;
+            dirty = true;
+        }
     }
 
     public Exception getError() {
@@ -122,6 +163,7 @@ public class ImportItem implements Serializable {
 
     public void setError(Exception error) {
         this.error = error;
+        dirty = true;
     }
 
     public TransformChain getTransform() {
@@ -130,6 +172,7 @@ public class ImportItem implements Serializable {
 
     public void setTransform(TransformChain transform) {
         this.transform = transform;
+        dirty = true;
     }
 
     public Map<Object, Object> getMetadata() {
@@ -140,8 +183,9 @@ public class ImportItem implements Serializable {
     }
     
     public void clearImportMessages() {
-        if (importMessages != null) {
+        if (importMessages != null && !importMessages.isEmpty()) {
             importMessages.clear();
+            dirty = true;
         }
     }
 
@@ -150,6 +194,7 @@ public class ImportItem implements Serializable {
             importMessages = new ArrayList<LogRecord>();
         }
         importMessages.add(new LogRecord(level, msg));
+        dirty = true;
     }
     
     public List<LogRecord> getImportMessages() {
@@ -168,6 +213,7 @@ public class ImportItem implements Serializable {
 
     public void setOriginalName(String originalName) {
         this.originalName = originalName;
+        dirty = true;
     }
     
     public int getNumberProcessed() {
@@ -186,12 +232,88 @@ public class ImportItem implements Serializable {
         this.totalToProcess = totalToProcess;
     }
 
+    public boolean isTotalEstimated() {
+        return totalEstimated;
+    }
+
+    public void setTotalEstimated(boolean totalEstimated) {
+        this.totalEstimated = totalEstimated;
+    }
+
+    /**
+     * Marks the point from which the processing rate is computed.
+     */
+    public void startProgress() {
+        progressStartCount = numberProcessed;
+        progressStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Number of features processed per second since {@link #startProgress()}.
+     */
+    public double getProcessingRate() {
+        long start = progressStartTime;
+        if (start == 0) {
+            return 0;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        return elapsed > 0 ? (numberProcessed - progressStartCount) * 1000d / elapsed : 0;
+    }
+
+    /**
+     * Estimated number of seconds until all features are processed, -1 if unknown.
+     */
+    public long getEstimatedTimeRemaining() {
+        int total = totalToProcess;
+        double rate = getProcessingRate();
+        if (total < 0 || rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, total - numberProcessed) / rate);
+    }
+
+    public int getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public void setCommittedOffset(int committedOffset) {
+        this.committedOffset = committedOffset;
+        dirty = true;
+    }
+
+    public boolean isSchemaCreated() {
+        return schemaCreated;
+    }
+
+    public void setSchemaCreated(boolean schemaCreated) {
+        this.schemaCreated = schemaCreated;
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    public FeatureStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(FeatureStatistics statistics) {
+        this.statistics = statistics;
+        dirty = true;
+    }
+
     public UpdateMode getUpdateMode() {
         return updateMode;
     }
 
     public void setUpdateMode(UpdateMode updateMode) {
         this.updateMode = updateMode;
+        dirty = true;
     }
 
     public UpdateMode updateMode() {
@@ -211,7 +333,8 @@ public class ImportItem implements Serializable {
     }
 
     public boolean readyForImport() {
-        return state == State.READY || state == State.CANCELED;
+        return state == State.READY || state == State.CANCELED || 
+            (state == State.ERROR && committedOffset > 0);
     }
     
     @Override
@@ -0,0 +1,379 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.job.JobQueue;
+
+/**
+ * Timers and counters of the stages of loading items into a target store.
+ * <p>
+ * Each load of an item records its metrics in an {@link ItemMetrics}, added to the totals of
+ * all loads once the load finishes. The metrics of the last {@link #RECENT} loads are kept so
+ * that a slow load can be told apart as bound by reading the source, transforming features or
+ * writing to the target store. The totals are exposed through JMX, see {@link #register()}.
+ * </p>
+ */
+public class ImportMetrics implements ImportMetricsMBean {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    /** name the metrics are registered under with the platform MBean server */
+    public static final String OBJECT_NAME = "org.opengeo.importer:type=ImportMetrics";
+
+    /** number of loads whose metrics are kept */
+    public static final int RECENT = 50;
+
+    public static enum Stage {
+        /** reading features from the source */
+        READ,
+        /** copying attributes to features of the target schema */
+        CONVERT,
+        /** applying the inline transforms */
+        TRANSFORM,
+        /** writing features to the target store */
+        WRITE,
+        /** committing the transaction */
+        COMMIT;
+    }
+
+    /**
+     * Accumulated time and number of calls, safe for concurrent use.
+     */
+    public static class Timer {
+
+        AtomicLong count = new AtomicLong();
+        AtomicLong nanos = new AtomicLong();
+
+        public void add(long nanos) {
+            add(nanos, 1);
+        }
+
+        public void add(long nanos, long count) {
+            this.nanos.addAndGet(nanos);
+            this.count.addAndGet(count);
+        }
+
+        void add(Timer other) {
+            add(other.nanos.get(), other.count.get());
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Time in milliseconds.
+         */
+        public long getTime() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+        }
+    }
+
+    /**
+     * Stage timers and feature counters.
+     */
+    public static class Counters {
+
+        Map<Stage,Timer> stages = new EnumMap<Stage, Timer>(Stage.class);
+        ConcurrentMap<String,Timer> transforms = new ConcurrentHashMap<String, Timer>();
+
+        AtomicLong features = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+
+        public Counters() {
+            //created upfront so that the map is never modified once shared
+            for (Stage s : Stage.values()) {
+                stages.put(s, new Timer());
+            }
+        }
+
+        public Timer stage(Stage stage) {
+            return stages.get(stage);
+        }
+
+        /**
+         * The timer of an inline transform.
+         */
+        public Timer transform(Object transform) {
+            String name = transform.getClass().getSimpleName();
+            Timer timer = transforms.get(name);
+            if (timer == null) {
+                Timer t = transforms.putIfAbsent(name, timer = new Timer());
+                if (t != null) {
+                    timer = t;
+                }
+            }
+            return timer;
+        }
+
+        public Map<String,Timer> getTransforms() {
+            return transforms;
+        }
+
+        public long getFeatures() {
+            return features.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * Size of the source files.
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        void add(Counters other) {
+            for (Stage s : Stage.values()) {
+                stage(s).add(other.stage(s));
+            }
+            for (Map.Entry<String, Timer> e : other.transforms.entrySet()) {
+                Timer timer = transforms.get(e.getKey());
+                if (timer == null) {
+                    Timer t = transforms.putIfAbsent(e.getKey(), timer = new Timer());
+                    if (t != null) {
+                        timer = t;
+                    }
+                }
+                timer.add(e.getValue());
+            }
+            features.addAndGet(other.features.get());
+            skipped.addAndGet(other.skipped.get());
+            bytes.addAndGet(other.bytes.get());
+        }
+    }
+
+    /**
+     * Metrics of a single load of an item.
+     */
+    public static class ItemMetrics extends Counters {
+
+        long contextId;
+        long taskId;
+        long itemId;
+        String name;
+        long started = System.currentTimeMillis();
+        volatile long finished;
+        volatile boolean error;
+
+        ItemMetrics(ImportItem item) {
+            ImportTask task = item.getTask();
+            contextId = task.getContext().getId() != null ? task.getContext().getId() : -1;
+            taskId = task.getId();
+            itemId = item.getId();
+            name = item.getLayer() != null ? item.getLayer().getName() : null;
+        }
+
+        public long getContextId() {
+            return contextId;
+        }
+
+        public long getTaskId() {
+            return taskId;
+        }
+
+        public long getItemId() {
+            return itemId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+
+        /**
+         * Wall clock time of the load in milliseconds, so far if still loading.
+         */
+        public long getElapsed() {
+            return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+        }
+    }
+
+    JobQueue jobs;
+
+    volatile Counters total = new Counters();
+    AtomicLong items = new AtomicLong();
+    AtomicLong errors = new AtomicLong();
+
+    LinkedList<ItemMetrics> recent = new LinkedList<ItemMetrics>();
+
+    ObjectName objectName;
+
+    public ImportMetrics(JobQueue jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Starts recording the metrics of a load of an item.
+     */
+    public ItemMetrics started(ImportItem item) {
+        ItemMetrics metrics = new ItemMetrics(item);
+        ImportData data = item.getTask().getData();
+        if (data instanceof SpatialFile) {
+            for (File f : ((SpatialFile) data).allFiles()) {
+                metrics.bytes.addAndGet(f.length());
+            }
+        }
+        else if (data instanceof FileData) {
+            metrics.bytes.addAndGet(((FileData) data).getFile().length());
+        }
+        return metrics;
+    }
+
+    /**
+     * Adds the metrics of a finished load to the totals.
+     */
+    public void finished(ItemMetrics metrics, boolean error) {
+        metrics.finished = System.currentTimeMillis();
+        metrics.error = error;
+
+        total.add(metrics);
+        items.incrementAndGet();
+        if (error) {
+            errors.incrementAndGet();
+        }
+
+        synchronized (recent) {
+            recent.addFirst(metrics);
+            if (recent.size() > RECENT) {
+                recent.removeLast();
+            }
+        }
+    }
+
+    /**
+     * The metrics of the last loads, most recent first.
+     */
+    public List<ItemMetrics> getRecent() {
+        synchronized (recent) {
+            return new ArrayList<ItemMetrics>(recent);
+        }
+    }
+
+    /**
+     * The totals of all loads since startup or the last reset.
+     */
+    public Counters getTotal() {
+        return total;
+    }
+
+    public long getItems() {
+        return items.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getFeatures() {
+        return total.getFeatures();
+    }
+
+    public long getSkippedFeatures() {
+        return total.getSkipped();
+    }
+
+    public long getBytes() {
+        return total.getBytes();
+    }
+
+    public long getReadTime() {
+        return total.stage(Stage.READ).getTime();
+    }
+
+    public long getConvertTime() {
+        return total.stage(Stage.CONVERT).getTime();
+    }
+
+    public long getTransformTime() {
+        return total.stage(Stage.TRANSFORM).getTime();
+    }
+
+    public long getWriteTime() {
+        return total.stage(Stage.WRITE).getTime();
+    }
+
+    public long getCommitTime() {
+        return total.stage(Stage.COMMIT).getTime();
+    }
+
+    public Map<String, Long> getTransformTimes() {
+        Map<String,Long> times = new HashMap<String, Long>();
+        for (Map.Entry<String, Timer> e : total.getTransforms().entrySet()) {
+            times.put(e.getKey(), e.getValue().getTime());
+        }
+        return times;
+    }
+
+    public int getRunningJobs() {
+        return jobs != null ? jobs.getRunning() : 0;
+    }
+
+    public int getWaitingJobs() {
+        return jobs != null ? jobs.getWaiting() : 0;
+    }
+
+    public void reset() {
+        total = new Counters();
+        items.set(0);
+        errors.set(0);
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, failures are logged.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                //left behind by another importer in the same vm, eg a redeploy
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to register import metrics with JMX", e);
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.FINE, "Unable to unregister import metrics", e);
+        }
+        objectName = null;
+    }
+}
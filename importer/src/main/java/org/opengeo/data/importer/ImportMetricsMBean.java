@@ -0,0 +1,40 @@
+package org.opengeo.data.importer;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ImportMetrics}, times are in milliseconds.
+ */
+public interface ImportMetricsMBean {
+
+    long getItems();
+
+    long getErrors();
+
+    long getFeatures();
+
+    long getSkippedFeatures();
+
+    long getBytes();
+
+    long getReadTime();
+
+    long getConvertTime();
+
+    long getTransformTime();
+
+    long getWriteTime();
+
+    long getCommitTime();
+
+    /**
+     * Time spent in each inline transform, keyed by transform class name.
+     */
+    Map<String,Long> getTransformTimes();
+
+    int getRunningJobs();
+
+    int getWaitingJobs();
+
+    void reset();
+}
@@ -0,0 +1,97 @@
+package org.opengeo.data.importer;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Query against an {@link ImportStore}, selecting imports by state and user and returning a page
+ * of them in a given order.
+ */
+public class ImportQuery {
+
+    public static enum SortBy {
+        /** ascending id */
+        ID,
+        /** most recently updated first */
+        UPDATED;
+    }
+
+    /** states of the imports to select, null meaning any state */
+    Set<ImportContext.State> states;
+
+    /** user of the imports to select, null meaning any user */
+    String user;
+
+    SortBy sortBy = SortBy.ID;
+
+    /** number of selected imports to skip */
+    int offset = 0;
+
+    /** maximum number of imports to return, negative meaning no limit */
+    int limit = -1;
+
+    public ImportQuery() {
+    }
+
+    /**
+     * Query selecting all the imports that are not complete.
+     */
+    public static ImportQuery nonComplete() {
+        ImportQuery q = new ImportQuery();
+        q.setStates(EnumSet.complementOf(EnumSet.of(ImportContext.State.COMPLETE)));
+        return q;
+    }
+
+    public Set<ImportContext.State> getStates() {
+        return states;
+    }
+
+    public void setStates(Set<ImportContext.State> states) {
+        this.states = states;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    public void setSortBy(SortBy sortBy) {
+        this.sortBy = sortBy != null ? sortBy : SortBy.ID;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = Math.max(0, offset);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Determines if an import with the specified state and user is selected by the query.
+     */
+    public boolean matches(ImportContext.State state, String user) {
+        if (states != null && !states.contains(state)) {
+            return false;
+        }
+        if (this.user != null && !this.user.equals(user)) {
+            return false;
+        }
+        return true;
+    }
+}
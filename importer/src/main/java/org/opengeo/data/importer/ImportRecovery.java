@@ -0,0 +1,189 @@
+package org.opengeo.data.importer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geotools.data.DataStore;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Recovers imports interrupted by a shutdown of GeoServer while running.
+ * <p>
+ * Imports are saved as running when a run starts, so those still running in the store when
+ * GeoServer starts were interrupted. When the store is shared with other instances only the
+ * imports whose lease has expired are recovered, the others still being run elsewhere.
+ * </p>
+ * <p>
+ * Depending on the {@link Policy} the items being loaded are either resumed from the last
+ * checkpoint of their batched load, see {@link ImportTask#setCommitBatchSize(int)}, or rolled
+ * back by dropping the partly loaded tables so that the import can be run again from the start.
+ * Items without a checkpoint can not be resumed, so their tables are dropped under either policy
+ * rather than left next to the tables the import creates when run again. Only tables the items
+ * recorded creating are dropped, a table of the same name that an item was interrupted before
+ * creating belongs to someone else.
+ * </p>
+ */
+public class ImportRecovery {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    public static enum Policy {
+        /** runs interrupted imports again, resuming items from their last checkpoint */
+        RESUME,
+        /** drops what interrupted items loaded, leaving the imports ready to be run again */
+        ROLLBACK,
+        /** leaves interrupted imports as they are */
+        NONE;
+    }
+
+    Importer importer;
+    Policy policy;
+
+    public ImportRecovery(Importer importer, Policy policy) {
+        this.importer = importer;
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Recovers the interrupted imports according to the policy.
+     *
+     * @return The imports recovered.
+     */
+    public List<ImportContext> recover() {
+        List<ImportContext> recovered = new ArrayList<ImportContext>();
+        if (policy == Policy.NONE) {
+            return recovered;
+        }
+
+        ImportQuery q = new ImportQuery();
+        q.setStates(EnumSet.of(ImportContext.State.RUNNING));
+
+        List<Long> ids = new ArrayList<Long>();
+        for (Iterator<ImportSummary> it = importer.getStore().summaries(q); it.hasNext(); ) {
+            ids.add(it.next().getId());
+        }
+
+        LeasingImportStore leasing = importer.getLeasingStore();
+        for (Long id : ids) {
+            //still run by another instance
+            if (leasing != null &&
+                !leasing.claim(id, importer.getNodeId(), importer.leaseTime)) {
+                continue;
+            }
+
+            boolean released = false;
+            try {
+                ImportContext context = importer.getContext(id);
+                if (context == null || context.getState() != ImportContext.State.RUNNING) {
+                    continue;
+                }
+
+                LOGGER.info((policy == Policy.RESUME ? "Resuming" : "Rolling back") +
+                    " interrupted import " + id);
+                reset(context);
+                if (policy == Policy.RESUME) {
+                    //released first, the run claims the lease again and releases it when done
+                    if (leasing != null) {
+                        leasing.release(id, importer.getNodeId());
+                        released = true;
+                    }
+                    importer.runAsync(context, ImportFilter.ALL);
+                }
+                recovered.add(context);
+            }
+            catch(Exception e) {
+                LOGGER.log(Level.WARNING, "Unable to recover import " + id, e);
+            }
+            finally {
+                if (leasing != null && !released) {
+                    leasing.release(id, importer.getNodeId());
+                }
+            }
+        }
+        return recovered;
+    }
+
+    /*
+     * makes the interrupted tasks and items ready to run again, rolling back items if the
+     * policy says so
+     */
+    void reset(ImportContext context) {
+        for (ImportTask task : context.getTasks()) {
+            for (ImportItem item : task.getItems()) {
+                if (item.getState() != ImportItem.State.RUNNING) {
+                    continue;
+                }
+                if (policy == Policy.ROLLBACK || item.getCommittedOffset() <= 0) {
+                    rollback(item);
+                }
+                item.setState(ImportItem.State.READY);
+            }
+            if (task.getState() == ImportTask.State.RUNNING) {
+                task.setState(ImportTask.State.READY);
+            }
+        }
+
+        context.setState(ImportContext.State.READY);
+        importer.changed(context);
+    }
+
+    /*
+     * drops the table an interrupted item created, and possibly committed part of its features to
+     */
+    void rollback(ImportItem item) {
+        int offset = item.getCommittedOffset();
+        boolean created = item.isSchemaCreated();
+        item.setCommittedOffset(0);
+        item.setSchemaCreated(false);
+
+        ImportTask task = item.getTask();
+        if (task.isDirect()) {
+            return;
+        }
+        if (item.updateMode() != null) {
+            //features were added to an existing table, they can not be told apart
+            if (offset > 0) {
+                LOGGER.warning("Unable to roll back the " + offset + " features committed by item "
+                    + item.getId() + " of import " + task.getContext().getId() + " into an "
+                    + "existing table");
+            }
+            return;
+        }
+        if (!created) {
+            //interrupted before creating its table, a table of the same name is not its own
+            return;
+        }
+
+        DataStoreInfo store = (DataStoreInfo) task.getStore();
+        String typeName = item.getLayer().getResource().getNativeName();
+        for (FeatureTypeInfo ft : importer.getCatalog().getFeatureTypesByDataStore(store)) {
+            if (typeName.equals(ft.getNativeName())) {
+                //published in the meantime, no longer a partial load
+                return;
+            }
+        }
+
+        try {
+            DataStore dataStore = (DataStore) store.getDataStore(null);
+            if (Arrays.asList(dataStore.getTypeNames()).contains(typeName)) {
+                LOGGER.info("Dropping table " + typeName + " partly loaded by item " + item.getId()
+                    + " of import " + task.getContext().getId());
+                importer.dropSchema(dataStore, typeName);
+            }
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to drop partly loaded table " + typeName, e);
+        }
+    }
+}
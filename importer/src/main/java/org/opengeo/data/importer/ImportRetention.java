@@ -0,0 +1,393 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.catalog.StoreInfo;
+import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.bdb.BDBImportStore;
+
+/**
+ * Purges imports from the store according to retention rules, along with the uploaded data they
+ * staged.
+ * <p>
+ * Each {@link Rule} selects imports by state and expires those last updated longer ago than its
+ * maximum age, or beyond its maximum count, the least recently updated first. Imports being run
+ * are never purged. Only data staged under the upload directory, and the archives of the tasks, is
+ * deleted, data imported from elsewhere on the server is left alone. Nor is the data of direct
+ * imports deleted while the store they added to the catalog exists, since it still serves the
+ * layers of the store. Once imports are purged the store is compacted when it supports it.
+ * </p>
+ * <p>
+ * Purges run periodically once {@link #start()} is called, the outcome of the last one being
+ * available from {@link #getLastReport()}.
+ * </p>
+ */
+public class ImportRetention {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    /** states of finished imports */
+    public static final Set<ImportContext.State> FINISHED =
+        Collections.unmodifiableSet(EnumSet.of(ImportContext.State.COMPLETE,
+            ImportContext.State.CANCELLED));
+
+    /** states of imports not run yet, or left incomplete */
+    public static final Set<ImportContext.State> UNFINISHED =
+        Collections.unmodifiableSet(EnumSet.of(ImportContext.State.PENDING,
+            ImportContext.State.READY, ImportContext.State.INCOMPLETE));
+
+    Importer importer;
+    List<Rule> rules = new CopyOnWriteArrayList<Rule>();
+
+    /** milliseconds between purges */
+    long interval;
+
+    ScheduledExecutorService executor;
+
+    volatile Report lastReport;
+
+    public ImportRetention(Importer importer, Rule... rules) {
+        this.importer = importer;
+        this.rules.addAll(Arrays.asList(rules));
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the milliseconds between purges, taking effect on the next {@link #start()}.
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Starts purging periodically, if an interval is set and a rule expires imports.
+     */
+    public synchronized void start() {
+        if (interval <= 0 || executor != null) {
+            return;
+        }
+
+        boolean enabled = false;
+        for (Rule rule : rules) {
+            enabled |= rule.isEnabled();
+        }
+        if (!enabled) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "importer-retention");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    purge();
+                }
+                catch(RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Error purging imports", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * The outcome of the last purge, or <code>null</code> if none ran yet.
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Purges the imports expired by the rules, and compacts the store.
+     */
+    public synchronized Report purge() {
+        Report report = new Report();
+        long now = System.currentTimeMillis();
+
+        Set<Long> purged = new HashSet<Long>();
+        for (Rule rule : rules) {
+            ImportQuery q = new ImportQuery();
+            q.setStates(rule.getStates());
+            q.setSortBy(ImportQuery.SortBy.UPDATED);
+
+            //walk summaries most recently updated first, so the count is that of newer imports
+            List<Long> expired = new ArrayList<Long>();
+            int count = 0;
+            for (Iterator<ImportSummary> it = importer.getStore().summaries(q); it.hasNext(); ) {
+                ImportSummary summary = it.next();
+                if (rule.isExpired(summary, count++, now)) {
+                    expired.add(summary.getId());
+                }
+            }
+
+            for (Long id : expired) {
+                if (purged.add(id)) {
+                    purge(id, report);
+                }
+            }
+        }
+
+        if (report.getImports() > 0) {
+            BDBImportStore bdb = importer.getStore(BDBImportStore.class);
+            if (bdb != null) {
+                report.storeBytes = bdb.compact();
+            }
+        }
+
+        report.time = System.currentTimeMillis() - now;
+        lastReport = report;
+
+        if (report.getImports() > 0 || report.getSkipped() > 0) {
+            LOGGER.info("Purged " + report.getImports() + " imports in " + report.getTime() +
+                " ms, skipped " + report.getSkipped() + ", reclaimed " + report.getDataBytes() +
+                " bytes of data and " + report.getStoreBytes() + " bytes of store");
+        }
+        return report;
+    }
+
+    void purge(Long id, Report report) {
+        ImportContext context = importer.getContext(id);
+        if (context == null) {
+            return;
+        }
+        if (isActive(context)) {
+            report.skipped++;
+            return;
+        }
+
+        try {
+            report.dataBytes += cleanup(context);
+            importer.delete(context);
+            report.imports++;
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to purge import " + id, e);
+            report.skipped++;
+        }
+    }
+
+    boolean isActive(ImportContext context) {
+        if (context.getState() == ImportContext.State.RUNNING ||
+            !importer.getCurrentlyProcessingItems(context.getId()).isEmpty()) {
+            return true;
+        }
+
+        LeasingImportStore leasing = importer.getLeasingStore();
+        return leasing != null && leasing.getLeaseOwner(context.getId()) != null;
+    }
+
+    /*
+     * deletes the uploaded data and archives of an import, returning the bytes reclaimed
+     */
+    long cleanup(ImportContext context) throws IOException {
+        String uploads = importer.getUploadRoot().getCanonicalPath() + File.separator;
+
+        List<ImportData> data = new ArrayList<ImportData>();
+        if (context.getData() != null) {
+            data.add(context.getData());
+        }
+
+        //data of direct imports backs the stores they added to the catalog, it is kept along
+        // with the directories holding it
+        List<String> kept = new ArrayList<String>();
+
+        long bytes = 0;
+        for (ImportTask task : context.getTasks()) {
+            if (task.getData() == null) {
+                continue;
+            }
+            if (isPublished(task)) {
+                File file = task.getData() instanceof FileData ? 
+                    ((FileData) task.getData()).getFile() : null;
+                if (file != null) {
+                    kept.add(file.getCanonicalPath());
+                }
+            }
+            else {
+                data.add(task.getData());
+            }
+
+            File archive = importer.getArchiveFile(task);
+            if (archive.exists()) {
+                long length = archive.length();
+                if (archive.delete()) {
+                    bytes += length;
+                }
+            }
+        }
+
+        for (ImportData d : data) {
+            if (!(d instanceof FileData)) {
+                continue;
+            }
+
+            File file = ((FileData) d).getFile();
+            if (file == null || !file.exists() ||
+                !file.getCanonicalPath().startsWith(uploads) || holds(file, kept)) {
+                continue;
+            }
+
+            long size = FileUtils.sizeOf(file);
+            d.cleanup();
+            bytes += size - (file.exists() ? FileUtils.sizeOf(file) : 0);
+        }
+        return bytes;
+    }
+
+    /*
+     * whether a task imported its data directly into a store of the catalog
+     */
+    boolean isPublished(ImportTask task) {
+        StoreInfo store = task.getStore();
+        return task.isDirect() && store != null && store.getId() != null &&
+            importer.getCatalog().getStore(store.getId(), StoreInfo.class) != null;
+    }
+
+    /*
+     * whether the file is, or is a directory containing, one of the kept files
+     */
+    static boolean holds(File file, List<String> kept) throws IOException {
+        String path = file.getCanonicalPath();
+        for (String k : kept) {
+            if (k.equals(path) || k.startsWith(path + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rule expiring imports in a set of states by age and by count.
+     */
+    public static class Rule {
+
+        Set<ImportContext.State> states;
+        long maxAge;
+        int maxCount;
+
+        /**
+         * @param states The states of the imports the rule applies to.
+         * @param maxAge Milliseconds after their last update imports expire, zero meaning never.
+         * @param maxCount Number of imports retained, negative meaning no limit.
+         */
+        public Rule(Set<ImportContext.State> states, long maxAge, int maxCount) {
+            this.states = states;
+            this.maxAge = maxAge;
+            this.maxCount = maxCount;
+        }
+
+        public Set<ImportContext.State> getStates() {
+            return states;
+        }
+
+        public long getMaxAge() {
+            return maxAge;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        /**
+         * Whether the rule expires imports at all.
+         */
+        public boolean isEnabled() {
+            return maxAge > 0 || maxCount >= 0;
+        }
+
+        /**
+         * Determines if an import is expired, given the number of more recently updated imports
+         * the rule applies to.
+         */
+        public boolean isExpired(ImportSummary summary, int newer, long now) {
+            if (maxCount >= 0 && newer >= maxCount) {
+                return true;
+            }
+            return maxAge > 0 && summary.getUpdated() != null &&
+                summary.getUpdated().getTime() < now - maxAge;
+        }
+    }
+
+    /**
+     * Outcome of a purge.
+     */
+    public static class Report {
+
+        int imports;
+        int skipped;
+        long dataBytes;
+        long storeBytes;
+        long time;
+
+        /**
+         * Number of imports purged.
+         */
+        public int getImports() {
+            return imports;
+        }
+
+        /**
+         * Number of expired imports not purged, because running or failing to be purged.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Bytes of uploaded data and archives deleted.
+         */
+        public long getDataBytes() {
+            return dataBytes;
+        }
+
+        /**
+         * Bytes reclaimed by compacting the store.
+         */
+        public long getStoreBytes() {
+            return storeBytes;
+        }
+
+        /**
+         * Duration of the purge, in milliseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -26,10 +26,24 @@ public interface ImportStore {
 
     ImportContext get(long id);
 
+    /**
+     * Returns a single item of an import. Stores persisting items separately should not load the
+     * other items of the import.
+     * 
+     * @return The item, or <code>null</code> if the import, task or item does not exist.
+     */
+    ImportItem getItem(long contextId, long taskId, long itemId);
+
     void add(ImportContext context);
 
     void save(ImportContext context);
 
+    /**
+     * Saves a single item of an import previously added to the store, along with the import. 
+     * Stores persisting items separately should only rewrite that item.
+     */
+    void save(ImportItem item);
+
     void remove(ImportContext importContext);
 
     void removeAll();
@@ -42,6 +56,17 @@ public interface ImportStore {
     
     Iterator<ImportContext> importsByUser(String user);
 
+    /**
+     * Returns the page of imports selected by a query, in the order it specifies. Imports skipped
+     * by the query should not have to be loaded.
+     */
+    Iterator<ImportContext> query(ImportQuery query);
+
+    /**
+     * Returns summaries of the page of imports selected by a query, without loading the imports.
+     */
+    Iterator<ImportSummary> summaries(ImportQuery query);
+
     void query(ImportVisitor visitor);
 
     void destroy();
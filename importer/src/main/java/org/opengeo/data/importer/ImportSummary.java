@@ -0,0 +1,114 @@
+package org.opengeo.data.importer;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Summary of an import, the handful of attributes needed to list imports.
+ * <p>
+ * Stores may persist summaries separately from the imports so that listing them does not
+ * require loading the imports. The full import is loaded from the store on first access to
+ * {@link #getContext()} or {@link #getTasks()}.
+ * </p>
+ */
+public class ImportSummary implements Serializable {
+
+    /** serialVersionUID */
+    private static final long serialVersionUID = 1L;
+
+    Long id;
+    ImportContext.State state;
+    String user;
+    Date created;
+    Date updated;
+    int taskCount;
+    int itemCount;
+
+    /** name of the data being imported */
+    String dataName;
+
+    /** store to load the import from, and the import once loaded */
+    transient ImportStore store;
+    transient ImportContext context;
+
+    public ImportSummary(ImportContext context) {
+        this.context = context;
+
+        id = context.getId();
+        state = context.getState();
+        user = context.getUser();
+        created = context.getCreated();
+        updated = context.getUpdated();
+        taskCount = context.getTasks().size();
+        for (ImportTask task : context.getTasks()) {
+            itemCount += task.getItemCount();
+        }
+        dataName = context.getData() != null ? context.getData().getName() : null;
+    }
+
+    public ImportSummary(Long id, ImportContext.State state, String user, Date created,
+        Date updated, int taskCount, int itemCount, String dataName, ImportStore store) {
+        this.id = id;
+        this.state = state;
+        this.user = user;
+        this.created = created;
+        this.updated = updated;
+        this.taskCount = taskCount;
+        this.itemCount = itemCount;
+        this.dataName = dataName;
+        this.store = store;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public ImportContext.State getState() {
+        return state;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public Date getUpdated() {
+        return updated;
+    }
+
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public String getDataName() {
+        return dataName;
+    }
+
+    /**
+     * The import, loaded from the store on first access. Returns <code>null</code> if the import
+     * no longer exists.
+     */
+    public ImportContext getContext() {
+        if (context == null && store != null) {
+            context = store.get(id);
+        }
+        return context;
+    }
+
+    /**
+     * The tasks of the import, loading it if necessary.
+     */
+    public List<ImportTask> getTasks() {
+        ImportContext context = getContext();
+        return context != null ? context.getTasks() : Collections.<ImportTask>emptyList();
+    }
+}
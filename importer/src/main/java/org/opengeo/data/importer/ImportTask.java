@@ -21,6 +21,13 @@ public class ImportTask implements Serializable {
     /** serialVersionUID */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Loads the items of a task that a store persists separately from the task.
+     */
+    public static interface ItemLoader {
+        List<ImportItem> loadItems(ImportTask task);
+    }
+
     public static enum State {
         PENDING, READY, RUNNING, INCOMPLETE, COMPLETE
     }
@@ -67,6 +74,54 @@ public class ImportTask implements Serializable {
     
     UpdateMode updateMode;
 
+    /**
+     * maximum number of items to load concurrently during an indirect import, values less than 
+     * two mean items are loaded one after another
+     */
+    int parallelism;
+
+    /**
+     * number of features after which an indirect import commits, zero meaning the whole item is 
+     * loaded in a single transaction
+     */
+    int commitBatchSize;
+
+    /**
+     * number of seconds after which an indirect import commits, zero meaning no time limit
+     */
+    int commitBatchSeconds;
+
+    /**
+     * number of threads transforming features while an indirect import reads and writes them, 
+     * zero meaning features are read, transformed and written by a single thread
+     */
+    int transformWorkers;
+
+    /**
+     * whether features transformed by multiple threads must be written in the order they are read
+     */
+    boolean preserveOrder;
+
+    /**
+     * whether statistics of the attributes of the features loaded by an indirect import are 
+     * collected
+     */
+    boolean collectStatistics;
+
+    /**
+     * loader of the items when not yet loaded, along with their number and the catalog to 
+     * reattach them to once loaded
+     */
+    transient ItemLoader itemLoader;
+    transient int itemCount;
+    transient Catalog itemCatalog;
+    transient boolean itemLookupByName;
+
+    /**
+     * whether items were removed since last read or written, see {@link #isItemsRemoved()}
+     */
+    transient boolean itemsRemoved;
+
     public ImportTask() {
     }
 
@@ -122,22 +177,114 @@ public class ImportTask implements Serializable {
         this.direct = direct;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getCommitBatchSize() {
+        return commitBatchSize;
+    }
+
+    public void setCommitBatchSize(int commitBatchSize) {
+        this.commitBatchSize = commitBatchSize;
+    }
+
+    public int getCommitBatchSeconds() {
+        return commitBatchSeconds;
+    }
+
+    public void setCommitBatchSeconds(int commitBatchSeconds) {
+        this.commitBatchSeconds = commitBatchSeconds;
+    }
+
+    public int getTransformWorkers() {
+        return transformWorkers;
+    }
+
+    public void setTransformWorkers(int transformWorkers) {
+        this.transformWorkers = transformWorkers;
+    }
+
+    public boolean isPreserveOrder() {
+        return preserveOrder;
+    }
+
+    public void setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+    }
+
+    public boolean isCollectStatistics() {
+        return collectStatistics;
+    }
+
+    public void setCollectStatistics(boolean collectStatistics) {
+        this.collectStatistics = collectStatistics;
+    }
+
+    public boolean isCommitBatched() {
+        return commitBatchSize > 0 || commitBatchSeconds > 0;
+    }
+
     public List<ImportItem> getItems() {
-        return Collections.unmodifiableList(items);
+        return Collections.unmodifiableList(items());
+    }
+
+    /**
+     * Sets the loader of the items of the task, which are loaded on first access.
+     * 
+     * @param count The number of items.
+     */
+    public void setItemLoader(ItemLoader itemLoader, int count) {
+        this.itemLoader = itemLoader;
+        this.itemCount = count;
+        this.items = new ArrayList<ImportItem>();
+    }
+
+    /**
+     * Whether the items of the task have been loaded, always the case unless the task was loaded
+     * by a store persisting items separately.
+     */
+    public boolean isItemsLoaded() {
+        return itemLoader == null;
+    }
+
+    /**
+     * The number of items of the task, without loading them.
+     */
+    public int getItemCount() {
+        return itemLoader != null ? itemCount : items.size();
     }
 
     public void addItem(ImportItem item) {
         item.setId(itemid++);
         item.setTask(this);
-        this.items.add(item);
+        items().add(item);
     }
 
     public void removeItem(ImportItem item) {
-        this.items.remove(item);
+        if (items().remove(item)) {
+            itemsRemoved = true;
+        }
+    }
+
+    /**
+     * Whether items were removed from the task since last read from or written to a store 
+     * persisting items separately.
+     */
+    public boolean isItemsRemoved() {
+        return itemsRemoved;
+    }
+
+    public void setItemsRemoved(boolean itemsRemoved) {
+        this.itemsRemoved = itemsRemoved;
     }
 
     public ImportItem item(long id) {
-        for (ImportItem item : items) {
+        for (ImportItem item : items()) {
             if (id == item.getId()) {
                 return item;
             }
@@ -161,7 +308,7 @@ public class ImportTask implements Serializable {
     
     public void updateState() {
         State newState = State.COMPLETE;
-     O: for (ImportItem item : items) {
+     O: for (ImportItem item : items()) {
            switch(item.getState()) {
                case PENDING:
                case RUNNING:
@@ -187,12 +334,38 @@ public class ImportTask implements Serializable {
     public void reattach(Catalog catalog, boolean lookupByName) {
         store = resolve(store, catalog, lookupByName);
 
+        synchronized (this) {
+            if (itemLoader != null) {
+                //reattach once loaded
+                itemCatalog = catalog;
+                itemLookupByName = lookupByName;
+                return;
+            }
+        }
+
         for (ImportItem item : items) {
             item.setTask(this);
             item.reattach(catalog, lookupByName);
         }
     }
 
+    synchronized List<ImportItem> items() {
+        if (itemLoader != null) {
+            ItemLoader loader = itemLoader;
+            itemLoader = null;
+
+            items = new ArrayList<ImportItem>(loader.loadItems(this));
+            for (ImportItem item : items) {
+                item.setTask(this);
+                if (itemCatalog != null) {
+                    item.reattach(itemCatalog, itemLookupByName);
+                }
+            }
+            itemCatalog = null;
+        }
+        return items;
+    }
+
     public ProgressMonitor progress() {
         return context.progress();
     }
@@ -225,6 +398,12 @@ public class ImportTask implements Serializable {
         return true;
     }
 
+    private Object writeReplace() {
+        //load the items before they are written
+        items();
+        return this;
+    }
+
     private Object readResolve() {
         if (items == null) {
             items = new ArrayList();
@@ -2,9 +2,11 @@ package org.opengeo.data.importer;
 
 import com.google.common.collect.Iterators;
 import com.thoughtworks.xstream.XStream;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -17,7 +19,18 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,10 +63,15 @@ import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.JDBCDataStore;
-import org.geotools.referencing.CRS;
+import org.geotools.jdbc.JDBCDataStoreFactory;
 import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.ImportMetrics.Stage;
+import org.opengeo.data.importer.ImportMetrics.Timer;
 import org.opengeo.data.importer.ImportTask.State;
 import org.opengeo.data.importer.bdb.BDBImportStore;
+import org.opengeo.data.importer.bulk.BulkLoader;
+import org.opengeo.data.importer.bulk.BulkWriter;
+import org.opengeo.data.importer.jdbc.JDBCImportStore;
 import org.opengeo.data.importer.job.Job;
 import org.opengeo.data.importer.job.JobQueue;
 import org.opengeo.data.importer.job.ProgressMonitor;
@@ -91,38 +109,324 @@ public class Importer implements InitializingBean, DisposableBean {
     StyleGenerator styleGen;
 
     /** job queue */
-    JobQueue jobs = new JobQueue();
+    JobQueue jobs;
+
+    /** jobs running imports asynchronously, keyed by context id */
+    ConcurrentHashMap<Long,Long> contextJobs = new ConcurrentHashMap<Long, Long>();
     
-    ConcurrentHashMap<Long,ImportItem> currentlyProcessing = new ConcurrentHashMap<Long, ImportItem>();
+    /** progress of running imports */
+    ProgressRegistry progress = new ProgressRegistry();
+
+    /** timers and counters of item loads */
+    ImportMetrics metrics;
+
+    /** items being loaded, keyed by context id */
+    ConcurrentHashMap<Long,List<ImportItem>> currentlyProcessing = 
+        new ConcurrentHashMap<Long, List<ImportItem>>();
+
+    /** guards unique name lookup and creation of schemas in target stores */
+    final Object schemaLock = new Object();
+
+    /** guards unique name lookup and addition of resources to the catalog */
+    final Object catalogLock = new Object();
+
+    /** identifier of this instance when leasing imports from a shared store */
+    String nodeId;
+
+    /** duration of the leases on running imports, in milliseconds */
+    long leaseTime;
+
+    /** milliseconds between polls for imports queued by any instance */
+    long pollInterval;
+
+    /** renews leases and polls the shared store, created when the store is shared */
+    ScheduledExecutorService leaseTimer;
+
+    /** purges expired imports */
+    ImportRetention retention;
+
+    /** recovers imports interrupted by a shutdown */
+    ImportRecovery recovery;
 
     public Importer(Catalog catalog) {
         this.catalog = catalog;
+        this.nodeId = createNodeId();
+        this.leaseTime = intProperty("org.opengeo.importer.store.leaseTime", 300) * 1000L;
+        this.pollInterval = intProperty("org.opengeo.importer.store.pollInterval", 10) * 1000L;
         this.contextStore = createContextStore();
+        this.jobs = createJobQueue();
+        this.metrics = new ImportMetrics(jobs);
+        this.retention = createRetention();
+        this.recovery = createRecovery();
         this.styleGen = new StyleGenerator(catalog);
+
+        //persist epsg codes looked up so that the epsg database is not scanned again 
+        CRSCache.getDefault().setFile(new File(getImportRoot(), "crs.properties"));
     }
 
     ImportStore createContextStore() {
         //look up system property
         String store = GeoServerExtensions.getProperty("org.opengeo.importer.store");
+        boolean bdb = "bdb".equalsIgnoreCase(store);
+        ImportStore contextStore = createContextStore(store);
+
+        //delay writes to stores serializing imports
+        int writeDelay = intProperty("org.opengeo.importer.store.writeDelay", 
+            bdb ? (int) WriteBehindImportStore.DEFAULT_WRITE_DELAY : 0);
+        if (writeDelay > 0) {
+            contextStore = new WriteBehindImportStore(contextStore, writeDelay);
+        }
+        return contextStore;
+    }
+
+    ImportStore createContextStore(String store) {
         if ("bdb".equalsIgnoreCase(store)) {
             LOGGER.info("Enabling BDB Import Store");
-            return new BDBImportStore(this);
+            BDBImportStore bdbStore = new BDBImportStore(this);
+
+            String binding = GeoServerExtensions.getProperty("org.opengeo.importer.store.binding");
+            if (binding != null) {
+                try {
+                    bdbStore.setBinding(
+                        BDBImportStore.BindingType.valueOf(binding.trim().toUpperCase()));
+                }
+                catch(IllegalArgumentException e) {
+                    LOGGER.warning("Invalid import store binding: " + binding);
+                }
+            }
+            return bdbStore;
+        } else if ("jdbc".equalsIgnoreCase(store)) {
+            LOGGER.info("Enabling JDBC Import Store");
+            JDBCImportStore jdbcStore = new JDBCImportStore(this);
+            jdbcStore.setConnection(
+                GeoServerExtensions.getProperty("org.opengeo.importer.store.jdbc.driver"), 
+                GeoServerExtensions.getProperty("org.opengeo.importer.store.jdbc.url"), 
+                GeoServerExtensions.getProperty("org.opengeo.importer.store.jdbc.user"), 
+                GeoServerExtensions.getProperty("org.opengeo.importer.store.jdbc.password"));
+
+            String binaryType = 
+                GeoServerExtensions.getProperty("org.opengeo.importer.store.jdbc.binaryType");
+            if (binaryType != null) {
+                jdbcStore.setBinaryType(binaryType);
+            }
+            return jdbcStore;
         } else if (store != null) {
             LOGGER.warning("Invalid specification for Import Store");
         }
-        return new MemoryImportStore();
+
+        MemoryImportStore memoryStore = new MemoryImportStore();
+        memoryStore.setMaxCompleted(intProperty("org.opengeo.importer.maxCompletedImports", 
+            MemoryImportStore.DEFAULT_MAX_COMPLETED));
+        memoryStore.setCompletedTimeToLive(
+            intProperty("org.opengeo.importer.completedImportTimeout", 0) * 1000L);
+        return memoryStore;
+    }
+
+    JobQueue createJobQueue() {
+        int maxRunning = intProperty("org.opengeo.importer.maxJobs", JobQueue.DEFAULT_MAX_RUNNING);
+        int maxRunningPerUser = intProperty("org.opengeo.importer.maxJobsPerUser", 
+            Math.max(1, maxRunning / 2));
+        int maxWaiting = 
+            intProperty("org.opengeo.importer.maxQueuedJobs", JobQueue.DEFAULT_MAX_WAITING);
+        return new JobQueue(Math.max(1, maxRunning), maxRunningPerUser, maxWaiting);
+    }
+
+    ImportRetention createRetention() {
+        //imports are only purged by the rules configured, none by default
+        ImportRetention retention = new ImportRetention(this,
+            new ImportRetention.Rule(ImportRetention.FINISHED, 
+                intProperty("org.opengeo.importer.retention.finishedAge", 0) * 1000L,
+                intProperty("org.opengeo.importer.retention.maxFinished", -1)),
+            new ImportRetention.Rule(ImportRetention.UNFINISHED,
+                intProperty("org.opengeo.importer.retention.unfinishedAge", 0) * 1000L, -1));
+        retention.setInterval(
+            intProperty("org.opengeo.importer.retention.interval", 3600) * 1000L);
+        return retention;
+    }
+
+    ImportRecovery createRecovery() {
+        ImportRecovery.Policy policy = ImportRecovery.Policy.RESUME;
+        String value = GeoServerExtensions.getProperty("org.opengeo.importer.recovery");
+        if (value != null) {
+            try {
+                policy = ImportRecovery.Policy.valueOf(value.trim().toUpperCase());
+            }
+            catch(IllegalArgumentException e) {
+                LOGGER.warning("Invalid import recovery policy: " + value);
+            }
+        }
+        return new ImportRecovery(this, policy);
+    }
+
+    String createNodeId() {
+        String nodeId = GeoServerExtensions.getProperty("org.opengeo.importer.node");
+        if (nodeId == null) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            }
+            catch(IOException e) {
+                host = "localhost";
+            }
+            nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+        return nodeId;
+    }
+
+    int intProperty(String name, int def) {
+        String value = GeoServerExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            }
+            catch(NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + name + ": " + value);
+            }
+        }
+        return def;
     }
 
     public ImportStore getStore() {
         return contextStore;
     }
 
+    /**
+     * Identifier of this instance, used as the owner of the leases on imports it runs when the
+     * store is shared with other instances.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * The store as a {@link LeasingImportStore}, or <code>null</code> if the store is not shared.
+     */
+    LeasingImportStore getLeasingStore() {
+        return getStore(LeasingImportStore.class);
+    }
+
+    /**
+     * The store, or the store it wraps, as an instance of the specified class, or 
+     * <code>null</code> if it is not one.
+     */
+    <T> T getStore(Class<T> clazz) {
+        ImportStore store = contextStore;
+        if (store instanceof WriteBehindImportStore) {
+            store = ((WriteBehindImportStore) store).getDelegate();
+        }
+        return clazz.isInstance(store) ? clazz.cast(store) : null;
+    }
+
     public ImportItem getCurrentlyProcessingItem(long contextId) {
-        return currentlyProcessing.get(new Long(contextId));
+        List<ImportItem> items = getCurrentlyProcessingItems(contextId);
+        return items.isEmpty() ? null : items.get(0);
+    }
+
+    public ImportItem getCurrentlyProcessingItem(long contextId, long taskId, long itemId) {
+        for (ImportItem item : getCurrentlyProcessingItems(contextId)) {
+            if (item.getTask().getId() == taskId && item.getId() == itemId) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    public List<ImportItem> getCurrentlyProcessingItems(long contextId) {
+        List<ImportItem> items = currentlyProcessing.get(new Long(contextId));
+        return items != null ? new ArrayList<ImportItem>(items) : Collections.<ImportItem>emptyList();
+    }
+
+    void startProcessing(ImportItem item) {
+        Long contextId = item.getTask().getContext().getId();
+        synchronized (currentlyProcessing) {
+            List<ImportItem> items = currentlyProcessing.get(contextId);
+            if (items == null) {
+                items = new CopyOnWriteArrayList<ImportItem>();
+                currentlyProcessing.put(contextId, items);
+            }
+            items.add(item);
+        }
+        progress.started(item);
+    }
+
+    void finishProcessing(ImportItem item) {
+        Long contextId = item.getTask().getContext().getId();
+        synchronized (currentlyProcessing) {
+            List<ImportItem> items = currentlyProcessing.get(contextId);
+            if (items != null) {
+                items.remove(item);
+                if (items.isEmpty()) {
+                    currentlyProcessing.remove(contextId);
+                }
+            }
+        }
+        progress.finished(item);
     }
 
     public void afterPropertiesSet() throws Exception {
         this.contextStore.init();
+        try {
+            this.recovery.recover();
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to recover interrupted imports", e);
+        }
+        this.retention.start();
+        this.metrics.register();
+
+        if (getLeasingStore() != null && pollInterval > 0) {
+            leaseTimer().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        pollQueued();
+                    }
+                    catch(RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Error polling queued imports", e);
+                    }
+                }
+            }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized ScheduledExecutorService leaseTimer() {
+        if (leaseTimer == null) {
+            leaseTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "importer-leases");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return leaseTimer;
+    }
+
+    /*
+     * starts imports queued by any instance of a shared store while this one has free slots
+     */
+    void pollQueued() {
+        LeasingImportStore leasing = getLeasingStore();
+        while (jobs.getWaiting() == 0 && jobs.getRunning() < jobs.getMaxRunning()) {
+            Long id = leasing.claimNext(nodeId, leaseTime);
+            if (id == null) {
+                return;
+            }
+
+            boolean submitted = false;
+            try {
+                ImportContext context = getContext(id);
+                if (context != null) {
+                    LOGGER.info("Running queued import " + id);
+                    submit(context, ImportFilter.ALL, Job.Priority.BULK, false);
+                    submitted = true;
+                }
+            }
+            finally {
+                if (!submitted) {
+                    leasing.release(id, nodeId);
+                }
+            }
+        }
     }
 
     public Catalog getCatalog() {
@@ -134,6 +438,19 @@ public class Importer implements InitializingBean, DisposableBean {
         return context != null ? reattach(context) : null;
     }
 
+    /**
+     * Loads a single item of an import, without loading the other items of the import if the 
+     * store persists items separately.
+     */
+    public ImportItem getItem(long contextId, long taskId, long itemId) {
+        ImportItem item = contextStore.getItem(contextId, taskId, itemId);
+        if (item != null) {
+            reattach(item.getTask().getContext());
+            item.reattach(catalog);
+        }
+        return item;
+    }
+
     public ImportContext reattach(ImportContext context) {
         //reload store and workspace objects from catalog so they are "attached" with 
         // the proper references to the catalog initialized
@@ -177,6 +494,14 @@ public class Importer implements InitializingBean, DisposableBean {
     public Iterator<ImportContext> getContextsByUser(String user) {
         return contextStore.importsByUser(user);
     }
+
+    public Iterator<ImportContext> getContexts(ImportQuery query) {
+        return contextStore.query(query);
+    }
+
+    public Iterator<ImportSummary> getSummaries(ImportQuery query) {
+        return contextStore.summaries(query);
+    }
     
     public Iterator<ImportContext> getAllContexts() {
         return contextStore.iterator();
@@ -267,12 +592,15 @@ public class Importer implements InitializingBean, DisposableBean {
 
     public Long createContextAsync(final ImportData data, final WorkspaceInfo targetWorkspace, 
         final StoreInfo targetStore) throws IOException {
-        return jobs.submit(new Job<ImportContext>() {
+        Job<ImportContext> job = new Job<ImportContext>() {
             @Override
             protected ImportContext call(ProgressMonitor monitor) throws Exception {
                 return createContext(data, targetWorkspace, targetStore, monitor);
             }
-        });
+        };
+        //contexts are created asynchronously from the ui only
+        job.setPriority(Job.Priority.INTERACTIVE);
+        return jobs.submit(job);
     }
 
     public List<ImportTask> update(ImportContext context, ImportData data) throws IOException {
@@ -560,24 +888,94 @@ public class Importer implements InitializingBean, DisposableBean {
         run(context, filter, null);
     }
     
+    /**
+     * Runs an import.
+     * <p>
+     * When the store is shared with other instances the lease on the import is held for the 
+     * duration of the run.
+     * </p>
+     * @throws IllegalStateException If another instance holds the lease on the import.
+     */
     public void run(ImportContext context, ImportFilter filter, ProgressMonitor monitor) throws IOException {
-        context.setProgress(monitor);
-        context.setState(ImportContext.State.RUNNING);
-        
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Running import " + context.getId());
+        LeasingImportStore leasing = context.getId() != null ? getLeasingStore() : null;
+        if (leasing != null && !leasing.claim(context.getId(), nodeId, leaseTime)) {
+            throw new IllegalStateException("Import " + context.getId() + 
+                " is being run by " + leasing.getLeaseOwner(context.getId()));
         }
-        
-        for (ImportTask task : context.getTasks()) {
-            if (!filter.include(task)) {
-                continue;
-            }
 
-            run(task, filter);
+        ScheduledFuture<?> heartbeat = leasing != null ? renewLease(leasing, context) : null;
+        boolean saved = false;
+        try {
+            context.setProgress(monitor);
+            context.setState(ImportContext.State.RUNNING);
+
+            //saved so that the run can be recovered if interrupted by a shutdown
+            if (context.getId() != null) {
+                contextStore.save(context);
+                progress.started(context);
+            }
+            
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Running import " + context.getId());
+            }
+            
+            for (ImportTask task : context.getTasks()) {
+                if (!filter.include(task)) {
+                    continue;
+                }
+    
+                run(task, filter);
+            }
+    
+            context.updated();
+            contextStore.save(context);
+            saved = true;
+        }
+        finally {
+            if (!saved && context.getId() != null) {
+                //the run failed, the import must not be left running in the store
+                try {
+                    context.updated();
+                    contextStore.save(context);
+                }
+                catch(Exception e) {
+                    LOGGER.log(Level.WARNING, "Unable to save failed import " + context.getId(), e);
+                }
+            }
+            if (context.getId() != null) {
+                progress.finished(context);
+            }
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+            if (leasing != null) {
+                leasing.release(context.getId(), nodeId);
+            }
         }
+    }
 
-        context.updated();
-        contextStore.save(context);
+    /*
+     * renews the lease on a running import, since loads may run longer than the lease without
+     * saving the import, canceling the run if the lease is lost
+     */
+    ScheduledFuture<?> renewLease(final LeasingImportStore leasing, final ImportContext context) {
+        long period = Math.max(1000, leaseTime / 3);
+        return leaseTimer().scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    if (!leasing.claim(context.getId(), nodeId, leaseTime)) {
+                        LOGGER.severe("Lost the lease on import " + context.getId() + 
+                            " to " + leasing.getLeaseOwner(context.getId()) + ", canceling");
+                        context.progress().setCanceled(true);
+                    }
+                }
+                catch(RuntimeException e) {
+                    //the lease may still be renewed before it expires
+                    LOGGER.log(Level.WARNING, "Unable to renew lease on import " + 
+                        context.getId(), e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
     }
 
     void run(ImportTask task) throws IOException {
@@ -590,13 +988,23 @@ public class Importer implements InitializingBean, DisposableBean {
         }
         task.setState(ImportTask.State.RUNNING);
 
-        if (task.isDirect()) {
-            //direct import, simply add configured store and layers to catalog
-            doDirectImport(task, filter);
+        try {
+            if (task.isDirect()) {
+                //direct import, simply add configured store and layers to catalog
+                doDirectImport(task, filter);
+            }
+            else {
+                //indirect import, read data from the source and into the target datastore 
+                doIndirectImport(task, filter);
+            }
         }
-        else {
-            //indirect import, read data from the source and into the target datastore 
-            doIndirectImport(task, filter);
+        catch(IOException e) {
+            failed(task, e);
+            throw e;
+        }
+        catch(RuntimeException e) {
+            failed(task, e);
+            throw e;
         }
 
         //check if the task is complete, ie all items are complete
@@ -625,19 +1033,67 @@ public class Importer implements InitializingBean, DisposableBean {
         }
     }
     
+    /*
+     * records the error of a task that failed outright on the items it left running
+     */
+    void failed(ImportTask task, Exception e) {
+        LOGGER.log(Level.SEVERE, "Error occured during import", e);
+        for (ImportItem item : task.getItems()) {
+            if (item.getState() == ImportItem.State.RUNNING) {
+                item.setError(e);
+                item.setState(ImportItem.State.ERROR);
+            }
+        }
+        task.updateState();
+    }
+
     public File getArchiveFile(ImportTask task) throws IOException {
         String archiveName = "import-" + task.getContext().getId() + "-" + task.getId() + "-" + task.getData().getName() + ".zip";
         File dir = getCatalog().getResourceLoader().findOrCreateDirectory("uploads","archives");
         return new File(dir, archiveName);
     }
+
+    /**
+     * The directory uploaded data is staged in.
+     */
+    public File getUploadRoot() throws IOException {
+        return getCatalog().getResourceLoader().findOrCreateDirectory("uploads");
+    }
     
     public void changed(ImportContext context) {
         context.updated();
         contextStore.save(context);
     }
 
+    /**
+     * Saves the item along with the import header, without the other items of the import when 
+     * the store persists items separately. The import is saved whole only when the state of the
+     * task changes.
+     */
     public void changed(ImportItem item)  {
-        changed(item.getTask());
+        ImportTask task = item.getTask();
+        ImportContext context = task.getContext();
+        boolean ready = prep(item);
+
+        //changes made to the layer of the item do not go through its setters
+        item.setDirty(true);
+
+        //saved first since checking the other items may load them from the store
+        context.updated();
+        contextStore.save(item);
+
+        //the other items of the task only need checking if the item may have made it ready
+        if (!ready) {
+            if (task.getState() != State.INCOMPLETE) {
+                task.setState(State.INCOMPLETE);
+                changed(context);
+            }
+        }
+        else if (task.getState() != State.READY) {
+            //writes the items whose state changed along with the import
+            prep(task);
+            changed(context);
+        }
     }
 
     public void changed(ImportTask task)  {
@@ -646,19 +1102,95 @@ public class Importer implements InitializingBean, DisposableBean {
     }
 
     public Long runAsync(final ImportContext context, final ImportFilter filter) {
-        return jobs.submit(new Job<ImportContext>() {
+        return runAsync(context, filter, Job.Priority.BULK);
+    }
+
+    /**
+     * Runs an import in the background, on behalf of the user of the context.
+     * <p>
+     * With a shared store the whole import is also queued in the store, and any instance with
+     * a free slot starts it, the first to claim it runs it.
+     * </p>
+     * @throws RejectedExecutionException If too many jobs are already waiting to run, the import
+     *   stays queued for the other instances sharing the store.
+     */
+    public Long runAsync(final ImportContext context, final ImportFilter filter, 
+        Job.Priority priority) {
+        //with a shared store another instance with a free slot may take the import over until 
+        // it starts here, only whole imports are handed over
+        boolean queue = context.getId() != null && filter == ImportFilter.ALL && 
+            getLeasingStore() != null;
+        if (queue) {
+            getLeasingStore().queue(context.getId());
+        }
+        return submit(context, filter, priority, queue);
+    }
+
+    Long submit(final ImportContext context, final ImportFilter filter, Job.Priority priority,
+        final boolean queued) {
+        Job<ImportContext> job = new Job<ImportContext>() {
             @Override
             protected ImportContext call(ProgressMonitor monitor) throws Exception {
+                LeasingImportStore leasing = getLeasingStore();
+                if (queued && !leasing.claimQueued(context.getId(), nodeId, leaseTime)) {
+                    LOGGER.info("Import " + context.getId() + " was taken over by " + 
+                        leasing.getLeaseOwner(context.getId()));
+                    return context;
+                }
                 run(context, filter, monitor);
                 return context;
             }
-        });
+        };
+        job.setOwner(context.getUser());
+        job.setPriority(priority);
+
+        Long jobid = jobs.submit(job);
+        if (context.getId() != null) {
+            contextJobs.put(context.getId(), jobid);
+        }
+        return jobid;
     }
 
     public Task<ImportContext> getTask(Long job) {
         return (Task<ImportContext>) jobs.getFuture(job);
     }
 
+    /**
+     * The position of the asynchronous run of a context in the job queue, or -1 if the context 
+     * is not waiting to run.
+     */
+    public int getQueuePosition(ImportContext context) {
+        Long jobid = context.getId() != null ? contextJobs.get(context.getId()) : null;
+        if (jobid == null) {
+            return -1;
+        }
+
+        int pos = jobs.getPosition(jobid);
+        if (pos < 0) {
+            contextJobs.remove(context.getId(), jobid);
+        }
+        return pos;
+    }
+
+    public JobQueue getJobQueue() {
+        return jobs;
+    }
+
+    /**
+     * The progress of running imports, which can be read without loading them from the store.
+     */
+    public ProgressRegistry getProgress() {
+        return progress;
+    }
+
+    public ImportMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ImportRetention getRetention() {
+        return retention;
+    }
+
     /* 
      * an import that involves consuming a data source directly
      */
@@ -726,82 +1258,166 @@ public class Importer implements InitializingBean, DisposableBean {
     /* 
      * an import that involves reading from the datastore and writing into a specified target store
      */
-    void doIndirectImport(ImportTask task, ImportFilter filter) throws IOException {
+    void doIndirectImport(final ImportTask task, ImportFilter filter) throws IOException {
         if (!task.getStore().isEnabled()) {
             task.getStore().setEnabled(true);
         }
-        // @todo This needs to be transactional and probably should be extracted to a class for clarity
+
+        List<ImportItem> items = new ArrayList<ImportItem>();
         for (ImportItem item : task.getItems()) {
-            if (task.progress().isCanceled()){
-                break;
+            if (item.readyForImport() && filter.include(item)) {
+                items.add(item);
             }
-            if (!item.readyForImport()) {
-                continue;
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+        if (!(task.getData().getFormat() instanceof VectorFormat)) {
+            throw new UnsupportedOperationException("Indirect raster import not yet supported");
+        }
+
+        int parallelism = Math.min(items.size(), maxParallelism(task));
+        if (parallelism < 2) {
+            for (ImportItem item : items) {
+                if (task.progress().isCanceled()){
+                    break;
+                }
+                doIndirectImport(item, task);
             }
-            if (!filter.include(item)) {
-                continue;
+            return;
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Loading " + items.size() + " items with " + parallelism + " workers");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "importer-load");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final ImportItem item : items) {
+                futures.add(pool.submit(new Runnable() {
+                    public void run() {
+                        if (!task.progress().isCanceled()) {
+                            doIndirectImport(item, task);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } 
+                catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "Error occured during import", e.getCause());
+                }
             }
+        }
+        catch (InterruptedException e) {
+            //stop the workers at the next feature and let the running items clean up
+            task.progress().setCanceled(true);
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
 
-            item.setState(ImportItem.State.RUNNING);
+    /*
+     * loads a single item of an indirect import, recording any error on the item
+     */
+    void doIndirectImport(ImportItem item, ImportTask task) {
+        item.setState(ImportItem.State.RUNNING);
 
-            //setup transform chain
-            TransformChain tx = item.getTransform();
+        //setup transform chain
+        TransformChain tx = item.getTransform();
 
-            //pre transform
-            if (!doPreTransform(item, task.getData(), tx)) {
-                continue;
-            }
+        //pre transform
+        if (!doPreTransform(item, task.getData(), tx)) {
+            return;
+        }
 
-            boolean canceled = false;
-            DataFormat format = task.getData().getFormat();
-            if (format instanceof VectorFormat) {
-                try {
-                    currentlyProcessing.put(task.getContext().getId(), item);
-                    loadIntoDataStore(item, (DataStoreInfo)task.getStore(), (VectorFormat) format, (VectorTransformChain) tx);
-                    canceled = item.progress().isCanceled();
+        boolean canceled = false;
+        VectorFormat format = (VectorFormat) task.getData().getFormat();
+        ImportMetrics.ItemMetrics itemMetrics = metrics.started(item);
+        try {
+            startProcessing(item);
+            loadIntoDataStore(item, (DataStoreInfo)task.getStore(), format, (VectorTransformChain) tx,
+                itemMetrics);
+            canceled = item.progress().isCanceled();
 
-                    FeatureTypeInfo featureType = (FeatureTypeInfo) item.getLayer().getResource();
-                    featureType.getAttributes().clear();
+            FeatureTypeInfo featureType = (FeatureTypeInfo) item.getLayer().getResource();
+            featureType.getAttributes().clear();
 
-                    //JD: not sure what the rationale is here... ask IS
-                    //if (task.getUpdateMode() == null) {
-                    if (!canceled && item.updateMode() == null) {
-                        addToCatalog(item, task);
-                    }
-                    
-                    // verify that the newly created featuretype's resource
-                    // has bounding boxes computed - this might be required
-                    // for csv or other uploads that have a geometry that is
-                    // the result of a transform. there may be another way...
-                    FeatureTypeInfo resource = getCatalog().getResourceByName(featureType.getQualifiedName(), FeatureTypeInfo.class);
-                    if (resource.getNativeBoundingBox().isEmpty()) {
-                        // force computation
-                        CatalogBuilder cb = new CatalogBuilder(getCatalog());
-                        ReferencedEnvelope nativeBounds = cb.getNativeBounds(resource);
-                        resource.setNativeBoundingBox(nativeBounds);
-                        resource.setLatLonBoundingBox(cb.getLatLonBounds(nativeBounds, resource.getCRS()));
-                        getCatalog().save(resource);
-                    }
-                }
-                catch(Exception e) {
-                    LOGGER.log(Level.SEVERE, "Error occured during import", e);
-                    item.setError(e);
-                    item.setState(ImportItem.State.ERROR);
-                    continue;
-                } finally {
-                    currentlyProcessing.remove(task.getContext().getId());
-                }
+            //JD: not sure what the rationale is here... ask IS
+            //if (task.getUpdateMode() == null) {
+            if (!canceled && item.updateMode() == null) {
+                addToCatalog(item, task);
             }
-            else {
-                throw new UnsupportedOperationException("Indirect raster import not yet supported");
+            
+            // verify that the newly created featuretype's resource
+            // has bounding boxes computed - they are accumulated while loading but a resumed
+            // load only sees part of the features
+            FeatureTypeInfo resource = canceled ? null : 
+                getCatalog().getResourceByName(featureType.getQualifiedName(), FeatureTypeInfo.class);
+            if (resource != null && resource.getNativeBoundingBox().isEmpty()) {
+                // force computation
+                CatalogBuilder cb = new CatalogBuilder(getCatalog());
+                ReferencedEnvelope nativeBounds = cb.getNativeBounds(resource);
+                resource.setNativeBoundingBox(nativeBounds);
+                resource.setLatLonBoundingBox(cb.getLatLonBounds(nativeBounds, resource.getCRS()));
+                getCatalog().save(resource);
             }
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.SEVERE, "Error occured during import", e);
+            item.setError(e);
+            item.setState(ImportItem.State.ERROR);
+            return;
+        } finally {
+            finishProcessing(item);
+            metrics.finished(itemMetrics, item.getState() == ImportItem.State.ERROR);
+        }
 
-            if (!canceled && !doPostTransform(item, task.getData(), tx)) {
-                continue;
-            }
+        if (!canceled && !doPostTransform(item, task.getData(), tx)) {
+            return;
+        }
+
+        item.setState(canceled ? ImportItem.State.CANCELED : ImportItem.State.COMPLETE);
+    }
+
+    /*
+     * number of items of the task that may be loaded at once, bounded by the connection pool of 
+     * the target store when it is a database
+     */
+    int maxParallelism(ImportTask task) throws IOException {
+        int parallelism = task.getParallelism();
+        if (parallelism < 2) {
+            return 1;
+        }
+
+        DataStoreInfo store = (DataStoreInfo) task.getStore();
+        if (store.getDataStore(null) instanceof JDBCDataStore) {
+            //each worker holds a connection for its transaction, leave one for everyone else
+            parallelism = Math.min(parallelism, Math.max(1, maxConnections(store) - 1));
+        }
+        return parallelism;
+    }
 
-            item.setState(canceled ? ImportItem.State.CANCELED : ImportItem.State.COMPLETE);
+    int maxConnections(DataStoreInfo store) {
+        Integer max = null;
+        try {
+            max = (Integer) JDBCDataStoreFactory.MAXCONN.lookUp(store.getConnectionParameters());
+        } 
+        catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to read max connections of " + store.getName(), e);
         }
+        return max != null ? max : (Integer) JDBCDataStoreFactory.MAXCONN.sample;
     }
 
     boolean doPreTransform(ImportItem item, ImportData data, TransformChain tx) {
@@ -831,7 +1447,7 @@ public class Importer implements InitializingBean, DisposableBean {
     }
 
     void loadIntoDataStore(ImportItem item, DataStoreInfo store, VectorFormat format, 
-        VectorTransformChain tx) throws Exception {
+        VectorTransformChain tx, ImportMetrics.Counters metrics) throws Exception {
 
         ImportData data = item.getTask().getData();
         FeatureReader reader = format.read(data, item);
@@ -849,37 +1465,66 @@ public class Importer implements InitializingBean, DisposableBean {
         
         featureType = featureDataConverter.convertType(featureType, format, data, item);
         UpdateMode updateMode = item.updateMode();
-        if (updateMode == null) {
-            //find a unique type name in the target store
-            featureTypeName = findUniqueNativeFeatureTypeName(featureType, store);
-            item.setOriginalName(featureType.getTypeName());
-
-            if (!featureTypeName.equals(featureType.getTypeName())) {
-                //update the metadata
-                item.getLayer().getResource().setName(featureTypeName);
-                item.getLayer().getResource().setNativeName(featureTypeName);
+
+        //a previous batched load may have committed part of the item, in which case resume into
+        // the schema it created, unless it has since gone away
+        boolean resume = false;
+        if (item.getCommittedOffset() > 0 && (updateMode != null || item.isSchemaCreated())) {
+            String targetTypeName = updateMode == null ? 
+                item.getLayer().getResource().getNativeName() : featureTypeName;
+            resume = Arrays.asList(dataStore.getTypeNames()).contains(targetTypeName);
+            if (resume) {
+                featureTypeName = targetTypeName;
+            }
+        }
+        if (!resume) {
+            item.setCommittedOffset(0);
+        }
+
+        if (resume) {
+            //schema already exists and transformed, only need to prepare the feature transforms
+            tx.init();
+        }
+        else if (updateMode == null) {
+            item.setSchemaCreated(false);
+
+            //other items of the task may be creating schemas concurrently
+            synchronized (schemaLock) {
+                //find a unique type name in the target store
+                featureTypeName = findUniqueNativeFeatureTypeName(featureType, store);
+                item.setOriginalName(featureType.getTypeName());
+
+                if (!featureTypeName.equals(featureType.getTypeName())) {
+                    //update the metadata
+                    item.getLayer().getResource().setName(featureTypeName);
+                    item.getLayer().getResource().setNativeName(featureTypeName);
                 
-                //retype
-                SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
-                typeBuilder.setName(featureTypeName);
-                typeBuilder.addAll(featureType.getAttributeDescriptors());
-                featureType = typeBuilder.buildFeatureType();
-            }
-
-            // @todo HACK remove this at some point when timezone issues are fixed
-            // this will force postgis to create timezone w/ timestamp fields
-            if (dataStore instanceof JDBCDataStore) {
-                JDBCDataStore ds = (JDBCDataStore) dataStore;
-                // sniff for postgis (h2 is used in tests and will cause failure if this occurs)
-                if (ds.getSqlTypeNameToClassMappings().containsKey("timestamptz")) {
-                    ds.getSqlTypeToSqlTypeNameOverrides().put(java.sql.Types.TIMESTAMP, "timestamptz");
+                    //retype
+                    SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+                    typeBuilder.setName(featureTypeName);
+                    typeBuilder.addAll(featureType.getAttributeDescriptors());
+                    featureType = typeBuilder.buildFeatureType();
                 }
-            }
 
-            //apply the feature type transform
-            featureType = tx.inline(item, dataStore, featureType);
+                // @todo HACK remove this at some point when timezone issues are fixed
+                // this will force postgis to create timezone w/ timestamp fields
+                if (dataStore instanceof JDBCDataStore) {
+                    JDBCDataStore ds = (JDBCDataStore) dataStore;
+                    // sniff for postgis (h2 is used in tests and will cause failure if this occurs)
+                    if (ds.getSqlTypeNameToClassMappings().containsKey("timestamptz")) {
+                        ds.getSqlTypeToSqlTypeNameOverrides().put(java.sql.Types.TIMESTAMP, "timestamptz");
+                    }
+                }
+
+                //apply the feature type transform
+                featureType = tx.inline(item, dataStore, featureType);
+
+                dataStore.createSchema(featureType);
+                item.setSchemaCreated(true);
+            }
 
-            dataStore.createSchema(featureType);
+            //saved right away, an interrupted load only drops or resumes into tables it created
+            checkpoint(item, 0);
         } else {
             // @todo what to do if featureType transform is present?
             
@@ -891,7 +1536,7 @@ public class Importer implements InitializingBean, DisposableBean {
             
         Transaction transaction = new DefaultTransaction();
         
-        if (updateMode == UpdateMode.REPLACE) {
+        if (updateMode == UpdateMode.REPLACE && !resume) {
             
             FeatureStore fs = (FeatureStore) dataStore.getFeatureSource(featureTypeName);
             fs.setTransaction(transaction);
@@ -907,53 +1552,128 @@ public class Importer implements InitializingBean, DisposableBean {
         
         ProgressMonitor monitor = item.progress();
         
-        // @todo need better way to communicate to client
-        int skipped = 0;
-        int cnt = 0;
         // metrics
         long startTime = System.currentTimeMillis();
         item.clearImportMessages();
         
-        item.setTotalToProcess(format.getFeatureCount(item.getTask().getData(), item));
+        //only count upfront when the format can do so without reading all features
+        if (format.isFeatureCountCheap(data, item)) {
+            item.setTotalToProcess(format.getFeatureCount(data, item));
+            item.setTotalEstimated(false);
+        }
+        else {
+            item.setTotalToProcess(format.estimateFeatureCount(data, item));
+            item.setTotalEstimated(true);
+        }
+
+        //batched commits, only for databases since committing other stores mid write is not safe
+        ImportTask task = item.getTask();
+        boolean batched = task.isCommitBatched() && dataStore instanceof JDBCDataStore;
         
         LOGGER.info("begining import");
         try {
-            writer = dataStore.getFeatureWriterAppend(featureTypeName, transaction);
+            writer = createWriter(dataStore, featureTypeName, transaction);
             
-            while(reader.hasNext()) {
-                if (monitor.isCanceled()){
-                    break;
+            int cnt = 0;
+            if (resume) {
+                //skip over the features committed by the previous load
+                int offset = item.getCommittedOffset();
+                LOGGER.info("resuming import of " + featureTypeName + " after " + offset + " features");
+                while (cnt < offset && reader.hasNext()) {
+                    reader.next();
+                    cnt++;
                 }
-                SimpleFeature feature = (SimpleFeature) reader.next();
-                SimpleFeature next = (SimpleFeature) writer.next();
-
-                //(JD) TODO: some formats will rearrange the geometry type (like shapefile) which
-                // makes the goemetry the first attribute reagardless, so blindly copying over
-                // attributes won't work unless the source type also  has the geometry as the 
-                // first attribute in the schema
-                featureDataConverter.convert(feature, next);
-                
-                // @hack #45678 - mask empty geometry or postgis will complain
-                Geometry geom = (Geometry) next.getDefaultGeometry();
-                if (geom != null && geom.isEmpty()) {
-                    next.setDefaultGeometry(null);
+                item.setNumberProcessed(cnt);
+            }
+
+            item.startProgress();
+
+            ItemWriter itemWriter = new ItemWriter(item, writer, transaction, cnt);
+            itemWriter.metrics = metrics;
+            if (batched) {
+                itemWriter.batch(task.getCommitBatchSize(), task.getCommitBatchSeconds());
+            }
+            if (task.isCollectStatistics() && !resume) {
+                //statistics of a resumed load would miss the features committed before
+                itemWriter.statistics = 
+                    new FeatureStatistics((SimpleFeatureType) writer.getFeatureType());
+            }
+
+            FeatureTransformer transformer = 
+                new FeatureTransformer(item, dataStore, featureDataConverter, tx);
+            transformer.setMetrics(metrics);
+
+            if (task.getTransformWorkers() > 0) {
+                //checkpoints record a count of features read so batched writes must be in order
+                FeaturePipeline pipeline = 
+                    new FeaturePipeline(task.getTransformWorkers(), task.isPreserveOrder() || batched);
+                pipeline.setMetrics(metrics);
+                itemWriter.copy = true;
+
+                item.getMetadata().put(FeaturePipeline.class, pipeline);
+                try {
+                    pipeline.run(reader, (SimpleFeatureType) writer.getFeatureType(), transformer, 
+                        itemWriter, monitor);
                 }
-                
-                //apply the feature transform
-                next = tx.inline(item, dataStore, feature, next);
-                
-                if (next == null) {
-                    skipped++;
-                } else {
-                    writer.write();
+                finally {
+                    item.getMetadata().remove(FeaturePipeline.class);
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("pipeline stats: " + pipeline);
+                    }
                 }
-                item.setNumberProcessed(++cnt);
             }
-            transaction.commit();
-            if (skipped > 0) {
-                item.addImportMessage(Level.WARNING,skipped + " features were skipped.");
+            else {
+                Timer read = metrics.stage(Stage.READ);
+                Timer write = metrics.stage(Stage.WRITE);
+                long start = System.nanoTime();
+                while(reader.hasNext()) {
+                    if (monitor.isCanceled()){
+                        break;
+                    }
+                    SimpleFeature feature = (SimpleFeature) reader.next();
+                    long t = System.nanoTime();
+                    read.add(t - start);
+
+                    SimpleFeature next = (SimpleFeature) writer.next();
+                    write.add(System.nanoTime() - t, 0);
+
+                    itemWriter.handle(transformer.apply(feature, next));
+                    start = System.nanoTime();
+                }
+            }
+
+            if (!monitor.isCanceled()) {
+                itemWriter.commit();
+                item.setCommittedOffset(0);
+            }
+            else if (batched) {
+                //checkpoint what was written so the load resumes from here rather than restarts
+                itemWriter.commit();
+                checkpoint(item, itemWriter.count);
+            }
+            if (item.isTotalEstimated() && !monitor.isCanceled()) {
+                item.setTotalToProcess(item.getNumberProcessed());
+                item.setTotalEstimated(false);
+            }
+            if (updateMode == null && !resume && !monitor.isCanceled()) {
+                //every feature of the new type went through the writer, no need to scan it again
+                updateBounds(item, itemWriter.bounds, writer.getFeatureType());
+            }
+            if (!resume && !monitor.isCanceled()) {
+                item.setStatistics(itemWriter.statistics);
+            }
+            if (itemWriter.skipped > 0) {
+                item.addImportMessage(Level.WARNING,itemWriter.skipped + " features were skipped.");
             }
             LOGGER.info("load to target took " + (System.currentTimeMillis() - startTime));
+            if (LOGGER.isLoggable(Level.FINE)) {
+                StringBuilder sb = new StringBuilder("stage times of " + featureTypeName + ":");
+                for (Stage s : Stage.values()) {
+                    sb.append(" ").append(s.name().toLowerCase()).append("=")
+                        .append(metrics.stage(s).getTime()).append("ms");
+                }
+                LOGGER.fine(sb.toString());
+            }
         } 
         catch (Exception e) {
             error = e;
@@ -971,11 +1691,18 @@ public class Importer implements InitializingBean, DisposableBean {
                 LOGGER.log(Level.WARNING, "Error rolling back transaction",e1);
             }
 
-            //attempt to drop the type that was created as well
-            try {
-                dropSchema(dataStore,featureTypeName);
-            } catch(Exception e1) {
-                LOGGER.log(Level.WARNING, "Error dropping schema in rollback",e1);
+            if (item.getCommittedOffset() > 0) {
+                //keep what has been committed so the load can be resumed from the checkpoint
+                LOGGER.info("keeping " + item.getCommittedOffset() + " features committed to " 
+                    + featureTypeName);
+            }
+            else {
+                //attempt to drop the type that was created as well
+                try {
+                    dropSchema(dataStore,featureTypeName);
+                } catch(Exception e1) {
+                    LOGGER.log(Level.WARNING, "Error dropping schema in rollback",e1);
+                }
             }
         }
 
@@ -1025,6 +1752,166 @@ public class Importer implements InitializingBean, DisposableBean {
         }
     }
 
+    /*
+     * final stage of loading an item, writes transformed features and commits in batches if 
+     * requested
+     */
+    class ItemWriter implements FeaturePipeline.Handler {
+
+        ImportItem item;
+        FeatureWriter writer;
+        Transaction transaction;
+
+        /* whether features must be copied into the writer, rather than populated by it */
+        boolean copy;
+        
+        int count;
+        int skipped;
+
+        /* envelope of the geometries written */
+        Envelope bounds = new Envelope();
+
+        /* statistics of the features written, null when not collected */
+        FeatureStatistics statistics;
+
+        /* metrics of the load */
+        ImportMetrics.Counters metrics = new ImportMetrics.Counters();
+
+        boolean batched;
+        int batchSize = Integer.MAX_VALUE;
+        long batchMillis = Long.MAX_VALUE;
+        long lastCommit;
+
+        /* last time the progress of the load was recorded */
+        long lastProgress;
+
+        ItemWriter(ImportItem item, FeatureWriter writer, Transaction transaction, int count) {
+            this.item = item;
+            this.writer = writer;
+            this.transaction = transaction;
+            this.count = count;
+            this.lastProgress = System.currentTimeMillis();
+        }
+
+        void batch(int size, int seconds) {
+            batched = true;
+            if (size > 0) {
+                batchSize = size;
+            }
+            if (seconds > 0) {
+                batchMillis = seconds * 1000L;
+            }
+            lastCommit = System.currentTimeMillis();
+        }
+
+        public void handle(SimpleFeature feature) throws Exception {
+            if (feature == null) {
+                skipped++;
+                metrics.skipped.incrementAndGet();
+            } else {
+                long start = System.nanoTime();
+                if (copy) {
+                    SimpleFeature next = (SimpleFeature) writer.next();
+                    next.setAttributes(feature.getAttributes());
+                }
+                writer.write();
+                metrics.stage(Stage.WRITE).add(System.nanoTime() - start);
+                metrics.features.incrementAndGet();
+
+                Geometry g = (Geometry) feature.getDefaultGeometry();
+                if (g != null) {
+                    bounds.expandToInclude(g.getEnvelopeInternal());
+                }
+                if (statistics != null) {
+                    statistics.add(feature);
+                }
+            }
+            item.setNumberProcessed(++count);
+
+            long now = System.currentTimeMillis();
+            if (batched) {
+                if (count - item.getCommittedOffset() >= batchSize || now - lastCommit >= batchMillis) {
+                    commit();
+                    checkpoint(item, count);
+                    lastCommit = now;
+                    lastProgress = now;
+                }
+            }
+            if (now - lastProgress >= ProgressRegistry.PROGRESS_INTERVAL) {
+                progress.progressed(item);
+                lastProgress = now;
+            }
+        }
+
+        void commit() throws IOException {
+            long start = System.nanoTime();
+            if (writer instanceof BulkWriter) {
+                ((BulkWriter)writer).flush();
+            }
+            transaction.commit();
+            metrics.stage(Stage.COMMIT).add(System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * sets the native and lat/lon bounds of the item resource from the envelope of the features 
+     * written
+     */
+    void updateBounds(ImportItem item, Envelope bounds, FeatureType featureType) {
+        if (bounds.isNull()) {
+            return;
+        }
+
+        ResourceInfo resource = item.getLayer().getResource();
+        CoordinateReferenceSystem crs = featureType.getCoordinateReferenceSystem();
+        if (crs == null) {
+            crs = resource.getNativeCRS();
+        }
+
+        ReferencedEnvelope nativeBounds = new ReferencedEnvelope(bounds, crs);
+        resource.setNativeBoundingBox(nativeBounds);
+        try {
+            CatalogBuilder cb = new CatalogBuilder(getCatalog());
+            resource.setLatLonBoundingBox(cb.getLatLonBounds(nativeBounds, resource.getCRS()));
+        } 
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to compute lat/lon bounds of " + resource.getName(), e);
+        }
+    }
+
+    /*
+     * opens a writer appending to the target type, using a bulk loader when one can load into
+     * the store
+     */
+    FeatureWriter createWriter(DataStore dataStore, String typeName, Transaction tx) 
+        throws IOException {
+        if (dataStore instanceof JDBCDataStore) {
+            BulkLoader loader = BulkLoader.lookup((JDBCDataStore) dataStore, typeName);
+            if (loader != null) {
+                LOGGER.fine("loading " + typeName + " with " + loader.getClass().getSimpleName());
+                return loader.createWriter((JDBCDataStore) dataStore, typeName, tx);
+            }
+        }
+        return dataStore.getFeatureWriterAppend(typeName, tx);
+    }
+
+    /*
+     * records the number of features committed for the item and persists it so that the load can 
+     * be resumed from that point
+     */
+    void checkpoint(ImportItem item, int offset) {
+        item.setCommittedOffset(offset);
+        try {
+            //written immediately, the load is resumed from it
+            contextStore.save(item);
+        }
+        catch(Exception e) {
+            //not fatal, the next checkpoint will try again
+            LOGGER.log(Level.WARNING, "Unable to save checkpoint for item " + item.getId(), e);
+        }
+        progress.progressed(item);
+    }
+
     StoreInfo lookupDefaultStore() {
         WorkspaceInfo ws = catalog.getDefaultWorkspace();
         if (ws == null) {
@@ -1039,24 +1926,26 @@ public class Importer implements InitializingBean, DisposableBean {
         ResourceInfo resource = layer.getResource();
         resource.setStore(task.getStore());
 
-        //add the resource
-        String name = findUniqueResourceName(resource);
-        resource.setName(name); 
-
-        //JD: not setting a native name, it should actually already be set by this point and we 
-        // don't want to blindly set it to the same name as the resource name, which might have 
-        // changed to deal with name clashes
-        //resource.setNativeName(name);
-        resource.setEnabled(true);
-        catalog.add(resource);
+        synchronized (catalogLock) {
+            //add the resource
+            String name = findUniqueResourceName(resource);
+            resource.setName(name); 
+
+            //JD: not setting a native name, it should actually already be set by this point and we 
+            // don't want to blindly set it to the same name as the resource name, which might have 
+            // changed to deal with name clashes
+            //resource.setNativeName(name);
+            resource.setEnabled(true);
+            catalog.add(resource);
+
+            //add the layer (and style)
+            if (layer.getDefaultStyle().getId() == null) {
+                catalog.add(layer.getDefaultStyle());
+            }
 
-        //add the layer (and style)
-        if (layer.getDefaultStyle().getId() == null) {
-            catalog.add(layer.getDefaultStyle());
+            layer.setEnabled(true);
+            catalog.add(layer);
         }
-
-        layer.setEnabled(true);
-        catalog.add(layer);
     }
 
     String findUniqueStoreName(StoreInfo store) {
@@ -1136,10 +2025,11 @@ public class Importer implements InitializingBean, DisposableBean {
     boolean computeLatLonBoundingBox(ImportItem item, boolean force) throws Exception {
         ResourceInfo r = item.getLayer().getResource();
         if (force || r.getLatLonBoundingBox() == null && r.getNativeBoundingBox() != null) {
-            CoordinateReferenceSystem nativeCRS = CRS.decode(r.getSRS());
+            CRSCache crsCache = CRSCache.getDefault();
+            CoordinateReferenceSystem nativeCRS = crsCache.decode(r.getSRS());
             ReferencedEnvelope nativeBbox = 
                 new ReferencedEnvelope(r.getNativeBoundingBox(), nativeCRS);
-            r.setLatLonBoundingBox(nativeBbox.transform(CRS.decode("EPSG:4326"), true));
+            r.setLatLonBoundingBox(nativeBbox.transform(crsCache.decode("EPSG:4326"), true));
             return true;
         }
         return false;
@@ -1155,6 +2045,14 @@ public class Importer implements InitializingBean, DisposableBean {
     }
 
     public void destroy() throws Exception {
+        synchronized (this) {
+            if (leaseTimer != null) {
+                leaseTimer.shutdownNow();
+                leaseTimer = null;
+            }
+        }
+        retention.stop();
+        metrics.unregister();
         jobs.shutdown();
         contextStore.destroy();
     }
@@ -1171,7 +2069,7 @@ public class Importer implements InitializingBean, DisposableBean {
         contextStore.remove(importContext);
     }
 
-    private void dropSchema(DataStore ds, String featureTypeName) throws Exception {
+    void dropSchema(DataStore ds, String featureTypeName) throws Exception {
         // @todo this needs implementation in geotools
         SimpleFeatureType schema = ds.getSchema(featureTypeName);
         if (schema != null) {
@@ -0,0 +1,63 @@
+package org.opengeo.data.importer;
+
+/**
+ * Import store shared by several GeoServer instances, that grants leases on imports so that only
+ * one instance works on an import at a time.
+ * <p>
+ * A lease is held by an owner, identifying the instance, until released or until it expires.
+ * Saving an import whose lease is held through the store extends the lease, so an instance that
+ * stops without releasing its leases only blocks the imports until they expire. Imports leased by
+ * another owner can not be saved.
+ * </p>
+ * <p>
+ * Imports can also be queued, for any of the instances to claim and run as they have capacity.
+ * </p>
+ */
+public interface LeasingImportStore extends ImportStore {
+
+    /**
+     * Claims the lease on an import, or extends it if already held by the owner.
+     *
+     * @param id The import id.
+     * @param owner The instance claiming the lease.
+     * @param lease The duration of the lease, in milliseconds.
+     *
+     * @return <code>true</code> if the lease was granted, <code>false</code> if the import does
+     *   not exist or another owner holds an unexpired lease on it.
+     */
+    boolean claim(long id, String owner, long lease);
+
+    /**
+     * Queues an import to be run by whichever instance claims it first, see 
+     * {@link #claimQueued(long, String, long)} and {@link #claimNext(String, long)}.
+     */
+    void queue(long id);
+
+    /**
+     * Claims the lease on an import if it is still queued, taking it off the queue.
+     *
+     * @return <code>true</code> if the lease was granted, <code>false</code> if the import is no
+     *   longer queued, having been claimed by another owner in the meantime, or is leased by
+     *   another owner.
+     */
+    boolean claimQueued(long id, String owner, long lease);
+
+    /**
+     * Claims the lease on the import queued the longest that is not leased, or whose lease has
+     * expired, taking it off the queue.
+     *
+     * @return The id of the claimed import, or <code>null</code> if there is none to claim.
+     */
+    Long claimNext(String owner, long lease);
+
+    /**
+     * Releases the lease on an import, if held by the owner.
+     */
+    void release(long id, String owner);
+
+    /**
+     * The owner of the unexpired lease on an import, or <code>null</code> if the import is not
+     * leased.
+     */
+    String getLeaseOwner(long id);
+}
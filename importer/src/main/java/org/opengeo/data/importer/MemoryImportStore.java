@@ -3,28 +3,88 @@ package org.opengeo.data.importer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.collect.Iterators;
+
+/**
+ * Import store keeping imports in memory.
+ * <p>
+ * Imports are kept in a map keyed by id, along with indexes by state, user and update time that
+ * are maintained as imports are added, saved and removed. Lookups by id, by user, of non
+ * complete imports and iteration by update time do not scan the whole store.
+ * </p>
+ * <p>
+ * Completed imports are only retained up to a limit, see {@link #setMaxCompleted(int)} and
+ * {@link #setCompletedTimeToLive(long)}, the least recently updated being discarded first.
+ * </p>
+ */
 public class MemoryImportStore implements ImportStore {
 
+    /** default number of completed imports retained */
+    public static final int DEFAULT_MAX_COMPLETED = 100;
+
     AtomicLong idseq = new AtomicLong();
 
-    Queue<ImportContext> imports = new ConcurrentLinkedQueue<ImportContext>();
+    /** imports by id */
+    ConcurrentSkipListMap<Long,ImportContext> imports =
+        new ConcurrentSkipListMap<Long, ImportContext>();
+
+    /**
+     * secondary indexes, readers access them freely while writers update them holding the store
+     * lock
+     */
+    ConcurrentHashMap<ImportContext.State,Set<Long>> byState =
+        new ConcurrentHashMap<ImportContext.State, Set<Long>>();
+    ConcurrentHashMap<String,Set<Long>> byUser = new ConcurrentHashMap<String, Set<Long>>();
+    ConcurrentSkipListMap<IndexKey,ImportContext> byUpdated =
+        new ConcurrentSkipListMap<IndexKey, ImportContext>();
+
+    /** keys each import is indexed under as of its last add or save, by id */
+    ConcurrentSkipListMap<Long,IndexKey> keys = new ConcurrentSkipListMap<Long, IndexKey>();
+
+    /** maximum number of completed imports retained, negative meaning no limit */
+    int maxCompleted = DEFAULT_MAX_COMPLETED;
+
+    /** milliseconds a completed import is retained after its last update, zero meaning forever */
+    long completedTimeToLive = 0;
 
     @Override
     public void init() {
     }
 
+    public int getMaxCompleted() {
+        return maxCompleted;
+    }
+
+    public void setMaxCompleted(int maxCompleted) {
+        this.maxCompleted = maxCompleted;
+    }
+
+    public long getCompletedTimeToLive() {
+        return completedTimeToLive;
+    }
+
+    public void setCompletedTimeToLive(long completedTimeToLive) {
+        this.completedTimeToLive = completedTimeToLive;
+    }
+
     @Override
     public ImportContext get(long id) {
-        for (ImportContext context : imports) {
-            if (context.getId() == id) {
-                return context;
-            }
-        }
-        return null;
+        return imports.get(id);
+    }
+
+    @Override
+    public ImportItem getItem(long contextId, long taskId, long itemId) {
+        ImportContext context = get(contextId);
+        ImportTask task = context != null ? context.task(taskId) : null;
+        return task != null ? task.item(itemId) : null;
     }
 
     @Override
@@ -36,106 +96,249 @@ public class MemoryImportStore implements ImportStore {
         }
         return id;
     }
-    
+
     @Override
-    public void add(ImportContext context) {
+    public synchronized void add(ImportContext context) {
         context.setId(idseq.getAndIncrement());
-        imports.add(context);
-        if (imports.size() > 100) {
-            clearCompletedImports();
-        }
+        put(context);
     }
-    
-    void clearCompletedImports() {
-        List<ImportContext> completed = collect(new ImportCollector() {
-            @Override
-            protected boolean capture(ImportContext context) {
-                return context.getState() == ImportContext.State.COMPLETE;
-            }
-        });
-        imports.removeAll(completed);
+
+    @Override
+    public synchronized void save(ImportContext context) {
+        if (context.getId() == null) {
+            add(context);
+            return;
+        }
+        unindex(context.getId());
+        put(context);
     }
 
     @Override
-    public void save(ImportContext context) {
-        imports.remove(context);
-        imports.add(context);
+    public void save(ImportItem item) {
+        save(item.getTask().getContext());
     }
-    
+
     @Override
-    public void remove(ImportContext importContext) {
-        imports.remove(importContext);
+    public synchronized void remove(ImportContext importContext) {
+        if (importContext.getId() != null) {
+            remove(importContext.getId());
+        }
     }
-    
+
     @Override
-    public void removeAll() {
+    public synchronized void removeAll() {
         imports.clear();
+        keys.clear();
+        byState.clear();
+        byUser.clear();
+        byUpdated.clear();
     }
-    
+
     @Override
     public Iterator<ImportContext> iterator() {
-        return imports.iterator();
+        return Iterators.unmodifiableIterator(imports.values().iterator());
     }
 
+    /**
+     * Supports sorting by <tt>updated</tt>, most recently updated first.
+     */
     public Iterator<ImportContext> iterator(String sortBy) {
         if (sortBy == null) {
             return iterator();
         }
+        if ("updated".equals(sortBy)) {
+            return Iterators.unmodifiableIterator(byUpdated.values().iterator());
+        }
         throw new UnsupportedOperationException();
     }
 
     @Override
     public Iterator<ImportContext> allNonCompleteImports() {
-        return collect(new ImportCollector() {
-            @Override
-            protected boolean capture(ImportContext context) {
-                return context.getState() != ImportContext.State.COMPLETE;
+        TreeSet<Long> ids = new TreeSet<Long>();
+        for (Map.Entry<ImportContext.State, Set<Long>> e : byState.entrySet()) {
+            if (e.getKey() != ImportContext.State.COMPLETE) {
+                ids.addAll(e.getValue());
+            }
+        }
+
+        List<ImportContext> contexts = lookup(ids);
+        for (Iterator<ImportContext> it = contexts.iterator(); it.hasNext(); ) {
+            //state may have changed since the import was last saved
+            if (it.next().getState() == ImportContext.State.COMPLETE) {
+                it.remove();
             }
-        }).iterator();
+        }
+        return contexts.iterator();
     }
-    
+
     @Override
     public Iterator<ImportContext> importsByUser(final String user) {
-        return collect(new ImportCollector() {
-            @Override
-            protected boolean capture(ImportContext context) {
-                return user.equals(context.getUser());
+        Set<Long> ids = byUser.get(user);
+        if (ids == null) {
+            return Iterators.emptyIterator();
+        }
+        return lookup(ids).iterator();
+    }
+
+    @Override
+    public Iterator<ImportContext> query(ImportQuery query) {
+        Iterable<IndexKey> candidates = query.getSortBy() == ImportQuery.SortBy.UPDATED ? 
+            byUpdated.keySet() : keys.values();
+
+        List<ImportContext> contexts = new ArrayList<ImportContext>();
+        int skip = query.getOffset();
+        for (IndexKey key : candidates) {
+            if (query.getLimit() >= 0 && contexts.size() >= query.getLimit()) {
+                break;
+            }
+            if (!query.matches(key.state, key.user)) {
+                continue;
             }
-        }).iterator();
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+
+            ImportContext context = imports.get(key.id);
+            if (context != null) {
+                contexts.add(context);
+            }
+        }
+        return contexts.iterator();
     }
-    
+
     @Override
-    public void query(ImportVisitor visitor) {
-        for (ImportContext context : imports) {
-            visitor.visit(context);
+    public Iterator<ImportSummary> summaries(ImportQuery query) {
+        List<ImportSummary> summaries = new ArrayList<ImportSummary>();
+        for (Iterator<ImportContext> it = query(query); it.hasNext(); ) {
+            summaries.add(new ImportSummary(it.next()));
         }
+        return summaries.iterator();
     }
 
-    List<ImportContext> collect(ImportCollector collector) {
-        query(collector);
-        return collector.getCollected();
+    @Override
+    public void query(ImportVisitor visitor) {
+        for (ImportContext context : imports.values()) {
+            visitor.visit(context);
+        }
     }
 
     @Override
     public void destroy() {
-        imports.clear();
+        removeAll();
     }
 
-    static abstract class ImportCollector implements ImportVisitor {
+    List<ImportContext> lookup(Set<Long> ids) {
+        List<ImportContext> contexts = new ArrayList<ImportContext>(ids.size());
+        for (Long id : ids) {
+            ImportContext context = imports.get(id);
+            if (context != null) {
+                contexts.add(context);
+            }
+        }
+        return contexts;
+    }
 
-        List<ImportContext> collected = new ArrayList();
+    void put(ImportContext context) {
+        imports.put(context.getId(), context);
 
-        @Override
-        public final void visit(ImportContext context) {
-            if (capture(context)) {
-                collected.add(context);
+        IndexKey key = new IndexKey(context);
+        keys.put(key.id, key);
+        if (key.state != null) {
+            index(byState, key.state, key.id);
+        }
+        if (key.user != null) {
+            index(byUser, key.user, key.id);
+        }
+        byUpdated.put(key, context);
+
+        retain();
+    }
+
+    void remove(Long id) {
+        unindex(id);
+        imports.remove(id);
+    }
+
+    void unindex(Long id) {
+        IndexKey key = keys.remove(id);
+        if (key == null) {
+            return;
+        }
+        if (key.state != null) {
+            unindex(byState, key.state, id);
+        }
+        if (key.user != null) {
+            unindex(byUser, key.user, id);
+        }
+        byUpdated.remove(key);
+    }
+
+    <K> void index(ConcurrentHashMap<K,Set<Long>> index, K key, Long id) {
+        Set<Long> ids = index.get(key);
+        if (ids == null) {
+            ids = new ConcurrentSkipListSet<Long>();
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    <K> void unindex(ConcurrentHashMap<K,Set<Long>> index, K key, Long id) {
+        Set<Long> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
             }
         }
+    }
 
-        public List<ImportContext> getCollected() {
-            return collected;
+    /*
+     * discards completed imports beyond the retention limits, least recently updated first
+     */
+    void retain() {
+        Set<Long> completed = byState.get(ImportContext.State.COMPLETE);
+        if (completed == null) {
+            return;
         }
 
-        protected abstract boolean capture(ImportContext context);
+        int excess = maxCompleted >= 0 ? completed.size() - maxCompleted : 0;
+        long expired = completedTimeToLive > 0 ?
+            System.currentTimeMillis() - completedTimeToLive : Long.MIN_VALUE;
+
+        for (IndexKey key : byUpdated.descendingKeySet()) {
+            if (excess <= 0 && key.updated >= expired) {
+                break;
+            }
+            if (key.state == ImportContext.State.COMPLETE) {
+                remove(key.id);
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Values an import is indexed under, ordered by most recent update.
+     */
+    static class IndexKey implements Comparable<IndexKey> {
+        Long id;
+        ImportContext.State state;
+        String user;
+        long updated;
+
+        IndexKey(ImportContext context) {
+            id = context.getId();
+            state = context.getState();
+            user = context.getUser();
+            updated = context.getUpdated() != null ? context.getUpdated().getTime() : 0;
+        }
+
+        @Override
+        public int compareTo(IndexKey o) {
+            if (updated != o.updated) {
+                return updated > o.updated ? -1 : 1;
+            }
+            return o.id.compareTo(id);
+        }
     }
 }
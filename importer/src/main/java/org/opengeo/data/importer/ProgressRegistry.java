@@ -0,0 +1,273 @@
+package org.opengeo.data.importer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In memory registry of the progress of running imports.
+ * <p>
+ * The importer records the start and end of each run of an import, and of the load of each of its
+ * items, so the progress of a run can be reported without loading the import from the store. The
+ * progress of a load is also recorded as features are written, at most every
+ * {@link #PROGRESS_INTERVAL} milliseconds, and at each checkpoint. Each recorded event bumps the
+ * version of the progress of the import, clients wait for the next one
+ * with {@link #await(long, long, long)} rather than polling. The progress of a finished run is
+ * kept for a while, see {@link #setRetention(long)}, so that clients see the run end, and is
+ * purged as other runs start and end.
+ * </p>
+ */
+public class ProgressRegistry {
+
+    /** default milliseconds the progress of a finished run is kept */
+    public static final long DEFAULT_RETENTION = 5 * 60 * 1000;
+
+    /** minimum milliseconds between records of the progress of the load of an item */
+    public static final long PROGRESS_INTERVAL = 1000;
+
+    Map<Long,ContextProgress> contexts = new ConcurrentHashMap<Long, ContextProgress>();
+
+    long retention = DEFAULT_RETENTION;
+
+    public long getRetention() {
+        return retention;
+    }
+
+    public void setRetention(long retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * The progress of the current or last run of an import, or <code>null</code> if the import
+     * has not run recently.
+     */
+    public ContextProgress get(long contextId) {
+        purge();
+        return contexts.get(contextId);
+    }
+
+    /**
+     * Waits until the progress of an import changes from the specified version, or until the
+     * timeout elapses.
+     *
+     * @return The progress of the import, or <code>null</code> if the import has not run
+     *   recently.
+     */
+    public ContextProgress await(long contextId, long version, long timeout)
+        throws InterruptedException {
+        ContextProgress progress = get(contextId);
+        if (progress != null) {
+            progress.await(version, timeout);
+        }
+        return progress;
+    }
+
+    void started(ImportContext context) {
+        purge();
+
+        ContextProgress progress = new ContextProgress(context.getId());
+        ContextProgress previous = contexts.put(context.getId(), progress);
+        if (previous != null) {
+            //wake clients waiting on the previous run, versions keep increasing across runs
+            previous.changed();
+            progress.version = previous.version;
+        }
+        progress.update(context);
+    }
+
+    void finished(ImportContext context) {
+        purge();
+
+        ContextProgress progress = contexts.get(context.getId());
+        if (progress != null) {
+            progress.finished = System.currentTimeMillis();
+            progress.update(context);
+        }
+    }
+
+    void started(ImportItem item) {
+        ContextProgress progress = contexts.get(item.getTask().getContext().getId());
+        if (progress != null) {
+            if (!progress.items.contains(item)) {
+                progress.items.add(item);
+            }
+            progress.changed();
+        }
+    }
+
+    void progressed(ImportItem item) {
+        ContextProgress progress = contexts.get(item.getTask().getContext().getId());
+        if (progress != null) {
+            progress.changed();
+        }
+    }
+
+    void finished(ImportItem item) {
+        ContextProgress progress = contexts.get(item.getTask().getContext().getId());
+        if (progress != null) {
+            progress.changed();
+        }
+    }
+
+    void purge() {
+        long expired = System.currentTimeMillis() - retention;
+        for (Iterator<ContextProgress> it = contexts.values().iterator(); it.hasNext(); ) {
+            ContextProgress progress = it.next();
+            if (progress.finished > 0 && progress.finished < expired) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Progress of a run of an import.
+     */
+    public static class ContextProgress {
+
+        final long id;
+        volatile ImportContext.State state;
+        volatile long version;
+        volatile long finished;
+
+        /** items loaded so far by the run */
+        List<ImportItem> items = new CopyOnWriteArrayList<ImportItem>();
+
+        ContextProgress(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * The state of the import as of the start or end of the run.
+         */
+        public ImportContext.State getState() {
+            return state;
+        }
+
+        public boolean isRunning() {
+            return finished == 0;
+        }
+
+        /**
+         * Number incremented on each change of the progress.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * The progress of the items loaded so far by the run.
+         */
+        public List<ItemProgress> getItems() {
+            List<ItemProgress> list = new ArrayList<ItemProgress>(items.size());
+            for (ImportItem item : items) {
+                list.add(new ItemProgress(item));
+            }
+            return list;
+        }
+
+        void update(ImportContext context) {
+            state = context.getState();
+            changed();
+        }
+
+        synchronized void changed() {
+            version++;
+            notifyAll();
+        }
+
+        synchronized void await(long version, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+            while (this.version == version && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Snapshot of the progress of the load of an item.
+     */
+    public static class ItemProgress {
+
+        long taskId;
+        long itemId;
+        String name;
+        ImportItem.State state;
+        int processed;
+        int total;
+        boolean estimated;
+        double rate;
+        long eta;
+        int messages;
+
+        ItemProgress(ImportItem item) {
+            taskId = item.getTask().getId();
+            itemId = item.getId();
+            name = item.getLayer() != null ? item.getLayer().getName() : null;
+            state = item.getState();
+            processed = item.getNumberProcessed();
+            total = item.getTotalToProcess();
+            estimated = item.isTotalEstimated();
+            rate = state == ImportItem.State.RUNNING ? item.getProcessingRate() : 0;
+            eta = state == ImportItem.State.RUNNING ? item.getEstimatedTimeRemaining() : -1;
+            messages = item.getImportMessages().size();
+        }
+
+        public long getTaskId() {
+            return taskId;
+        }
+
+        public long getItemId() {
+            return itemId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ImportItem.State getState() {
+            return state;
+        }
+
+        public int getProcessed() {
+            return processed;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public boolean isEstimated() {
+            return estimated;
+        }
+
+        /**
+         * Features processed per second, zero once the item is no longer running.
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * Estimated seconds remaining, -1 if unknown or not running.
+         */
+        public long getEta() {
+            return eta;
+        }
+
+        /**
+         * Number of messages recorded for the item.
+         */
+        public int getMessages() {
+            return messages;
+        }
+    }
+}
@@ -6,6 +6,8 @@ import static org.apache.commons.io.FilenameUtils.getExtension;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -53,27 +55,30 @@ public class SpatialFile extends FileData {
 
     @Override
     public void prepare(ProgressMonitor m) throws IOException {
+        prepare(m, Arrays.asList(file.getParentFile().listFiles()));
+    }
+
+    /**
+     * Prepares the file, looking for the related files among <tt>candidates</tt> rather than 
+     * listing the parent directory.
+     * <p>
+     * Used when preparing many files of the same directory, whose files can then be listed once
+     * and grouped by {@link #relatedBaseName(File)}.
+     * </p>
+     */
+    public void prepare(ProgressMonitor m, Collection<File> candidates) throws IOException {
         //round up all the files with the same name
         suppFiles = new ArrayList();
         prjFile = null;
         final String baseName = getBaseName(file.getName());
         
-        for (File f : file.getParentFile().listFiles()) {
+        for (File f : candidates) {
             if (f.equals(file)) {
                 continue;
             }
             
-            String bn = getBaseName(f.getName());
-            String ext = getExtension(f.getName());
-            
-            // make sure we catch the .shp.xml auxillary file
-            // getBaseName will return the .shp extension the first time around
-            if ("xml".equals(ext)) {
-                bn = getBaseName(bn);
-            }
-            
-            if (bn.equals(baseName)) {
-                if ("prj".equalsIgnoreCase(ext)) {
+            if (relatedBaseName(f).equals(baseName)) {
+                if ("prj".equalsIgnoreCase(getExtension(f.getName()))) {
                     prjFile = f;
                 }
                 else {
@@ -94,6 +99,21 @@ public class SpatialFile extends FileData {
         }
     }
     
+    /**
+     * The base name under which a file is related to a spatial file, ie. the name of the file 
+     * without extension, or without both extensions of an auxiliary file such as .shp.xml.
+     */
+    public static String relatedBaseName(File f) {
+        String bn = getBaseName(f.getName());
+
+        // make sure we catch the .shp.xml auxillary file
+        // getBaseName will return the .shp extension the first time around
+        if ("xml".equals(getExtension(f.getName()))) {
+            bn = getBaseName(bn);
+        }
+        return bn;
+    }
+
     public void fixPrjFile() throws IOException {
         CoordinateReferenceSystem crs = readPrjToCRS();
         if (crs == null) {
@@ -105,9 +125,10 @@ public class SpatialFile extends FileData {
             CoordinateReferenceSystem epsgCrs = null;
             
             if (epsgCode == null) {
-                epsgCode = CRS.lookupEpsgCode(crs, true);
+                //full scan of the epsg database, cached as many files share the same prj
+                epsgCode = CRSCache.getDefault().lookupEpsgCode(crs);
                 if (epsgCode != null) {
-                    epsgCrs = CRS.decode("EPSG:" + epsgCode);
+                    epsgCrs = CRSCache.getDefault().decode("EPSG:" + epsgCode);
                 }
                 if (epsgCrs != null) {
                     String epsgWKT = epsgCrs.toWKT();
@@ -0,0 +1,502 @@
+package org.opengeo.data.importer;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Extracts archives while they are being read, such as from the body of an upload request,
+ * rather than writing the archive to disk and reading it back.
+ * <p>
+ * Zip archives and tar archives, optionally gzipped, are supported. The checksums of zip
+ * entries, of tar headers and of the gzip stream are verified. To protect against archives that
+ * expand to fill the disk extraction fails once the extracted files exceed a total size or
+ * number, or once they are more than a given ratio larger than what has been read of the
+ * archive. Entries that would be extracted outside of the target directory are rejected.
+ * </p>
+ */
+public class StreamingExtractor {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    /** default maximum size of the extracted files, 10 GB */
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+    /** default maximum number of extracted files */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /** default maximum ratio of extracted to archive bytes */
+    public static final int DEFAULT_MAX_RATIO = 100;
+
+    /** extracted bytes under which the ratio is not checked, small files compress very well */
+    static final long RATIO_THRESHOLD = 16 * 1024 * 1024;
+
+    static final int BLOCK = 512;
+
+    /**
+     * Thrown when an archive exceeds the limits of the extractor.
+     */
+    public static class LimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    long maxBytes = DEFAULT_MAX_BYTES;
+    int maxEntries = DEFAULT_MAX_ENTRIES;
+    int maxRatio = DEFAULT_MAX_RATIO;
+
+    /*
+     * state of the current extraction
+     */
+    CountingInputStream raw;
+    long bytes;
+    int entries;
+    List<File> written;
+
+    /**
+     * Creates an extractor with limits from the <tt>org.opengeo.importer.upload.maxBytes</tt>,
+     * <tt>maxEntries</tt> and <tt>maxRatio</tt> properties, a value of zero or less disabling the
+     * limit.
+     */
+    public static StreamingExtractor create() {
+        StreamingExtractor x = new StreamingExtractor();
+        x.setMaxBytes(longProperty("org.opengeo.importer.upload.maxBytes", DEFAULT_MAX_BYTES));
+        x.setMaxEntries((int) longProperty("org.opengeo.importer.upload.maxEntries",
+            DEFAULT_MAX_ENTRIES));
+        x.setMaxRatio((int) longProperty("org.opengeo.importer.upload.maxRatio",
+            DEFAULT_MAX_RATIO));
+        return x;
+    }
+
+    static long longProperty(String name, long def) {
+        String value = GeoServerExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            }
+            catch(NumberFormatException e) {
+                LOGGER.warning("Ignoring invalid value of " + name + ": " + value);
+            }
+        }
+        return def;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public int getMaxRatio() {
+        return maxRatio;
+    }
+
+    public void setMaxRatio(int maxRatio) {
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Whether archives of the specified name can be extracted while read.
+     */
+    public boolean canExtract(String name) {
+        return isZip(name) || isTar(name);
+    }
+
+    static boolean isZip(String name) {
+        return name.toLowerCase().endsWith(".zip");
+    }
+
+    static boolean isTar(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".tar") || lower.endsWith(".tar.gz") || lower.endsWith(".tgz");
+    }
+
+    static boolean isGzipped(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".gz") || lower.endsWith(".tgz");
+    }
+
+    /**
+     * Extracts an archive into a directory, deleting the files extracted if extraction fails.
+     *
+     * @param name The name of the archive, which determines its type.
+     * @param in The archive, not closed by this method.
+     * @param dir The existing target directory.
+     */
+    public synchronized void extract(String name, InputStream in, File dir) throws IOException {
+        if (!canExtract(name)) {
+            throw new IllegalArgumentException("Unable to extract " + name + " while reading");
+        }
+
+        raw = new CountingInputStream(in);
+        bytes = 0;
+        entries = 0;
+        written = new ArrayList<File>();
+
+        boolean success = false;
+        try {
+            if (isZip(name)) {
+                extractZip(new ZipInputStream(raw), dir);
+            }
+            else {
+                InputStream tar = isGzipped(name) ? new GZIPInputStream(raw, 64 * 1024) : raw;
+                extractTar(tar, dir);
+            }
+            success = true;
+        }
+        finally {
+            if (!success) {
+                for (int i = written.size() - 1; i >= 0; i--) {
+                    written.get(i).delete();
+                }
+            }
+            raw = null;
+            written = null;
+        }
+    }
+
+    void extractZip(ZipInputStream zin, File dir) throws IOException {
+        ZipEntry e = null;
+        while ((e = zin.getNextEntry()) != null) {
+            File f = target(dir, e.getName());
+            if (e.isDirectory()) {
+                mkdirs(f);
+            }
+            else {
+                //zip input stream verifies the entry crc once the entry is read through
+                extractEntry(zin, f, -1);
+            }
+            zin.closeEntry();
+        }
+    }
+
+    void extractTar(InputStream in, File dir) throws IOException {
+        byte[] header = new byte[BLOCK];
+        String longName = null;
+        while (true) {
+            if (!readBlock(in, header)) {
+                break;
+            }
+            if (isZero(header)) {
+                //end of archive
+                break;
+            }
+            verifyChecksum(header);
+
+            String name = longName != null ? longName : tarName(header);
+            longName = null;
+            long size = tarSize(header);
+            byte type = header[156];
+
+            switch(type) {
+            case 'L':
+                //gnu long name of the next entry
+                longName = new String(readData(in, size), "UTF-8").trim();
+                continue;
+            case 'x':
+                //pax extended header, only the path is of interest
+                longName = paxPath(new String(readData(in, size), "UTF-8"));
+                continue;
+            case '5':
+                mkdirs(target(dir, name));
+                break;
+            case '0':
+            case 0:
+            case '7':
+                extractEntry(in, target(dir, name), size);
+                break;
+            default:
+                //links, devices, global headers... not extracted
+                LOGGER.fine("Skipping tar entry " + name + " of type " + (char) type);
+                skip(in, size);
+            }
+            skip(in, padding(size));
+        }
+
+        //read what is left, such as the end of archive padding, so that the gzip trailer is
+        // reached and its checksum verified
+        byte[] buf = new byte[8192];
+        while (in.read(buf) != -1) {
+            checkRatio();
+        }
+    }
+
+    /*
+     * writes an entry of the archive, size is -1 when not known upfront
+     */
+    void extractEntry(InputStream in, File f, long size) throws IOException {
+        if (++entries > maxEntries && maxEntries > 0) {
+            throw new LimitExceededException("Archive holds more than " + maxEntries + " files");
+        }
+        if (size > 0 && maxBytes > 0 && bytes + size > maxBytes) {
+            throw new LimitExceededException("Archive expands to more than " + maxBytes + " bytes");
+        }
+
+        mkdirs(f.getParentFile());
+        written.add(f);
+        bytes += write(new LimitedStream(in, size), f);
+    }
+
+    /**
+     * Writes a stream to a file with a channel transfer.
+     *
+     * @return The number of bytes written.
+     */
+    public static long write(InputStream in, File f) throws IOException {
+        ReadableByteChannel src = Channels.newChannel(in);
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            FileChannel dst = out.getChannel();
+            long pos = 0;
+            long n;
+            while ((n = dst.transferFrom(src, pos, 1024 * 1024)) > 0) {
+                pos += n;
+            }
+            return pos;
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /*
+     * resolves the file of an entry, rejecting entries outside of the target directory
+     */
+    File target(File dir, String name) throws IOException {
+        File f = new File(dir, name);
+        String root = dir.getCanonicalPath() + File.separator;
+        if (!f.getCanonicalPath().startsWith(root)) {
+            throw new IOException("Archive entry " + name + " is outside of the target directory");
+        }
+        return f;
+    }
+
+    void mkdirs(File dir) throws IOException {
+        if (!dir.exists()) {
+            List<File> created = new ArrayList<File>();
+            for (File d = dir; d != null && !d.exists(); d = d.getParentFile()) {
+                created.add(0, d);
+            }
+            if (!dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir.getPath());
+            }
+            written.addAll(created);
+        }
+    }
+
+    void checkRatio() throws IOException {
+        if (maxRatio > 0 && bytes > RATIO_THRESHOLD &&
+            bytes > maxRatio * Math.max(1, raw.getByteCount())) {
+            throw new LimitExceededException("Archive expands more than " + maxRatio + " times");
+        }
+    }
+
+    boolean readBlock(InputStream in, byte[] block) throws IOException {
+        int n = 0;
+        while (n < block.length) {
+            int r = in.read(block, n, block.length - n);
+            if (r == -1) {
+                if (n == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated tar archive");
+            }
+            n += r;
+        }
+        return true;
+    }
+
+    byte[] readData(InputStream in, long size) throws IOException {
+        if (size > 1024 * 1024) {
+            throw new IOException("Tar header too large: " + size);
+        }
+        byte[] data = new byte[(int) size];
+        int n = 0;
+        while (n < data.length) {
+            int r = in.read(data, n, data.length - n);
+            if (r == -1) {
+                throw new EOFException("Truncated tar archive");
+            }
+            n += r;
+        }
+        skip(in, padding(size));
+        return data;
+    }
+
+    void skip(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long s = in.skip(n);
+            if (s <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                s = 1;
+            }
+            n -= s;
+        }
+    }
+
+    static long padding(long size) {
+        long r = size % BLOCK;
+        return r == 0 ? 0 : BLOCK - r;
+    }
+
+    static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void verifyChecksum(byte[] header) throws IOException {
+        long expected = octal(header, 148, 8);
+        long unsigned = 0, signed = 0;
+        for (int i = 0; i < header.length; i++) {
+            byte b = i >= 148 && i < 156 ? (byte) ' ' : header[i];
+            unsigned += b & 0xFF;
+            signed += b;
+        }
+        //some old tar implementations sum signed bytes
+        if (expected != unsigned && expected != signed) {
+            throw new IOException("Invalid tar header checksum");
+        }
+    }
+
+    static String tarName(byte[] header) throws IOException {
+        String name = string(header, 0, 100);
+        if ("ustar".equals(string(header, 257, 6).trim())) {
+            String prefix = string(header, 345, 155);
+            if (prefix.length() > 0) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    static long tarSize(byte[] header) {
+        if ((header[124] & 0x80) != 0) {
+            //base 256, used by gnu tar for large files
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xFF);
+            }
+            return size;
+        }
+        return octal(header, 124, 12);
+    }
+
+    static String paxPath(String pax) {
+        //records of the form "<length> <key>=<value>\n"
+        for (String record : pax.split("\n")) {
+            int space = record.indexOf(' ');
+            int eq = record.indexOf('=');
+            if (space > 0 && eq > space && "path".equals(record.substring(space + 1, eq))) {
+                return record.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    static long octal(byte[] buf, int off, int len) {
+        long value = 0;
+        for (int i = off; i < off + len; i++) {
+            byte b = buf[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    static String string(byte[] buf, int off, int len) throws IOException {
+        int end = off;
+        while (end < off + len && buf[end] != 0) {
+            end++;
+        }
+        return new String(buf, off, end - off, "UTF-8");
+    }
+
+    /*
+     * limits reads to the size of the current entry, if known, and checks the limits of the
+     * extraction as the entry is read
+     */
+    class LimitedStream extends InputStream {
+
+        InputStream in;
+        boolean sized;
+        long remaining;
+        long read;
+
+        LimitedStream(InputStream in, long size) {
+            this.in = in;
+            this.sized = size >= 0;
+            this.remaining = sized ? size : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                if (sized) {
+                    throw new EOFException("Truncated archive");
+                }
+                return -1;
+            }
+            remaining -= n;
+            read += n;
+
+            if (maxBytes > 0 && bytes + read > maxBytes) {
+                throw new LimitExceededException(
+                    "Archive expands to more than " + maxBytes + " bytes");
+            }
+            if (maxRatio > 0 && bytes + read > RATIO_THRESHOLD &&
+                bytes + read > maxRatio * Math.max(1, raw.getByteCount())) {
+                throw new LimitExceededException("Archive expands more than " + maxRatio + " times");
+            }
+            return n;
+        }
+    }
+}
@@ -28,4 +28,21 @@ public abstract class VectorFormat extends DataFormat {
      */
     public abstract int getFeatureCount(ImportData data, ImportItem item) throws IOException;
 
+    /**
+     * Determines if {@link #getFeatureCount(ImportData, ImportItem)} is cheap, that is it does 
+     * not read all the features. When it is not imports report progress against 
+     * {@link #estimateFeatureCount(ImportData, ImportItem)} instead.
+     */
+    public boolean isFeatureCountCheap(ImportData data, ImportItem item) throws IOException {
+        return true;
+    }
+
+    /**
+     * Estimates the number of features from the data for the specified import item without 
+     * reading them, returning -1 if no estimate is available.
+     */
+    public int estimateFeatureCount(ImportData data, ImportItem item) throws IOException {
+        return -1;
+    }
+
 }
@@ -0,0 +1,376 @@
+package org.opengeo.data.importer;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+/**
+ * Import store wrapping another store and delaying saves of imports to it.
+ * <p>
+ * A saved import is marked dirty and written to the underlying store once the write delay has
+ * elapsed, further saves of the import in the meantime being coalesced into that single write.
+ * Saves that change the state of an import, saves of single items, adds and removals are written 
+ * immediately, and all dirty imports are written on {@link #flush()} and {@link #destroy()}.
+ * </p>
+ * <p>
+ * An import that fails to be written stays dirty and is written again later, the failure being
+ * thrown from {@link #flush()} and {@link #destroy()} when they are the ones writing it.
+ * </p>
+ * <p>
+ * Lookups and queries return the dirty instance of an import in place of the one read from the
+ * underlying store. Summaries are read from the underlying store and so may lag by up to the
+ * write delay.
+ * </p>
+ */
+public class WriteBehindImportStore implements ImportStore {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    /** default write delay, in milliseconds */
+    public static final long DEFAULT_WRITE_DELAY = 1000;
+
+    /** minimum delay before writing again an import that failed to be written, in milliseconds */
+    static final long RETRY_DELAY = 1000;
+
+    /** number of imports whose last written state is kept */
+    static final int WRITTEN_CAPACITY = 1000;
+
+    ImportStore delegate;
+    long writeDelay;
+
+    /** dirty imports by id */
+    ConcurrentMap<Long,ImportContext> dirty = new ConcurrentHashMap<Long, ImportContext>();
+
+    /** 
+     * state of imports as last written, by id, for the most recently written imports only. An 
+     * import missing from it is written on its next save
+     */
+    Map<Long,ImportContext.State> written = Collections.synchronizedMap(
+        new LinkedHashMap<Long, ImportContext.State>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ImportContext.State> eldest) {
+                return size() > WRITTEN_CAPACITY;
+            }
+        });
+
+    ScheduledExecutorService executor;
+
+    /** metrics */
+    AtomicLong saves = new AtomicLong();
+    AtomicLong writes = new AtomicLong();
+    AtomicLong writeTime = new AtomicLong();
+    AtomicLong maxWriteTime = new AtomicLong();
+
+    public WriteBehindImportStore(ImportStore delegate) {
+        this(delegate, DEFAULT_WRITE_DELAY);
+    }
+
+    public WriteBehindImportStore(ImportStore delegate, long writeDelay) {
+        this.delegate = delegate;
+        this.writeDelay = writeDelay;
+    }
+
+    public ImportStore getDelegate() {
+        return delegate;
+    }
+
+    public long getWriteDelay() {
+        return writeDelay;
+    }
+
+    @Override
+    public void init() {
+        delegate.init();
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "importer-write-behind");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public Long advanceId(Long id) {
+        return delegate.advanceId(id);
+    }
+
+    @Override
+    public ImportContext get(long id) {
+        ImportContext context = dirty.get(id);
+        return context != null ? context : delegate.get(id);
+    }
+
+    @Override
+    public ImportItem getItem(long contextId, long taskId, long itemId) {
+        ImportContext context = dirty.get(contextId);
+        if (context != null) {
+            ImportTask task = context.task(taskId);
+            return task != null ? task.item(itemId) : null;
+        }
+        return delegate.getItem(contextId, taskId, itemId);
+    }
+
+    @Override
+    public void add(ImportContext context) {
+        saves.incrementAndGet();
+        write(context, true);
+    }
+
+    @Override
+    public void save(ImportContext context) {
+        saves.incrementAndGet();
+
+        Long id = context.getId();
+        if (id == null || context.getState() != written.get(id)) {
+            if (id != null) {
+                dirty.remove(id);
+            }
+            write(context, id == null);
+            return;
+        }
+
+        if (dirty.put(id, context) == null) {
+            schedule(id, writeDelay);
+        }
+    }
+
+    void schedule(final Long id, long delay) {
+        if (executor == null || executor.isShutdown()) {
+            return;
+        }
+        try {
+            executor.schedule(new Runnable() {
+                public void run() {
+                    try {
+                        flush(id);
+                    }
+                    catch(RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Unable to write import " + id + ", retrying", e);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        catch(RejectedExecutionException e) {
+            //shutting down, left for the final flush
+        }
+    }
+
+    /**
+     * Writes the item immediately, the underlying store may not write items of the import that 
+     * have been loaded individually when writing the import.
+     */
+    @Override
+    public void save(ImportItem item) {
+        saves.incrementAndGet();
+
+        ImportContext context = item.getTask().getContext();
+        if (context.getId() == null) {
+            write(context, true);
+            return;
+        }
+
+        long t = System.nanoTime();
+        delegate.save(item);
+        written(context, System.nanoTime() - t);
+    }
+
+    @Override
+    public void remove(ImportContext importContext) {
+        if (importContext.getId() != null) {
+            dirty.remove(importContext.getId());
+            written.remove(importContext.getId());
+        }
+        delegate.remove(importContext);
+    }
+
+    @Override
+    public void removeAll() {
+        dirty.clear();
+        written.clear();
+        delegate.removeAll();
+    }
+
+    @Override
+    public Iterator<ImportContext> iterator() {
+        return dirty(delegate.iterator());
+    }
+
+    @Override
+    public Iterator<ImportContext> iterator(String sortBy) {
+        return dirty(delegate.iterator(sortBy));
+    }
+
+    @Override
+    public Iterator<ImportContext> allNonCompleteImports() {
+        return dirty(delegate.allNonCompleteImports());
+    }
+
+    @Override
+    public Iterator<ImportContext> importsByUser(String user) {
+        return dirty(delegate.importsByUser(user));
+    }
+
+    @Override
+    public Iterator<ImportContext> query(ImportQuery query) {
+        return dirty(delegate.query(query));
+    }
+
+    @Override
+    public Iterator<ImportSummary> summaries(ImportQuery query) {
+        return delegate.summaries(query);
+    }
+
+    @Override
+    public void query(ImportVisitor visitor) {
+        flush();
+        delegate.query(visitor);
+    }
+
+    /**
+     * Writes all dirty imports to the underlying store, throwing the first failure once all of 
+     * them have been tried.
+     */
+    public void flush() {
+        RuntimeException error = null;
+        for (Long id : dirty.keySet()) {
+            try {
+                flush(id);
+            }
+            catch(RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes the import to the underlying store if dirty, leaving it dirty when the write fails.
+     */
+    public void flush(ImportContext context) {
+        if (context.getId() != null) {
+            flush(context.getId());
+        }
+    }
+
+    void flush(Long id) {
+        ImportContext context = dirty.remove(id);
+        if (context == null) {
+            return;
+        }
+        try {
+            write(context, false);
+        }
+        catch(RuntimeException e) {
+            //unless saved again in the meantime, in which case that save gets written
+            if (dirty.putIfAbsent(id, context) == null) {
+                schedule(id, Math.max(writeDelay, RETRY_DELAY));
+            }
+            throw e;
+        }
+    }
+
+    void write(ImportContext context, boolean add) {
+        long t = System.nanoTime();
+        if (add) {
+            delegate.add(context);
+        }
+        else {
+            delegate.save(context);
+        }
+        written(context, System.nanoTime() - t);
+    }
+
+    void written(ImportContext context, long t) {
+        written.put(context.getId(), context.getState());
+
+        writes.incrementAndGet();
+        writeTime.addAndGet(t);
+        long max = maxWriteTime.get();
+        while (t > max && !maxWriteTime.compareAndSet(max, t)) {
+            max = maxWriteTime.get();
+        }
+    }
+
+    Iterator<ImportContext> dirty(Iterator<ImportContext> it) {
+        if (dirty.isEmpty()) {
+            return it;
+        }
+        return Iterators.transform(it, new Function<ImportContext, ImportContext>() {
+            public ImportContext apply(ImportContext context) {
+                ImportContext d = context.getId() != null ? dirty.get(context.getId()) : null;
+                return d != null ? d : context;
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        try {
+            flush();
+        }
+        finally {
+            delegate.destroy();
+        }
+    }
+
+    /**
+     * Number of saves, including adds, made against the store.
+     */
+    public long getSaveCount() {
+        return saves.get();
+    }
+
+    /**
+     * Number of writes made to the underlying store.
+     */
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Ratio of saves coalesced into another write, zero when no saves were coalesced.
+     */
+    public double getCoalescingRatio() {
+        long s = saves.get();
+        return s > 0 ? Math.max(0, s - writes.get()) / (double) s : 0;
+    }
+
+    /**
+     * Mean time spent writing an import to the underlying store, in milliseconds.
+     */
+    public double getMeanWriteLatency() {
+        long w = writes.get();
+        return w > 0 ? writeTime.get() / (double) w / 1000000d : 0;
+    }
+
+    /**
+     * Longest time spent writing an import to the underlying store, in milliseconds.
+     */
+    public double getMaxWriteLatency() {
+        return maxWriteTime.get() / 1000000d;
+    }
+}
@@ -2,28 +2,41 @@ package org.opengeo.data.importer.bdb;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.collections.Predicate;
-import org.apache.commons.collections.iterators.FilterIterator;
+import org.apache.commons.io.FileUtils;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.StoreInfo;
 import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.ImportCodec;
 import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportQuery;
 import org.opengeo.data.importer.ImportStore;
+import org.opengeo.data.importer.ImportSummary;
 import org.opengeo.data.importer.ImportTask;
 import org.opengeo.data.importer.Importer;
 
+import com.google.common.collect.AbstractIterator;
 import com.sleepycat.bind.EntryBinding;
 import com.sleepycat.bind.serial.ClassCatalog;
 import com.sleepycat.bind.serial.SerialBinding;
 import com.sleepycat.bind.serial.StoredClassCatalog;
 import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
 import com.sleepycat.collections.StoredMap;
 import com.sleepycat.je.CacheMode;
+import com.sleepycat.je.CheckpointConfig;
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
@@ -33,6 +46,9 @@ import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.SecondaryConfig;
+import com.sleepycat.je.SecondaryDatabase;
+import com.sleepycat.je.SecondaryKeyCreator;
 import com.sleepycat.je.Sequence;
 import com.sleepycat.je.SequenceConfig;
 import com.sleepycat.je.StatsConfig;
@@ -41,7 +57,26 @@ import com.sleepycat.je.TransactionConfig;
 
 /**
  * Import store implementation based on Berkley DB Java Edition.
- * 
+ * <p>
+ * Along with the imports the store maintains an index database holding a small fixed layout
+ * summary record of each import, see {@link ImportSummary}, with secondary databases on the 
+ * state, user and update time of the summaries. Queries and listings walk these rather than 
+ * deserializing every import.
+ * </p>
+ * <p>
+ * With the binary binding the items of an import are stored as records of their own, keyed by
+ * import, task and item id. Items are loaded as the tasks of an import are accessed, single 
+ * items can be loaded and saved with {@link #getItem(long, long, long)} and 
+ * {@link #save(ImportItem)}, and saving an import only rewrites the loaded items that changed,
+ * see {@link ImportItem#isDirty()}.
+ * </p>
+ * <p>
+ * The default binding is {@link BindingType#SERIAL}, which stores each import whole, items 
+ * included, so saving an item or an import rewrites the whole import. The item granular storage
+ * above requires the binary binding, selected with the 
+ * <tt>org.opengeo.importer.store.binding</tt> property set to <tt>binary</tt>, imports stored 
+ * with another binding being migrated on startup.
+ * </p>
  * @author Justin Deoliveira, OpenGeo
  */
 public class BDBImportStore implements ImportStore {
@@ -60,6 +95,12 @@ public class BDBImportStore implements ImportStore {
             ImportBinding createBinding() {
                 return new XStreamBinding();
             }
+        },
+        BINARY {
+            @Override
+            ImportBinding createBinding() {
+                return new BinaryBinding();
+            }
         };
 
         abstract ImportBinding createBinding(); 
@@ -70,6 +111,15 @@ public class BDBImportStore implements ImportStore {
     Database db, seqDb;
     Sequence importIdSeq;
 
+    /** summary records by import id, and secondary indexes on them */
+    Database indexDb;
+    SecondaryDatabase stateDb, userDb, updatedDb;
+    SummaryBinding summaryBinding = new SummaryBinding();
+
+    /** items by import, task and item id, when stored separately from the imports */
+    Database itemDb;
+    BinaryImportBinding itemBinding;
+
     BindingType bindingType = BindingType.SERIAL;
     ImportBinding dbBinding;
     EntryBinding<ImportContext> importBinding;
@@ -122,14 +172,159 @@ public class BDBImportStore implements ImportStore {
         seqDb = env.openDatabase(null, "seq", dbConfig);
         importIdSeq = seqDb.openSequence(null, new DatabaseEntry("import_id".getBytes()), seqConfig);
 
+        //index database
+        indexDb = env.openDatabase(null, "imports_index", dbConfig);
+        stateDb = openIndex(env, "imports_by_state", new SecondaryKeyCreator() {
+            public boolean createSecondaryKey(SecondaryDatabase secondary, DatabaseEntry key,
+                DatabaseEntry data, DatabaseEntry result) {
+                ImportSummary summary = summaryBinding.entryToObject(data);
+                if (summary.getState() == null) {
+                    return false;
+                }
+                StringBinding.stringToEntry(summary.getState().name(), result);
+                return true;
+            }
+        });
+        userDb = openIndex(env, "imports_by_user", new SecondaryKeyCreator() {
+            public boolean createSecondaryKey(SecondaryDatabase secondary, DatabaseEntry key,
+                DatabaseEntry data, DatabaseEntry result) {
+                ImportSummary summary = summaryBinding.entryToObject(data);
+                if (summary.getUser() == null) {
+                    return false;
+                }
+                StringBinding.stringToEntry(summary.getUser(), result);
+                return true;
+            }
+        });
+        updatedDb = openIndex(env, "imports_by_updated", new SecondaryKeyCreator() {
+            public boolean createSecondaryKey(SecondaryDatabase secondary, DatabaseEntry key,
+                DatabaseEntry data, DatabaseEntry result) {
+                LongBinding.longToEntry(
+                    summaryBinding.entryToObject(data).getUpdated().getTime(), result);
+                return true;
+            }
+        });
+
+        //item database
+        itemDb = env.openDatabase(null, "import_items", dbConfig);
+
         dbBinding.initDb(dbConfig, env);
         importBinding = dbBinding.createImportBinding(importer);
 
+        itemBinding = null;
+        if (importBinding instanceof BinaryImportBinding) {
+            itemBinding = (BinaryImportBinding) importBinding;
+            itemBinding.setItems(false, new ImportTask.ItemLoader() {
+                public List<ImportItem> loadItems(ImportTask task) {
+                    return BDBImportStore.this.loadItems(task);
+                }
+            });
+        }
+
         //importBinding = new SerialVersionSafeSerialBinding<ImportContext>();
         //importBinding = new XStreamInfoSerialBinding<ImportContext>(
         //    importer.createXStreamPersister(), ImportContext.class);
 
         checkAndFixDbIncompatability(dbConfig, env);
+        checkAndBuildIndex();
+        checkAndMigrate();
+    }
+
+    SecondaryDatabase openIndex(Environment env, String name, SecondaryKeyCreator keyCreator) {
+        SecondaryConfig config = new SecondaryConfig();
+        config.setAllowCreate(true);
+        config.setTransactional(true);
+        config.setSortedDuplicates(true);
+        config.setKeyCreator(keyCreator);
+        return env.openSecondaryDatabase(null, name, indexDb, config);
+    }
+
+    void closeIndex() {
+        updatedDb.close();
+        userDb.close();
+        stateDb.close();
+        indexDb.close();
+    }
+
+    void checkAndBuildIndex() {
+        // imports stored before the index existed
+        if (!isEmpty(indexDb) || isEmpty(db)) {
+            return;
+        }
+
+        LOGGER.info("Indexing imports");
+        Cursor c = db.openCursor(null, null);
+        try {
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry val = new DatabaseEntry();
+            while (c.getNext(key, val, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+                try {
+                    indexDb.put(null, key, index(importBinding.entryToObject(val)));
+                }
+                catch(RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unable to index import " + 
+                        LongBinding.entryToLong(key), e);
+                }
+            }
+        }
+        finally {
+            c.close();
+        }
+    }
+
+    void checkAndMigrate() {
+        // imports stored with another binding before switching to the binary one
+        if (itemBinding == null) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<Long>();
+        Cursor c = db.openCursor(null, null);
+        try {
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry val = new DatabaseEntry();
+            val.setPartial(0, 3, true);
+            while (c.getNext(key, val, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+                if (!BinaryImportBinding.isBinary(val)) {
+                    ids.add(LongBinding.entryToLong(key));
+                }
+            }
+        }
+        finally {
+            c.close();
+        }
+
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        LOGGER.info("Migrating " + ids.size() + " imports to the binary binding");
+        for (Long id : ids) {
+            try {
+                ImportContext context = get(id);
+                if (context != null) {
+                    DatabaseEntry val = new DatabaseEntry();
+                    importBinding.objectToEntry(context, val);
+                    db.put(null, key(id), val);
+                }
+            }
+            catch(RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unable to migrate import " + id, e);
+            }
+        }
+    }
+
+    boolean isEmpty(Database database) {
+        Cursor c = database.openCursor(null, null);
+        try {
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry val = new DatabaseEntry();
+            val.setPartial(0, 0, true);
+            return c.getFirst(key, val, LockMode.DEFAULT) != OperationStatus.SUCCESS;
+        }
+        finally {
+            c.close();
+        }
     }
 
     void checkAndFixDbIncompatability(DatabaseConfig dbConfig, Environment env) {
@@ -145,7 +340,16 @@ public class BDBImportStore implements ImportStore {
                 dbBinding.closeDb(env);
                 dbBinding.destroyDb(env);
                 
-                // and the import db
+                // and the import db, along with its index
+                closeIndex();
+                env.removeDatabase(null, "imports_by_updated");
+                env.removeDatabase(null, "imports_by_user");
+                env.removeDatabase(null, "imports_by_state");
+                env.removeDatabase(null, "imports_index");
+
+                itemDb.close();
+                env.removeDatabase(null, "import_items");
+
                 db.close();
                 env.removeDatabase(null, "imports");
 
@@ -201,11 +405,38 @@ public class BDBImportStore implements ImportStore {
     public synchronized void add(ImportContext context) {
         context.setId(importIdSeq.get(null, 1));
 
+        forgetStoredItems(context);
         put(context);
     }
 
     public void remove(ImportContext importContext) {
-        db.delete(null, key(importContext) );
+        DatabaseEntry key = key(importContext);
+
+        Transaction tx = db.getEnvironment().beginTransaction(null, null);
+        try {
+            db.delete(tx, key);
+            indexDb.delete(tx, key);
+            deleteItems(tx, importContext.getId(), null);
+            tx.commit();
+        }
+        catch(RuntimeException e) {
+            tx.abort();
+            throw e;
+        }
+        forgetStoredItems(importContext);
+    }
+
+    /*
+     * makes the loaded items of an import be written on the next save 
+     */
+    void forgetStoredItems(ImportContext context) {
+        for (ImportTask task : context.getTasks()) {
+            if (task.isItemsLoaded()) {
+                for (ImportItem item : task.getItems()) {
+                    item.setDirty(true);
+                }
+            }
+        }
     }
 
     public void removeAll() {
@@ -228,6 +459,8 @@ public class BDBImportStore implements ImportStore {
         for (Long id : ids) {
             keyBinding.objectToEntry(id, key);
             db.delete(tx, key);
+            indexDb.delete(tx, key);
+            deleteItems(tx, id, null);
         }
 
         tx.commit();
@@ -248,32 +481,163 @@ public class BDBImportStore implements ImportStore {
             .values().iterator();
     }
 
+    /**
+     * Supports sorting by <tt>updated</tt>, most recently updated first.
+     */
     public Iterator<ImportContext> iterator(String sortBy) {
         if (sortBy == null) {
             return iterator();
         }
+        if ("updated".equals(sortBy)) {
+            ImportQuery q = new ImportQuery();
+            q.setSortBy(ImportQuery.SortBy.UPDATED);
+            return query(q);
+        }
 
         throw new UnsupportedOperationException();
     }
 
     public Iterator<ImportContext> allNonCompleteImports() {
-        // if this becomes too slow a secondary database could be used for indexing
-        return new FilterIterator(iterator(), new Predicate() {
-
-            public boolean evaluate(Object o) {
-                return ((ImportContext) o).getState() != ImportContext.State.COMPLETE;
-            }
-        });
+        return query(ImportQuery.nonComplete());
     }
     
     public Iterator<ImportContext> importsByUser(final String user) {        
-        // if this becomes too slow a secondary database could be used for indexing
-        return new FilterIterator(allNonCompleteImports(), new Predicate() {
+        ImportQuery q = ImportQuery.nonComplete();
+        q.setUser(user);
+        return query(q);
+    }
 
-            public boolean evaluate(Object o) {
-                return user.equals( ((ImportContext) o).getUser() );
+    /**
+     * Loads the page of imports selected by the query as the returned iterator reaches them.
+     */
+    public Iterator<ImportContext> query(ImportQuery query) {
+        final Iterator<ImportSummary> summaries = summaries(query);
+        return new AbstractIterator<ImportContext>() {
+            @Override
+            protected ImportContext computeNext() {
+                while (summaries.hasNext()) {
+                    //may have been removed since the summary was read
+                    ImportContext context = summaries.next().getContext();
+                    if (context != null) {
+                        return context;
+                    }
+                }
+                return endOfData();
             }
-        });
+        };
+    }
+
+    /**
+     * Walks the summaries, in the order of the query, to collect the page of selected ones. 
+     */
+    public Iterator<ImportSummary> summaries(ImportQuery query) {
+        boolean byUpdated = query.getSortBy() == ImportQuery.SortBy.UPDATED;
+        if (!byUpdated && query.getStates() != null) {
+            return summariesByState(query);
+        }
+        boolean byUser = !byUpdated && query.getUser() != null;
+
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry val = new DatabaseEntry();
+
+        Cursor c;
+        OperationStatus op;
+        if (byUser) {
+            //duplicates are sorted by primary key, ie by id
+            c = userDb.openSecondaryCursor(null, null);
+            StringBinding.stringToEntry(query.getUser(), key);
+            op = c.getSearchKey(key, val, LockMode.DEFAULT);
+        }
+        else if (byUpdated) {
+            c = updatedDb.openSecondaryCursor(null, null);
+            op = c.getLast(key, val, LockMode.DEFAULT);
+        }
+        else {
+            c = indexDb.openCursor(null, null);
+            op = c.getFirst(key, val, LockMode.DEFAULT);
+        }
+
+        List<ImportSummary> summaries = new ArrayList<ImportSummary>();
+        try {
+            int skip = query.getOffset();
+            while (op == OperationStatus.SUCCESS && 
+                (query.getLimit() < 0 || summaries.size() < query.getLimit())) {
+                ImportSummary summary = summaryBinding.entryToObject(val);
+                if (query.matches(summary.getState(), summary.getUser())) {
+                    if (skip > 0) {
+                        skip--;
+                    }
+                    else {
+                        summaries.add(summary);
+                    }
+                }
+
+                op = byUser ? c.getNextDup(key, val, LockMode.DEFAULT) : 
+                    byUpdated ? c.getPrev(key, val, LockMode.DEFAULT) : 
+                    c.getNext(key, val, LockMode.DEFAULT);
+            }
+        }
+        finally {
+            c.close();
+        }
+        return summaries.iterator();
+    }
+
+    /**
+     * Walks the summaries of each of the states selected by the query side by side, merging them
+     * in id order, to collect the page of selected ones. 
+     */
+    Iterator<ImportSummary> summariesByState(ImportQuery query) {
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry val = new DatabaseEntry();
+
+        List<Cursor> cursors = new ArrayList<Cursor>();
+        List<ImportSummary> next = new ArrayList<ImportSummary>();
+        List<ImportSummary> summaries = new ArrayList<ImportSummary>();
+        try {
+            for (ImportContext.State state : query.getStates()) {
+                //duplicates are sorted by primary key, ie by id
+                Cursor c = stateDb.openSecondaryCursor(null, null);
+                cursors.add(c);
+                StringBinding.stringToEntry(state.name(), key);
+                next.add(c.getSearchKey(key, val, LockMode.DEFAULT) == OperationStatus.SUCCESS ? 
+                    summaryBinding.entryToObject(val) : null);
+            }
+
+            int skip = query.getOffset();
+            while (query.getLimit() < 0 || summaries.size() < query.getLimit()) {
+                int i = -1;
+                for (int j = 0; j < next.size(); j++) {
+                    ImportSummary summary = next.get(j);
+                    if (summary != null && 
+                        (i < 0 || summary.getId().longValue() < next.get(i).getId().longValue())) {
+                        i = j;
+                    }
+                }
+                if (i < 0) {
+                    break;
+                }
+
+                ImportSummary summary = next.get(i);
+                if (query.matches(summary.getState(), summary.getUser())) {
+                    if (skip > 0) {
+                        skip--;
+                    }
+                    else {
+                        summaries.add(summary);
+                    }
+                }
+
+                next.set(i, cursors.get(i).getNextDup(key, val, LockMode.DEFAULT) == 
+                    OperationStatus.SUCCESS ? summaryBinding.entryToObject(val) : null);
+            }
+        }
+        finally {
+            for (Cursor c : cursors) {
+                c.close();
+            }
+        }
+        return summaries.iterator();
     }
 
     public void query(ImportVisitor visitor) {
@@ -292,13 +656,209 @@ public class BDBImportStore implements ImportStore {
         }
     }
 
+    /**
+     * Saves the item, and the import it belongs to, without saving the other items of the 
+     * import when stored separately.
+     */
+    public synchronized void save(ImportItem item) {
+        ImportContext context = item.getTask().getContext();
+        if (itemBinding == null || context.getId() == null) {
+            save(context);
+            return;
+        }
+
+        dettach(context);
+
+        DatabaseEntry key = key(context);
+        DatabaseEntry val = new DatabaseEntry();
+        importBinding.objectToEntry(context, val);
+
+        DatabaseEntry itemKey = itemKey(context.getId(), item.getTask().getId(), item.getId());
+        DatabaseEntry itemVal = new DatabaseEntry();
+        itemBinding.itemToEntry(item, itemVal);
+
+        Transaction tx = db.getEnvironment().beginTransaction(null, null);
+        try {
+            db.put(tx, key, val);
+            indexDb.put(tx, key, index(context));
+            itemDb.put(tx, itemKey, itemVal);
+            tx.commit();
+        }
+        catch(RuntimeException e) {
+            tx.abort();
+            throw e;
+        }
+        item.setDirty(false);
+    }
+
+    /**
+     * Loads a single item, along with the import it belongs to but without the other items of
+     * the import when stored separately.
+     */
+    public ImportItem getItem(long contextId, long taskId, long itemId) {
+        ImportContext context = get(contextId);
+        ImportTask task = context != null ? context.task(taskId) : null;
+        if (task == null) {
+            return null;
+        }
+        if (task.isItemsLoaded()) {
+            return task.item(itemId);
+        }
+
+        DatabaseEntry key = itemKey(contextId, taskId, itemId);
+        DatabaseEntry val = new DatabaseEntry();
+        OperationStatus op = itemDb.get(null, key, val, LockMode.DEFAULT);
+        if (op != OperationStatus.SUCCESS) {
+            return null;
+        }
+        ImportItem item = itemBinding.entryToItem(task, val);
+        item.setDirty(false);
+        return item;
+    }
+
     synchronized void put(ImportContext context) {
         assert context.getId() != null;
         
+        DatabaseEntry key = key(context);
         DatabaseEntry val = new DatabaseEntry();
         importBinding.objectToEntry(context, val);
 
-        db.put(null, key(context), val);
+        List<ImportItem> written = new ArrayList<ImportItem>();
+        Transaction tx = db.getEnvironment().beginTransaction(null, null);
+        try {
+            db.put(tx, key, val);
+            indexDb.put(tx, key, index(context));
+            if (itemBinding != null) {
+                for (ImportTask task : context.getTasks()) {
+                    //items not loaded have not changed
+                    if (task.isItemsLoaded()) {
+                        putItems(tx, task, written);
+                    }
+                }
+            }
+            tx.commit();
+        }
+        catch(RuntimeException e) {
+            tx.abort();
+            throw e;
+        }
+
+        for (ImportItem item : written) {
+            item.setDirty(false);
+        }
+        for (ImportTask task : context.getTasks()) {
+            if (task.isItemsLoaded()) {
+                task.setItemsRemoved(false);
+            }
+        }
+    }
+
+    /*
+     * writes the items of a task that changed since last read or written, without encoding the
+     * others, and deletes those removed from the task, collecting the written items
+     */
+    void putItems(Transaction tx, ImportTask task, List<ImportItem> written) {
+        long id = task.getContext().getId();
+
+        for (ImportItem item : task.getItems()) {
+            if (item.isDirty()) {
+                DatabaseEntry val = new DatabaseEntry();
+                itemBinding.itemToEntry(item, val);
+                itemDb.put(tx, itemKey(id, task.getId(), item.getId()), val);
+                written.add(item);
+            }
+        }
+        if (!task.isItemsRemoved()) {
+            return;
+        }
+
+        Set<Long> ids = new HashSet<Long>();
+        for (ImportItem item : task.getItems()) {
+            ids.add(item.getId());
+        }
+
+        Cursor c = itemDb.openCursor(tx, null);
+        try {
+            DatabaseEntry key = itemKey(id, task.getId());
+            DatabaseEntry val = new DatabaseEntry();
+            val.setPartial(0, 0, true);
+            OperationStatus op = c.getSearchKeyRange(key, val, LockMode.RMW);
+            while (op == OperationStatus.SUCCESS && isItemOf(key, id, task.getId())) {
+                TupleInput in = TupleBinding.entryToInput(key);
+                in.readLong();
+                in.readLong();
+                if (!ids.contains(in.readLong())) {
+                    c.delete();
+                }
+                op = c.getNext(key, val, LockMode.RMW);
+            }
+        }
+        finally {
+            c.close();
+        }
+    }
+
+    List<ImportItem> loadItems(ImportTask task) {
+        long id = task.getContext().getId();
+
+        List<ImportItem> items = new ArrayList<ImportItem>();
+        Cursor c = itemDb.openCursor(null, null);
+        try {
+            DatabaseEntry key = itemKey(id, task.getId());
+            DatabaseEntry val = new DatabaseEntry();
+            OperationStatus op = c.getSearchKeyRange(key, val, LockMode.DEFAULT);
+            while (op == OperationStatus.SUCCESS && isItemOf(key, id, task.getId())) {
+                ImportItem item = itemBinding.entryToItem(task, val);
+                item.setDirty(false);
+                items.add(item);
+                op = c.getNext(key, val, LockMode.DEFAULT);
+            }
+        }
+        finally {
+            c.close();
+        }
+        return items;
+    }
+
+    /*
+     * deletes the items of an import, or of one of its tasks
+     */
+    void deleteItems(Transaction tx, long id, Long taskId) {
+        Cursor c = itemDb.openCursor(tx, null);
+        try {
+            DatabaseEntry key = taskId != null ? itemKey(id, taskId) : itemKey(id);
+            DatabaseEntry val = new DatabaseEntry();
+            val.setPartial(0, 0, true);
+            OperationStatus op = c.getSearchKeyRange(key, val, LockMode.RMW);
+            while (op == OperationStatus.SUCCESS && isItemOf(key, id, taskId)) {
+                c.delete();
+                op = c.getNext(key, val, LockMode.RMW);
+            }
+        }
+        finally {
+            c.close();
+        }
+    }
+
+    DatabaseEntry itemKey(long... ids) {
+        TupleOutput out = new TupleOutput();
+        for (long id : ids) {
+            out.writeLong(id);
+        }
+        DatabaseEntry key = new DatabaseEntry();
+        TupleBinding.outputToEntry(out, key);
+        return key;
+    }
+
+    boolean isItemOf(DatabaseEntry key, long id, Long taskId) {
+        TupleInput in = TupleBinding.entryToInput(key);
+        return in.readLong() == id && (taskId == null || in.readLong() == taskId.longValue());
+    }
+
+    DatabaseEntry index(ImportContext context) {
+        DatabaseEntry val = new DatabaseEntry();
+        summaryBinding.objectToEntry(new ImportSummary(context), val);
+        return val;
     }
 
     DatabaseEntry key(ImportContext context) {
@@ -323,17 +883,88 @@ public class BDBImportStore implements ImportStore {
         b[7] = (byte)(0xff & l);
         return b;
     }
+    /**
+     * Cleans the log files of the environment of obsolete records, such as those of removed 
+     * imports, and deletes the log files left empty.
+     * 
+     * @return The number of bytes reclaimed on disk.
+     */
+    public long compact() {
+        Environment env = db.getEnvironment();
+        long size = FileUtils.sizeOfDirectory(env.getHome());
+
+        env.compress();
+        while (env.cleanLog() > 0);
+
+        //cleaned files are deleted on checkpoint
+        CheckpointConfig force = new CheckpointConfig();
+        force.setForce(true);
+        env.checkpoint(force);
+
+        return size - FileUtils.sizeOfDirectory(env.getHome());
+    }
+
     public void destroy() {
         //destroy the db environment
         Environment env = db.getEnvironment();
 
         dbBinding.closeDb(env);
+        closeIndex();
+        itemDb.close();
         seqDb.close();
         db.close();
 
         env.close();
     }
 
+    /**
+     * Binding of summary records, which start with a version byte so fields can be appended.
+     */
+    class SummaryBinding extends TupleBinding<ImportSummary> {
+
+        static final byte VERSION = 2;
+
+        @Override
+        public ImportSummary entryToObject(TupleInput input) {
+            byte version = input.readByte();
+
+            long id = input.readLong();
+            String state = input.readString();
+            String user = input.readString();
+            Date updated = new Date(input.readLong());
+
+            Date created = updated;
+            int taskCount = 0, itemCount = 0;
+            String dataName = null;
+            if (version >= 2) {
+                created = new Date(input.readLong());
+                taskCount = input.readInt();
+                itemCount = input.readInt();
+                dataName = input.readString();
+            }
+
+            return new ImportSummary(id, state != null ? ImportContext.State.valueOf(state) : null,
+                user, created, updated, taskCount, itemCount, dataName, BDBImportStore.this);
+        }
+
+        @Override
+        public void objectToEntry(ImportSummary summary, TupleOutput output) {
+            output.writeByte(VERSION);
+            output.writeLong(summary.getId());
+            output.writeString(summary.getState() != null ? summary.getState().name() : null);
+            output.writeString(summary.getUser());
+            output.writeLong(time(summary.getUpdated()));
+            output.writeLong(time(summary.getCreated()));
+            output.writeInt(summary.getTaskCount());
+            output.writeInt(summary.getItemCount());
+            output.writeString(summary.getDataName());
+        }
+
+        long time(Date date) {
+            return date != null ? date.getTime() : 0;
+        }
+    }
+
     static abstract class ImportBinding {
         void initDb(DatabaseConfig dbConfig, Environment env) {
         }
@@ -383,4 +1014,17 @@ public class BDBImportStore implements ImportStore {
         }
     
     }
+
+    /**
+     * Keeps the class catalog of the serial binding around so that imports stored with either of
+     * the other bindings can still be read, and migrated.
+     */
+    static class BinaryBinding extends SerialImportBinding {
+        @Override
+        protected EntryBinding<ImportContext> createImportBinding(Importer importer) {
+            return new BinaryImportBinding(new ImportCodec(importer), 
+                super.createImportBinding(importer), 
+                new XStreamBinding().createImportBinding(importer));
+        }
+    }
 }
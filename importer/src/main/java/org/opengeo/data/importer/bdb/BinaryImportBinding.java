@@ -0,0 +1,177 @@
+package org.opengeo.data.importer.bdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.opengeo.data.importer.ImportCodec;
+import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportTask;
+
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.util.FastOutputStream;
+
+/**
+ * Binding storing imports in the binary format of {@link ImportCodec}, compressing larger
+ * records with LZF.
+ * <p>
+ * Records start with a two byte magic number and a flags byte. Records lacking the magic number
+ * were written by the xstream binding, when starting with an LZF chunk header, or else by the
+ * serial binding, and are read with those bindings when provided. This allows switching a store
+ * to this binding, see {@link BDBImportStore#setBinding(BDBImportStore.BindingType)}.
+ * </p>
+ * <p>
+ * The binding can also write the items of an import as records of their own, see 
+ * {@link #setItems(boolean, ImportTask.ItemLoader)}.
+ * </p>
+ */
+public class BinaryImportBinding implements EntryBinding<ImportContext> {
+
+    static final byte MAGIC1 = (byte) 0xB1;
+    static final byte MAGIC2 = (byte) 0x1C;
+
+    /** flag marking the record body as compressed */
+    static final byte COMPRESSED = 0x01;
+
+    /** size of record body above which it is compressed */
+    static final int COMPRESS_THRESHOLD = 512;
+
+    ImportCodec codec;
+    EntryBinding<ImportContext> serialBinding;
+    EntryBinding<ImportContext> xstreamBinding;
+    boolean compress = true;
+
+    /** whether items are written along with the import, and the loader of those that are not */
+    boolean items = true;
+    ImportTask.ItemLoader itemLoader;
+
+    public BinaryImportBinding(ImportCodec codec) {
+        this(codec, null, null);
+    }
+
+    public BinaryImportBinding(ImportCodec codec, EntryBinding<ImportContext> serialBinding,
+        EntryBinding<ImportContext> xstreamBinding) {
+        this.codec = codec;
+        this.serialBinding = serialBinding;
+        this.xstreamBinding = xstreamBinding;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Sets whether the items of an import are written along with it, when not they must be 
+     * written separately with {@link #itemToEntry(ImportItem, DatabaseEntry)} and the loader
+     * is set on the tasks of imports read.
+     */
+    public void setItems(boolean items, ImportTask.ItemLoader itemLoader) {
+        this.items = items;
+        this.itemLoader = itemLoader;
+    }
+
+    /**
+     * Determines if the entry holds a record written by this binding, only the first three bytes
+     * of the entry are required.
+     */
+    public static boolean isBinary(DatabaseEntry entry) {
+        byte[] data = entry.getData();
+        int offset = entry.getOffset();
+        return data != null && entry.getSize() >= 3 && data[offset] == MAGIC1 &&
+            data[offset+1] == MAGIC2;
+    }
+
+    static boolean isLZF(DatabaseEntry entry) {
+        byte[] data = entry.getData();
+        int offset = entry.getOffset();
+        return data != null && entry.getSize() >= 2 && data[offset] == 'Z' &&
+            data[offset+1] == 'V';
+    }
+
+    public ImportContext entryToObject(DatabaseEntry entry) {
+        if (!isBinary(entry)) {
+            EntryBinding<ImportContext> binding = isLZF(entry) ? xstreamBinding : serialBinding;
+            if (binding == null) {
+                throw new IllegalArgumentException("Not a binary import record");
+            }
+            return binding.entryToObject(entry);
+        }
+
+        try {
+            return codec.decode(read(entry), itemLoader);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void objectToEntry(ImportContext context, DatabaseEntry entry) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+        try {
+            codec.encode(context, body, items);
+            write(body, entry);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads a single item record, the item belonging to the specified task.
+     */
+    public ImportItem entryToItem(ImportTask task, DatabaseEntry entry) {
+        try {
+            return codec.decode(task, read(entry));
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes a single item record.
+     */
+    public void itemToEntry(ImportItem item, DatabaseEntry entry) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+        try {
+            codec.encode(item, body);
+            write(body, entry);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    InputStream read(DatabaseEntry entry) throws IOException {
+        byte[] data = entry.getData();
+        int offset = entry.getOffset();
+        InputStream in = new ByteArrayInputStream(data, offset + 3, entry.getSize() - 3);
+        if ((data[offset+2] & COMPRESSED) != 0) {
+            in = new LZFInputStream(in);
+        }
+        return in;
+    }
+
+    void write(ByteArrayOutputStream body, DatabaseEntry entry) throws IOException {
+        boolean compressed = compress && body.size() > COMPRESS_THRESHOLD;
+        FastOutputStream out = new FastOutputStream(body.size() + 3);
+        out.writeFast(MAGIC1);
+        out.writeFast(MAGIC2);
+        out.writeFast(compressed ? COMPRESSED : 0);
+        if (compressed) {
+            LZFOutputStream lzf = new LZFOutputStream(out);
+            body.writeTo(lzf);
+            lzf.close();
+        }
+        else {
+            body.writeTo(out);
+        }
+
+        entry.setData(out.getBufferBytes(), 0, out.getBufferLength());
+    }
+}
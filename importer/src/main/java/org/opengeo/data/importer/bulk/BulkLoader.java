@@ -0,0 +1,125 @@
+package org.opengeo.data.importer.bulk;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.platform.ExtensionPriority;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.jdbc.AutoGeneratedPrimaryKeyColumn;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.JDBCFeatureSource;
+import org.geotools.jdbc.JDBCFeatureStore;
+import org.geotools.jdbc.PrimaryKey;
+import org.geotools.jdbc.PrimaryKeyColumn;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Extension point for writing features into a database faster than the one insert per feature
+ * issued by a {@link JDBCDataStore} feature writer.
+ * <p>
+ * Loaders are looked up with {@link GeoServerExtensions} and are tried in order of
+ * {@link ExtensionPriority}, an indirect import falls back to the regular feature writer of the
+ * target store when none of them can load into it.
+ * </p>
+ */
+public abstract class BulkLoader implements ExtensionPriority {
+
+    static Logger LOGGER = Logging.getLogger(BulkLoader.class);
+
+    /**
+     * number of features sent to the database at once
+     */
+    int batchSize = 1000;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getPriority() {
+        return ExtensionPriority.LOWEST;
+    }
+
+    /**
+     * Determines if the loader can append features to the specified type.
+     */
+    public abstract boolean canLoad(JDBCDataStore dataStore, String typeName) throws IOException;
+
+    /**
+     * Creates a writer appending features to the specified type.
+     * <p>
+     * Writes are sent to the database in batches, only as part of <tt>tx</tt>. Callers must
+     * {@link BulkWriter#flush()} before committing.
+     * </p>
+     */
+    public abstract BulkWriter createWriter(JDBCDataStore dataStore, String typeName,
+        Transaction tx) throws IOException;
+
+    /**
+     * Looks up the first loader able to load into the specified type, returning
+     * <code>null</code> if there is no such loader.
+     */
+    public static BulkLoader lookup(JDBCDataStore dataStore, String typeName) {
+        List<BulkLoader> loaders = GeoServerExtensions.extensions(BulkLoader.class);
+        for (BulkLoader loader : loaders) {
+            try {
+                if (loader.canLoad(dataStore, typeName)) {
+                    return loader;
+                }
+            }
+            catch(Exception e) {
+                LOGGER.log(Level.FINE, "Error checking loader " + loader, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the primary key of the type.
+     */
+    protected PrimaryKey primaryKey(JDBCDataStore dataStore, String typeName) throws IOException {
+        SimpleFeatureSource source = dataStore.getFeatureSource(typeName);
+        if (source instanceof JDBCFeatureStore) {
+            return ((JDBCFeatureStore)source).getPrimaryKey();
+        }
+        if (source instanceof JDBCFeatureSource) {
+            return ((JDBCFeatureSource)source).getPrimaryKey();
+        }
+        return null;
+    }
+
+    /**
+     * Determines if the database fills in all columns of the primary key of the type on insert.
+     */
+    protected boolean isKeyGenerated(PrimaryKey key, Class... generated) {
+        if (key == null) {
+            return false;
+        }
+
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            if (!isGenerated(col, generated)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isGenerated(PrimaryKeyColumn col, Class... generated) {
+        if (col instanceof AutoGeneratedPrimaryKeyColumn) {
+            return true;
+        }
+        for (Class clazz : generated) {
+            if (clazz.isInstance(col)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,162 @@
+package org.opengeo.data.importer.bulk;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PrimaryKey;
+import org.geotools.jdbc.PrimaryKeyColumn;
+import org.geotools.referencing.CRS;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Append only feature writer that queues written features and sends them to the database in
+ * batches.
+ * <p>
+ * Features are sent once <tt>batchSize</tt> of them are queued or when {@link #flush()} is
+ * called, which must happen before the transaction of the writer is committed. Features still
+ * queued when the writer is closed are discarded.
+ * </p>
+ */
+public abstract class BulkWriter implements FeatureWriter<SimpleFeatureType, SimpleFeature> {
+
+    protected JDBCDataStore dataStore;
+    protected SimpleFeatureType featureType;
+    protected Connection cx;
+
+    /** attributes written, those mapped to primary key columns are left to the database */
+    protected List<AttributeDescriptor> columns;
+
+    int batchSize;
+    int pending;
+    SimpleFeature current;
+
+    protected BulkWriter(JDBCDataStore dataStore, String typeName, PrimaryKey key, Transaction tx,
+        int batchSize) throws IOException {
+        this.dataStore = dataStore;
+        this.featureType = dataStore.getSchema(typeName);
+        this.batchSize = Math.max(1, batchSize);
+
+        columns = new ArrayList<AttributeDescriptor>();
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            if (!isKeyColumn(att.getLocalName(), key)) {
+                columns.add(att);
+            }
+        }
+
+        cx = dataStore.getConnection(tx);
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        return false;
+    }
+
+    public SimpleFeature next() throws IOException {
+        current = SimpleFeatureBuilder.build(featureType,
+            new Object[featureType.getAttributeCount()], featureType.getTypeName() + ".new");
+        return current;
+    }
+
+    public void remove() throws IOException {
+        throw new UnsupportedOperationException("Bulk writers only append");
+    }
+
+    public void write() throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("next() must be called before write()");
+        }
+        add(current);
+        current = null;
+
+        if (++pending >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends queued features to the database.
+     */
+    public void flush() throws IOException {
+        if (pending > 0) {
+            send();
+            pending = 0;
+        }
+    }
+
+    /**
+     * Queues a feature.
+     */
+    protected abstract void add(SimpleFeature feature) throws IOException;
+
+    /**
+     * Sends all queued features.
+     */
+    protected abstract void send() throws IOException;
+
+    /**
+     * Encodes the qualified name of the table being loaded.
+     */
+    protected void encodeTableName(StringBuffer sql) {
+        String ne = dataStore.getSQLDialect().getNameEscape();
+        if (dataStore.getDatabaseSchema() != null) {
+            sql.append(ne).append(dataStore.getDatabaseSchema()).append(ne).append(".");
+        }
+        sql.append(ne).append(featureType.getTypeName()).append(ne);
+    }
+
+    /**
+     * Encodes the names of the columns being loaded as a comma separated list.
+     */
+    protected void encodeColumnNames(StringBuffer sql) {
+        String ne = dataStore.getSQLDialect().getNameEscape();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(",");
+            }
+            sql.append(ne).append(columns.get(i).getLocalName()).append(ne);
+        }
+    }
+
+    /**
+     * Determines the srid of a geometry column the same way the data store does.
+     */
+    protected int srid(AttributeDescriptor att) {
+        Integer srid = (Integer) att.getUserData().get(JDBCDataStore.JDBC_NATIVE_SRID);
+        if (srid != null) {
+            return srid;
+        }
+
+        CoordinateReferenceSystem crs = ((GeometryDescriptor)att).getCoordinateReferenceSystem();
+        if (crs != null) {
+            try {
+                srid = CRS.lookupEpsgCode(crs, false);
+            }
+            catch(Exception e) {}
+        }
+        return srid != null ? srid : -1;
+    }
+
+    boolean isKeyColumn(String name, PrimaryKey key) {
+        if (key != null) {
+            for (PrimaryKeyColumn col : key.getColumns()) {
+                if (col.getName().equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
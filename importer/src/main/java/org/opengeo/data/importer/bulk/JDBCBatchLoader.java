@@ -0,0 +1,35 @@
+package org.opengeo.data.importer.bulk;
+
+import java.io.IOException;
+
+import org.geotools.data.Transaction;
+import org.geotools.jdbc.BasicSQLDialect;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PreparedStatementSQLDialect;
+import org.geotools.jdbc.SQLDialect;
+
+/**
+ * Bulk loader that sends inserts as JDBC batches, through a prepared statement when the
+ * dialect of the store supports them or as literal statements otherwise.
+ * <p>
+ * Works with any database that generates the primary key of the target table, H2 included.
+ * </p>
+ */
+public class JDBCBatchLoader extends BulkLoader {
+
+    @Override
+    public boolean canLoad(JDBCDataStore dataStore, String typeName) throws IOException {
+        SQLDialect dialect = dataStore.getSQLDialect();
+        if (!(dialect instanceof PreparedStatementSQLDialect || dialect instanceof BasicSQLDialect)) {
+            return false;
+        }
+        return isKeyGenerated(primaryKey(dataStore, typeName));
+    }
+
+    @Override
+    public BulkWriter createWriter(JDBCDataStore dataStore, String typeName, Transaction tx)
+        throws IOException {
+        return new JDBCBatchWriter(dataStore, typeName, primaryKey(dataStore, typeName), tx,
+            batchSize);
+    }
+}
@@ -0,0 +1,156 @@
+package org.opengeo.data.importer.bulk;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.geotools.data.Transaction;
+import org.geotools.jdbc.BasicSQLDialect;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PreparedStatementSQLDialect;
+import org.geotools.jdbc.PrimaryKey;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Bulk writer queueing inserts with {@link Statement#addBatch(String)} or
+ * {@link PreparedStatement#addBatch()}.
+ */
+public class JDBCBatchWriter extends BulkWriter {
+
+    PreparedStatementSQLDialect psDialect;
+    BasicSQLDialect basicDialect;
+
+    /** srid of each column, -1 for non geometric columns */
+    int[] srids;
+
+    String insert;
+    Statement st;
+    PreparedStatement ps;
+
+    public JDBCBatchWriter(JDBCDataStore dataStore, String typeName, PrimaryKey key, Transaction tx,
+        int batchSize) throws IOException {
+        super(dataStore, typeName, key, tx, batchSize);
+
+        srids = new int[columns.size()];
+        for (int i = 0; i < srids.length; i++) {
+            AttributeDescriptor att = columns.get(i);
+            srids[i] = att instanceof GeometryDescriptor ? srid(att) : -1;
+        }
+
+        StringBuffer sql = new StringBuffer("INSERT INTO ");
+        encodeTableName(sql);
+        sql.append(" (");
+        encodeColumnNames(sql);
+        sql.append(") VALUES ");
+
+        try {
+            if (dataStore.getSQLDialect() instanceof PreparedStatementSQLDialect) {
+                psDialect = (PreparedStatementSQLDialect) dataStore.getSQLDialect();
+                sql.append("(");
+
+                //dialects may wrap the parameter in a function, unless the value is null
+                Geometry g = new GeometryFactory().createGeometryCollection(null);
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) {
+                        sql.append(",");
+                    }
+                    AttributeDescriptor att = columns.get(i);
+                    if (att instanceof GeometryDescriptor) {
+                        psDialect.prepareGeometryValue(g, srids[i], att.getType().getBinding(), sql);
+                    }
+                    else {
+                        sql.append("?");
+                    }
+                }
+                sql.append(")");
+                ps = cx.prepareStatement(sql.toString());
+            }
+            else {
+                basicDialect = (BasicSQLDialect) dataStore.getSQLDialect();
+                insert = sql.toString();
+                st = cx.createStatement();
+            }
+        }
+        catch(SQLException e) {
+            throw (IOException) new IOException("Unable to prepare insert").initCause(e);
+        }
+    }
+
+    @Override
+    protected void add(SimpleFeature feature) throws IOException {
+        try {
+            if (ps != null) {
+                for (int i = 0; i < columns.size(); i++) {
+                    AttributeDescriptor att = columns.get(i);
+                    Object value = feature.getAttribute(att.getLocalName());
+                    Class binding = att.getType().getBinding();
+                    if (att instanceof GeometryDescriptor) {
+                        psDialect.setGeometryValue((Geometry) value, srids[i], binding, ps, i+1);
+                    }
+                    else {
+                        psDialect.setValue(value, binding, ps, i+1, cx);
+                    }
+                }
+                ps.addBatch();
+            }
+            else {
+                StringBuffer sql = new StringBuffer(insert).append("(");
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) {
+                        sql.append(",");
+                    }
+                    AttributeDescriptor att = columns.get(i);
+                    Object value = feature.getAttribute(att.getLocalName());
+                    if (value == null) {
+                        sql.append("NULL");
+                    }
+                    else if (att instanceof GeometryDescriptor) {
+                        basicDialect.encodeGeometryValue((Geometry) value, srids[i], sql);
+                    }
+                    else {
+                        basicDialect.encodeValue(value, att.getType().getBinding(), sql);
+                    }
+                }
+                sql.append(")");
+                st.addBatch(sql.toString());
+            }
+        }
+        catch(SQLException e) {
+            throw (IOException) new IOException("Unable to queue insert").initCause(e);
+        }
+    }
+
+    @Override
+    protected void send() throws IOException {
+        try {
+            if (ps != null) {
+                ps.executeBatch();
+            }
+            else {
+                st.executeBatch();
+            }
+        }
+        catch(SQLException e) {
+            //the cause of a batch failure is usually chained on the exception
+            SQLException cause = e.getNextException() != null ? e.getNextException() : e;
+            throw (IOException) new IOException("Error inserting batch: " + cause.getMessage())
+                .initCause(e);
+        }
+    }
+
+    public void close() throws IOException {
+        //the connection belongs to the transaction, only release the statement
+        if (ps != null) {
+            dataStore.closeSafe(ps);
+        }
+        if (st != null) {
+            dataStore.closeSafe(st);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.opengeo.data.importer.bulk;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.Date;
+
+import org.geoserver.platform.ExtensionPriority;
+import org.geotools.data.Transaction;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
+import org.geotools.data.jdbc.datasource.UnWrapper;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.SequencedPrimaryKeyColumn;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Bulk loader streaming features into PostGIS with <tt>COPY ... FROM STDIN</tt>.
+ * <p>
+ * The PostgreSQL driver is accessed reflectively so the loader only applies when it is
+ * present, and only for types whose attributes all have a text representation COPY accepts.
+ * </p>
+ */
+public class PostgisCopyLoader extends BulkLoader {
+
+    static final String PG_CONNECTION = "org.postgresql.PGConnection";
+
+    @Override
+    public int getPriority() {
+        return ExtensionPriority.HIGHEST;
+    }
+
+    @Override
+    public boolean canLoad(JDBCDataStore dataStore, String typeName) throws IOException {
+        // sniff for postgis, the dialect is not on the classpath at build time
+        if (!dataStore.getSQLDialect().getClass().getSimpleName().startsWith("PostGIS")) {
+            return false;
+        }
+        try {
+            Class.forName(PG_CONNECTION);
+        }
+        catch(ClassNotFoundException e) {
+            return false;
+        }
+
+        SimpleFeatureType featureType = dataStore.getSchema(typeName);
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            if (!(att instanceof GeometryDescriptor) && !isCopyable(att.getType().getBinding())) {
+                return false;
+            }
+        }
+
+        //serial columns are sequenced, the sequence is the default of the column
+        return isKeyGenerated(primaryKey(dataStore, typeName), SequencedPrimaryKeyColumn.class);
+    }
+
+    boolean isCopyable(Class binding) {
+        return String.class.equals(binding) || Number.class.isAssignableFrom(binding)
+            || Boolean.class.equals(binding) || Date.class.isAssignableFrom(binding)
+            || Character.class.equals(binding);
+    }
+
+    @Override
+    public BulkWriter createWriter(JDBCDataStore dataStore, String typeName, Transaction tx)
+        throws IOException {
+        return new PostgisCopyWriter(dataStore, typeName, primaryKey(dataStore, typeName), tx,
+            batchSize);
+    }
+
+    /**
+     * Obtains the copy manager of a driver connection, possibly wrapped by a connection pool.
+     */
+    static Object copyManager(Connection cx) throws Exception {
+        Class pgConnection = Class.forName(PG_CONNECTION);
+
+        Connection pg = null;
+        if (cx.isWrapperFor(pgConnection)) {
+            pg = (Connection) cx.unwrap(pgConnection);
+        }
+        else {
+            UnWrapper unwrapper = DataSourceFinder.getUnWrapper(cx);
+            if (unwrapper != null) {
+                pg = unwrapper.unwrap(cx);
+            }
+        }
+
+        if (!pgConnection.isInstance(pg)) {
+            throw new IllegalStateException("Unable to obtain PostgreSQL connection from " + cx);
+        }
+        return pgConnection.getMethod("getCopyAPI").invoke(pg);
+    }
+}
@@ -0,0 +1,188 @@
+package org.opengeo.data.importer.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.geotools.data.Transaction;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PrimaryKey;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Bulk writer queueing rows in the text format of <tt>COPY</tt>, geometries being encoded as
+ * hex EWKB.
+ * <p>
+ * Timestamps are written in ISO 8601 with the offset of the JVM time zone, so that the column
+ * type decides, as with other writers, rather than the time zone of the database session:
+ * <tt>timestamp</tt> columns get the local time and <tt>timestamptz</tt> columns the instant.
+ * </p>
+ */
+public class PostgisCopyWriter extends BulkWriter {
+
+    /** flag of the geometry type of ewkb telling that the srid follows */
+    static final int EWKB_SRID_FLAG = 0x20000000;
+
+    String copy;
+    int[] srids;
+    StringBuilder rows = new StringBuilder();
+    WKBWriter wkbWriter = new WKBWriter(2, true);
+    WKBWriter plainWkbWriter = new WKBWriter(2);
+    DateFormat timestampFormat = timestampFormat();
+
+    Object copyManager;
+    Method copyIn;
+
+    public PostgisCopyWriter(JDBCDataStore dataStore, String typeName, PrimaryKey key,
+        Transaction tx, int batchSize) throws IOException {
+        super(dataStore, typeName, key, tx, batchSize);
+
+        srids = new int[columns.size()];
+        for (int i = 0; i < srids.length; i++) {
+            AttributeDescriptor att = columns.get(i);
+            srids[i] = att instanceof GeometryDescriptor ? srid(att) : -1;
+        }
+
+        StringBuffer sql = new StringBuffer("COPY ");
+        encodeTableName(sql);
+        sql.append(" (");
+        encodeColumnNames(sql);
+        sql.append(") FROM STDIN");
+        copy = sql.toString();
+
+        try {
+            copyManager = PostgisCopyLoader.copyManager(cx);
+            copyIn = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+        }
+        catch(Exception e) {
+            throw (IOException) new IOException("Unable to obtain copy manager").initCause(e);
+        }
+    }
+
+    @Override
+    protected void add(SimpleFeature feature) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                rows.append('\t');
+            }
+            Object value = feature.getAttribute(columns.get(i).getLocalName());
+            if (value == null) {
+                rows.append("\\N");
+            }
+            else if (value instanceof Geometry) {
+                //the srid of the column is set in the encoding, not on the geometry of the caller
+                Geometry g = (Geometry) value;
+                byte[] wkb = srids[i] > 0 ? 
+                    ewkb(plainWkbWriter.write(g), srids[i]) : wkbWriter.write(g);
+                rows.append(WKBWriter.toHex(wkb));
+            }
+            else {
+                escape(text(value, timestampFormat), rows);
+            }
+        }
+        rows.append('\n');
+    }
+
+    @Override
+    protected void send() throws IOException {
+        try {
+            copyIn.invoke(copyManager, copy, new StringReader(rows.toString()));
+        }
+        catch(InvocationTargetException e) {
+            throw (IOException) new IOException("Error copying batch: " +
+                e.getTargetException().getMessage()).initCause(e.getTargetException());
+        }
+        catch(Exception e) {
+            throw (IOException) new IOException("Error copying batch").initCause(e);
+        }
+        finally {
+            rows.setLength(0);
+        }
+    }
+
+    public void close() throws IOException {
+        //the connection belongs to the transaction, nothing to release
+        rows.setLength(0);
+    }
+
+    static DateFormat timestampFormat() {
+        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    }
+
+    static String text(Object value, DateFormat timestampFormat) {
+        if (value instanceof Date && !(value instanceof java.sql.Date
+            || value instanceof java.sql.Time)) {
+            return timestamp((Date) value, timestampFormat);
+        }
+        return value.toString();
+    }
+
+    /*
+     * ISO 8601 timestamp with microseconds, the precision of postgres, and the offset of the
+     * time zone of the format
+     */
+    static String timestamp(Date date, DateFormat format) {
+        long micros = date instanceof Timestamp ? ((Timestamp) date).getNanos() / 1000 :
+            ((date.getTime() % 1000 + 1000) % 1000) * 1000;
+        int offset = format.getTimeZone().getOffset(date.getTime()) / 60000;
+
+        StringBuilder buf = new StringBuilder(format.format(date));
+        buf.append('.').append(pad(micros, 6));
+        buf.append(offset < 0 ? '-' : '+');
+        offset = Math.abs(offset);
+        buf.append(pad(offset / 60, 2)).append(':').append(pad(offset % 60, 2));
+        return buf.toString();
+    }
+
+    static String pad(long value, int digits) {
+        String s = String.valueOf(value);
+        while (s.length() < digits) {
+            s = "0" + s;
+        }
+        return s;
+    }
+
+    /*
+     * turns wkb into ewkb with the specified srid, inserting the srid after the geometry type
+     */
+    static byte[] ewkb(byte[] wkb, int srid) {
+        int byteOrder = wkb[0] == 0 ? ByteOrderValues.BIG_ENDIAN : ByteOrderValues.LITTLE_ENDIAN;
+        byte[] buf = new byte[4];
+        System.arraycopy(wkb, 1, buf, 0, 4);
+        int type = ByteOrderValues.getInt(buf, byteOrder);
+
+        byte[] ewkb = new byte[wkb.length + 4];
+        ewkb[0] = wkb[0];
+        ByteOrderValues.putInt(type | EWKB_SRID_FLAG, buf, byteOrder);
+        System.arraycopy(buf, 0, ewkb, 1, 4);
+        ByteOrderValues.putInt(srid, buf, byteOrder);
+        System.arraycopy(buf, 0, ewkb, 5, 4);
+        System.arraycopy(wkb, 5, ewkb, 9, wkb.length - 5);
+        return ewkb;
+    }
+
+    static void escape(String text, StringBuilder buf) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch(c) {
+            case '\\': buf.append("\\\\"); break;
+            case '\t': buf.append("\\t"); break;
+            case '\n': buf.append("\\n"); break;
+            case '\r': buf.append("\\r"); break;
+            default: buf.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,803 @@
+package org.opengeo.data.importer.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.geotools.util.logging.Logging;
+import org.opengeo.data.importer.ImportCodec;
+import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportQuery;
+import org.opengeo.data.importer.ImportSummary;
+import org.opengeo.data.importer.ImportTask;
+import org.opengeo.data.importer.Importer;
+import org.opengeo.data.importer.LeasingImportStore;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Import store persisting imports in a relational database, so that they can be shared by
+ * several GeoServer instances.
+ * <p>
+ * Imports are stored one per row in the binary format of {@link ImportCodec}, along with the
+ * columns of their summary, which queries and listings read without loading the imports. Ids are
+ * handed out from a counter row locked while being advanced. The tables are created on
+ * {@link #init()} if missing, the statements used are understood by both H2 and PostgreSQL.
+ * </p>
+ * <p>
+ * Leases are held in the rows of the imports and granted with conditional updates, the lease
+ * expiries being computed from the clocks of the instances, which are expected to be roughly in
+ * sync. The row of a leased import is only updated by the owner of the lease, saving an import
+ * leased by another instance fails with an {@link IllegalStateException}.
+ * </p>
+ */
+public class JDBCImportStore implements LeasingImportStore {
+
+    static Logger LOGGER = Logging.getLogger(Importer.class);
+
+    static final String IMPORTS = "import_context";
+    static final String SEQUENCE = "import_sequence";
+
+    /** columns of the summary of an import */
+    static final String SUMMARY =
+        "id, state, username, created, updated, task_count, item_count, data_name";
+
+    Importer importer;
+    ImportCodec codec;
+
+    DataSource dataSource;
+    boolean ownDataSource;
+
+    /** type of the column holding the encoded imports */
+    String binaryType = "BYTEA";
+
+    /** leases held through this store, by import id */
+    Map<Long,Lease> leases = new ConcurrentHashMap<Long, Lease>();
+
+    public JDBCImportStore(Importer importer) {
+        this(importer, null);
+    }
+
+    public JDBCImportStore(Importer importer, DataSource dataSource) {
+        this.importer = importer;
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public String getBinaryType() {
+        return binaryType;
+    }
+
+    /**
+     * Sets the type of the column holding the encoded imports when creating the tables,
+     * <tt>BYTEA</tt> by default.
+     */
+    public void setBinaryType(String binaryType) {
+        this.binaryType = binaryType;
+    }
+
+    /**
+     * Creates a data source, used when none is set, from the specified connection parameters.
+     * When no url is specified an H2 database under the import root is used.
+     */
+    public void setConnection(String driver, String url, String user, String password) {
+        BasicDataSource ds = new BasicDataSource();
+        if (url == null) {
+            driver = driver != null ? driver : "org.h2.Driver";
+            url = "jdbc:h2:" + new File(new File(importer.getImportRoot(), "jdbc"), "imports")
+                .getAbsolutePath();
+        }
+        if (driver != null) {
+            ds.setDriverClassName(driver);
+        }
+        ds.setUrl(url);
+        ds.setUsername(user);
+        ds.setPassword(password);
+        ds.setDefaultAutoCommit(true);
+
+        dataSource = ds;
+        ownDataSource = true;
+    }
+
+    public void init() {
+        if (dataSource == null) {
+            setConnection(null, null, null, null);
+        }
+        codec = new ImportCodec(importer);
+
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                createTables(cx);
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to initialize import tables", e);
+        }
+    }
+
+    void createTables(Connection cx) throws SQLException {
+        if (!tableExists(cx, IMPORTS)) {
+            Statement st = cx.createStatement();
+            try {
+                st.execute("CREATE TABLE " + IMPORTS + " (id BIGINT NOT NULL PRIMARY KEY, " +
+                    "state VARCHAR(32), username VARCHAR(255), created BIGINT, updated BIGINT, " +
+                    "task_count INTEGER, item_count INTEGER, data_name VARCHAR(1024), " +
+                    "lease_owner VARCHAR(255), lease_expires BIGINT, queued BIGINT, " +
+                    "data " + binaryType + ")");
+                st.execute("CREATE INDEX " + IMPORTS + "_state ON " + IMPORTS + " (state)");
+                st.execute("CREATE INDEX " + IMPORTS + "_queued ON " + IMPORTS + " (queued)");
+                st.execute("CREATE INDEX " + IMPORTS + "_user ON " + IMPORTS + " (username)");
+                st.execute("CREATE INDEX " + IMPORTS + "_updated ON " + IMPORTS + " (updated)");
+            }
+            catch(SQLException e) {
+                //another instance may have created it in the meantime
+                if (!tableExists(cx, IMPORTS)) {
+                    throw e;
+                }
+            }
+            finally {
+                st.close();
+            }
+        }
+
+        if (!tableExists(cx, SEQUENCE)) {
+            Statement st = cx.createStatement();
+            try {
+                st.execute("CREATE TABLE " + SEQUENCE + " (name VARCHAR(64) NOT NULL " +
+                    "PRIMARY KEY, next_id BIGINT NOT NULL)");
+                st.execute("INSERT INTO " + SEQUENCE + " VALUES ('import_id', 0)");
+            }
+            catch(SQLException e) {
+                if (!tableExists(cx, SEQUENCE)) {
+                    throw e;
+                }
+            }
+            finally {
+                st.close();
+            }
+        }
+    }
+
+    boolean tableExists(Connection cx, String table) throws SQLException {
+        DatabaseMetaData md = cx.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            ResultSet rs = md.getTables(null, null, name, new String[]{"TABLE"});
+            try {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+            finally {
+                rs.close();
+            }
+        }
+        return false;
+    }
+
+    public Long advanceId(Long id) {
+        assert id != null;
+        return nextId(id);
+    }
+
+    /*
+     * hands out the next id, or the proposed one if not already handed out, locking the counter
+     * row until committed
+     */
+    long nextId(Long proposed) {
+        try {
+            Connection cx = begin();
+            try {
+                long next;
+                PreparedStatement ps = cx.prepareStatement("SELECT next_id FROM " + SEQUENCE +
+                    " WHERE name = 'import_id' FOR UPDATE");
+                try {
+                    ResultSet rs = ps.executeQuery();
+                    rs.next();
+                    next = rs.getLong(1);
+                    rs.close();
+                }
+                finally {
+                    ps.close();
+                }
+
+                long id = proposed != null && proposed.longValue() > next ? proposed : next;
+                ps = cx.prepareStatement(
+                    "UPDATE " + SEQUENCE + " SET next_id = ? WHERE name = 'import_id'");
+                try {
+                    ps.setLong(1, id + 1);
+                    ps.executeUpdate();
+                }
+                finally {
+                    ps.close();
+                }
+
+                cx.commit();
+                return id;
+            }
+            catch(SQLException e) {
+                cx.rollback();
+                throw e;
+            }
+            finally {
+                end(cx);
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to advance import id", e);
+        }
+    }
+
+    public ImportContext get(long id) {
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                PreparedStatement ps =
+                    cx.prepareStatement("SELECT data FROM " + IMPORTS + " WHERE id = ?");
+                try {
+                    ps.setLong(1, id);
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        return rs.next() ? decode(rs.getBytes(1)) : null;
+                    }
+                    finally {
+                        rs.close();
+                    }
+                }
+                finally {
+                    ps.close();
+                }
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to load import " + id, e);
+        }
+    }
+
+    public ImportItem getItem(long contextId, long taskId, long itemId) {
+        ImportContext context = get(contextId);
+        ImportTask task = context != null ? context.task(taskId) : null;
+        return task != null ? task.item(itemId) : null;
+    }
+
+    public void add(ImportContext context) {
+        context.setId(nextId(null));
+        put(context);
+    }
+
+    public void save(ImportContext context) {
+        if (context.getId() == null) {
+            add(context);
+        }
+        else {
+            put(context);
+        }
+    }
+
+    public void save(ImportItem item) {
+        save(item.getTask().getContext());
+    }
+
+    void put(ImportContext context) {
+        byte[] data = encode(context);
+        ImportSummary summary = new ImportSummary(context);
+        Lease lease = leases.get(context.getId());
+        String owner = lease != null ? lease.owner : importer.getNodeId();
+
+        try {
+            Connection cx = begin();
+            try {
+                //only the owner of the lease, if any, updates the import
+                PreparedStatement ps = cx.prepareStatement("UPDATE " + IMPORTS + " SET state = ?, "
+                    + "username = ?, created = ?, updated = ?, task_count = ?, item_count = ?, "
+                    + "data_name = ?, data = ? WHERE id = ? AND (lease_owner IS NULL OR "
+                    + "lease_owner = ? OR lease_expires < ?)");
+                int updated;
+                try {
+                    setSummary(ps, summary, 1);
+                    ps.setBytes(8, data);
+                    ps.setLong(9, context.getId());
+                    ps.setString(10, owner);
+                    ps.setLong(11, System.currentTimeMillis());
+                    updated = ps.executeUpdate();
+                }
+                finally {
+                    ps.close();
+                }
+
+                if (updated == 0) {
+                    String leaseOwner = lockedBy(cx, context.getId());
+                    if (leaseOwner != null) {
+                        throw new IllegalStateException("Import " + context.getId() + 
+                            " is being run by " + leaseOwner);
+                    }
+
+                    ps = cx.prepareStatement("INSERT INTO " + IMPORTS + " (state, username, " +
+                        "created, updated, task_count, item_count, data_name, data, id) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                    try {
+                        setSummary(ps, summary, 1);
+                        ps.setBytes(8, data);
+                        ps.setLong(9, context.getId());
+                        ps.executeUpdate();
+                    }
+                    finally {
+                        ps.close();
+                    }
+                }
+
+                if (lease != null) {
+                    //extend the lease held through this store
+                    ps = cx.prepareStatement("UPDATE " + IMPORTS + " SET lease_expires = ? " +
+                        "WHERE id = ? AND lease_owner = ?");
+                    try {
+                        ps.setLong(1, System.currentTimeMillis() + lease.duration);
+                        ps.setLong(2, context.getId());
+                        ps.setString(3, lease.owner);
+                        ps.executeUpdate();
+                    }
+                    finally {
+                        ps.close();
+                    }
+                }
+                cx.commit();
+            }
+            catch(SQLException e) {
+                cx.rollback();
+                throw e;
+            }
+            catch(RuntimeException e) {
+                cx.rollback();
+                throw e;
+            }
+            finally {
+                end(cx);
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to save import " + context.getId(), e);
+        }
+    }
+
+    /*
+     * the owner of the lease on an existing import, locking its row, or null if the import does
+     * not exist
+     */
+    String lockedBy(Connection cx, long id) throws SQLException {
+        PreparedStatement ps = cx.prepareStatement(
+            "SELECT lease_owner FROM " + IMPORTS + " WHERE id = ? FOR UPDATE");
+        try {
+            ps.setLong(1, id);
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (!rs.next()) {
+                    return null;
+                }
+                String owner = rs.getString(1);
+                return owner != null ? owner : "another instance";
+            }
+            finally {
+                rs.close();
+            }
+        }
+        finally {
+            ps.close();
+        }
+    }
+
+    void setSummary(PreparedStatement ps, ImportSummary summary, int i) throws SQLException {
+        ps.setString(i++, summary.getState() != null ? summary.getState().name() : null);
+        ps.setString(i++, summary.getUser());
+        setTime(ps, i++, summary.getCreated());
+        setTime(ps, i++, summary.getUpdated());
+        ps.setInt(i++, summary.getTaskCount());
+        ps.setInt(i++, summary.getItemCount());
+        ps.setString(i++, summary.getDataName());
+    }
+
+    void setTime(PreparedStatement ps, int i, Date date) throws SQLException {
+        if (date != null) {
+            ps.setLong(i, date.getTime());
+        }
+        else {
+            ps.setNull(i, Types.BIGINT);
+        }
+    }
+
+    public void remove(ImportContext importContext) {
+        if (importContext.getId() == null) {
+            return;
+        }
+        leases.remove(importContext.getId());
+        update("DELETE FROM " + IMPORTS + " WHERE id = ?", importContext.getId());
+    }
+
+    public void removeAll() {
+        leases.clear();
+        update("DELETE FROM " + IMPORTS);
+    }
+
+    public Iterator<ImportContext> iterator() {
+        return query(new ImportQuery());
+    }
+
+    /**
+     * Supports sorting by <tt>updated</tt>, most recently updated first.
+     */
+    public Iterator<ImportContext> iterator(String sortBy) {
+        if (sortBy == null) {
+            return iterator();
+        }
+        if ("updated".equals(sortBy)) {
+            ImportQuery q = new ImportQuery();
+            q.setSortBy(ImportQuery.SortBy.UPDATED);
+            return query(q);
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    public Iterator<ImportContext> allNonCompleteImports() {
+        return query(ImportQuery.nonComplete());
+    }
+
+    public Iterator<ImportContext> importsByUser(String user) {
+        ImportQuery q = ImportQuery.nonComplete();
+        q.setUser(user);
+        return query(q);
+    }
+
+    /**
+     * Loads the page of imports selected by the query as the returned iterator reaches them.
+     */
+    public Iterator<ImportContext> query(ImportQuery query) {
+        final Iterator<ImportSummary> summaries = summaries(query);
+        return new AbstractIterator<ImportContext>() {
+            @Override
+            protected ImportContext computeNext() {
+                while (summaries.hasNext()) {
+                    //may have been removed since the summary was read
+                    ImportContext context = summaries.next().getContext();
+                    if (context != null) {
+                        return context;
+                    }
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * Selects the page of summaries in the database, filtering, sorting and paging being left to
+     * it.
+     */
+    public Iterator<ImportSummary> summaries(ImportQuery query) {
+        List<Object> params = new ArrayList<Object>();
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(SUMMARY).append(" FROM ")
+            .append(IMPORTS).append(" WHERE 1 = 1");
+        if (query.getStates() != null) {
+            if (query.getStates().isEmpty()) {
+                return new ArrayList<ImportSummary>().iterator();
+            }
+            sql.append(" AND state IN (");
+            for (ImportContext.State state : query.getStates()) {
+                sql.append("?,");
+                params.add(state.name());
+            }
+            sql.setCharAt(sql.length()-1, ')');
+        }
+        if (query.getUser() != null) {
+            sql.append(" AND username = ?");
+            params.add(query.getUser());
+        }
+        sql.append(query.getSortBy() == ImportQuery.SortBy.UPDATED ?
+            " ORDER BY updated DESC, id DESC" : " ORDER BY id");
+
+        int skip = query.getOffset();
+        if (query.getLimit() >= 0) {
+            sql.append(" LIMIT ? OFFSET ?");
+            params.add(query.getLimit());
+            params.add(skip);
+            skip = 0;
+        }
+
+        List<ImportSummary> summaries = new ArrayList<ImportSummary>();
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                PreparedStatement ps = cx.prepareStatement(sql.toString());
+                try {
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setObject(i+1, params.get(i));
+                    }
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        while (rs.next()) {
+                            if (skip > 0) {
+                                skip--;
+                                continue;
+                            }
+                            summaries.add(summary(rs));
+                        }
+                    }
+                    finally {
+                        rs.close();
+                    }
+                }
+                finally {
+                    ps.close();
+                }
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to query imports", e);
+        }
+        return summaries.iterator();
+    }
+
+    ImportSummary summary(ResultSet rs) throws SQLException {
+        String state = rs.getString(2);
+        return new ImportSummary(rs.getLong(1),
+            state != null ? ImportContext.State.valueOf(state) : null, rs.getString(3),
+            time(rs, 4), time(rs, 5), rs.getInt(6), rs.getInt(7), rs.getString(8), this);
+    }
+
+    Date time(ResultSet rs, int i) throws SQLException {
+        long t = rs.getLong(i);
+        return rs.wasNull() ? null : new Date(t);
+    }
+
+    public void query(ImportVisitor visitor) {
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                Statement st = cx.createStatement();
+                try {
+                    ResultSet rs = st.executeQuery("SELECT data FROM " + IMPORTS + " ORDER BY id");
+                    try {
+                        while (rs.next()) {
+                            visitor.visit(decode(rs.getBytes(1)));
+                        }
+                    }
+                    finally {
+                        rs.close();
+                    }
+                }
+                finally {
+                    st.close();
+                }
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to query imports", e);
+        }
+    }
+
+    public boolean claim(long id, String owner, long lease) {
+        long now = System.currentTimeMillis();
+        boolean claimed = update("UPDATE " + IMPORTS + " SET lease_owner = ?, lease_expires = ?, " +
+            "queued = NULL WHERE id = ? AND (lease_owner IS NULL OR lease_owner = ? OR " +
+            "lease_expires < ?)", owner, now + lease, id, owner, now) > 0;
+        if (claimed) {
+            leases.put(id, new Lease(owner, lease));
+        }
+        return claimed;
+    }
+
+    public void queue(long id) {
+        update("UPDATE " + IMPORTS + " SET queued = ? WHERE id = ? AND queued IS NULL",
+            System.currentTimeMillis(), id);
+    }
+
+    public boolean claimQueued(long id, String owner, long lease) {
+        long now = System.currentTimeMillis();
+        boolean claimed = update("UPDATE " + IMPORTS + " SET lease_owner = ?, lease_expires = ?, " +
+            "queued = NULL WHERE id = ? AND queued IS NOT NULL AND (lease_owner IS NULL OR " +
+            "lease_owner = ? OR lease_expires < ?)", owner, now + lease, id, owner, now) > 0;
+        if (claimed) {
+            leases.put(id, new Lease(owner, lease));
+        }
+        return claimed;
+    }
+
+    public Long claimNext(String owner, long lease) {
+        List<Long> candidates = new ArrayList<Long>();
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                PreparedStatement ps = cx.prepareStatement("SELECT id FROM " + IMPORTS + 
+                    " WHERE queued IS NOT NULL AND (lease_owner IS NULL OR lease_expires < ?) " +
+                    "ORDER BY queued, id");
+                try {
+                    ps.setLong(1, System.currentTimeMillis());
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        while (rs.next()) {
+                            candidates.add(rs.getLong(1));
+                        }
+                    }
+                    finally {
+                        rs.close();
+                    }
+                }
+                finally {
+                    ps.close();
+                }
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to query imports", e);
+        }
+
+        //other instances may claim candidates in the meantime, the conditional update decides
+        for (Long id : candidates) {
+            if (claimQueued(id, owner, lease)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    public void release(long id, String owner) {
+        Lease lease = leases.get(id);
+        if (lease != null && lease.owner.equals(owner)) {
+            leases.remove(id);
+        }
+        update("UPDATE " + IMPORTS + " SET lease_owner = NULL, lease_expires = NULL " +
+            "WHERE id = ? AND lease_owner = ?", id, owner);
+    }
+
+    public String getLeaseOwner(long id) {
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                PreparedStatement ps = cx.prepareStatement("SELECT lease_owner FROM " + IMPORTS +
+                    " WHERE id = ? AND lease_expires >= ?");
+                try {
+                    ps.setLong(1, id);
+                    ps.setLong(2, System.currentTimeMillis());
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        return rs.next() ? rs.getString(1) : null;
+                    }
+                    finally {
+                        rs.close();
+                    }
+                }
+                finally {
+                    ps.close();
+                }
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to look up lease of import " + id, e);
+        }
+    }
+
+    public void destroy() {
+        leases.clear();
+        if (ownDataSource) {
+            try {
+                ((BasicDataSource)dataSource).close();
+            }
+            catch(SQLException e) {
+                LOGGER.log(Level.WARNING, "Error closing import database", e);
+            }
+            dataSource = null;
+        }
+    }
+
+    int update(String sql, Object... params) {
+        try {
+            Connection cx = dataSource.getConnection();
+            try {
+                PreparedStatement ps = cx.prepareStatement(sql);
+                try {
+                    for (int i = 0; i < params.length; i++) {
+                        ps.setObject(i+1, params[i]);
+                    }
+                    return ps.executeUpdate();
+                }
+                finally {
+                    ps.close();
+                }
+            }
+            finally {
+                cx.close();
+            }
+        }
+        catch(SQLException e) {
+            throw new RuntimeException("Unable to update imports", e);
+        }
+    }
+
+    Connection begin() throws SQLException {
+        Connection cx = dataSource.getConnection();
+        cx.setAutoCommit(false);
+        return cx;
+    }
+
+    void end(Connection cx) throws SQLException {
+        try {
+            cx.setAutoCommit(true);
+        }
+        finally {
+            cx.close();
+        }
+    }
+
+    byte[] encode(ImportContext context) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try {
+            codec.encode(context, out);
+        }
+        catch(IOException e) {
+            throw new RuntimeException("Unable to encode import " + context.getId(), e);
+        }
+        return out.toByteArray();
+    }
+
+    ImportContext decode(byte[] data) {
+        try {
+            return codec.decode(new ByteArrayInputStream(data));
+        }
+        catch(IOException e) {
+            throw new RuntimeException("Unable to decode import", e);
+        }
+    }
+
+    static class Lease {
+        String owner;
+        long duration;
+
+        Lease(String owner, long duration) {
+            this.owner = owner;
+            this.duration = duration;
+        }
+    }
+}
@@ -4,8 +4,24 @@ import java.util.concurrent.Callable;
 
 public abstract class Job<V> implements Callable<V> {
 
+    /**
+     * Priority classes of jobs, jobs of a class are started before any job of the classes 
+     * following it.
+     */
+    public static enum Priority {
+        /** jobs a user is actively waiting on, from the web ui for instance */
+        INTERACTIVE, 
+        /** background jobs, batch imports through the rest api for instance */
+        BULK;
+    }
+
     ProgressMonitor monitor;
 
+    /** user the job runs on behalf of */
+    String owner;
+
+    Priority priority = Priority.BULK;
+
     @Override
     public V call() throws Exception {
         return call(monitor);
@@ -15,6 +31,21 @@ public abstract class Job<V> implements Callable<V> {
         this.monitor = monitor;
     }
 
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
     protected abstract V call(ProgressMonitor monitor) throws Exception;
 }
-
@@ -1,45 +1,62 @@
 package org.opengeo.data.importer.job;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs jobs in the background with bounded concurrency.
+ * <p>
+ * At most {@link #getMaxRunning()} jobs run at once, and at most
+ * {@link #getMaxRunningPerOwner()} of them on behalf of the same owner. Other jobs wait in a
+ * queue ordered by {@link Job.Priority}, then by submission. When a slot frees up the first
+ * waiting job of the highest priority class whose owner has the fewest running jobs is started,
+ * so that a user submitting a burst of jobs does not starve the others. Once
+ * {@link #getMaxWaiting()} jobs are waiting further submissions are rejected with a
+ * {@link RejectedExecutionException}, callers are expected to retry later.
+ * </p>
+ */
 public class JobQueue {
 
+    /** default maximum number of jobs running at once */
+    public static final int DEFAULT_MAX_RUNNING =
+        Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** default maximum number of jobs waiting */
+    public static final int DEFAULT_MAX_WAITING = 100;
+
     /** job id counter */
     AtomicLong counter = new AtomicLong();
 
     /** recent jobs */
     ConcurrentHashMap<Long,Task<?>> jobs = new ConcurrentHashMap<Long, Task<?>>();
 
-    /** job runner */
-    //ExecutorService pool = Executors.newCachedThreadPool();
-    ExecutorService pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
-            new SynchronousQueue<Runnable>()) {
-        protected <T extends Object> RunnableFuture<T> newTaskFor(Callable<T> callable) {
-            if (callable instanceof Job) {
-                return new Task((Job) callable);
-            }
-            return super.newTaskFor(callable);
-        };
-        protected void afterExecute(Runnable r, Throwable t) {
-            if (t != null && r instanceof Task) {
-                ((Task)r).setError(t);
-            }
-        };
-    };
+    /** concurrency and queue limits */
+    int maxRunning;
+    int maxRunningPerOwner;
+    int maxWaiting;
+
+    /** jobs waiting to run, ordered by priority then submission, guarded by this */
+    LinkedList<Task<?>> waiting = new LinkedList<Task<?>>();
+
+    /** number of running jobs, in total and by owner, guarded by this */
+    int running;
+    Map<String,Integer> runningByOwner = new HashMap<String, Integer>();
+
+    /** job runner, only handed jobs when a slot is available */
+    ThreadPoolExecutor pool;
 
     /** job cleaner */
     ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
@@ -59,20 +76,200 @@ public class JobQueue {
         }, 60, 60, TimeUnit.SECONDS);
     }
 
-    public Long submit(Job<?> task) {
-        Long jobid = counter.getAndIncrement();
-        jobs.put(jobid, (Task) pool.submit(task));
-        return jobid;
+    public JobQueue() {
+        this(DEFAULT_MAX_RUNNING, DEFAULT_MAX_RUNNING, DEFAULT_MAX_WAITING);
+    }
+
+    public JobQueue(int maxRunning, int maxRunningPerOwner, int maxWaiting) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException("maxRunning must be at least 1");
+        }
+        this.maxRunning = maxRunning;
+        this.maxRunningPerOwner =
+            maxRunningPerOwner > 0 ? Math.min(maxRunningPerOwner, maxRunning) : maxRunning;
+        this.maxWaiting = Math.max(0, maxWaiting);
+
+        pool = new ThreadPoolExecutor(maxRunning, maxRunning, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public int getMaxRunning() {
+        return maxRunning;
+    }
+
+    public int getMaxRunningPerOwner() {
+        return maxRunningPerOwner;
+    }
+
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    /**
+     * Submits a job, starting it right away if the limits allow.
+     *
+     * @return The identifier of the job.
+     *
+     * @throws RejectedExecutionException If the job can not be started and the waiting queue is
+     *   full.
+     */
+    public Long submit(Job<?> job) {
+        Task<?> task = new Task(job);
+        synchronized (this) {
+            purge();
+            if (waiting.size() >= maxWaiting && !canStart(task)) {
+                throw new RejectedExecutionException("Too many jobs waiting (" + waiting.size()
+                    + "), try again later");
+            }
+
+            Long jobid = counter.getAndIncrement();
+            jobs.put(jobid, task);
+            enqueue(task);
+            dispatch();
+            return jobid;
+        }
     }
 
     public Task<?> getFuture(Long jobid) {
         Task<?> t = jobs.get(jobid);
-        t.recieve();
+        if (t != null) {
+            t.recieve();
+        }
         return t;
     }
 
+    /**
+     * The position of a job in the waiting queue, zero being the next to be considered, or -1
+     * if the job is not waiting.
+     */
+    public synchronized int getPosition(Long jobid) {
+        Task<?> task = jobs.get(jobid);
+        if (task == null) {
+            return -1;
+        }
+
+        purge();
+        return waiting.indexOf(task);
+    }
+
+    /**
+     * The number of jobs waiting to run.
+     */
+    public synchronized int getWaiting() {
+        purge();
+        return waiting.size();
+    }
+
+    /**
+     * The number of jobs running.
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
     public void shutdown() {
+        synchronized (this) {
+            for (Task<?> task : waiting) {
+                task.cancel(false);
+            }
+            waiting.clear();
+        }
         cleaner.shutdownNow();
         pool.shutdownNow();
     }
+
+    void enqueue(Task<?> task) {
+        ListIterator<Task<?>> it = waiting.listIterator();
+        while (it.hasNext()) {
+            if (it.next().getPriority().compareTo(task.getPriority()) > 0) {
+                it.previous();
+                break;
+            }
+        }
+        it.add(task);
+    }
+
+    /*
+     * starts waiting jobs while slots are available
+     */
+    synchronized void dispatch() {
+        purge();
+        while (running < maxRunning) {
+            Task<?> next = null;
+            for (Task<?> task : waiting) {
+                if (next != null && task.getPriority() != next.getPriority()) {
+                    break;
+                }
+                int n = running(task.getOwner());
+                if (n < maxRunningPerOwner && (next == null || n < running(next.getOwner()))) {
+                    next = task;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+
+            waiting.remove(next);
+            start(next);
+        }
+    }
+
+    void start(final Task<?> task) {
+        running++;
+        runningByOwner.put(task.getOwner(), running(task.getOwner()) + 1);
+
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    }
+                    catch(Throwable t) {
+                        task.setError(t);
+                    }
+                    finally {
+                        finished(task);
+                    }
+                }
+            });
+        }
+        catch(RejectedExecutionException e) {
+            //pool shut down
+            task.cancel(false);
+            finished(task);
+        }
+    }
+
+    synchronized void finished(Task<?> task) {
+        running--;
+        int n = running(task.getOwner()) - 1;
+        if (n > 0) {
+            runningByOwner.put(task.getOwner(), n);
+        }
+        else {
+            runningByOwner.remove(task.getOwner());
+        }
+        dispatch();
+    }
+
+    boolean canStart(Task<?> task) {
+        return running < maxRunning && running(task.getOwner()) < maxRunningPerOwner;
+    }
+
+    int running(String owner) {
+        Integer n = runningByOwner.get(owner);
+        return n != null ? n : 0;
+    }
+
+    /*
+     * drops canceled jobs from the waiting queue
+     */
+    void purge() {
+        for (Iterator<Task<?>> it = waiting.iterator(); it.hasNext();) {
+            if (it.next().isCancelled()) {
+                it.remove();
+            }
+        }
+    }
 }
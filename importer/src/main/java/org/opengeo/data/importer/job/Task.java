@@ -8,16 +8,30 @@ public class Task<V> extends FutureTask<V> {
     Throwable error;
     boolean recieved = false;
 
+    String owner;
+    Job.Priority priority;
+
     public Task(Job<V> job) {
         super(job);
         monitor = new ProgressMonitor();
         job.setMonitor(monitor);
+
+        owner = job.getOwner();
+        priority = job.getPriority() != null ? job.getPriority() : Job.Priority.BULK;
     }
 
     public ProgressMonitor getMonitor() {
         return monitor;
     }
 
+    public String getOwner() {
+        return owner;
+    }
+
+    public Job.Priority getPriority() {
+        return priority;
+    }
+
     public Throwable getError() {
         return error;
     }
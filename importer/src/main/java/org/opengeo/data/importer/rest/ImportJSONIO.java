@@ -33,10 +33,14 @@ import org.geoserver.rest.PageInfo;
 import org.geoserver.rest.RestletException;
 import org.opengeo.data.importer.Database;
 import org.opengeo.data.importer.Directory;
+import org.opengeo.data.importer.FeatureStatistics;
+import org.opengeo.data.importer.FeatureStatistics.AttributeStatistics;
+import org.opengeo.data.importer.FeatureStatistics.Histogram;
 import org.opengeo.data.importer.FileData;
 import org.opengeo.data.importer.ImportContext;
 import org.opengeo.data.importer.ImportData;
 import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportSummary;
 import org.opengeo.data.importer.ImportTask;
 import org.opengeo.data.importer.Importer;
 import org.opengeo.data.importer.SpatialFile;
@@ -75,6 +79,11 @@ public class ImportJSONIO {
         json.key("id").value(context.getId());
         json.key("state").value(context.getState());
 
+        int position = importer != null ? importer.getQueuePosition(context) : -1;
+        if (position >= 0) {
+            json.key("queuePosition").value(position);
+        }
+
         if (context.getTargetWorkspace() != null) {
             json.key("targetWorkspace").value(toJSON(context.getTargetWorkspace()));
         }
@@ -141,6 +150,22 @@ public class ImportJSONIO {
         json.flush();
     }
 
+    public void summaries(Iterator<ImportSummary> summaries, PageInfo page, OutputStream out)
+            throws IOException {
+
+        FlushableJSONBuilder json = new FlushableJSONBuilder(new OutputStreamWriter(out));
+        json.object().key("imports").array();
+        while (summaries.hasNext()) {
+            ImportSummary summary = summaries.next();
+            json.object()
+              .key("id").value(summary.getId())
+              .key("href").value(page.pageURI("/" + summary.getId()))
+            .endObject();
+        }
+        json.endArray().endObject();
+        json.flush();
+    }
+
     public void tasks(List<ImportTask> tasks, PageInfo page, OutputStream out) throws IOException {
         tasks(tasks, page, builder(out));
     }
@@ -187,6 +212,22 @@ public class ImportJSONIO {
         if (task.getUpdateMode() != null) {
             json.key("updateMode").value(task.getUpdateMode().name());
         }
+        if (task.getParallelism() > 0) {
+            json.key("parallelism").value(task.getParallelism());
+        }
+        if (task.getCommitBatchSize() > 0) {
+            json.key("commitBatchSize").value(task.getCommitBatchSize());
+        }
+        if (task.getCommitBatchSeconds() > 0) {
+            json.key("commitBatchSeconds").value(task.getCommitBatchSeconds());
+        }
+        if (task.getTransformWorkers() > 0) {
+            json.key("transformWorkers").value(task.getTransformWorkers());
+            json.key("preserveOrder").value(task.isPreserveOrder());
+        }
+        if (task.isCollectStatistics()) {
+            json.key("collectStatistics").value(true);
+        }
 
         //source
         ImportData data = task.getData();
@@ -248,6 +289,13 @@ public class ImportJSONIO {
         if (item.getError() != null) {
             json.key("errorMessage").value(concatErrorMessages(item.getError()));
         }
+        if (item.getCommittedOffset() > 0) {
+            json.key("committedOffset").value(item.getCommittedOffset());
+        }
+        if (item.getStatistics() != null) {
+            json.key("statistics");
+            statistics(item.getStatistics(), json);
+        }
         json.key("transformChain");
         transformChain(item.getTransform(), json);        
         messages(json,item.getImportMessages());
@@ -259,6 +307,57 @@ public class ImportJSONIO {
         json.flush();
     }
     
+    void statistics(FeatureStatistics stats, FlushableJSONBuilder json) {
+        json.object().key("count").value(stats.getCount());
+        json.key("attributes").array();
+        for (AttributeStatistics att : stats.getAttributes()) {
+            json.object()
+              .key("name").value(att.getName())
+              .key("nulls").value(att.getNulls());
+            if (att.getMin() != null) {
+                json.key("min").value(statisticValue(att.getMin()));
+                json.key("max").value(statisticValue(att.getMax()));
+            }
+            if (att.getDistinct() >= 0) {
+                json.key("distinct").value(att.getDistinct());
+            }
+            Histogram histogram = att.getHistogram();
+            if (histogram != null && histogram.size() > 0) {
+                json.key("histogram").array();
+                for (int i = 0; i < histogram.size(); i++) {
+                    json.object()
+                      .key("value").value(histogram.getValue(i))
+                      .key("count").value(histogram.getCount(i))
+                      .endObject();
+                }
+                json.endArray();
+            }
+            if (att.getGeometryTypes() != null) {
+                json.key("geometryTypes").object();
+                for (Map.Entry<String, Integer> e : att.getGeometryTypes().entrySet()) {
+                    json.key(e.getKey()).value(e.getValue());
+                }
+                json.endObject();
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    Object statisticValue(Object value) {
+        if (value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                return value;
+            }
+        }
+        return value.toString();
+    }
+
     void messages(FlushableJSONBuilder json,List<LogRecord> records) {
         if (!records.isEmpty()) {
             json.key("messages");
@@ -316,7 +415,10 @@ public class ImportJSONIO {
     }
     
     public ImportTask task(InputStream in) throws IOException {
-        JSONObject json = parse(in);
+        return task(parse(in));
+    }
+
+    public ImportTask task(JSONObject json) throws IOException {
         ImportTask task = null;
         if (json.has("task")) {
             task = new ImportTask();
@@ -329,6 +431,24 @@ public class ImportJSONIO {
             if (json.has("updateMode")) {
                 task.setUpdateMode(UpdateMode.valueOf(json.getString("updateMode").toUpperCase()));
             }
+            if (json.has("parallelism")) {
+                task.setParallelism(json.getInt("parallelism"));
+            }
+            if (json.has("commitBatchSize")) {
+                task.setCommitBatchSize(json.getInt("commitBatchSize"));
+            }
+            if (json.has("commitBatchSeconds")) {
+                task.setCommitBatchSeconds(json.getInt("commitBatchSeconds"));
+            }
+            if (json.has("transformWorkers")) {
+                task.setTransformWorkers(json.getInt("transformWorkers"));
+            }
+            if (json.has("preserveOrder")) {
+                task.setPreserveOrder(json.getBoolean("preserveOrder"));
+            }
+            if (json.has("collectStatistics")) {
+                task.setCollectStatistics(json.getBoolean("collectStatistics"));
+            }
             if (json.has("source")) {
                 JSONObject source = json.getJSONObject("source");
                 // we only support updating the charset
@@ -6,6 +6,7 @@ import java.io.OutputStream;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
@@ -18,6 +19,8 @@ import org.geoserver.rest.format.DataFormat;
 import org.geoserver.rest.format.StreamDataFormat;
 import org.opengeo.data.importer.ImportContext;
 import org.opengeo.data.importer.ImportFilter;
+import org.opengeo.data.importer.ImportQuery;
+import org.opengeo.data.importer.ImportSummary;
 import org.opengeo.data.importer.ImportTask;
 import org.opengeo.data.importer.Importer;
 import org.restlet.data.Form;
@@ -37,7 +40,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 public class ImportResource extends AbstractResource {
 
     Importer importer;
-    Object importContext; // ImportContext or Iterator<ImportContext>
+    Object importContext; // ImportContext or Iterator<ImportSummary>
 
     public ImportResource(Importer importer) {
         this.importer = importer;
@@ -88,15 +91,20 @@ public class ImportResource extends AbstractResource {
 
     @Override
     public void handleDelete() {
-        Iterator<ImportContext> contexts = null;
+        Iterator<ImportSummary> summaries = null;
         if (importContext instanceof ImportContext) {
-            contexts = Collections.singletonList((ImportContext) importContext).iterator();
+            summaries = Collections.singletonList(
+                new ImportSummary((ImportContext) importContext)).iterator();
         } else {
-            contexts = (Iterator<ImportContext>) importContext;
+            summaries = (Iterator<ImportSummary>) importContext;
         }
-        while (contexts.hasNext()) {
-            ImportContext ctx = contexts.next();
-            if (ctx.getState() != ImportContext.State.COMPLETE) {
+        while (summaries.hasNext()) {
+            ImportSummary summary = summaries.next();
+            if (summary.getState() != ImportContext.State.COMPLETE) {
+                ImportContext ctx = summary.getContext();
+                if (ctx == null) {
+                    continue;
+                }
                 try {
                     importer.delete(ctx);
                 } catch (IOException ioe) {
@@ -166,6 +174,9 @@ public class ImportResource extends AbstractResource {
                     // is required to verify success
                 }
                 getResponse().setStatus(Status.SUCCESS_NO_CONTENT);
+            } catch (RejectedExecutionException e) {
+                //too many imports queued, the client should back off and retry
+                throw new RestletException(e.getMessage(), Status.SERVER_ERROR_SERVICE_UNAVAILABLE, e);
             } catch (Exception e) {
                 throw new RestletException("Error occured executing import", Status.SERVER_ERROR_INTERNAL, e);
             }
@@ -237,17 +248,43 @@ public class ImportResource extends AbstractResource {
         }
         else {
             if (allowAll) {
+                //listings only need the summaries of the imports
                 Form form = getRequest().getResourceRef().getQueryAsForm();
-                if (form.getNames().contains("all")) {
-                    return importer.getAllContexts();
-                } else {
-                    return importer.getContextsByUser(getCurrentUser());
-                }
+                return importer.getSummaries(query(form));
             }
             throw new RestletException("No import specified", Status.CLIENT_ERROR_BAD_REQUEST);
         }
     }
 
+    ImportQuery query(Form form) {
+        ImportQuery query = new ImportQuery();
+        if (!form.getNames().contains("all")) {
+            query.setUser(getCurrentUser());
+        }
+        try {
+            if (form.getFirst("offset") != null) {
+                query.setOffset(Integer.parseInt(form.getFirstValue("offset")));
+            }
+            if (form.getFirst("limit") != null) {
+                query.setLimit(Integer.parseInt(form.getFirstValue("limit")));
+            }
+        }
+        catch(NumberFormatException e) {
+            throw new RestletException("Invalid offset or limit", Status.CLIENT_ERROR_BAD_REQUEST);
+        }
+
+        String sort = form.getFirstValue("sort");
+        if (sort != null) {
+            try {
+                query.setSortBy(ImportQuery.SortBy.valueOf(sort.toUpperCase()));
+            }
+            catch(IllegalArgumentException e) {
+                throw new RestletException("Invalid sort: " + sort, Status.CLIENT_ERROR_BAD_REQUEST);
+            }
+        }
+        return query;
+    }
+
     class ImportContextJSONFormat extends StreamDataFormat {
 
         XStreamPersister xp;
@@ -279,7 +316,7 @@ public class ImportResource extends AbstractResource {
                 json.context((ImportContext) object, pageInfo, out);
             }
             else {
-                json.contexts((Iterator<ImportContext>)object, pageInfo, out);
+                json.summaries((Iterator<ImportSummary>)object, pageInfo, out);
             }
         }
     }
@@ -24,6 +24,7 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengeo.data.importer.FeaturePipeline;
 import org.opengeo.data.importer.ImportContext;
 import org.opengeo.data.importer.ImportItem;
 import org.opengeo.data.importer.ImportTask;
@@ -70,12 +71,34 @@ public class ItemResource extends AbstractResource {
     private Representation createProgressRepresentation() {
         JSONObject progress = new JSONObject();
         long imprt = Long.parseLong(getAttribute("import"));
-        ImportItem inProgress = importer.getCurrentlyProcessingItem(imprt);
+        ImportItem inProgress = importer.getCurrentlyProcessingItem(imprt, 
+            Long.parseLong(getAttribute("task")), Long.parseLong(getAttribute("item")));
         try {
             if (inProgress != null) {
                 progress.put("progress", inProgress.getNumberProcessed());
                 progress.put("total", inProgress.getTotalToProcess());
                 progress.put("state", inProgress.getState().toString());
+                if (inProgress.isTotalEstimated()) {
+                    progress.put("estimated", true);
+                }
+                progress.put("rate", Math.round(inProgress.getProcessingRate()));
+                long eta = inProgress.getEstimatedTimeRemaining();
+                if (eta >= 0) {
+                    progress.put("eta", eta);
+                }
+
+                FeaturePipeline pipeline = 
+                    (FeaturePipeline) inProgress.getMetadata().get(FeaturePipeline.class);
+                if (pipeline != null) {
+                    JSONObject stages = new JSONObject();
+                    stages.put("workers", pipeline.getWorkers());
+                    stages.put("transformQueue", pipeline.getTransformQueueDepth());
+                    stages.put("writeQueue", pipeline.getWriteQueueDepth());
+                    stages.put("readBlocked", pipeline.getReadBlockedTime());
+                    stages.put("transformIdle", pipeline.getTransformIdleTime());
+                    stages.put("writeIdle", pipeline.getWriteIdleTime());
+                    progress.put("pipeline", stages);
+                }
             } else {
                 ImportItem item = (ImportItem) lookupItem(false);
                 progress.put("state", item.getState().toString());
@@ -203,38 +226,44 @@ public class ItemResource extends AbstractResource {
 
     Object lookupItem(boolean allowAll) {
         long imprt = Long.parseLong(getAttribute("import"));
-
-        ImportContext context = importer.getContext(imprt);
-        if (context == null) {
-            throw new RestletException("No such import: " + imprt, Status.CLIENT_ERROR_NOT_FOUND);
-        }
-
-        int t = Integer.parseInt(getAttribute("task"));
-        if (t >= context.getTasks().size()) {
-            throw new RestletException("No such task: " + t + " for import: " + imprt,
-                    Status.CLIENT_ERROR_NOT_FOUND);
-        }
-
-        ImportTask task = context.getTasks().get(t);
+        long t = Long.parseLong(getAttribute("task"));
 
         String i = getAttribute("item");
         if (i != null) {
             int id = Integer.parseInt(i);
-            if (id >= task.getItems().size()) {
+
+            //load just the item, not the other items of the import
+            ImportItem item = importer.getItem(imprt, t, id);
+            if (item == null) {
+                lookupTask(imprt, t);
                 throw new RestletException("No such item: " + id + " for import: " + imprt + 
                     ", task: " + t, Status.CLIENT_ERROR_NOT_FOUND);
             }
-
-            return task.getItems().get(id);
+            return item;
         }
         else {
             if (allowAll) {
-                return task.getItems();
+                return lookupTask(imprt, t).getItems();
             }
             throw new RestletException("No item specified", Status.CLIENT_ERROR_BAD_REQUEST);
         }
     }
 
+    ImportTask lookupTask(long imprt, long t) {
+        ImportContext context = importer.getContext(imprt);
+        if (context == null) {
+            throw new RestletException("No such import: " + imprt, Status.CLIENT_ERROR_NOT_FOUND);
+        }
+
+        //tasks are identified by id, as in the links to them
+        ImportTask task = context.task(t);
+        if (task == null) {
+            throw new RestletException("No such task: " + t + " for import: " + imprt,
+                    Status.CLIENT_ERROR_NOT_FOUND);
+        }
+        return task;
+    }
+
     class ImportItemJSONFormat extends StreamDataFormat {
 
         ImportItemJSONFormat() {
@@ -0,0 +1,120 @@
+package org.opengeo.data.importer.rest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.geoserver.rest.AbstractResource;
+import org.geoserver.rest.RestletException;
+import org.geoserver.rest.format.DataFormat;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opengeo.data.importer.ImportMetrics;
+import org.opengeo.data.importer.ImportMetrics.Counters;
+import org.opengeo.data.importer.ImportMetrics.ItemMetrics;
+import org.opengeo.data.importer.ImportMetrics.Stage;
+import org.opengeo.data.importer.ImportMetrics.Timer;
+import org.opengeo.data.importer.Importer;
+import org.opengeo.data.importer.WriteBehindImportStore;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.ext.json.JsonRepresentation;
+
+/**
+ * REST resource for /imports/metrics
+ * <p>
+ * Reports the stage timers and counters of item loads, totalled since startup and for each of
+ * the recent loads, along with the state of the job queue and of the import store.
+ * </p>
+ */
+public class MetricsResource extends AbstractResource {
+
+    Importer importer;
+
+    public MetricsResource(Importer importer) {
+        this.importer = importer;
+    }
+
+    @Override
+    protected List<DataFormat> createSupportedFormats(Request request, Response response) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void handleGet() {
+        ImportMetrics metrics = importer.getMetrics();
+
+        JSONObject json = new JSONObject();
+        try {
+            JSONObject total = counters(metrics.getTotal());
+            total.put("items", metrics.getItems());
+            total.put("errors", metrics.getErrors());
+            json.put("total", total);
+
+            JSONObject jobs = new JSONObject();
+            jobs.put("running", metrics.getRunningJobs());
+            jobs.put("waiting", metrics.getWaitingJobs());
+            json.put("jobs", jobs);
+
+            WriteBehindImportStore store = importer.getStore() instanceof WriteBehindImportStore ?
+                (WriteBehindImportStore) importer.getStore() : null;
+            if (store != null) {
+                JSONObject obj = new JSONObject();
+                obj.put("saves", store.getSaveCount());
+                obj.put("writes", store.getWriteCount());
+                obj.put("coalescingRatio", store.getCoalescingRatio());
+                obj.put("meanWriteLatency", store.getMeanWriteLatency());
+                obj.put("maxWriteLatency", store.getMaxWriteLatency());
+                json.put("store", obj);
+            }
+
+            JSONArray recent = new JSONArray();
+            for (ItemMetrics item : metrics.getRecent()) {
+                JSONObject obj = counters(item);
+                obj.put("import", item.getContextId());
+                obj.put("task", item.getTaskId());
+                obj.put("item", item.getItemId());
+                obj.put("name", item.getName());
+                obj.put("elapsed", item.getElapsed());
+                if (item.isError()) {
+                    obj.put("error", true);
+                }
+                recent.put(obj);
+            }
+            json.put("recent", recent);
+        }
+        catch(JSONException e) {
+            throw new RestletException("Internal Error", Status.SERVER_ERROR_INTERNAL, e);
+        }
+        getResponse().setEntity(new JsonRepresentation(json));
+    }
+
+    JSONObject counters(Counters counters) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("features", counters.getFeatures());
+        json.put("skipped", counters.getSkipped());
+        json.put("bytes", counters.getBytes());
+
+        JSONObject stages = new JSONObject();
+        for (Stage s : Stage.values()) {
+            stages.put(s.name().toLowerCase(), timer(counters.stage(s)));
+        }
+        json.put("stages", stages);
+
+        JSONObject transforms = new JSONObject();
+        for (Map.Entry<String, Timer> e : counters.getTransforms().entrySet()) {
+            transforms.put(e.getKey(), timer(e.getValue()));
+        }
+        json.put("transforms", transforms);
+        return json;
+    }
+
+    JSONObject timer(Timer timer) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("time", timer.getTime());
+        json.put("count", timer.getCount());
+        return json;
+    }
+}
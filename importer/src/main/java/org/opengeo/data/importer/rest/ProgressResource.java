@@ -0,0 +1,119 @@
+package org.opengeo.data.importer.rest;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.geoserver.rest.AbstractResource;
+import org.geoserver.rest.RestletException;
+import org.geoserver.rest.format.DataFormat;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opengeo.data.importer.Importer;
+import org.opengeo.data.importer.ProgressRegistry;
+import org.opengeo.data.importer.ProgressRegistry.ContextProgress;
+import org.opengeo.data.importer.ProgressRegistry.ItemProgress;
+import org.restlet.data.Form;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.ext.json.JsonRepresentation;
+
+/**
+ * REST resource for /imports/<import>/progress
+ * <p>
+ * Reports the progress of the current or last run of an import from the
+ * {@link ProgressRegistry}, without loading the import from the store. Passing the
+ * <tt>version</tt> of the last response and a <tt>wait</tt> time, in milliseconds, long polls for
+ * the next change.
+ * </p>
+ */
+public class ProgressResource extends AbstractResource {
+
+    /** maximum milliseconds a request waits for a change */
+    static final long MAX_WAIT = 30000;
+
+    Importer importer;
+
+    public ProgressResource(Importer importer) {
+        this.importer = importer;
+    }
+
+    @Override
+    protected List<DataFormat> createSupportedFormats(Request request, Response response) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void handleGet() {
+        long id;
+        long version;
+        long wait;
+        Form form = getRequest().getResourceRef().getQueryAsForm();
+        try {
+            id = Long.parseLong(getAttribute("import"));
+            version = form.getFirstValue("version") != null ?
+                Long.parseLong(form.getFirstValue("version")) : -1;
+            wait = form.getFirstValue("wait") != null ?
+                Math.min(MAX_WAIT, Long.parseLong(form.getFirstValue("wait"))) : 0;
+        }
+        catch(NumberFormatException e) {
+            throw new RestletException("Invalid import, version or wait",
+                Status.CLIENT_ERROR_BAD_REQUEST);
+        }
+
+        ContextProgress progress;
+        try {
+            progress = wait > 0 ? importer.getProgress().await(id, version, wait) :
+                importer.getProgress().get(id);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress = importer.getProgress().get(id);
+        }
+
+        JSONObject json = new JSONObject();
+        try {
+            json.put("import", id);
+            if (progress == null) {
+                json.put("running", false);
+            }
+            else {
+                json.put("running", progress.isRunning());
+                json.put("state", progress.getState().toString());
+                json.put("version", progress.getVersion());
+
+                long processed = 0, total = 0;
+                JSONArray items = new JSONArray();
+                for (ItemProgress item : progress.getItems()) {
+                    JSONObject obj = new JSONObject();
+                    obj.put("task", item.getTaskId());
+                    obj.put("item", item.getItemId());
+                    obj.put("name", item.getName());
+                    obj.put("state", item.getState().toString());
+                    obj.put("progress", item.getProcessed());
+                    obj.put("total", item.getTotal());
+                    if (item.isEstimated()) {
+                        obj.put("estimated", true);
+                    }
+                    obj.put("rate", Math.round(item.getRate()));
+                    if (item.getEta() >= 0) {
+                        obj.put("eta", item.getEta());
+                    }
+                    obj.put("messages", item.getMessages());
+                    items.put(obj);
+
+                    processed += item.getProcessed();
+                    total += Math.max(0, item.getTotal());
+                }
+                json.put("progress", processed);
+                json.put("total", total);
+                json.put("items", items);
+            }
+        }
+        catch(JSONException e) {
+            throw new RestletException("Internal Error", Status.SERVER_ERROR_INTERNAL, e);
+        }
+        getResponse().setEntity(new JsonRepresentation(json));
+    }
+}
@@ -12,9 +12,12 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.fileupload.FileItem;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.io.FilenameUtils;
 import org.geoserver.catalog.CatalogBuilder;
 import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.StoreInfo;
@@ -28,7 +31,9 @@ import org.opengeo.data.importer.ImportContext;
 import org.opengeo.data.importer.ImportData;
 import org.opengeo.data.importer.ImportTask;
 import org.opengeo.data.importer.Importer;
+import org.opengeo.data.importer.StreamingExtractor;
 import org.restlet.data.*;
+import org.restlet.ext.fileupload.RepresentationContext;
 import org.restlet.ext.fileupload.RestletFileUpload;
 
 /**
@@ -114,7 +119,7 @@ public class TaskResource extends AbstractResource {
 
     private Directory createDirectory() {
         try {
-            return Directory.createNew(importer.getCatalog().getResourceLoader().findOrCreateDirectory("uploads"));
+            return Directory.createNew(importer.getUploadRoot());
         } catch (IOException ioe) {
             throw new RestletException("File upload failed", Status.SERVER_ERROR_INTERNAL, ioe);
         }
@@ -125,6 +130,9 @@ public class TaskResource extends AbstractResource {
         
         try {
             directory.accept(getAttribute("task"),getRequest().getEntity().getStream());
+        } catch (StreamingExtractor.LimitExceededException e) {
+            throw new RestletException(e.getMessage(), 
+                Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE, e);
         } catch (IOException e) {
             throw new RestletException("Error unpacking file", 
                 Status.SERVER_ERROR_INTERNAL, e);
@@ -134,31 +142,46 @@ public class TaskResource extends AbstractResource {
     }
     
     private ImportData handleMultiPartFormUpload() {
-        DiskFileItemFactory factory = new DiskFileItemFactory();
-        // @revisit - this appears to be causing OOME
-        //factory.setSizeThreshold(102400000);
+        //stream each part straight into the directory, rather than staging the parts on disk
+        // and copying them over once the whole request has been read
+        RestletFileUpload upload = new RestletFileUpload();
 
-        RestletFileUpload upload = new RestletFileUpload(factory);
-        List<FileItem> items = null;
+        //create a directory to hold the files
+        Directory directory = createDirectory();
+
+        FileItemIterator items = null;
         try {
-            items = upload.parseRequest(getRequest());
-        } catch (FileUploadException e) {
+            items = upload.getItemIterator(new RepresentationContext(getRequest().getEntity()));
+        } catch (Exception e) {
             throw new RestletException("File upload failed", Status.SERVER_ERROR_INTERNAL, e);
         }
 
-        //create a directory to hold the files
-        Directory directory = createDirectory();
-
         //unpack all the files
-        for (FileItem item : items) {
-            if (item.getName() == null) {
-                continue;
-            }
-            try {
-                directory.accept(item);
-            } catch (Exception ex) {
-                throw new RestletException("Error writing file " + item.getName(), Status.SERVER_ERROR_INTERNAL, ex);
+        String name = null;
+        try {
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (item.getName() == null) {
+                    continue;
+                }
+
+                //some browsers send the full path of the file
+                name = FilenameUtils.getName(item.getName());
+                InputStream in = item.openStream();
+                try {
+                    directory.accept(name, in);
+                }
+                finally {
+                    in.close();
+                }
             }
+        } catch (StreamingExtractor.LimitExceededException e) {
+            throw new RestletException(e.getMessage(), 
+                Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE, e);
+        } catch (FileUploadException e) {
+            throw new RestletException("File upload failed", Status.SERVER_ERROR_INTERNAL, e);
+        } catch (IOException e) {
+            throw new RestletException("Error writing file " + name, Status.SERVER_ERROR_INTERNAL, e);
         }
         return directory;
     }
@@ -190,13 +213,15 @@ public class TaskResource extends AbstractResource {
 
         String t = getAttribute("task");
         if (t != null) {
-            int id = Integer.parseInt(t);
-            if (id >= context.getTasks().size()) {
+            //tasks are identified by id, as in the links to them
+            long id = Long.parseLong(t);
+            ImportTask task = context.task(id);
+            if (task == null) {
                 throw new RestletException("No such task: " + id + " for import: " + context.getId(),
                     Status.CLIENT_ERROR_NOT_FOUND);
             }
 
-            return context.getTasks().get(id);
+            return task;
         }
         else {
             if (allowAll) {
@@ -207,7 +232,10 @@ public class TaskResource extends AbstractResource {
     }
 
     void handleTaskPut() {        
-        ImportTask task = (ImportTask) getFormatPostOrPut().toObject(getRequest().getEntity());
+        //settings are applied when present in the representation, whatever their value
+        JSONObject json = (JSONObject) getFormatPostOrPut().toObject(getRequest().getEntity());
+        ImportTask task = toTask(json);
+        JSONObject settings = json.getJSONObject("task");
         ImportTask orig = (ImportTask) lookupTask(false);
         
         boolean change = false;
@@ -223,6 +251,30 @@ public class TaskResource extends AbstractResource {
             orig.setUpdateMode(task.getUpdateMode());
             change = true;
         }
+        if (settings.has("parallelism")) {
+            orig.setParallelism(task.getParallelism());
+            change = true;
+        }
+        if (settings.has("commitBatchSize")) {
+            orig.setCommitBatchSize(task.getCommitBatchSize());
+            change = true;
+        }
+        if (settings.has("commitBatchSeconds")) {
+            orig.setCommitBatchSeconds(task.getCommitBatchSeconds());
+            change = true;
+        }
+        if (settings.has("transformWorkers")) {
+            orig.setTransformWorkers(task.getTransformWorkers());
+            change = true;
+        }
+        if (settings.has("preserveOrder")) {
+            orig.setPreserveOrder(task.isPreserveOrder());
+            change = true;
+        }
+        if (settings.has("collectStatistics")) {
+            orig.setCollectStatistics(task.isCollectStatistics());
+            change = true;
+        }
         
         if (!change) {
             throw new RestletException("Unknown representation", Status.CLIENT_ERROR_BAD_REQUEST);
@@ -232,6 +284,20 @@ public class TaskResource extends AbstractResource {
         }
     }
     
+    ImportTask toTask(JSONObject json) {
+        ImportTask task;
+        try {
+            task = new ImportJSONIO(importer).task(json);
+        }
+        catch(IOException e) {
+            throw new RestletException("Error reading task", Status.CLIENT_ERROR_BAD_REQUEST, e);
+        }
+        if (task == null) {
+            throw new RestletException("Unknown representation", Status.CLIENT_ERROR_BAD_REQUEST);
+        }
+        return task;
+    }
+
     void updateStoreInfo(ImportTask orig, StoreInfo update) {
         // allow an existing store to be referenced as the target
         StoreInfo newTargetRequested = (StoreInfo) update;
@@ -307,11 +373,15 @@ public class TaskResource extends AbstractResource {
             super(MediaType.APPLICATION_JSON);
         }
 
+        /*
+         * reads the representation of a task as is, the settings of a task are only applied 
+         * when present
+         */
         @Override
         protected Object read(InputStream in) throws IOException {
             ImportJSONIO json = new ImportJSONIO(importer);
             
-            return json.task(in);
+            return json.parse(in);
         }
 
         @Override
@@ -5,6 +5,7 @@ import org.geotools.data.DataStore;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
+import org.opengeo.data.importer.CRSCache;
 import org.opengeo.data.importer.ImportItem;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -51,7 +52,8 @@ public class ReprojectTransform extends AbstractVectorTransform implements Inlin
         //update the layer metadata
         ResourceInfo r = item.getLayer().getResource();
         r.setNativeCRS(target);
-        r.setSRS(CRS.lookupIdentifier(target, true));
+        Integer epsgCode = CRSCache.getDefault().lookupEpsgCode(target);
+        r.setSRS(epsgCode != null ? "EPSG:" + epsgCode : CRS.lookupIdentifier(target, true));
         if (r.getNativeBoundingBox() != null) {
             r.setNativeBoundingBox(r.getNativeBoundingBox().transform(target, true));
         }
@@ -9,6 +9,7 @@ import org.geotools.data.DataStore;
 import org.geotools.util.logging.Logging;
 import org.opengeo.data.importer.ImportData;
 import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportMetrics;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -39,6 +40,16 @@ public class VectorTransformChain extends TransformChain<VectorTransform> {
         }
     }
 
+    /**
+     * Initializes the inline transforms without applying them to a feature type, used when 
+     * resuming a load into a schema that has already been created.
+     */
+    public void init() {
+        for (InlineVectorTransform tx : filter(transforms, InlineVectorTransform.class)) {
+            tx.init();
+        }
+    }
+
     public SimpleFeatureType inline(ImportItem item, DataStore dataStore, SimpleFeatureType featureType) 
         throws Exception {
         
@@ -56,8 +67,18 @@ public class VectorTransformChain extends TransformChain<VectorTransform> {
 
     public SimpleFeature inline(ImportItem item, DataStore dataStore, SimpleFeature oldFeature, 
         SimpleFeature feature) throws Exception {
+        return inline(item, dataStore, oldFeature, feature, null);
+    }
+
+    /**
+     * Applies the inline transforms to a feature, recording the time spent in each transform in
+     * <tt>metrics</tt> if not <code>null</code>.
+     */
+    public SimpleFeature inline(ImportItem item, DataStore dataStore, SimpleFeature oldFeature, 
+        SimpleFeature feature, ImportMetrics.Counters metrics) throws Exception {
         
         for (InlineVectorTransform tx : filter(transforms, InlineVectorTransform.class)) {
+            long start = metrics != null ? System.nanoTime() : 0;
             try {
                 feature = tx.apply(item, dataStore, oldFeature, feature);
                 if (feature == null) {
@@ -66,6 +87,11 @@ public class VectorTransformChain extends TransformChain<VectorTransform> {
             } catch (Exception e) {
                 error(tx, e);
             }
+            finally {
+                if (metrics != null) {
+                    metrics.transform(tx).add(System.nanoTime() - start);
+                }
+            }
         }
         
         return feature;
@@ -5,14 +5,20 @@ import java.util.List;
 
 import org.apache.commons.collections.IteratorUtils;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
 import org.geoserver.web.wicket.GeoServerDataProvider;
-import org.opengeo.data.importer.ImportContext;
-
-public class ImportContextProvider extends GeoServerDataProvider<ImportContext> {
-    public static Property<ImportContext> ID = new BeanProperty("id", "id");
-    public static Property<ImportContext> STATE = new BeanProperty("state", "state");
-    public static Property<ImportContext> CREATED = new BeanProperty("created", "created");
-    public static Property<ImportContext> UPDATED = new BeanProperty("updated", "updated");
+import org.opengeo.data.importer.ImportQuery;
+import org.opengeo.data.importer.ImportSummary;
+import org.opengeo.data.importer.Importer;
+
+/**
+ * Provides the summaries of imports, which does not require loading the imports themselves.
+ */
+public class ImportContextProvider extends GeoServerDataProvider<ImportSummary> {
+    public static Property<ImportSummary> ID = new BeanProperty("id", "id");
+    public static Property<ImportSummary> STATE = new BeanProperty("state", "state");
+    public static Property<ImportSummary> CREATED = new BeanProperty("created", "created");
+    public static Property<ImportSummary> UPDATED = new BeanProperty("updated", "updated");
 
     boolean sortByUpdated = false;
 
@@ -25,16 +31,22 @@ public class ImportContextProvider extends GeoServerDataProvider<ImportContext>
     }
 
     @Override
-    protected List<Property<ImportContext>> getProperties() {
+    protected List<Property<ImportSummary>> getProperties() {
         return Arrays.asList(ID, STATE, CREATED, UPDATED);
     }
     @Override
-    protected List<ImportContext> getItems() {
-        return IteratorUtils.toList(ImporterWebUtils.importer().getAllContexts() );
+    protected List<ImportSummary> getItems() {
+        ImportQuery query = new ImportQuery();
+        if (sortByUpdated) {
+            query.setSortBy(ImportQuery.SortBy.UPDATED);
+        }
+
+        Importer importer = ImporterWebUtils.importer();
+        return IteratorUtils.toList(importer.getSummaries(query));
     }
 
     @Override
     protected IModel newModel(Object object) {
-        return new ImportContextModel((ImportContext) object);
+        return new Model<ImportSummary>((ImportSummary) object);
     }
 }
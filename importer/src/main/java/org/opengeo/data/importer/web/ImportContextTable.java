@@ -10,9 +10,9 @@ import org.geoserver.web.wicket.GeoServerDataProvider.Property;
 import org.geoserver.web.wicket.GeoServerTablePanel;
 import org.geoserver.web.wicket.SimpleBookmarkableLink;
 import org.ocpsoft.pretty.time.PrettyTime;
-import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportSummary;
 
-public class ImportContextTable extends GeoServerTablePanel<ImportContext> {
+public class ImportContextTable extends GeoServerTablePanel<ImportSummary> {
 
     static PrettyTime PRETTY_TIME = new PrettyTime();
 
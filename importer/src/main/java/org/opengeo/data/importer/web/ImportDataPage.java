@@ -66,6 +66,7 @@ import org.geotools.util.DefaultProgressListener;
 import org.geotools.util.logging.Logging;
 import org.opengeo.data.importer.ImportContext;
 import org.opengeo.data.importer.ImportData;
+import org.opengeo.data.importer.ImportSummary;
 import org.opengeo.data.importer.ImportTask;
 import org.opengeo.data.importer.Importer;
 import org.opengeo.data.importer.job.ProgressMonitor;
@@ -314,7 +315,7 @@ public class ImportDataPage extends GeoServerSecuredPage {
 
         importTable = new ImportContextTable("imports", new ImportContextProvider(true) {
             @Override
-            protected List<org.geoserver.web.wicket.GeoServerDataProvider.Property<ImportContext>> getProperties() {
+            protected List<org.geoserver.web.wicket.GeoServerDataProvider.Property<ImportSummary>> getProperties() {
                 return Arrays.asList(ID, STATE, UPDATED);
             }
         }, true) {
@@ -332,7 +333,15 @@ public class ImportDataPage extends GeoServerSecuredPage {
             @Override
             public void onClick(AjaxRequestTarget target) {
                 Importer importer = ImporterWebUtils.importer();
-                for (ImportContext c : importTable.getSelection()) {
+                for (ImportSummary s : importTable.getSelection()) {
+                    ImportContext c = s.getContext();
+                    if (c == null) {
+                        //summary deserialized with the page, no longer attached to the store
+                        c = importer.getContext(s.getId());
+                    }
+                    if (c == null) {
+                        continue;
+                    }
                     try {
                         importer.delete(c);
                     } catch (IOException e) {
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 import org.apache.wicket.AttributeModifier;
@@ -49,10 +50,14 @@ import org.opengeo.data.importer.FileData;
 import org.opengeo.data.importer.ImportContext;
 import org.opengeo.data.importer.ImportData;
 import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportSummary;
 import org.opengeo.data.importer.ImportTask;
 import org.opengeo.data.importer.ImportTask.State;
+import org.opengeo.data.importer.ProgressRegistry.ContextProgress;
+import org.opengeo.data.importer.ProgressRegistry.ItemProgress;
 import org.opengeo.data.importer.RasterFormat;
 import org.opengeo.data.importer.VectorFormat;
+import org.opengeo.data.importer.job.Job;
 import org.opengeo.data.importer.job.Task;
 
 public class ImportPage extends GeoServerSecuredPage {
@@ -76,12 +81,12 @@ public class ImportPage extends GeoServerSecuredPage {
 
         ImportContextProvider provider = new ImportContextProvider() {
             @Override
-            protected List<Property<ImportContext>> getProperties() {
+            protected List<Property<ImportSummary>> getProperties() {
                 return Arrays.asList(STATE, CREATED, UPDATED);
             }
             @Override
-            protected List<ImportContext> getItems() {
-                return Collections.singletonList(model.getObject());
+            protected List<ImportSummary> getItems() {
+                return Collections.singletonList(new ImportSummary(model.getObject()));
             }
         };
 
@@ -218,18 +223,41 @@ public class ImportPage extends GeoServerSecuredPage {
                         BasicImportFilter filter = new BasicImportFilter();
                         filter.add(task, itemTable.getSelection());
 
-                        final Long jobid = 
-                            importer().runAsync(task.getContext(), filter);
+                        final Long jobid;
+                        try {
+                            jobid = importer().runAsync(task.getContext(), filter, 
+                                Job.Priority.INTERACTIVE);
+                        }
+                        catch(RejectedExecutionException e) {
+                            error(e.getMessage());
+                            target.addComponent(feedbackPanel);
+                            return;
+                        }
                         setDefaultModelObject(jobid);
 
                         final AjaxLink self = this;
+                        final Long contextId = task.getContext().getId();
 
                         //create a timer to update the table and reload the page when necessary
                         itemTable.add(new AbstractAjaxTimerBehavior(Duration.milliseconds(500)) {
+                            long lastVersion = -1;
+
                             @Override
                             protected void onTimer(AjaxRequestTarget target) {
                                 Task<ImportContext> job = importer().getTask(jobid); 
-                                if (job == null || job.isDone()) {
+                                boolean done = job == null || job.isDone();
+
+                                //only redraw when the run progressed since the last update
+                                ContextProgress progress = importer().getProgress().get(contextId);
+                                if (!done && progress != null && 
+                                    progress.getVersion() == lastVersion && !isLoading(progress)) {
+                                    return;
+                                }
+                                if (progress != null) {
+                                    lastVersion = progress.getVersion();
+                                }
+
+                                if (done) {
                                     //remove the timer
                                     stop();
                                     
@@ -369,6 +397,18 @@ public class ImportPage extends GeoServerSecuredPage {
         return (AjaxLink) importLink.getParent().get("cancel");
     }
 
+    /*
+     * whether an item of the run is loading, its count changing without a new version
+     */
+    boolean isLoading(ContextProgress progress) {
+        for (ItemProgress item : progress.getItems()) {
+            if (item.getState() == ImportItem.State.RUNNING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     boolean doSelectReady(ImportTask task, ImportItemTable table, AjaxRequestTarget target) {
         boolean empty = true;
         List<ImportItem> items = task.getItems();
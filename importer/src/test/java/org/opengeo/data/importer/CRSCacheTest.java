@@ -0,0 +1,74 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+public class CRSCacheTest extends TestCase {
+
+    static final String WKT = "GEOGCS[\"GCS_WGS_1984\",DATUM[\"D_WGS_1984\"," +
+        "SPHEROID[\"WGS_1984\",6378137,298.257223563]],PRIMEM[\"Greenwich\",0]," +
+        "UNIT[\"Degree\",0.017453292519943295]]";
+
+    File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("crs", ".properties");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testLookup() throws Exception {
+        CoordinateReferenceSystem crs = CRS.parseWKT(WKT);
+
+        CRSCache cache = new CRSCache();
+        cache.setFile(file);
+        assertEquals(Integer.valueOf(4326), cache.lookupEpsgCode(crs));
+        assertEquals(1, cache.size());
+        assertTrue(file.exists());
+
+        //same crs, formatted differently
+        assertEquals(Integer.valueOf(4326), cache.lookupEpsgCode(CRS.parseWKT(WKT.replace(",", ", "))));
+        assertEquals(1, cache.size());
+    }
+
+    public void testPersisted() throws Exception {
+        CoordinateReferenceSystem crs = CRS.parseWKT(WKT);
+
+        CRSCache cache = new CRSCache();
+        cache.setFile(file);
+        cache.codes.put(CRSCache.normalize(crs.toWKT()), "1234");
+        cache.save();
+
+        //read from the file rather than looked up
+        cache = new CRSCache();
+        cache.setFile(file);
+        assertEquals(Integer.valueOf(1234), cache.lookupEpsgCode(crs));
+    }
+
+    public void testNone() throws Exception {
+        CoordinateReferenceSystem crs = CRS.parseWKT(WKT);
+
+        CRSCache cache = new CRSCache();
+        cache.setFile(file);
+        cache.codes.put(CRSCache.normalize(crs.toWKT()), CRSCache.NONE);
+        cache.save();
+
+        cache = new CRSCache();
+        cache.setFile(file);
+        assertNull(cache.lookupEpsgCode(crs));
+    }
+
+    public void testDecode() throws Exception {
+        CRSCache cache = new CRSCache();
+        assertSame(cache.decode("EPSG:4326"), cache.decode("EPSG:4326"));
+    }
+}
@@ -0,0 +1,107 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.coverage.grid.io.UnknownFormat;
+import org.geotools.data.FileDataStoreFactorySpi;
+import org.geotools.data.FileDataStoreFinder;
+
+/**
+ * Compares format lookup through {@link DataFormatLookup} with uncached lookup over a directory 
+ * of mixed files.
+ * <p>
+ * Usage: <tt>DataFormatLookupBenchmark [files] [dir]</tt>, the directory defaults to a temporary
+ * one that is removed afterwards.
+ * </p>
+ */
+public class DataFormatLookupBenchmark {
+
+    /** extensions of the generated files, mostly files that are not spatial */
+    static final String[] EXTENSIONS = 
+        {"shp", "dbf", "shx", "prj", "txt", "xml", "csv", "html", "tif", "dat"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        File dir = args.length > 1 ? new File(args[1]) : 
+            new File(System.getProperty("java.io.tmpdir"), "format-lookup-" + System.nanoTime());
+        dir.mkdirs();
+        try {
+            File[] files = create(dir, count);
+
+            //warm up the factory registries
+            uncached(files[0]);
+            new DataFormatLookup().lookup(files[0]);
+
+            long t = System.currentTimeMillis();
+            int found = 0;
+            for (File f : files) {
+                found += uncached(f) != null ? 1 : 0;
+            }
+            System.out.println("uncached: " + (System.currentTimeMillis() - t) + "ms, " + found
+                + " of " + files.length + " files spatial");
+
+            DataFormatLookup lookup = new DataFormatLookup();
+            Set<String> notGrids = new HashSet<String>();
+            t = System.currentTimeMillis();
+            found = 0;
+            for (File f : files) {
+                found += lookup.lookup(f, notGrids) != null ? 1 : 0;
+            }
+            System.out.println("cached: " + (System.currentTimeMillis() - t) + "ms, " + found
+                + " of " + files.length + " files spatial, " + lookup.getProbes() + " probes, " 
+                + lookup.getProbesSkipped() + " probes skipped");
+        }
+        finally {
+            if (args.length < 2) {
+                FileUtils.deleteDirectory(dir);
+            }
+        }
+    }
+
+    static File[] create(File dir, int count) throws IOException {
+        byte[] tiff = {'I', 'I', 42, 0, 8, 0, 0, 0};
+        byte[] text = "lorem ipsum dolor sit amet\n".getBytes();
+
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            String ext = EXTENSIONS[i % EXTENSIONS.length];
+            files[i] = new File(dir, "file" + i + "." + ext);
+
+            OutputStream out = new FileOutputStream(files[i]);
+            try {
+                //tiff headers without a valid image, probed but not recognized
+                out.write("tif".equals(ext) ? tiff : text);
+            }
+            finally {
+                out.close();
+            }
+        }
+        return files;
+    }
+
+    /*
+     * lookup as done before formats were cached
+     */
+    static Object uncached(File file) {
+        String ext = FilenameUtils.getExtension(file.getName());
+        FileDataStoreFactorySpi factory = FileDataStoreFinder.getDataStoreFactory(ext);
+        if (factory != null) {
+            return new DataStoreFormat(factory);
+        }
+
+        AbstractGridFormat format = GridFormatFinder.findFormat(file);
+        if (format != null && !(format instanceof UnknownFormat)) {
+            return new GridFormat(format);
+        }
+        return null;
+    }
+}
@@ -1,6 +1,12 @@
 package org.opengeo.data.importer;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
 
 public class DataFormatTest extends ImporterTestSupport {
 
@@ -27,4 +33,117 @@ public class DataFormatTest extends ImporterTestSupport {
         assertEquals("CSV format not found", "CSV", name);
     }
 
+    public void testEstimateFeatureCountCSV() throws Exception {
+        File csv = new File(tmpDir(), "points.csv");
+        writeCSV(csv, 10);
+
+        DataStoreFormat format = (DataStoreFormat) DataFormat.lookup(csv);
+        SpatialFile data = new SpatialFile(csv);
+        assertFalse(format.isFeatureCountCheap(data, null));
+        assertEquals(10, format.estimateFeatureCount(data, null));
+
+        //larger than the sample, the estimate is extrapolated from equally long lines
+        writeCSV(csv, 10000);
+        assertTrue(csv.length() > DataStoreFormat.LINE_SAMPLE_SIZE);
+        int estimate = format.estimateFeatureCount(data, null);
+        assertTrue(Math.abs(10000 - estimate) < 10);
+    }
+
+    public void testFeatureCountShapefileCheap() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        SpatialFile data = new SpatialFile(new File(dir, "archsites.shp"));
+
+        DataStoreFormat format = (DataStoreFormat) DataFormat.lookup(data.getFile());
+        assertTrue(format.isFeatureCountCheap(data, null));
+    }
+
+    public void testLookupReusesFormats() throws Exception {
+        DataFormatLookup lookup = new DataFormatLookup();
+        assertSame(lookup.lookup(new File("foo.shp")), lookup.lookup(new File("bar.shp")));
+
+        File dir = unpack("geotiff/EmissiveCampania.tif.bz2");
+        File tif = new File(dir, "EmissiveCampania.tif");
+        File copy = new File(dir, "copy.tif");
+        FileUtils.copyFile(tif, copy);
+        assertSame(lookup.lookup(tif), lookup.lookup(copy));
+        assertEquals(2, lookup.getProbes());
+    }
+
+    public void testLookupSkipsProbes() throws Exception {
+        File dir = tmpDir();
+        File txt1 = new File(dir, "foo.txt");
+        File txt2 = new File(dir, "bar.txt");
+        FileUtils.writeStringToFile(txt1, "foo");
+        FileUtils.writeStringToFile(txt2, "bar");
+
+        DataFormatLookup lookup = new DataFormatLookup();
+        Set<String> notGrids = new HashSet<String>();
+        assertNull(lookup.lookup(txt1, notGrids));
+        assertNull(lookup.lookup(txt2, notGrids));
+        assertEquals(1, lookup.getProbes());
+        assertEquals(1, lookup.getProbesSkipped());
+
+        //a grid with the same extension is still probed thanks to its signature
+        File tif = new File(unpack("geotiff/EmissiveCampania.tif.bz2"), "EmissiveCampania.tif");
+        File renamed = new File(dir, "grid.txt");
+        FileUtils.copyFile(tif, renamed);
+        assertNotNull(lookup.lookup(renamed, notGrids));
+        assertEquals(2, lookup.getProbes());
+    }
+
+    public void testLookupInvalidGridDoesNotHideLaterGrids() throws Exception {
+        File badDir = tmpDir();
+        File bad = new File(badDir, "bad.asc");
+        FileUtils.writeStringToFile(bad, "not a grid");
+
+        File dir = tmpDir();
+        File good = new File(dir, "good.asc");
+        FileUtils.writeStringToFile(good, "ncols 2\nnrows 2\nxllcorner 0\nyllcorner 0\n" + 
+            "cellsize 1\nNODATA_value -9999\n1 2\n3 4\n");
+
+        DataFormatLookup lookup = new DataFormatLookup();
+        assertNull(lookup.lookup(bad, new HashSet<String>()));
+        assertNotNull(lookup.lookup(good, new HashSet<String>()));
+        assertNotNull(lookup.lookup(good));
+
+        //neither across the preparations of directories
+        new Directory(badDir).prepare();
+        Directory d = new Directory(dir);
+        d.prepare();
+        assertEquals(1, d.getFiles().size());
+        assertTrue(d.getFiles().get(0) instanceof SpatialFile);
+    }
+
+    public void testLookupInvalidTextGridDoesNotHideGridsOfScan() throws Exception {
+        File dir = tmpDir();
+        File bad = new File(dir, "a_bad.asc");
+        FileUtils.writeStringToFile(bad, "not a grid");
+        File good = new File(dir, "b_good.asc");
+        FileUtils.writeStringToFile(good, "ncols 2\nnrows 2\nxllcorner 0\nyllcorner 0\n" + 
+            "cellsize 1\nNODATA_value -9999\n1 2\n3 4\n");
+
+        DataFormatLookup lookup = new DataFormatLookup();
+        Set<String> notGrids = new HashSet<String>();
+        assertNull(lookup.lookup(bad, notGrids));
+        assertTrue(notGrids.isEmpty());
+        assertNotNull(lookup.lookup(good, notGrids));
+
+        Directory d = new Directory(dir);
+        d.prepare();
+        assertEquals(1, d.getFiles().size());
+        assertTrue(d.getFiles().get(0) instanceof SpatialFile);
+    }
+
+    void writeCSV(File file, int rows) throws Exception {
+        PrintWriter w = new PrintWriter(new FileWriter(file));
+        try {
+            w.println("lat,lon,name");
+            for (int i = 0; i < rows; i++) {
+                w.println("10.0000,20.0000,name" + (10000 + i));
+            }
+        }
+        finally {
+            w.close();
+        }
+    }
 }
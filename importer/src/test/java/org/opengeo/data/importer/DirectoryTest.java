@@ -8,6 +8,7 @@ import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.opengeo.data.importer.job.ProgressMonitor;
 
 public class DirectoryTest extends ImporterTestSupport {
 
@@ -101,4 +102,46 @@ public class DirectoryTest extends ImporterTestSupport {
         assertTrue( d.getFiles().get(2) instanceof ASpatialFile);
     }
 
+    public void testNestedDirectories() throws Exception {
+        File dir = tmpDir();
+        for (int i = 0; i < 5; i++) {
+            File sub = new File(dir, "sub" + i);
+            sub.mkdir();
+            unpack("shape/archsites_epsg_prj.zip", sub);
+
+            File nested = new File(sub, "nested");
+            nested.mkdir();
+            unpack("shape/bugsites_esri_prj.tar.gz", nested);
+        }
+
+        Directory d = new Directory(dir);
+        d.prepare();
+
+        assertEquals(5, d.getFiles().size());
+        assertEquals(DataStoreFormat.class, d.getFormat().getClass());
+
+        List<Directory> flat = d.flatten();
+        assertEquals(11, flat.size());
+        for (Directory sub : flat.subList(1, flat.size())) {
+            assertEquals(1, sub.getFiles().size());
+
+            SpatialFile spatial = (SpatialFile) sub.getFiles().get(0);
+            assertNotNull(spatial.getPrjFile());
+            assertEquals(2, spatial.getSuppFiles().size());
+            assertEquals(DataStoreFormat.class, sub.getFormat().getClass());
+        }
+    }
+
+    public void testCanceled() throws Exception {
+        File dir = tmpDir();
+        new File(dir, "sub").mkdir();
+        unpack("shape/archsites_epsg_prj.zip", new File(dir, "sub"));
+
+        ProgressMonitor m = new ProgressMonitor();
+        m.setCanceled(true);
+
+        Directory d = new Directory(dir);
+        d.prepare(m);
+        assertTrue(d.getFiles().isEmpty());
+    }
 }
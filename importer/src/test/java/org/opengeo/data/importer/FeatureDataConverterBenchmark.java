@@ -0,0 +1,187 @@
+package org.opengeo.data.importer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Compares the time and allocation per feature of copying attributes with a compiled
+ * {@link FeatureDataConverter.Plan} against building the attribute name sets of every feature,
+ * as done before plans were compiled, for each of the converters.
+ * <p>
+ * Usage: <tt>FeatureDataConverterBenchmark [features] [rounds]</tt>. Allocation is only reported
+ * when the JVM measures it per thread.
+ * </p>
+ */
+public class FeatureDataConverterBenchmark {
+
+    /** number of attributes of the source type besides the geometry */
+    static final int ATTRIBUTES = 20;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        SimpleFeatureType source = sourceType();
+        SimpleFeature feature = feature(source);
+
+        run("DEFAULT", FeatureDataConverter.DEFAULT, feature, defaultType(source), count, rounds);
+        run("TO_SHAPEFILE", FeatureDataConverter.TO_SHAPEFILE, feature,
+            FeatureDataConverter.TO_SHAPEFILE.convertType(source, null, null, null), count, rounds);
+        run("TO_ORACLE", FeatureDataConverter.TO_ORACLE, feature, oracleType(source), count,
+            rounds);
+    }
+
+    static void run(String name, FeatureDataConverter converter, SimpleFeature from,
+        SimpleFeatureType targetType, int count, int rounds) {
+
+        SimpleFeature to = SimpleFeatureBuilder.build(targetType,
+            new Object[targetType.getAttributeCount()], "target.1");
+        FeatureDataConverter.Plan plan = converter.compile(from.getFeatureType(), targetType);
+
+        //warm up
+        for (int i = 0; i < count; i++) {
+            sets(converter, from, to);
+            plan.copy(from, to);
+        }
+
+        for (int r = 0; r < rounds; r++) {
+            long bytes = allocated();
+            long t = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                sets(converter, from, to);
+            }
+            long setsTime = System.nanoTime() - t;
+            long setsBytes = allocated() - bytes;
+
+            bytes = allocated();
+            t = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                plan.copy(from, to);
+            }
+            long planTime = System.nanoTime() - t;
+            long planBytes = allocated() - bytes;
+
+            System.out.println(String.format("%s: sets %.1f ns %s, plan %.1f ns %s per feature",
+                name, setsTime / (double) count, bytes(setsBytes, count),
+                planTime / (double) count, bytes(planBytes, count)));
+        }
+    }
+
+    static SimpleFeatureType sourceType() throws Exception {
+        StringBuilder spec = new StringBuilder("geom:Point");
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            //names longer than shapefiles allow, unique once truncated
+            spec.append(",att").append(i).append("_description:")
+                .append(i % 2 == 0 ? "String" : "Integer");
+        }
+        return DataUtilities.createType("source", spec.toString());
+    }
+
+    static SimpleFeature feature(SimpleFeatureType type) {
+        Object[] values = new Object[type.getAttributeCount()];
+        values[0] = new GeometryFactory().createPoint(new Coordinate(1, 2));
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            values[i + 1] = i % 2 == 0 ? (Object) ("value" + i) : (Object) Integer.valueOf(i);
+        }
+        return SimpleFeatureBuilder.build(type, values, "source.1");
+    }
+
+    /*
+     * the source attributes in reverse order, along with one the source does not have
+     */
+    static SimpleFeatureType defaultType(SimpleFeatureType source) {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("target");
+        List<AttributeDescriptor> atts = source.getAttributeDescriptors();
+        for (int i = atts.size() - 1; i >= 0; i--) {
+            tb.add(atts.get(i).getLocalName(), atts.get(i).getType().getBinding());
+        }
+        tb.add("extra", String.class);
+        return tb.buildFeatureType();
+    }
+
+    static SimpleFeatureType oracleType(SimpleFeatureType source) {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("TARGET");
+        for (AttributeDescriptor att : source.getAttributeDescriptors()) {
+            tb.add(att.getLocalName().toUpperCase(), att.getType().getBinding());
+        }
+        return tb.buildFeatureType();
+    }
+
+    /*
+     * copy as done before plans were compiled
+     */
+    static void sets(FeatureDataConverter converter, SimpleFeature from, SimpleFeature to) {
+        if (converter == FeatureDataConverter.TO_SHAPEFILE) {
+            for (AttributeDescriptor att : from.getType().getAttributeDescriptors()) {
+                Object obj = from.getAttribute(att.getLocalName());
+                if (att instanceof GeometryDescriptor) {
+                    to.setDefaultGeometry(obj);
+                }
+                else {
+                    String name = att.getLocalName();
+                    to.setAttribute(name.length() > 10 ? name.substring(0, 10) : name, obj);
+                }
+            }
+        }
+        else if (converter == FeatureDataConverter.TO_ORACLE) {
+            Set<String> toAttrNames = attributeNames(to);
+            for (String name : attributeNames(from)) {
+                String toName = name.toUpperCase();
+                if (toAttrNames.contains(toName)) {
+                    to.setAttribute(toName, from.getAttribute(name));
+                }
+            }
+        }
+        else {
+            Set<String> commonNames = new HashSet<String>(attributeNames(from));
+            commonNames.retainAll(attributeNames(to));
+            for (String attrName : commonNames) {
+                to.setAttribute(attrName, from.getAttribute(attrName));
+            }
+        }
+    }
+
+    static Set<String> attributeNames(SimpleFeature feature) {
+        List<AttributeDescriptor> attributeDescriptors = feature.getType().getAttributeDescriptors();
+        Set<String> attrNames = new HashSet<String>(attributeDescriptors.size());
+        for (AttributeDescriptor attr : attributeDescriptors) {
+            attrNames.add(attr.getLocalName());
+        }
+        return attrNames;
+    }
+
+    /*
+     * bytes allocated so far by the current thread, -1 if not measured
+     */
+    static long allocated() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    static String bytes(long allocated, int count) {
+        if (allocated() < 0) {
+            return "(allocation not measured)";
+        }
+        return String.format("%.1f bytes", allocated / (double) count);
+    }
+}
@@ -0,0 +1,79 @@
+package org.opengeo.data.importer;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class FeatureDataConverterTest extends TestCase {
+
+    SimpleFeatureType source;
+    SimpleFeature feature;
+
+    @Override
+    protected void setUp() throws Exception {
+        source = DataUtilities.createType("source",
+            "name:String,description_long:String,geom:Point,count:Integer");
+
+        Point p = new GeometryFactory().createPoint(new Coordinate(1, 2));
+        feature = SimpleFeatureBuilder.build(source, new Object[]{"foo", "bar", p, 3}, "source.1");
+    }
+
+    public void testDefault() throws Exception {
+        SimpleFeatureType target = DataUtilities.createType("target",
+            "count:Integer,geom:Point,name:String,other:String");
+
+        SimpleFeature converted = convert(FeatureDataConverter.DEFAULT, target);
+        assertEquals("foo", converted.getAttribute("name"));
+        assertEquals(feature.getDefaultGeometry(), converted.getDefaultGeometry());
+        assertEquals(3, converted.getAttribute("count"));
+        assertNull(converted.getAttribute("other"));
+    }
+
+    public void testShapefile() throws Exception {
+        SimpleFeatureType target = FeatureDataConverter.TO_SHAPEFILE.convertType(
+            source, null, null, null);
+        assertEquals("geom", target.getDescriptor(0).getLocalName());
+        assertNotNull(target.getDescriptor("descriptio"));
+
+        SimpleFeature converted = convert(FeatureDataConverter.TO_SHAPEFILE, target);
+        assertEquals(feature.getDefaultGeometry(), converted.getAttribute(0));
+        assertEquals("foo", converted.getAttribute("name"));
+        assertEquals("bar", converted.getAttribute("descriptio"));
+        assertEquals(3, converted.getAttribute("count"));
+    }
+
+    public void testOracle() throws Exception {
+        SimpleFeatureType target = DataUtilities.createType("TARGET",
+            "NAME:String,GEOM:Point,COUNT:Integer");
+
+        SimpleFeature converted = convert(FeatureDataConverter.TO_ORACLE, target);
+        assertEquals("foo", converted.getAttribute("NAME"));
+        assertEquals(feature.getDefaultGeometry(), converted.getAttribute("GEOM"));
+        assertEquals(3, converted.getAttribute("COUNT"));
+    }
+
+    public void testPlanReused() throws Exception {
+        SimpleFeatureType target = DataUtilities.createType("target", "name:String");
+
+        FeatureDataConverter.Plan plan = FeatureDataConverter.DEFAULT.plan(source, target);
+        assertSame(plan, FeatureDataConverter.DEFAULT.plan(source, target));
+        assertTrue(plan.accepts(source, target));
+
+        SimpleFeatureType other = DataUtilities.createType("target", "count:Integer");
+        assertNotSame(plan, FeatureDataConverter.DEFAULT.plan(source, other));
+    }
+
+    SimpleFeature convert(FeatureDataConverter converter, SimpleFeatureType target) {
+        SimpleFeature converted = SimpleFeatureBuilder.build(target,
+            new Object[target.getAttributeCount()], "target.1");
+        converter.convert(feature, converted);
+        return converted;
+    }
+}
@@ -0,0 +1,79 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.catalog.DataStoreInfo;
+
+import org.opengeo.data.importer.ImportMetrics.ItemMetrics;
+import org.opengeo.data.importer.ImportMetrics.Stage;
+
+public class ImportMetricsTest extends ImporterTestSupport {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        importer.getMetrics().reset();
+    }
+
+    ImportContext createContext(String storeName) throws Exception {
+        DataStoreInfo ds = 
+            createH2DataStore(getCatalog().getDefaultWorkspace().getName(), storeName);
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        return importer.createContext(new Directory(dir), ds);
+    }
+
+    public void testLoad() throws Exception {
+        ImportContext context = createContext("metrics");
+        importer.run(context);
+
+        ImportMetrics metrics = importer.getMetrics();
+        assertEquals(1, metrics.getItems());
+        assertEquals(0, metrics.getErrors());
+        assertTrue(metrics.getFeatures() > 0);
+        assertTrue(metrics.getBytes() > 0);
+
+        long features = metrics.getFeatures();
+        assertEquals(features, metrics.getTotal().stage(Stage.READ).getCount());
+        assertEquals(features, metrics.getTotal().stage(Stage.CONVERT).getCount());
+        assertEquals(features, metrics.getTotal().stage(Stage.WRITE).getCount());
+        assertTrue(metrics.getTotal().stage(Stage.COMMIT).getCount() > 0);
+
+        assertEquals(1, metrics.getRecent().size());
+        ItemMetrics item = metrics.getRecent().get(0);
+        assertEquals(context.getId().longValue(), item.getContextId());
+        assertEquals(features, item.getFeatures());
+        assertFalse(item.isError());
+    }
+
+    public void testReset() throws Exception {
+        importer.run(createContext("metricsReset"));
+
+        ImportMetrics metrics = importer.getMetrics();
+        assertTrue(metrics.getFeatures() > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.getItems());
+        assertEquals(0, metrics.getFeatures());
+        assertTrue(metrics.getRecent().isEmpty());
+    }
+
+    public void testRegister() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ImportMetrics.OBJECT_NAME);
+
+        ImportMetrics metrics = new ImportMetrics(null);
+        metrics.register();
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(0l, server.getAttribute(name, "Features"));
+        }
+        finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,198 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geoserver.catalog.DataStoreInfo;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+
+public class ImportRecoveryTest extends ImporterTestSupport {
+
+    ImportContext createInterrupted() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+
+        context.setState(ImportContext.State.RUNNING);
+        ImportTask task = context.getTasks().get(0);
+        task.setState(ImportTask.State.RUNNING);
+        task.getItems().get(0).setState(ImportItem.State.RUNNING);
+        importer.getStore().save(context);
+        return context;
+    }
+
+    public void testRollback() throws Exception {
+        ImportContext context = createInterrupted();
+
+        List<ImportContext> recovered =
+            new ImportRecovery(importer, ImportRecovery.Policy.ROLLBACK).recover();
+        assertTrue(recovered.contains(context));
+
+        context = importer.getContext(context.getId());
+        assertEquals(ImportContext.State.READY, context.getState());
+        assertEquals(ImportTask.State.READY, context.getTasks().get(0).getState());
+        assertEquals(ImportItem.State.READY, context.getTasks().get(0).getItems().get(0).getState());
+        assertEquals(-1, importer.getQueuePosition(context));
+    }
+
+    public void testResume() throws Exception {
+        ImportContext context = createInterrupted();
+
+        List<ImportContext> recovered =
+            new ImportRecovery(importer, ImportRecovery.Policy.RESUME).recover();
+        assertTrue(recovered.contains(context));
+
+        Long jobid = importer.contextJobs.get(context.getId());
+        assertNotNull(jobid);
+        importer.getTask(jobid).get();
+
+        context = importer.getContext(context.getId());
+        assertEquals(ImportContext.State.COMPLETE, context.getState());
+        assertNotNull(context.getTasks().get(0).getItems().get(0).getLayer().getId());
+    }
+
+    public void testNone() throws Exception {
+        ImportContext context = createInterrupted();
+
+        assertTrue(new ImportRecovery(importer, ImportRecovery.Policy.NONE).recover().isEmpty());
+        assertEquals(ImportContext.State.RUNNING,
+            importer.getContext(context.getId()).getState());
+    }
+
+    /*
+     * indirect import of bugsites into a database, interrupted as if by a shutdown after
+     * creating its table and committing a number of features, or with a negative number before
+     * creating its table while one of the same name already exists
+     */
+    ImportItem createInterruptedLoad(String name, int committed) throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), name);
+
+        File dir = unpack("shape/bugsites_esri_prj.tar.gz");
+        ImportContext context =
+            importer.createContext(new SpatialFile(new File(dir, "bugsites.shp")), ds);
+        context.setArchive(false);
+        ImportTask task = context.getTasks().get(0);
+        task.setCommitBatchSize(5);
+        ImportItem item = task.getItems().get(0);
+
+        if (committed > 0) {
+            //fail the load once the features have been committed
+            item.getTransform().add(new ImporterDataTest.Interrupt(committed + 1, false));
+            importer.run(context);
+            assertEquals(committed, item.getCommittedOffset());
+            item.getTransform().removeAll(ImporterDataTest.Interrupt.class);
+        }
+        else {
+            //loads not batched create their table and commit at the end
+            dataStore(item).createSchema(DataUtilities.createType(
+                item.getLayer().getResource().getNativeName(), "the_geom:Point,ID:Integer"));
+            item.setSchemaCreated(committed == 0);
+        }
+        assertEquals(Math.max(committed, 0), countRows(item));
+
+        context.setState(ImportContext.State.RUNNING);
+        task.setState(ImportTask.State.RUNNING);
+        item.setState(ImportItem.State.RUNNING);
+        importer.getStore().save(context);
+        importer.getStore().save(item);
+        return item;
+    }
+
+    public void testResumeFromCheckpoint() throws Exception {
+        ImportItem item = createInterruptedLoad("recoverCheckpoint", 10);
+        Long id = item.getTask().getContext().getId();
+
+        new ImportRecovery(importer, ImportRecovery.Policy.RESUME).recover();
+        importer.getTask(importer.contextJobs.get(id)).get();
+
+        item = importer.getContext(id).getTasks().get(0).getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+        assertLoadedOnce(item);
+    }
+
+    public void testResumeWithoutCheckpoint() throws Exception {
+        ImportItem item = createInterruptedLoad("recoverNoCheckpoint", 0);
+        Long id = item.getTask().getContext().getId();
+        String typeName = item.getLayer().getResource().getNativeName();
+
+        new ImportRecovery(importer, ImportRecovery.Policy.RESUME).recover();
+        importer.getTask(importer.contextJobs.get(id)).get();
+
+        //loaded again into the same table, rather than one next to it
+        item = importer.getContext(id).getTasks().get(0).getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+        assertEquals(typeName, item.getLayer().getResource().getNativeName());
+        assertFalse(Arrays.asList(dataStore(item).getTypeNames()).contains(typeName + "1"));
+        assertLoadedOnce(item);
+    }
+
+    public void testRollbackDropsTable() throws Exception {
+        for (int committed : new int[]{0, 10}) {
+            ImportItem item = createInterruptedLoad("rollback" + committed, committed);
+            Long id = item.getTask().getContext().getId();
+            String typeName = item.getLayer().getResource().getNativeName();
+
+            new ImportRecovery(importer, ImportRecovery.Policy.ROLLBACK).recover();
+
+            item = importer.getContext(id).getTasks().get(0).getItems().get(0);
+            assertEquals(ImportItem.State.READY, item.getState());
+            assertEquals(0, item.getCommittedOffset());
+            assertFalse(Arrays.asList(dataStore(item).getTypeNames()).contains(typeName));
+        }
+    }
+
+    public void testExistingTableKept() throws Exception {
+        for (ImportRecovery.Policy policy : ImportRecovery.Policy.values()) {
+            if (policy == ImportRecovery.Policy.NONE) {
+                continue;
+            }
+            ImportItem item = createInterruptedLoad("existing" + policy, -1);
+            Long id = item.getTask().getContext().getId();
+            String typeName = item.getLayer().getResource().getNativeName();
+
+            new ImportRecovery(importer, policy).recover();
+            if (policy == ImportRecovery.Policy.RESUME) {
+                importer.getTask(importer.contextJobs.get(id)).get();
+            }
+
+            item = importer.getContext(id).getTasks().get(0).getItems().get(0);
+            assertTrue(Arrays.asList(dataStore(item).getTypeNames()).contains(typeName));
+            assertEquals(0, dataStore(item).getFeatureSource(typeName).getCount(Query.ALL));
+            if (policy == ImportRecovery.Policy.RESUME) {
+                //loaded into a table of its own
+                assertEquals(ImportItem.State.COMPLETE, item.getState());
+                assertFalse(typeName.equals(item.getLayer().getResource().getNativeName()));
+                assertLoadedOnce(item);
+            }
+        }
+    }
+
+    DataStore dataStore(ImportItem item) throws Exception {
+        return (DataStore) item.getTask().getStore().getDataStore(null);
+    }
+
+    int countRows(ImportItem item) throws Exception {
+        return dataStore(item).getFeatureSource(item.getLayer().getResource().getNativeName())
+            .getCount(Query.ALL);
+    }
+
+    void assertLoadedOnce(ImportItem item) throws Exception {
+        Set<Object> ids = new HashSet<Object>();
+        SimpleFeatureIterator it = dataStore(item).getFeatureSource(
+            item.getLayer().getResource().getNativeName()).getFeatures().features();
+        try {
+            while (it.hasNext()) {
+                assertTrue(ids.add(it.next().getAttribute("ID")));
+            }
+        }
+        finally {
+            it.close();
+        }
+        assertEquals(90, ids.size());
+    }
+}
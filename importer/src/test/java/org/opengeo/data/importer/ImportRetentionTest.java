@@ -0,0 +1,115 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+import java.util.Date;
+import java.util.EnumSet;
+
+public class ImportRetentionTest extends ImporterTestSupport {
+
+    static final long DAY = 24 * 3600 * 1000L;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        importer.getStore().removeAll();
+    }
+
+    ImportContext createContext(File dir, ImportContext.State state, long age) throws Exception {
+        ImportContext context = importer.createContext(new Directory(dir));
+        context.setState(state);
+        context.updated = new Date(System.currentTimeMillis() - age);
+        importer.getStore().save(context);
+        return context;
+    }
+
+    public void testPurgeByAge() throws Exception {
+        File dir = Directory.createNew(importer.getUploadRoot()).getFile();
+        unpack("shape/archsites_epsg_prj.zip", dir);
+        ImportContext old = createContext(dir, ImportContext.State.COMPLETE, 10 * DAY);
+        ImportContext recent =
+            createContext(unpack("shape/archsites_epsg_prj.zip"), ImportContext.State.COMPLETE, 0);
+
+        ImportRetention retention = new ImportRetention(importer,
+            new ImportRetention.Rule(ImportRetention.FINISHED, DAY, -1));
+        ImportRetention.Report report = retention.purge();
+
+        assertEquals(1, report.getImports());
+        assertTrue(report.getDataBytes() > 0);
+        assertNull(importer.getContext(old.getId()));
+        assertNotNull(importer.getContext(recent.getId()));
+        assertFalse(dir.exists());
+        assertSame(report, retention.getLastReport());
+    }
+
+    public void testDataOutsideUploadsKept() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = createContext(dir, ImportContext.State.COMPLETE, 10 * DAY);
+
+        ImportRetention retention = new ImportRetention(importer,
+            new ImportRetention.Rule(ImportRetention.FINISHED, DAY, -1));
+        ImportRetention.Report report = retention.purge();
+
+        assertEquals(1, report.getImports());
+        assertEquals(0, report.getDataBytes());
+        assertNull(importer.getContext(context.getId()));
+        assertTrue(new File(dir, "archsites.shp").exists());
+    }
+
+    public void testPurgeByCount() throws Exception {
+        ImportContext c1 = createContext(
+            unpack("shape/archsites_epsg_prj.zip"), ImportContext.State.COMPLETE, 3 * DAY);
+        ImportContext c2 = createContext(
+            unpack("shape/archsites_epsg_prj.zip"), ImportContext.State.CANCELLED, 2 * DAY);
+        ImportContext c3 = createContext(
+            unpack("shape/archsites_epsg_prj.zip"), ImportContext.State.COMPLETE, DAY);
+        ImportContext pending = createContext(
+            unpack("shape/archsites_epsg_prj.zip"), ImportContext.State.PENDING, 4 * DAY);
+
+        ImportRetention retention = new ImportRetention(importer,
+            new ImportRetention.Rule(ImportRetention.FINISHED, 0, 1));
+        assertEquals(2, retention.purge().getImports());
+
+        assertNull(importer.getContext(c1.getId()));
+        assertNull(importer.getContext(c2.getId()));
+        assertNotNull(importer.getContext(c3.getId()));
+        assertNotNull(importer.getContext(pending.getId()));
+    }
+
+    public void testPublishedDataKept() throws Exception {
+        File dir = Directory.createNew(importer.getUploadRoot()).getFile();
+        unpack("shape/archsites_epsg_prj.zip", dir);
+
+        //direct import, the store added to the catalog reads the uploaded files
+        ImportContext context = importer.createContext(new Directory(dir));
+        importer.run(context);
+        ImportTask task = context.getTasks().get(0);
+        assertEquals(ImportTask.State.COMPLETE, task.getState());
+        String layer = task.getItems().get(0).getLayer().getName();
+
+        context.setState(ImportContext.State.COMPLETE);
+        context.updated = new Date(System.currentTimeMillis() - 10 * DAY);
+        importer.getStore().save(context);
+
+        ImportRetention retention = new ImportRetention(importer,
+            new ImportRetention.Rule(ImportRetention.FINISHED, DAY, -1));
+        ImportRetention.Report report = retention.purge();
+
+        assertEquals(1, report.getImports());
+        assertNull(importer.getContext(context.getId()));
+        assertTrue(new File(dir, "archsites.shp").exists());
+        runChecks(layer);
+    }
+
+    public void testRunningSkipped() throws Exception {
+        ImportContext context = createContext(
+            unpack("shape/archsites_epsg_prj.zip"), ImportContext.State.RUNNING, 10 * DAY);
+
+        ImportRetention retention = new ImportRetention(importer,
+            new ImportRetention.Rule(EnumSet.of(ImportContext.State.RUNNING), DAY, -1));
+        ImportRetention.Report report = retention.purge();
+
+        assertEquals(0, report.getImports());
+        assertEquals(1, report.getSkipped());
+        assertNotNull(importer.getContext(context.getId()));
+    }
+}
@@ -1,8 +1,11 @@
 package org.opengeo.data.importer;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import org.geoserver.catalog.Catalog;
@@ -10,12 +13,21 @@ import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
+import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 import org.geotools.data.h2.H2DataStoreFactory;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengeo.data.importer.bulk.BulkLoader;
+import org.opengeo.data.importer.bulk.JDBCBatchLoader;
+import org.opengeo.data.importer.transform.AbstractVectorTransform;
 import org.opengeo.data.importer.transform.AttributesToPointGeometryTransform;
+import org.opengeo.data.importer.transform.InlineVectorTransform;
 import org.opengeo.data.importer.transform.TransformChain;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
@@ -24,6 +36,7 @@ import org.opengis.feature.type.FeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Point;
 
 
@@ -307,6 +320,243 @@ public class ImporterDataTest extends ImporterTestSupport {
         runChecks("bugsites");
     }
     
+    public void testImportIntoDatabaseParallel() throws Exception {
+        Catalog cat = getCatalog();
+
+        DataStoreInfo ds = createH2DataStore(cat.getDefaultWorkspace().getName(), "parallel");
+
+        File dir = tmpDir();
+        unpack("shape/archsites_epsg_prj.zip", dir);
+        unpack("shape/bugsites_esri_prj.tar.gz", dir);
+
+        ImportContext context = importer.createContext(new Directory(dir), ds);
+        assertEquals(1, context.getTasks().size());
+
+        ImportTask task = context.getTasks().get(0);
+        assertEquals(2, task.getItems().size());
+        task.setParallelism(2);
+        assertEquals(2, importer.maxParallelism(task));
+
+        importer.run(context);
+
+        for (ImportItem item : task.getItems()) {
+            assertEquals(ImportItem.State.COMPLETE, item.getState());
+            assertNotNull(cat.getFeatureTypeByDataStore(ds, item.getLayer().getResource().getName()));
+        }
+        assertEquals(ImportTask.State.COMPLETE, task.getState());
+        assertTrue(importer.getCurrentlyProcessingItems(context.getId()).isEmpty());
+    }
+
+    public void testImportIntoDatabaseBatched() throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), "batched");
+
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = 
+            importer.createContext(new SpatialFile(new File(dir, "archsites.shp")), ds);
+        context.setArchive(false);
+
+        ImportTask task = context.getTasks().get(0);
+        task.setCommitBatchSize(5);
+        
+        importer.run(context);
+
+        ImportItem item = task.getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+        assertEquals(0, item.getCommittedOffset());
+
+        FeatureTypeInfo ft = (FeatureTypeInfo) item.getLayer().getResource();
+        assertEquals(item.getTotalToProcess(), ft.getFeatureSource(null, null).getCount(Query.ALL));
+    }
+
+    public void testImportIntoDatabasePipelined() throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), "pipelined");
+
+        File dir = unpack("shape/bugsites_esri_prj.tar.gz");
+        ImportContext context =
+            importer.createContext(new SpatialFile(new File(dir, "bugsites.shp")), ds);
+        context.setArchive(false);
+
+        ImportTask task = context.getTasks().get(0);
+        task.setTransformWorkers(2);
+        task.setCommitBatchSize(20);
+
+        importer.run(context);
+
+        ImportItem item = task.getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+        assertNull(item.getMetadata().get(FeaturePipeline.class));
+
+        FeatureTypeInfo ft = (FeatureTypeInfo) item.getLayer().getResource();
+        assertEquals(item.getTotalToProcess(), ft.getFeatureSource(null, null).getCount(Query.ALL));
+        assertEquals(item.getTotalToProcess(), item.getNumberProcessed());
+    }
+
+    public void testImportIntoDatabaseBulk() throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), "bulk");
+
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = 
+            importer.createContext(new SpatialFile(new File(dir, "archsites.shp")), ds);
+        context.setArchive(false);
+
+        importer.run(context);
+
+        ImportItem item = context.getTasks().get(0).getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+
+        FeatureTypeInfo ft = (FeatureTypeInfo) item.getLayer().getResource();
+        JDBCDataStore store = (JDBCDataStore) ds.getDataStore(null);
+        assertTrue(BulkLoader.lookup(store, ft.getNativeName()) instanceof JDBCBatchLoader);
+
+        FeatureCollection features = ft.getFeatureSource(null, null).getFeatures();
+        assertEquals(item.getTotalToProcess(), features.size());
+
+        FeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature f = (SimpleFeature) it.next();
+                assertTrue(f.getDefaultGeometry() instanceof Point);
+                assertNotNull(f.getAttribute("CAT_ID"));
+            }
+        }
+        finally {
+            it.close();
+        }
+    }
+
+    public void testImportIntoDatabaseStatistics() throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), "stats");
+
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = 
+            importer.createContext(new SpatialFile(new File(dir, "archsites.shp")), ds);
+        context.setArchive(false);
+        context.getTasks().get(0).setCollectStatistics(true);
+
+        importer.run(context);
+
+        ImportItem item = context.getTasks().get(0).getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+
+        FeatureStatistics stats = item.getStatistics();
+        assertNotNull(stats);
+        assertEquals(item.getTotalToProcess(), stats.getCount());
+
+        FeatureStatistics.AttributeStatistics geom = stats.getAttribute("the_geom");
+        assertEquals(stats.getCount(), geom.getGeometryTypes().get("Point").intValue());
+
+        FeatureStatistics.AttributeStatistics catId = stats.getAttribute("CAT_ID");
+        assertEquals(0, catId.getNulls());
+        assertTrue(((Comparable)catId.getMin()).compareTo(catId.getMax()) <= 0);
+        assertTrue(catId.getDistinct() > 0);
+        assertNotNull(catId.getHistogram());
+    }
+
+    public void testImportIntoDatabaseResumeAfterError() throws Exception {
+        //fails on the 13th feature, after two batches of 5 have been committed
+        ImportItem item = loadInterrupted("resumeError", new Interrupt(13, false));
+        assertEquals(ImportItem.State.ERROR, item.getState());
+        assertEquals(10, item.getCommittedOffset());
+        assertEquals(10, countRows(item));
+
+        resume(item);
+    }
+
+    public void testImportIntoDatabaseResumeAfterCancel() throws Exception {
+        //canceled once the 12th feature has been written
+        ImportItem item = loadInterrupted("resumeCancel", new Interrupt(12, true));
+        assertEquals(ImportItem.State.CANCELED, item.getState());
+        assertEquals(12, item.getCommittedOffset());
+        assertEquals(12, countRows(item));
+
+        resume(item);
+    }
+
+    ImportItem loadInterrupted(String name, Interrupt interrupt) throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), name);
+
+        File dir = unpack("shape/bugsites_esri_prj.tar.gz");
+        ImportContext context =
+            importer.createContext(new SpatialFile(new File(dir, "bugsites.shp")), ds);
+        context.setArchive(false);
+
+        ImportTask task = context.getTasks().get(0);
+        task.setCommitBatchSize(5);
+
+        ImportItem item = task.getItems().get(0);
+        item.getTransform().add(interrupt);
+        importer.run(context);
+        assertTrue(item.readyForImport());
+        return item;
+    }
+
+    void resume(ImportItem item) throws Exception {
+        item.getTransform().removeAll(Interrupt.class);
+        importer.run(item.getTask().getContext());
+
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+        assertEquals(0, item.getCommittedOffset());
+
+        //every feature loaded exactly once
+        DataStoreInfo ds = (DataStoreInfo) item.getTask().getStore();
+        SimpleFeatureSource source = ((DataStore) ds.getDataStore(null)).getFeatureSource(
+            item.getLayer().getResource().getNativeName());
+        List<Integer> ids = new ArrayList<Integer>();
+        SimpleFeatureIterator it = source.getFeatures().features();
+        try {
+            while (it.hasNext()) {
+                ids.add(((Number) it.next().getAttribute("ID")).intValue());
+            }
+        }
+        finally {
+            it.close();
+        }
+        Collections.sort(ids);
+
+        assertEquals(90, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i + 1, ids.get(i).intValue());
+        }
+        assertNotNull(getCatalog().getFeatureTypeByDataStore(ds, item.getLayer().getResource().getName()));
+    }
+
+    int countRows(ImportItem item) throws Exception {
+        DataStore store = (DataStore) item.getTask().getStore().getDataStore(null);
+        return store.getFeatureSource(item.getLayer().getResource().getNativeName())
+            .getCount(Query.ALL);
+    }
+
+    /**
+     * Fails, or cancels the load, once a number of features have been transformed.
+     */
+    static class Interrupt extends AbstractVectorTransform implements InlineVectorTransform {
+
+        int after;
+        boolean cancel;
+        int count;
+
+        Interrupt(int after, boolean cancel) {
+            this.after = after;
+            this.cancel = cancel;
+        }
+
+        public SimpleFeatureType apply(ImportItem item, DataStore dataStore,
+            SimpleFeatureType featureType) throws Exception {
+            return featureType;
+        }
+
+        public SimpleFeature apply(ImportItem item, DataStore dataStore, SimpleFeature oldFeature,
+            SimpleFeature feature) throws Exception {
+            if (++count == after) {
+                if (!cancel) {
+                    throw new Exception("interrupted after " + (after - 1) + " features");
+                }
+                item.progress().setCanceled(true);
+            }
+            return feature;
+        }
+    }
+
     public void testImportIntoDatabaseWithEncoding() throws Exception {
         Catalog cat = getCatalog();
 
@@ -548,5 +798,13 @@ public class ImporterDataTest extends ImporterTestSupport {
         assertEquals("Invalid x coordinate", 11.12, coordinate.x, 0.1);
         assertEquals("Invalid y coordinate", 46.07, coordinate.y, 0.1);
         featureIterator.close();
+
+        //bounds are those of the points created by the transform
+        ReferencedEnvelope bounds = fti.getNativeBoundingBox();
+        assertFalse(bounds.isEmpty());
+        assertTrue(bounds.contains(coordinate));
+        assertEquals(new Envelope(featureSource.getBounds()), new Envelope(bounds));
+        assertNotNull(fti.getLatLonBoundingBox());
+        assertFalse(fti.getLatLonBoundingBox().isEmpty());
     }
 }
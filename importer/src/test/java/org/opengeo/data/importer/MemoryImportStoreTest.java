@@ -0,0 +1,110 @@
+package org.opengeo.data.importer;
+
+import java.util.Date;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.opengeo.data.importer.ImportContext.State;
+
+import com.google.common.collect.Iterators;
+
+public class MemoryImportStoreTest extends TestCase {
+
+    MemoryImportStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        store = new MemoryImportStore();
+    }
+
+    public void testGet() throws Exception {
+        ImportContext c1 = context("foo", State.PENDING, 1000);
+        ImportContext c2 = context("bar", State.PENDING, 2000);
+
+        assertSame(c1, store.get(c1.getId()));
+        assertSame(c2, store.get(c2.getId()));
+        assertNull(store.get(c2.getId() + 1));
+
+        store.remove(c1);
+        assertNull(store.get(c1.getId()));
+        assertEquals(1, Iterators.size(store.iterator()));
+    }
+
+    public void testNonCompleteAndByUser() throws Exception {
+        ImportContext c1 = context("foo", State.PENDING, 1000);
+        ImportContext c2 = context("bar", State.COMPLETE, 2000);
+        ImportContext c3 = context("foo", State.READY, 3000);
+
+        assertEquals(2, Iterators.size(store.allNonCompleteImports()));
+        assertEquals(2, Iterators.size(store.importsByUser("foo")));
+        assertEquals(0, Iterators.size(store.importsByUser("baz")));
+
+        c1.setState(State.COMPLETE);
+        c3.setUser("bar");
+        store.save(c1);
+        store.save(c3);
+
+        Iterator<ImportContext> it = store.allNonCompleteImports();
+        assertSame(c3, it.next());
+        assertFalse(it.hasNext());
+
+        assertEquals(0, Iterators.size(store.importsByUser("foo")));
+        assertEquals(2, Iterators.size(store.importsByUser("bar")));
+        assertTrue(Iterators.contains(store.importsByUser("bar"), c2));
+    }
+
+    public void testIteratorByUpdated() throws Exception {
+        ImportContext c1 = context("foo", State.PENDING, 1000);
+        ImportContext c2 = context("foo", State.PENDING, 3000);
+        ImportContext c3 = context("foo", State.PENDING, 2000);
+
+        Iterator<ImportContext> it = store.iterator("updated");
+        assertSame(c2, it.next());
+        assertSame(c3, it.next());
+        assertSame(c1, it.next());
+        assertFalse(it.hasNext());
+
+        c1.updated = new Date(4000);
+        store.save(c1);
+        assertSame(c1, store.iterator("updated").next());
+        assertEquals(3, Iterators.size(store.iterator("updated")));
+    }
+
+    public void testRetention() throws Exception {
+        store.setMaxCompleted(2);
+
+        ImportContext c1 = context("foo", State.COMPLETE, 1000);
+        ImportContext c2 = context("foo", State.COMPLETE, 2000);
+        ImportContext c3 = context("foo", State.PENDING, 500);
+        ImportContext c4 = context("foo", State.COMPLETE, 3000);
+
+        //least recently updated complete import discarded
+        assertNull(store.get(c1.getId()));
+        assertNotNull(store.get(c2.getId()));
+        assertNotNull(store.get(c3.getId()));
+        assertNotNull(store.get(c4.getId()));
+    }
+
+    public void testRetentionTimeToLive() throws Exception {
+        store.setCompletedTimeToLive(60000);
+
+        long now = System.currentTimeMillis();
+        ImportContext c1 = context("foo", State.COMPLETE, now - 120000);
+        ImportContext c2 = context("foo", State.PENDING, now - 120000);
+        ImportContext c3 = context("foo", State.COMPLETE, now);
+
+        assertNull(store.get(c1.getId()));
+        assertNotNull(store.get(c2.getId()));
+        assertNotNull(store.get(c3.getId()));
+    }
+
+    ImportContext context(String user, State state, long updated) {
+        ImportContext context = new ImportContext();
+        context.setUser(user);
+        context.setState(state);
+        context.updated = new Date(updated);
+        store.add(context);
+        return context;
+    }
+}
@@ -0,0 +1,133 @@
+package org.opengeo.data.importer;
+
+import java.io.File;
+
+import org.geoserver.catalog.DataStoreInfo;
+import org.opengeo.data.importer.ProgressRegistry.ContextProgress;
+import org.opengeo.data.importer.ProgressRegistry.ItemProgress;
+
+public class ProgressRegistryTest extends ImporterTestSupport {
+
+    public void testRun() throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), 
+            "progress");
+
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir), ds);
+        assertNull(importer.getProgress().get(context.getId()));
+
+        importer.run(context);
+
+        ContextProgress progress = importer.getProgress().get(context.getId());
+        assertNotNull(progress);
+        assertFalse(progress.isRunning());
+        assertEquals(ImportContext.State.COMPLETE, progress.getState());
+        //started, item started and finished, finished
+        assertEquals(4, progress.getVersion());
+
+        assertEquals(1, progress.getItems().size());
+        ItemProgress item = progress.getItems().get(0);
+        assertEquals(ImportItem.State.COMPLETE, item.getState());
+        assertTrue(item.getProcessed() > 0);
+        assertEquals(-1, item.getEta());
+    }
+
+    public void testProgressRecordedAtCheckpoints() throws Exception {
+        DataStoreInfo ds = createH2DataStore(getCatalog().getDefaultWorkspace().getName(), 
+            "progress");
+
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir), ds);
+        ImportTask task = context.getTasks().get(0);
+        task.setCommitBatchSize(5);
+        importer.getStore().save(context);
+
+        importer.run(context);
+
+        //started, item started, at least one change per checkpoint, item finished, finished
+        int checkpoints = task.getItems().get(0).getNumberProcessed() / 5;
+        assertTrue(checkpoints > 0);
+        assertTrue(importer.getProgress().get(context.getId()).getVersion() >= 4 + checkpoints);
+    }
+
+    public void testAwait() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+        importer.run(context);
+
+        ProgressRegistry registry = importer.getProgress();
+        long version = registry.get(context.getId()).getVersion();
+
+        //unchanged, waits for the timeout
+        long t = System.currentTimeMillis();
+        registry.await(context.getId(), version, 100);
+        assertTrue(System.currentTimeMillis() - t >= 90);
+
+        //changed, returns right away
+        t = System.currentTimeMillis();
+        assertEquals(version, registry.await(context.getId(), version - 1, 10000).getVersion());
+        assertTrue(System.currentTimeMillis() - t < 5000);
+
+        assertNull(registry.await(-1, 0, 10000));
+    }
+
+    public void testPurge() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+        importer.run(context);
+
+        ProgressRegistry registry = importer.getProgress();
+        registry.setRetention(-1);
+        try {
+            assertNull(registry.get(context.getId()));
+        }
+        finally {
+            registry.setRetention(ProgressRegistry.DEFAULT_RETENTION);
+        }
+    }
+
+    public void testPurgedOnRun() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+        importer.run(context);
+
+        ProgressRegistry registry = importer.getProgress();
+        registry.setRetention(-1);
+        try {
+            ImportContext other = importer.createContext(new Directory(unpack(
+                "shape/archsites_epsg_prj.zip")));
+            importer.run(other);
+            assertFalse(registry.contexts.containsKey(context.getId()));
+        }
+        finally {
+            registry.setRetention(ProgressRegistry.DEFAULT_RETENTION);
+        }
+    }
+
+    public void testRestartWakesWaiters() throws Exception {
+        final ProgressRegistry registry = new ProgressRegistry();
+        final ImportContext context = new ImportContext(1);
+        registry.started(context);
+
+        final long version = registry.get(1).getVersion();
+        final ContextProgress[] woken = new ContextProgress[1];
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    woken[0] = registry.await(1, version, 10000);
+                }
+                catch(InterruptedException e) {
+                }
+            }
+        };
+        t.start();
+        Thread.sleep(100);
+
+        long time = System.currentTimeMillis();
+        registry.started(context);
+        t.join();
+        assertTrue(System.currentTimeMillis() - time < 5000);
+        assertTrue(woken[0].getVersion() > version);
+        assertTrue(registry.get(1).getVersion() > woken[0].getVersion());
+    }
+}
@@ -0,0 +1,124 @@
+package org.opengeo.data.importer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+public class StreamingExtractorTest extends ImporterTestSupport {
+
+    public void testExtractZip() throws Exception {
+        assertExtractsLikeVFS("shape/archsites_epsg_prj.zip");
+    }
+
+    public void testExtractTarGz() throws Exception {
+        assertExtractsLikeVFS("shape/bugsites_esri_prj.tar.gz");
+    }
+
+    public void testAcceptArchive() throws Exception {
+        Directory d = new Directory(tmpDir());
+        InputStream in = getClass().getResourceAsStream("../test-data/shape/archsites_epsg_prj.zip");
+        try {
+            d.accept("archsites_epsg_prj.zip", in);
+        }
+        finally {
+            in.close();
+        }
+
+        assertFalse(d.getChild("archsites_epsg_prj.zip").exists());
+        d.prepare();
+        assertEquals(1, d.getFiles().size());
+        assertTrue(d.getFiles().get(0) instanceof SpatialFile);
+    }
+
+    public void testRejectOutsideEntries() throws Exception {
+        File dir = tmpDir();
+        byte[] zip = zip("../evil.txt", new byte[10]);
+
+        try {
+            new StreamingExtractor().extract("evil.zip", new ByteArrayInputStream(zip), dir);
+            fail("entry outside of the target directory extracted");
+        }
+        catch(IOException e) {
+        }
+        assertFalse(new File(dir.getParentFile(), "evil.txt").exists());
+    }
+
+    public void testMaxBytes() throws Exception {
+        File dir = tmpDir();
+        byte[] zip = zip("big.txt", new byte[1024 * 1024]);
+
+        StreamingExtractor x = new StreamingExtractor();
+        x.setMaxBytes(1024);
+        try {
+            x.extract("big.zip", new ByteArrayInputStream(zip), dir);
+            fail("limit not enforced");
+        }
+        catch(StreamingExtractor.LimitExceededException e) {
+        }
+        assertEquals(0, dir.list().length);
+    }
+
+    public void testMaxRatio() throws Exception {
+        File dir = tmpDir();
+        byte[] zip = zip("zeros.txt", new byte[(int)StreamingExtractor.RATIO_THRESHOLD * 2]);
+
+        StreamingExtractor x = new StreamingExtractor();
+        x.setMaxRatio(10);
+        try {
+            x.extract("zeros.zip", new ByteArrayInputStream(zip), dir);
+            fail("limit not enforced");
+        }
+        catch(StreamingExtractor.LimitExceededException e) {
+        }
+        assertEquals(0, dir.list().length);
+    }
+
+    public void testCorruptTarHeader() throws Exception {
+        byte[] header = new byte[StreamingExtractor.BLOCK];
+        byte[] name = "foo.txt".getBytes("UTF-8");
+        System.arraycopy(name, 0, header, 0, name.length);
+        System.arraycopy("0000001234\0".getBytes("UTF-8"), 0, header, 148, 8);
+
+        try {
+            new StreamingExtractor().extract("foo.tar", new ByteArrayInputStream(header), tmpDir());
+            fail("invalid checksum not detected");
+        }
+        catch(IOException e) {
+        }
+    }
+
+    void assertExtractsLikeVFS(String path) throws Exception {
+        File expected = unpack(path);
+
+        File dir = tmpDir();
+        InputStream in = getClass().getResourceAsStream("../test-data/" + path);
+        try {
+            new StreamingExtractor().extract(new File(path).getName(), in, dir);
+        }
+        finally {
+            in.close();
+        }
+
+        String[] names = expected.list();
+        assertEquals(names.length, dir.list().length);
+        for (String name : names) {
+            assertTrue(name, FileUtils.contentEquals(new File(expected, name), new File(dir, name)));
+        }
+    }
+
+    byte[] zip(String name, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zout = new ZipOutputStream(bytes);
+        zout.putNextEntry(new ZipEntry(name));
+        zout.write(data);
+        zout.closeEntry();
+        zout.close();
+        return bytes.toByteArray();
+    }
+}
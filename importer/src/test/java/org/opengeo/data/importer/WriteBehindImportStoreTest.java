@@ -0,0 +1,173 @@
+package org.opengeo.data.importer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.opengeo.data.importer.ImportContext.State;
+
+public class WriteBehindImportStoreTest extends TestCase {
+
+    AtomicInteger writes;
+    AtomicInteger failures;
+    MemoryImportStore delegate;
+    WriteBehindImportStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        writes = new AtomicInteger();
+        failures = new AtomicInteger();
+        delegate = new MemoryImportStore() {
+            @Override
+            public synchronized void save(ImportContext context) {
+                if (failures.get() > 0) {
+                    failures.decrementAndGet();
+                    throw new RuntimeException("write failed");
+                }
+                writes.incrementAndGet();
+                super.save(context);
+            }
+        };
+        store = new WriteBehindImportStore(delegate, 60000);
+        store.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.destroy();
+    }
+
+    public void testCoalesce() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+
+        for (int i = 0; i < 10; i++) {
+            context.setUser("user" + i);
+            store.save(context);
+        }
+        assertEquals(0, writes.get());
+        assertSame(context, store.get(context.getId()));
+
+        store.flush();
+        assertEquals(1, writes.get());
+        assertEquals(11, store.getSaveCount());
+        assertEquals(2, store.getWriteCount());
+        assertTrue(store.getCoalescingRatio() > 0.8);
+
+        //nothing left to write
+        store.flush();
+        assertEquals(1, writes.get());
+    }
+
+    public void testStateChangeWritten() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+
+        store.save(context);
+        assertEquals(0, writes.get());
+
+        context.setState(State.RUNNING);
+        store.save(context);
+        assertEquals(1, writes.get());
+
+        store.flush();
+        assertEquals(1, writes.get());
+    }
+
+    public void testDelayedWrite() throws Exception {
+        store.destroy();
+        store = new WriteBehindImportStore(delegate, 50);
+        store.init();
+
+        ImportContext context = new ImportContext();
+        store.add(context);
+        store.save(context);
+        store.save(context);
+        assertEquals(0, writes.get());
+
+        for (int i = 0; i < 50 && writes.get() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, writes.get());
+    }
+
+    public void testRemoveDiscardsDirty() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        store.save(context);
+
+        store.remove(context);
+        store.flush();
+        assertEquals(0, writes.get());
+        assertNull(store.get(context.getId()));
+    }
+
+    public void testDestroyFlushes() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        store.save(context);
+
+        store.destroy();
+        assertEquals(1, writes.get());
+    }
+
+    public void testFailedFlushKeptDirty() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        store.save(context);
+
+        failures.set(1);
+        try {
+            store.flush();
+            fail("failure should have been thrown");
+        }
+        catch(RuntimeException e) {
+        }
+        assertEquals(0, writes.get());
+        assertSame(context, store.get(context.getId()));
+
+        store.flush();
+        assertEquals(1, writes.get());
+        assertSame(context, delegate.get(context.getId()));
+    }
+
+    public void testFailedDelayedWriteRetried() throws Exception {
+        store.destroy();
+        store = new WriteBehindImportStore(delegate, 50);
+        store.init();
+
+        ImportContext context = new ImportContext();
+        store.add(context);
+        failures.set(1);
+        store.save(context);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (writes.get() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, failures.get());
+        assertEquals(1, writes.get());
+    }
+
+    public void testDestroyThrowsFailure() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        store.save(context);
+
+        failures.set(1);
+        try {
+            store.destroy();
+            fail("failure should have been thrown");
+        }
+        catch(RuntimeException e) {
+        }
+        assertEquals(0, writes.get());
+    }
+
+    public void testWrittenBounded() throws Exception {
+        for (int i = 0; i < WriteBehindImportStore.WRITTEN_CAPACITY + 10; i++) {
+            store.add(new ImportContext());
+        }
+        assertEquals(WriteBehindImportStore.WRITTEN_CAPACITY, store.written.size());
+    }
+}
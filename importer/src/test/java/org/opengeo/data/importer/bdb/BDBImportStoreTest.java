@@ -1,9 +1,12 @@
 package org.opengeo.data.importer.bdb;
 
 import java.io.File;
+import java.util.EnumSet;
 import java.util.Iterator;
 import org.opengeo.data.importer.Directory;
 import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportQuery;
+import org.opengeo.data.importer.ImportSummary;
 import org.opengeo.data.importer.ImportStore.ImportVisitor;
 import org.opengeo.data.importer.Importer;
 import org.opengeo.data.importer.ImporterTestSupport;
@@ -145,6 +148,100 @@ public class BDBImportStoreTest extends ImporterTestSupport {
         assertEquals(new Long(667), dumby.getId());
     }
 
+    public void testQuery() throws Exception {
+        ImportContext c1 = context("foo", ImportContext.State.PENDING);
+        ImportContext c2 = context("bar", ImportContext.State.COMPLETE);
+        ImportContext c3 = context("foo", ImportContext.State.COMPLETE);
+        ImportContext c4 = context("foo", ImportContext.State.READY);
+
+        assertContexts(store.allNonCompleteImports(), c1, c4);
+        assertContexts(store.importsByUser("foo"), c1, c4);
+        assertContexts(store.iterator("updated"), c4, c3, c2, c1);
+
+        ImportQuery q = new ImportQuery();
+        q.setUser("foo");
+        q.setOffset(1);
+        q.setLimit(1);
+        assertContexts(store.query(q), c3);
+
+        q = new ImportQuery();
+        q.setSortBy(ImportQuery.SortBy.UPDATED);
+        q.setStates(EnumSet.of(ImportContext.State.COMPLETE));
+        assertContexts(store.query(q), c3, c2);
+
+        c1.setState(ImportContext.State.COMPLETE);
+        store.save(c1);
+        assertContexts(store.allNonCompleteImports(), c4);
+
+        store.remove(c4);
+        assertContexts(store.allNonCompleteImports());
+    }
+
+    public void testQueryByState() throws Exception {
+        ImportContext c1 = context("foo", ImportContext.State.READY);
+        ImportContext c2 = context("bar", ImportContext.State.PENDING);
+        context("foo", ImportContext.State.COMPLETE);
+        ImportContext c4 = context("foo", ImportContext.State.READY);
+        ImportContext c5 = context("bar", ImportContext.State.RUNNING);
+
+        //merged in id order across states
+        assertContexts(store.allNonCompleteImports(), c1, c2, c4, c5);
+
+        ImportQuery q = ImportQuery.nonComplete();
+        q.setOffset(1);
+        q.setLimit(2);
+        assertContexts(store.query(q), c2, c4);
+
+        q = ImportQuery.nonComplete();
+        q.setUser("bar");
+        assertContexts(store.query(q), c2, c5);
+
+        q = new ImportQuery();
+        q.setStates(EnumSet.of(ImportContext.State.RUNNING));
+        assertContexts(store.query(q), c5);
+    }
+
+    public void testSummaries() throws Exception {
+        testAdd();
+        context("foo", ImportContext.State.COMPLETE);
+
+        ImportQuery q = new ImportQuery();
+        q.setLimit(1);
+        Iterator<ImportSummary> it = store.summaries(q);
+        ImportSummary summary = it.next();
+        assertFalse(it.hasNext());
+
+        assertEquals(new Long(0), summary.getId());
+        assertEquals(ImportContext.State.READY, summary.getState());
+        assertEquals(1, summary.getTaskCount());
+        assertEquals(1, summary.getItemCount());
+        assertNotNull(summary.getDataName());
+        assertNotNull(summary.getCreated());
+
+        //the import is loaded on first access
+        assertEquals(1, summary.getTasks().size());
+        assertSame(summary.getContext(), summary.getContext());
+    }
+
+    ImportContext context(String user, ImportContext.State state) throws Exception {
+        //distinct update times
+        Thread.sleep(10);
+
+        ImportContext context = new ImportContext();
+        context.setUser(user);
+        context.setState(state);
+        store.add(context);
+        return context;
+    }
+
+    void assertContexts(Iterator<ImportContext> it, ImportContext... expected) {
+        for (ImportContext context : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(context.getId(), it.next().getId());
+        }
+        assertFalse(it.hasNext());
+    }
+
     class SearchingVisitor implements ImportVisitor {
         long id;
         boolean found = false;
@@ -0,0 +1,95 @@
+package org.opengeo.data.importer.bdb;
+
+import java.io.File;
+
+import junit.textui.TestRunner;
+
+import org.geoserver.catalog.ResourceInfo;
+import org.opengeo.data.importer.Directory;
+import org.opengeo.data.importer.ImportCodec;
+import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportData;
+import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportTask;
+import org.opengeo.data.importer.ImporterTestSupport;
+import org.opengeo.data.importer.job.ProgressMonitor;
+import org.opengeo.data.importer.transform.VectorTransformChain;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Compares size and encode/decode times of the BDB bindings on an import with many items.
+ * <p>
+ * Usage: <tt>BinaryImportBindingBenchmark [items] [rounds]</tt>. The benchmark runs in the
+ * GeoServer test setup, it is not part of the test suite.
+ * </p>
+ */
+public class BinaryImportBindingBenchmark extends ImporterTestSupport {
+
+    static int items = 1000;
+    static int rounds = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            items = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            rounds = Integer.parseInt(args[1]);
+        }
+        TestRunner.run(BinaryImportBindingBenchmark.class);
+    }
+
+    public void testCompareBindings() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+
+        ImportTask task = context.getTasks().get(0);
+        ImportData data = task.getData();
+        for (int i = 0; i < items; i++) {
+            ImportItem item =
+                data.getFormat().list(data, getCatalog(), new ProgressMonitor()).get(0);
+            task.addItem(item);
+            item.setTransform(new VectorTransformChain());
+
+            ResourceInfo resource = item.getLayer().getResource();
+            resource.setName(resource.getName() + i);
+            resource.setStore(task.getStore());
+            resource.setNamespace(getCatalog().getDefaultNamespace());
+        }
+        int count = task.getItems().size();
+
+        for (BDBImportStore.BindingType type : BDBImportStore.BindingType.values()) {
+            BDBImportStore store = new BDBImportStore(importer);
+            store.setBinding(type);
+            store.init();
+            try {
+                //whole imports, items included
+                EntryBinding<ImportContext> binding = type == BDBImportStore.BindingType.BINARY ?
+                    new BinaryImportBinding(new ImportCodec(importer)) : store.importBinding;
+                DatabaseEntry e = new DatabaseEntry();
+
+                long t = System.currentTimeMillis();
+                for (int i = 0; i < rounds; i++) {
+                    e = new DatabaseEntry();
+                    binding.objectToEntry(context, e);
+                }
+                long encode = (System.currentTimeMillis() - t) / rounds;
+
+                ImportContext context2 = null;
+                t = System.currentTimeMillis();
+                for (int i = 0; i < rounds; i++) {
+                    context2 = binding.entryToObject(e);
+                }
+                long decode = (System.currentTimeMillis() - t) / rounds;
+
+                System.out.println(String.format("%s: %d items, %d bytes, encode %d ms, " +
+                    "decode %d ms", type, context2.getTasks().get(0).getItems().size(),
+                    e.getSize(), encode, decode));
+            }
+            finally {
+                store.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.opengeo.data.importer.bdb;
+
+import java.io.File;
+
+import org.geoserver.catalog.LayerInfo;
+import org.opengeo.data.importer.Directory;
+import org.opengeo.data.importer.ImportCodec;
+import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportItem;
+import org.opengeo.data.importer.ImportTask;
+import org.opengeo.data.importer.ImporterTestSupport;
+
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+
+public class BinaryImportBindingTest extends ImporterTestSupport {
+
+    public void testRoundTripWithNewStore() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+        context.setUser("foo");
+
+        BinaryImportBinding binding = new BinaryImportBinding(new ImportCodec(importer));
+        DatabaseEntry e = new DatabaseEntry();
+        binding.objectToEntry(context, e);
+        assertTrue(BinaryImportBinding.isBinary(e));
+
+        ImportContext context2 = binding.entryToObject(e);
+        assertEquals(context.getId(), context2.getId());
+        assertEquals(context.getState(), context2.getState());
+        assertEquals("foo", context2.getUser());
+        assertEquals(context.getCreated(), context2.getCreated());
+        assertNotNull(context2.getData());
+
+        //workspace referenced by id
+        assertNotNull(context2.getTargetWorkspace());
+        assertEquals(context.getTargetWorkspace().getId(), context2.getTargetWorkspace().getId());
+        assertNotNull(context2.getTargetWorkspace().getName());
+
+        //store inline
+        ImportTask task = context2.getTasks().get(0);
+        assertSame(context2, task.getContext());
+        assertNotNull(task.getStore());
+        assertNull(task.getStore().getId());
+        assertEquals(context.getTasks().get(0).getStore().getName(), task.getStore().getName());
+
+        ImportItem item = task.getItems().get(0);
+        assertSame(task, item.getTask());
+        assertEquals(context.getTasks().get(0).getItems().get(0).getState(), item.getState());
+        assertNotNull(item.getTransform());
+        assertNotNull(item.getLayer());
+        assertNotNull(item.getLayer().getResource());
+        assertEquals("archsites", item.getLayer().getResource().getName());
+        assertSame(task.getStore(), item.getLayer().getResource().getStore());
+    }
+
+    public void testRoundTripAfterImport() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+        importer.run(context);
+
+        LayerInfo layer = context.getTasks().get(0).getItems().get(0).getLayer();
+        assertNotNull(layer.getId());
+
+        BinaryImportBinding binding = new BinaryImportBinding(new ImportCodec(importer));
+        DatabaseEntry e = new DatabaseEntry();
+        binding.objectToEntry(context, e);
+
+        ImportContext context2 = binding.entryToObject(e);
+        assertEquals(ImportContext.State.COMPLETE, context2.getState());
+
+        //store and layer referenced by id
+        ImportTask task = context2.getTasks().get(0);
+        assertEquals(context.getTasks().get(0).getStore().getId(), task.getStore().getId());
+        assertEquals(layer.getId(), task.getItems().get(0).getLayer().getId());
+        assertEquals(layer.getName(), task.getItems().get(0).getLayer().getName());
+    }
+
+    public void testMigrate() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+
+        BDBImportStore store = new BDBImportStore(importer);
+        store.setBinding(BDBImportStore.BindingType.XSTREAM);
+        store.init();
+        store.add(context);
+        store.destroy();
+
+        store = new BDBImportStore(importer);
+        store.setBinding(BDBImportStore.BindingType.BINARY);
+        store.init();
+        try {
+            DatabaseEntry val = new DatabaseEntry();
+            store.db.get(null, store.key(context.getId()), val, LockMode.DEFAULT);
+            assertTrue(BinaryImportBinding.isBinary(val));
+
+            ImportContext context2 = store.get(context.getId());
+            assertNotNull(context2);
+            assertEquals(1, context2.getTasks().size());
+            assertEquals(1, context2.getTasks().get(0).getItems().size());
+        }
+        finally {
+            store.destroy();
+        }
+    }
+
+    public void testItemRecords() throws Exception {
+        File dir = tmpDir();
+        unpack("shape/archsites_epsg_prj.zip", dir);
+        unpack("shape/bugsites_esri_prj.tar.gz", dir);
+        ImportContext context = importer.createContext(new Directory(dir));
+
+        ImportTask task = context.getTasks().get(0);
+        assertEquals(2, task.getItems().size());
+
+        BDBImportStore store = new BDBImportStore(importer);
+        store.setBinding(BDBImportStore.BindingType.BINARY);
+        store.init();
+        try {
+            store.add(context);
+
+            //items loaded on access
+            ImportContext context2 = store.get(context.getId());
+            ImportTask task2 = context2.getTasks().get(0);
+            assertFalse(task2.isItemsLoaded());
+            assertEquals(2, task2.getItemCount());
+            assertEquals(2, task2.getItems().size());
+            assertTrue(task2.isItemsLoaded());
+            assertSame(task2, task2.getItems().get(1).getTask());
+
+            //single item
+            ImportItem item = store.getItem(context.getId(), task.getId(), 1);
+            assertNotNull(item);
+            assertEquals(1, item.getId());
+            assertFalse(item.getTask().isItemsLoaded());
+            assertNull(store.getItem(context.getId(), task.getId(), 2));
+
+            item.setState(ImportItem.State.ERROR);
+            store.save(item);
+
+            task2 = store.get(context.getId()).getTasks().get(0);
+            assertEquals(ImportItem.State.ERROR, task2.item(1).getState());
+            assertEquals(task.item(0).getState(), task2.item(0).getState());
+
+            //removed items are deleted
+            task2.removeItem(task2.item(0));
+            store.save(task2.getContext());
+
+            task2 = store.get(context.getId()).getTasks().get(0);
+            assertEquals(1, task2.getItems().size());
+            assertNull(store.getItem(context.getId(), task.getId(), 0));
+
+            //only changed items are written
+            ImportItem kept = task2.item(1);
+            assertFalse(kept.isDirty());
+            assertFalse(task2.isItemsRemoved());
+
+            //changes to the layer are marked by the importer
+            String title = kept.getLayer().getResource().getTitle();
+            kept.getLayer().getResource().setTitle("not written");
+            store.save(task2.getContext());
+            assertEquals(title, store.getItem(context.getId(), task.getId(), 1)
+                .getLayer().getResource().getTitle());
+
+            kept.setState(ImportItem.State.READY);
+            assertTrue(kept.isDirty());
+            store.save(task2.getContext());
+            assertFalse(kept.isDirty());
+            ImportItem stored = store.getItem(context.getId(), task.getId(), 1);
+            assertEquals(ImportItem.State.READY, stored.getState());
+            assertEquals("not written", stored.getLayer().getResource().getTitle());
+
+            store.remove(context);
+            assertNull(store.getItem(context.getId(), task.getId(), 1));
+        }
+        finally {
+            store.destroy();
+        }
+    }
+}
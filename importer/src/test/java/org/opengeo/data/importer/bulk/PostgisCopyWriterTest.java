@@ -0,0 +1,45 @@
+package org.opengeo.data.importer.bulk;
+
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class PostgisCopyWriterTest extends TestCase {
+
+    public void testEWKB() throws Exception {
+        Geometry g = new WKTReader().read("LINESTRING(0 0, 1 1, 2 0)");
+        byte[] ewkb = PostgisCopyWriter.ewkb(new WKBWriter(2).write(g), 4326);
+        assertEquals(0, g.getSRID());
+
+        Geometry expected = new WKTReader().read("LINESTRING(0 0, 1 1, 2 0)");
+        expected.setSRID(4326);
+        assertTrue(Arrays.equals(new WKBWriter(2, true).write(expected), ewkb));
+    }
+
+    public void testTimestamp() throws Exception {
+        DateFormat format = PostgisCopyWriter.timestampFormat();
+        format.setTimeZone(TimeZone.getTimeZone("GMT+05:30"));
+
+        //2012-01-01T00:00:00.123Z
+        Date date = new Date(1325376000123L);
+        assertEquals("2012-01-01T05:30:00.123000+05:30", PostgisCopyWriter.text(date, format));
+
+        Timestamp ts = new Timestamp(1325376000000L);
+        ts.setNanos(123456789);
+        assertEquals("2012-01-01T05:30:00.123456+05:30", PostgisCopyWriter.text(ts, format));
+
+        format.setTimeZone(TimeZone.getTimeZone("GMT-03:00"));
+        assertEquals("2011-12-31T21:00:00.123000-03:00", PostgisCopyWriter.text(date, format));
+
+        java.sql.Date day = java.sql.Date.valueOf("2012-01-01");
+        assertEquals("2012-01-01", PostgisCopyWriter.text(day, format));
+    }
+}
@@ -0,0 +1,237 @@
+package org.opengeo.data.importer.jdbc;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+import org.opengeo.data.importer.Directory;
+import org.opengeo.data.importer.ImportContext;
+import org.opengeo.data.importer.ImportQuery;
+import org.opengeo.data.importer.ImportSummary;
+import org.opengeo.data.importer.ImporterTestSupport;
+
+public class JDBCImportStoreTest extends ImporterTestSupport {
+
+    JDBCImportStore store;
+    String url;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+
+        url = "jdbc:h2:" + new File(tmpDir(), "imports").getAbsolutePath();
+        store = newStore();
+    }
+
+    @Override
+    protected void tearDownInternal() throws Exception {
+        store.destroy();
+        super.tearDownInternal();
+    }
+
+    JDBCImportStore newStore() {
+        JDBCImportStore store = new JDBCImportStore(importer);
+        store.setConnection("org.h2.Driver", url, null, null);
+        store.init();
+        return store;
+    }
+
+    public void testAddAndGet() throws Exception {
+        File dir = unpack("shape/archsites_epsg_prj.zip");
+        ImportContext context = importer.createContext(new Directory(dir));
+        context.setUser("foo");
+
+        store.add(context);
+        assertNotNull(context.getId());
+
+        ImportContext context2 = store.get(context.getId());
+        assertNotNull(context2);
+        assertEquals("foo", context2.getUser());
+        assertEquals(1, context2.getTasks().size());
+        assertEquals(1, context2.getTasks().get(0).getItems().size());
+
+        context2.setState(ImportContext.State.COMPLETE);
+        store.save(context2);
+        assertEquals(ImportContext.State.COMPLETE, store.get(context.getId()).getState());
+
+        store.remove(context2);
+        assertNull(store.get(context.getId()));
+    }
+
+    public void testAdvanceId() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+
+        long id = context.getId() + 10;
+        assertEquals(id, store.advanceId(id).longValue());
+
+        //already handed out
+        assertEquals(id + 1, store.advanceId(context.getId()).longValue());
+
+        ImportContext context2 = new ImportContext();
+        store.add(context2);
+        assertEquals(id + 2, context2.getId().longValue());
+    }
+
+    public void testSharedStore() throws Exception {
+        ImportContext context = new ImportContext();
+        context.setUser("foo");
+        store.add(context);
+
+        JDBCImportStore other = newStore();
+        try {
+            assertNotNull(other.get(context.getId()));
+
+            ImportContext context2 = new ImportContext();
+            other.add(context2);
+            assertFalse(context.getId().equals(context2.getId()));
+            assertNotNull(store.get(context2.getId()));
+        }
+        finally {
+            other.destroy();
+        }
+    }
+
+    public void testQuery() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            ImportContext context = new ImportContext();
+            context.setUser(i % 2 == 0 ? "foo" : "bar");
+            context.setState(i < 3 ? ImportContext.State.COMPLETE : ImportContext.State.PENDING);
+            store.add(context);
+        }
+
+        ImportQuery q = new ImportQuery();
+        q.setUser("foo");
+        assertEquals(3, count(store.query(q)));
+
+        q.setStates(EnumSet.of(ImportContext.State.COMPLETE));
+        assertEquals(2, count(store.query(q)));
+
+        q = ImportQuery.nonComplete();
+        assertEquals(2, count(store.allNonCompleteImports()));
+        assertEquals(1, count(store.importsByUser("foo")));
+        q.setOffset(1);
+        q.setLimit(5);
+        Iterator<ImportSummary> it = store.summaries(q);
+        assertTrue(it.hasNext());
+        ImportSummary summary = it.next();
+        assertEquals(ImportContext.State.PENDING, summary.getState());
+        assertEquals("foo", summary.getUser());
+        assertNotNull(summary.getContext());
+        assertFalse(it.hasNext());
+
+        q = new ImportQuery();
+        q.setSortBy(ImportQuery.SortBy.UPDATED);
+        q.setLimit(2);
+        assertEquals(2, count(store.query(q)));
+    }
+
+    public void testLeases() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        long id = context.getId();
+
+        assertNull(store.getLeaseOwner(id));
+        assertTrue(store.claim(id, "node1", 60000));
+        assertEquals("node1", store.getLeaseOwner(id));
+
+        JDBCImportStore other = newStore();
+        try {
+            assertFalse(other.claim(id, "node2", 60000));
+
+            //held by another owner
+            other.release(id, "node2");
+            assertEquals("node1", store.getLeaseOwner(id));
+
+            store.release(id, "node1");
+            assertTrue(other.claim(id, "node2", 60000));
+            assertEquals("node2", store.getLeaseOwner(id));
+
+            //expired
+            assertTrue(other.claim(id, "node2", -1));
+            assertNull(store.getLeaseOwner(id));
+            assertTrue(store.claim(id, "node1", 60000));
+        }
+        finally {
+            other.destroy();
+        }
+    }
+
+    public void testQueue() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        long id = context.getId();
+
+        ImportContext context2 = new ImportContext();
+        store.add(context2);
+        long id2 = context2.getId();
+
+        assertNull(store.claimNext("node1", 60000));
+        assertFalse(store.claimQueued(id, "node1", 60000));
+
+        store.queue(id2);
+        store.queue(id);
+
+        JDBCImportStore other = newStore();
+        try {
+            //queued the longest first
+            assertEquals(Long.valueOf(id2), other.claimNext("node2", 60000));
+            assertEquals("node2", store.getLeaseOwner(id2));
+            assertFalse(store.claimQueued(id2, "node1", 60000));
+
+            assertTrue(store.claimQueued(id, "node1", 60000));
+            assertNull(other.claimNext("node2", 60000));
+
+            //leased imports are not handed out
+            store.claim(id, "node1", 60000);
+            store.queue(id);
+            assertNull(other.claimNext("node2", 60000));
+            store.release(id, "node1");
+            assertEquals(Long.valueOf(id), other.claimNext("node2", 60000));
+        }
+        finally {
+            other.destroy();
+        }
+    }
+
+    public void testSaveLeased() throws Exception {
+        ImportContext context = new ImportContext();
+        store.add(context);
+        long id = context.getId();
+
+        assertTrue(store.claim(id, "node1", 60000));
+        context.setState(ImportContext.State.RUNNING);
+        store.save(context);
+
+        JDBCImportStore other = newStore();
+        try {
+            ImportContext context2 = other.get(id);
+            assertEquals(ImportContext.State.RUNNING, context2.getState());
+
+            context2.setState(ImportContext.State.COMPLETE);
+            try {
+                other.save(context2);
+                fail("import leased by another owner saved");
+            }
+            catch(IllegalStateException e) {
+            }
+            assertEquals(ImportContext.State.RUNNING, store.get(id).getState());
+
+            //expired
+            assertTrue(store.claim(id, "node1", -1));
+            other.save(context2);
+            assertEquals(ImportContext.State.COMPLETE, store.get(id).getState());
+        }
+        finally {
+            other.destroy();
+        }
+    }
+
+    int count(Iterator<?> it) {
+        int count = 0;
+        for (; it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package org.opengeo.data.importer.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class JobQueueTest extends TestCase {
+
+    JobQueue queue;
+    CountDownLatch latch;
+    List<String> started;
+
+    @Override
+    protected void setUp() throws Exception {
+        latch = new CountDownLatch(1);
+        started = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        latch.countDown();
+        queue.shutdown();
+    }
+
+    public void testMaxRunning() throws Exception {
+        queue = new JobQueue(2, 2, 10);
+
+        queue.submit(job("a", "one"));
+        queue.submit(job("b", "two"));
+        Long third = queue.submit(job("c", "three"));
+
+        assertEquals(2, queue.getRunning());
+        assertEquals(1, queue.getWaiting());
+        assertEquals(0, queue.getPosition(third));
+
+        latch.countDown();
+        Task<?> t = queue.getFuture(third);
+        t.get(5, TimeUnit.SECONDS);
+        assertEquals(3, started.size());
+        assertEquals(-1, queue.getPosition(third));
+    }
+
+    public void testPerOwnerLimit() throws Exception {
+        queue = new JobQueue(2, 1, 10);
+
+        queue.submit(job("a", "a1"));
+        Long a2 = queue.submit(job("a", "a2"));
+        Long b1 = queue.submit(job("b", "b1"));
+
+        //b1 overtakes a2 since a is at its limit
+        assertEquals(2, queue.getRunning());
+        assertEquals(0, queue.getPosition(a2));
+        assertEquals(-1, queue.getPosition(b1));
+    }
+
+    public void testPriority() throws Exception {
+        queue = new JobQueue(1, 1, 10);
+
+        queue.submit(job("a", "blocker"));
+        Long bulk = queue.submit(job("b", "bulk"));
+
+        Job<?> job = job("c", "interactive");
+        job.setPriority(Job.Priority.INTERACTIVE);
+        Long interactive = queue.submit(job);
+
+        assertEquals(0, queue.getPosition(interactive));
+        assertEquals(1, queue.getPosition(bulk));
+
+        latch.countDown();
+        queue.getFuture(bulk).get(5, TimeUnit.SECONDS);
+        assertEquals("interactive", started.get(1));
+    }
+
+    public void testRejected() throws Exception {
+        queue = new JobQueue(1, 1, 1);
+
+        queue.submit(job("a", "one"));
+        queue.submit(job("a", "two"));
+        try {
+            queue.submit(job("a", "three"));
+            fail("queue should be full");
+        }
+        catch(RejectedExecutionException e) {
+        }
+    }
+
+    public void testCancelWaiting() throws Exception {
+        queue = new JobQueue(1, 1, 10);
+
+        queue.submit(job("a", "one"));
+        Long two = queue.submit(job("a", "two"));
+        assertEquals(1, queue.getWaiting());
+
+        queue.getFuture(two).cancel(false);
+        assertEquals(0, queue.getWaiting());
+        assertEquals(-1, queue.getPosition(two));
+    }
+
+    Job<String> job(String owner, final String name) {
+        Job<String> job = new Job<String>() {
+            @Override
+            protected String call(ProgressMonitor monitor) throws Exception {
+                started.add(name);
+                latch.await(5, TimeUnit.SECONDS);
+                return name;
+            }
+        };
+        job.setOwner(owner);
+        return job;
+    }
+}
@@ -116,6 +116,23 @@ public class ItemResourceTest extends ImporterTestSupport {
         assertErrorResponse(resp, "Invalid date parsing format");
     }
 
+    public void testGetItemOfTaskById() throws Exception {
+        ImportContext context = importer.getContext(0);
+        context.getTasks().get(0).setId(3);
+        importer.getStore().save(context);
+
+        JSONObject json = (JSONObject) getAsJSON("/rest/imports/0/tasks/3/items/1");
+        JSONObject item = json.getJSONObject("item");
+        assertEquals(1, item.getInt("id"));
+        assertTrue(item.getString("href").endsWith("/imports/0/tasks/3/items/1"));
+
+        json = (JSONObject) getAsJSON("/rest/imports/0/tasks/3/items");
+        assertEquals(2, json.getJSONArray("items").size());
+
+        assertEquals(404, getAsServletResponse("/rest/imports/0/tasks/0/items/1").getStatusCode());
+        assertEquals(404, getAsServletResponse("/rest/imports/0/tasks/0/items").getStatusCode());
+    }
+
     public void testDeleteItem() throws Exception {
         MockHttpServletResponse response = deleteAsServletResponse("/rest/imports/0/tasks/0/items/0");
         assertEquals(200, response.getStatusCode());
@@ -288,6 +288,57 @@ public class TaskResourceTest extends ImporterTestSupport {
         assertTrue(task.getString("href").endsWith("/imports/0/tasks/0"));
     }
 
+    public void testPutParallelism() throws Exception {
+        ImportContext context = importer.getContext(0);
+        context.getTasks().get(0).setParallelism(4);
+        importer.getStore().save(context);
+
+        putTask("{\"parallelism\": 0}");
+        assertEquals(0, importer.getContext(0).getTasks().get(0).getParallelism());
+    }
+
+    public void testPutCommitBatch() throws Exception {
+        putTask("{\"commitBatchSize\": 100, \"commitBatchSeconds\": 10}");
+        ImportTask task = importer.getContext(0).getTasks().get(0);
+        assertEquals(100, task.getCommitBatchSize());
+        assertEquals(10, task.getCommitBatchSeconds());
+
+        //settings absent are left alone
+        putTask("{\"commitBatchSize\": 0}");
+        task = importer.getContext(0).getTasks().get(0);
+        assertEquals(0, task.getCommitBatchSize());
+        assertEquals(10, task.getCommitBatchSeconds());
+    }
+
+    public void testPutTransformWorkers() throws Exception {
+        putTask("{\"transformWorkers\": 4, \"preserveOrder\": true}");
+        ImportTask task = importer.getContext(0).getTasks().get(0);
+        assertEquals(4, task.getTransformWorkers());
+        assertTrue(task.isPreserveOrder());
+
+        putTask("{\"preserveOrder\": false}");
+        task = importer.getContext(0).getTasks().get(0);
+        assertEquals(4, task.getTransformWorkers());
+        assertFalse(task.isPreserveOrder());
+
+        putTask("{\"transformWorkers\": 0}");
+        assertEquals(0, importer.getContext(0).getTasks().get(0).getTransformWorkers());
+    }
+
+    public void testPutCollectStatistics() throws Exception {
+        putTask("{\"collectStatistics\": true}");
+        assertTrue(importer.getContext(0).getTasks().get(0).isCollectStatistics());
+
+        putTask("{\"collectStatistics\": false}");
+        assertFalse(importer.getContext(0).getTasks().get(0).isCollectStatistics());
+    }
+
+    void putTask(String settings) throws Exception {
+        MockHttpServletResponse resp = putAsServletResponse("/rest/imports/0/tasks/0", 
+            "{\"task\": " + settings + "}", "application/json");
+        assertEquals(204, resp.getStatusCode());
+    }
+
     public void testPostMultiPartFormData() throws Exception {
         MockHttpServletResponse resp = postAsServletResponse("/rest/imports", "");
         assertEquals(201, resp.getStatusCode());
@@ -327,7 +378,42 @@ public class TaskResourceTest extends ImporterTestSupport {
         assertTrue(task.getData() instanceof SpatialFile);
         assertEquals(ImportTask.State.READY, task.getState());
     }
-    
+
+    public void testPostMultiPartFormDataZip() throws Exception {
+        MockHttpServletResponse resp = postAsServletResponse("/rest/imports", "");
+        assertEquals(201, resp.getStatusCode());
+
+        String[] split = resp.getHeader("Location").split("/");
+        Integer id = Integer.parseInt(split[split.length-1]);
+
+        File zip = file("shape/archsites_epsg_prj.zip");
+        Part[] parts = new Part[]{new FilePart(zip.getName(), zip)};
+
+        MultipartRequestEntity multipart =
+            new MultipartRequestEntity(parts, new PostMethod().getParams());
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        multipart.writeRequest(bout);
+
+        MockHttpServletRequest req = createRequest("/rest/imports/" + id + "/tasks");
+        req.setContentType(multipart.getContentType());
+        req.addHeader("Content-Type", multipart.getContentType());
+        req.setMethod("POST");
+        req.setBodyContent(bout.toByteArray());
+        resp = dispatch(req);
+
+        ImportContext context = importer.getContext(id);
+        assertEquals(1, context.getTasks().size());
+
+        ImportTask task = context.getTasks().get(0);
+        assertTrue(task.getData() instanceof SpatialFile);
+        assertEquals(ImportTask.State.READY, task.getState());
+
+        //the archive is extracted as it is read, never written as is
+        File upload = ((SpatialFile) task.getData()).getFile().getParentFile();
+        assertFalse(new File(upload, zip.getName()).exists());
+    }
+
     private void uploadGeotiffAndVerify(String taskName,
             InputStream geotiffResourceStream, String contentType) throws Exception {
         // upload  tif or zip file containing a tif and verify the results